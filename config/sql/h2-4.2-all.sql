@@ -382,6 +382,12 @@ CREATE TABLE m_object_ext_string (
   stringValue VARCHAR(255) NOT NULL,
   PRIMARY KEY (owner_oid, ownerType, item_id, stringValue)
 );
+CREATE TABLE m_object_external_item (
+  owner_oid VARCHAR(36) NOT NULL,
+  itemName  VARCHAR(157) NOT NULL,
+  fullItem  BLOB,
+  PRIMARY KEY (owner_oid, itemName)
+);
 CREATE TABLE m_object_subtype (
   object_oid VARCHAR(36) NOT NULL,
   subtype    VARCHAR(255)
@@ -1086,6 +1092,8 @@ ALTER TABLE m_object_ext_reference
   ADD CONSTRAINT fk_o_ext_reference_owner FOREIGN KEY (owner_oid) REFERENCES m_object;
 ALTER TABLE m_object_ext_string
   ADD CONSTRAINT fk_object_ext_string FOREIGN KEY (owner_oid) REFERENCES m_object;
+ALTER TABLE m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object;
 
 -- These are manually created
 ALTER TABLE m_object_ext_boolean
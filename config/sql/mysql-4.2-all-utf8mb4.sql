@@ -483,6 +483,15 @@ CREATE TABLE m_object_ext_string (
   DEFAULT CHARACTER SET utf8mb4
   COLLATE utf8mb4_bin
   ENGINE = InnoDB;
+CREATE TABLE m_object_external_item (
+  owner_oid VARCHAR(36)  CHARSET utf8 COLLATE utf8_bin NOT NULL,
+  itemName  VARCHAR(157) NOT NULL,
+  fullItem  LONGBLOB,
+  PRIMARY KEY (owner_oid, itemName)
+)
+  DEFAULT CHARACTER SET utf8mb4
+  COLLATE utf8mb4_bin
+  ENGINE = InnoDB;
 CREATE TABLE m_object_subtype (
   object_oid VARCHAR(36)  CHARSET utf8 COLLATE utf8_bin NOT NULL,
   subtype    VARCHAR(255)
@@ -1308,6 +1317,8 @@ ALTER TABLE m_object_ext_reference
   ADD CONSTRAINT fk_o_ext_reference_owner FOREIGN KEY (owner_oid) REFERENCES m_object (oid);
 ALTER TABLE m_object_ext_string
   ADD CONSTRAINT fk_object_ext_string FOREIGN KEY (owner_oid) REFERENCES m_object (oid);
+ALTER TABLE m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object (oid);
 
 -- These are created manually
 ALTER TABLE m_object_ext_boolean
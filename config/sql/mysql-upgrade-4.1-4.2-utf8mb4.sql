@@ -3,4 +3,19 @@
 CREATE INDEX iOpExecTimestampValue
   ON m_operation_execution (timestampValue);
 
+-- 2020-06-10 10:00
+
+CREATE TABLE m_object_external_item (
+  owner_oid VARCHAR(36)  CHARSET utf8 COLLATE utf8_bin NOT NULL,
+  itemName  VARCHAR(157) NOT NULL,
+  fullItem  LONGBLOB,
+  PRIMARY KEY (owner_oid, itemName)
+)
+  DEFAULT CHARACTER SET utf8mb4
+  COLLATE utf8mb4_bin
+  ENGINE = InnoDB;
+
+ALTER TABLE m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object (oid);
+
 COMMIT;
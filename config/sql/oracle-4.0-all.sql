@@ -378,6 +378,12 @@ CREATE TABLE m_object_ext_string (
   stringValue VARCHAR2(255 CHAR) NOT NULL,
   PRIMARY KEY (owner_oid, ownerType, item_id, stringValue)
 ) INITRANS 30;
+CREATE TABLE m_object_external_item (
+  owner_oid VARCHAR2(36 CHAR) NOT NULL,
+  itemName  VARCHAR2(157 CHAR) NOT NULL,
+  fullItem  BLOB,
+  PRIMARY KEY (owner_oid, itemName)
+) INITRANS 30;
 CREATE TABLE m_object_subtype (
   object_oid VARCHAR2(36 CHAR) NOT NULL,
   subtype    VARCHAR2(255 CHAR)
@@ -1086,6 +1092,8 @@ ALTER TABLE m_object_ext_reference
   ADD CONSTRAINT fk_o_ext_reference_owner FOREIGN KEY (owner_oid) REFERENCES m_object;
 ALTER TABLE m_object_ext_string
   ADD CONSTRAINT fk_object_ext_string FOREIGN KEY (owner_oid) REFERENCES m_object;
+ALTER TABLE m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object;
 
 -- These are created manually
 ALTER TABLE m_object_ext_boolean
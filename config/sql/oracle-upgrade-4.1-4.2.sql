@@ -3,4 +3,16 @@
 CREATE INDEX iOpExecTimestampValue
   ON m_operation_execution (timestampValue) INITRANS 30;
 
+-- 2020-06-10 10:00
+
+CREATE TABLE m_object_external_item (
+  owner_oid VARCHAR2(36 CHAR) NOT NULL,
+  itemName  VARCHAR2(157 CHAR) NOT NULL,
+  fullItem  BLOB,
+  PRIMARY KEY (owner_oid, itemName)
+) INITRANS 30;
+
+ALTER TABLE m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object;
+
 COMMIT;
@@ -0,0 +1,115 @@
+-- Converts audit tables to tables partitioned by audit record ID (PostgreSQL 11 or later).
+--
+-- Use together with the following settings in config.xml (repository section):
+--
+--   <auditPartitioning>true</auditPartitioning>
+--   <auditPartitionSize>1000000</auditPartitionSize>
+--
+-- The partition size below must be the same as auditPartitionSize. Audit cleanup then drops whole partitions
+-- instead of deleting their records one by one, and creates partitions for new records as needed.
+--
+-- Note that foreign keys from the audit tables to m_audit_event are dropped, because they cannot be kept
+-- when records are removed by dropping partitions.
+--
+-- Run this script when midPoint is stopped. All audit records are copied, so it can take a while.
+
+BEGIN;
+
+ALTER TABLE m_audit_delta DROP CONSTRAINT IF EXISTS fk_audit_delta;
+ALTER TABLE m_audit_item DROP CONSTRAINT IF EXISTS fk_audit_item;
+ALTER TABLE m_audit_prop_value DROP CONSTRAINT IF EXISTS fk_audit_prop_value;
+ALTER TABLE m_audit_ref_value DROP CONSTRAINT IF EXISTS fk_audit_ref_value;
+ALTER TABLE m_audit_resource DROP CONSTRAINT IF EXISTS fk_audit_resource;
+
+ALTER TABLE m_audit_delta RENAME TO m_audit_delta_old;
+ALTER TABLE m_audit_event RENAME TO m_audit_event_old;
+ALTER TABLE m_audit_item RENAME TO m_audit_item_old;
+ALTER TABLE m_audit_prop_value RENAME TO m_audit_prop_value_old;
+ALTER TABLE m_audit_ref_value RENAME TO m_audit_ref_value_old;
+ALTER TABLE m_audit_resource RENAME TO m_audit_resource_old;
+
+CREATE TABLE m_audit_delta (LIKE m_audit_delta_old INCLUDING DEFAULTS)
+  PARTITION BY RANGE (record_id);
+CREATE TABLE m_audit_event (LIKE m_audit_event_old INCLUDING DEFAULTS)
+  PARTITION BY RANGE (id);
+CREATE TABLE m_audit_item (LIKE m_audit_item_old INCLUDING DEFAULTS)
+  PARTITION BY RANGE (record_id);
+CREATE TABLE m_audit_prop_value (LIKE m_audit_prop_value_old INCLUDING DEFAULTS)
+  PARTITION BY RANGE (record_id);
+CREATE TABLE m_audit_ref_value (LIKE m_audit_ref_value_old INCLUDING DEFAULTS)
+  PARTITION BY RANGE (record_id);
+CREATE TABLE m_audit_resource (LIKE m_audit_resource_old INCLUDING DEFAULTS)
+  PARTITION BY RANGE (record_id);
+
+-- sequences must survive dropping of the old tables
+ALTER SEQUENCE m_audit_event_id_seq OWNED BY m_audit_event.id;
+ALTER SEQUENCE m_audit_prop_value_id_seq OWNED BY m_audit_prop_value.id;
+ALTER SEQUENCE m_audit_ref_value_id_seq OWNED BY m_audit_ref_value.id;
+
+-- the partitioning column must not be null
+ALTER TABLE m_audit_prop_value ALTER COLUMN record_id SET NOT NULL;
+ALTER TABLE m_audit_ref_value ALTER COLUMN record_id SET NOT NULL;
+
+-- Partitions for existing records and some more; further ones are created by the audit cleanup.
+-- Default partitions catch records that would not fit into any of them.
+DO $$
+DECLARE
+  partitionSize CONSTANT INT8 := 1000000;   -- must be the same as auditPartitionSize
+  tableName TEXT;
+  maxId INT8;
+  partitionStart INT8;
+BEGIN
+  SELECT coalesce(max(id), 0) INTO maxId FROM m_audit_event_old;
+  FOREACH tableName IN ARRAY ARRAY['m_audit_delta', 'm_audit_event', 'm_audit_item', 'm_audit_prop_value',
+      'm_audit_ref_value', 'm_audit_resource'] LOOP
+    partitionStart := 0;
+    WHILE partitionStart <= maxId + 2 * partitionSize LOOP
+      EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%s) TO (%s)',
+          tableName || '_p' || partitionStart, tableName, partitionStart, partitionStart + partitionSize);
+      partitionStart := partitionStart + partitionSize;
+    END LOOP;
+    EXECUTE format('CREATE TABLE %I PARTITION OF %I DEFAULT', tableName || '_default', tableName);
+  END LOOP;
+END $$;
+
+INSERT INTO m_audit_event SELECT * FROM m_audit_event_old;
+INSERT INTO m_audit_delta SELECT * FROM m_audit_delta_old;
+INSERT INTO m_audit_item SELECT * FROM m_audit_item_old;
+INSERT INTO m_audit_prop_value SELECT * FROM m_audit_prop_value_old WHERE record_id IS NOT NULL;
+INSERT INTO m_audit_ref_value SELECT * FROM m_audit_ref_value_old WHERE record_id IS NOT NULL;
+INSERT INTO m_audit_resource SELECT * FROM m_audit_resource_old;
+
+DROP TABLE m_audit_delta_old;
+DROP TABLE m_audit_item_old;
+DROP TABLE m_audit_prop_value_old;
+DROP TABLE m_audit_ref_value_old;
+DROP TABLE m_audit_resource_old;
+DROP TABLE m_audit_event_old;
+
+-- names of these are the same as of those of the old tables, so they can be created only now
+-- primary keys must contain the partitioning column
+ALTER TABLE m_audit_delta ADD PRIMARY KEY (record_id, checksum);
+ALTER TABLE m_audit_event ADD PRIMARY KEY (id);
+ALTER TABLE m_audit_item ADD PRIMARY KEY (record_id, changedItemPath);
+ALTER TABLE m_audit_prop_value ADD PRIMARY KEY (id, record_id);
+ALTER TABLE m_audit_ref_value ADD PRIMARY KEY (id, record_id);
+ALTER TABLE m_audit_resource ADD PRIMARY KEY (record_id, resourceOid);
+
+CREATE INDEX iAuditDeltaRecordId
+  ON m_audit_delta (record_id);
+CREATE INDEX iTimestampValue
+  ON m_audit_event (timestampValue);
+CREATE INDEX iChangedItemPath
+  ON m_audit_item (changedItemPath);
+CREATE INDEX iAuditItemRecordId
+  ON m_audit_item (record_id);
+CREATE INDEX iAuditPropValRecordId
+  ON m_audit_prop_value (record_id);
+CREATE INDEX iAuditRefValRecordId
+  ON m_audit_ref_value (record_id);
+CREATE INDEX iAuditResourceOid
+  ON m_audit_resource (resourceOid);
+CREATE INDEX iAuditResourceOidRecordId
+  ON m_audit_resource (record_id);
+
+COMMIT;
@@ -3,4 +3,16 @@
 CREATE INDEX iOpExecTimestampValue
   ON m_operation_execution (timestampValue);
 
+-- 2020-06-10 10:00
+
+CREATE TABLE m_object_external_item (
+  owner_oid VARCHAR(36) NOT NULL,
+  itemName  VARCHAR(157) NOT NULL,
+  fullItem  BYTEA,
+  PRIMARY KEY (owner_oid, itemName)
+);
+
+ALTER TABLE IF EXISTS m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object;
+
 COMMIT;
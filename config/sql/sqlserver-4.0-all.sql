@@ -378,6 +378,12 @@ CREATE TABLE m_object_ext_string (
   stringValue NVARCHAR(255) COLLATE database_default NOT NULL,
   PRIMARY KEY (owner_oid, ownerType, item_id, stringValue)
 );
+CREATE TABLE m_object_external_item (
+  owner_oid NVARCHAR(36) COLLATE database_default NOT NULL,
+  itemName  NVARCHAR(157) COLLATE database_default NOT NULL,
+  fullItem  VARBINARY(MAX),
+  PRIMARY KEY (owner_oid, itemName)
+);
 CREATE TABLE m_object_subtype (
   object_oid NVARCHAR(36) COLLATE database_default NOT NULL,
   subtype    NVARCHAR(255) COLLATE database_default
@@ -1084,6 +1090,8 @@ ALTER TABLE m_object_ext_reference
   ADD CONSTRAINT fk_o_ext_reference_owner FOREIGN KEY (owner_oid) REFERENCES m_object;
 ALTER TABLE m_object_ext_string
   ADD CONSTRAINT fk_object_ext_string FOREIGN KEY (owner_oid) REFERENCES m_object;
+ALTER TABLE m_object_external_item
+  ADD CONSTRAINT fk_object_external_item FOREIGN KEY (owner_oid) REFERENCES m_object;
 
 -- These are created manually
 ALTER TABLE m_object_ext_boolean
@@ -36,4 +36,6 @@ public interface PrimitiveXNode<T> extends XNode {
     ValueParser<T> getValueParser();
 
     boolean isParsed();
+
+    boolean isAttribute();
 }
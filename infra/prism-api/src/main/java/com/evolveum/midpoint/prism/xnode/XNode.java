@@ -32,4 +32,9 @@ public interface XNode extends DebugDumpable, Visitable<XNode>, Cloneable, Seria
     XNode clone();
 
     Integer getMaxOccurs();
+
+    /**
+     * Element name of this node. Filled if and only if this is a member of heterogeneous list.
+     */
+    QName getElementName();
 }
@@ -36,4 +36,9 @@ public interface XNodeFactory {
     MapXNode map(QName key, XNode value);
 
     ListXNode list(XNode... nodes);
+
+    /**
+     * Marker for an item whose values are not present (see {@link IncompleteMarkerXNode}).
+     */
+    IncompleteMarkerXNode incompleteMarker();
 }
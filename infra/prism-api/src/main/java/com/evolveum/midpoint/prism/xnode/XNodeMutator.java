@@ -18,8 +18,14 @@ public interface XNodeMutator {
 
     void putToMapXNode(MapXNode map, QName key, XNode value);
 
+    void removeFromMapXNode(MapXNode map, QName key);
+
     void addToListXNode(ListXNode list, XNode... nodes);
 
     void setXNodeType(XNode node, QName explicitTypeName, boolean explicitTypeDeclaration);
 
+    void setXNodeElementName(XNode node, QName elementName);
+
+    void setXNodeMaxOccurs(XNode node, Integer maxOccurs);
+
 }
@@ -46,6 +46,11 @@ public class HacksImpl implements Hacks, XNodeMutator {
         ((MapXNodeImpl) map).put(key, (XNodeImpl) value);
     }
 
+    @Override
+    public void removeFromMapXNode(MapXNode map, QName key) {
+        ((MapXNodeImpl) map).remove(key);
+    }
+
     @Override
     public void addToListXNode(ListXNode list, XNode... nodes) {
         for (XNode node : nodes) {
@@ -73,4 +78,14 @@ public class HacksImpl implements Hacks, XNodeMutator {
         ((XNodeImpl) node).setTypeQName(explicitTypeName);
         ((XNodeImpl) node).setExplicitTypeDeclaration(explicitTypeDeclaration);
     }
+
+    @Override
+    public void setXNodeElementName(XNode node, QName elementName) {
+        ((XNodeImpl) node).setElementName(elementName);
+    }
+
+    @Override
+    public void setXNodeMaxOccurs(XNode node, Integer maxOccurs) {
+        ((XNodeImpl) node).setMaxOccurs(maxOccurs);
+    }
 }
@@ -115,6 +115,10 @@ public class MapXNodeImpl extends XNodeImpl implements MapXNode {
         subnodes.put(key, value);
     }
 
+    public XNodeImpl remove(QName key) {
+        return removeByFullScan(key);
+    }
+
     private XNodeImpl putReturningPrevious(QName key, XNodeImpl value) {
         checkMutable();
         boolean unqualified = QNameUtil.isUnqualified(key);
@@ -89,4 +89,9 @@ public class XNodeFactoryImpl implements XNodeFactory {
         }
         return list;
     }
+
+    @Override
+    public IncompleteMarkerXNode incompleteMarker() {
+        return new IncompleteMarkerXNodeImpl();
+    }
 }
@@ -247,6 +247,9 @@ public class CacheConfigurationManager {
             addCacheSettings(aggregate, CacheType.GLOBAL_REPO_QUERY_CACHE, profile.getGlobalRepoQueryCache());
         }
 
+        addCacheSettings(aggregate, CacheType.LOCAL_REPO_NEGATIVE_CACHE, profile.getLocalRepoNegativeCache());
+        addCacheSettings(aggregate, CacheType.GLOBAL_REPO_NEGATIVE_CACHE, profile.getGlobalRepoNegativeCache());
+
         addCacheSettings(aggregate, CacheType.LOCAL_FOCUS_CONSTRAINT_CHECKER_CACHE, profile.getLocalFocusConstraintCheckerCache());
         addCacheSettings(aggregate, CacheType.LOCAL_SHADOW_CONSTRAINT_CHECKER_CACHE, profile.getLocalShadowConstraintCheckerCache());
         addCacheSettings(aggregate, CacheType.LOCAL_ASSOCIATION_TARGET_SEARCH_EVALUATOR_CACHE, profile.getLocalAssociationTargetSearchEvaluatorCache());
@@ -276,6 +279,12 @@ public class CacheConfigurationManager {
         if (increment.getMaxSize() != null) {
             configuration.setMaxSize(increment.getMaxSize());
         }
+        if (increment.getMaxSizeInBytes() != null) {
+            configuration.setMaxSizeInBytes(increment.getMaxSizeInBytes());
+        }
+        if (increment.getStorage() != null) {
+            configuration.setStorage(convertStorage(increment.getStorage()));
+        }
         if (increment.getTimeToLive() != null) {
             configuration.setTimeToLive(increment.getTimeToLive());
         }
@@ -354,6 +363,15 @@ public class CacheConfigurationManager {
         }
     }
 
+    private CacheConfiguration.Storage convertStorage(CacheStorageType storage) {
+        switch (storage) {
+            case OBJECTS: return CacheConfiguration.Storage.OBJECTS;
+            case SERIALIZED: return CacheConfiguration.Storage.SERIALIZED;
+            case SERIALIZED_OFF_HEAP: return CacheConfiguration.Storage.SERIALIZED_OFF_HEAP;
+            default: throw new IllegalArgumentException("storage: " + storage);
+        }
+    }
+
     private Collection<Class<?>> resolveClassNames(List<QName> names) throws SchemaException {
         Collection<Class<?>> rv = new HashSet<>();
         for (QName name : names) {
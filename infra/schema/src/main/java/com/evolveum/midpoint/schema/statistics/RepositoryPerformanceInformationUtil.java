@@ -7,8 +7,11 @@
 
 package com.evolveum.midpoint.schema.statistics;
 
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryOperationPerformanceInformationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryPerformanceInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryQueryPerformanceInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositorySlowQueryType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -21,6 +24,12 @@ import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
  */
 public class RepositoryPerformanceInformationUtil {
 
+    /** Maximal number of slow queries kept in an aggregate. */
+    private static final int MAX_SLOW_QUERIES = 100;
+
+    /** Number of queries shown by {@link #format(RepositoryPerformanceInformationType)}. */
+    private static final int FORMATTED_QUERIES = 20;
+
     public static void addTo(@NotNull RepositoryPerformanceInformationType aggregate, @Nullable RepositoryPerformanceInformationType part) {
         if (part == null) {
             return;
@@ -39,6 +48,37 @@ public class RepositoryPerformanceInformationUtil {
                 aggregate.getOperation().add(partOperation.clone());
             }
         }
+        for (RepositoryQueryPerformanceInformationType partQuery : part.getQuery()) {
+            RepositoryQueryPerformanceInformationType matchingAggregateQuery = null;
+            for (RepositoryQueryPerformanceInformationType aggregateQuery : aggregate.getQuery()) {
+                if (Objects.equals(partQuery.getText(), aggregateQuery.getText())) {
+                    matchingAggregateQuery = aggregateQuery;
+                    break;
+                }
+            }
+            if (matchingAggregateQuery != null) {
+                addTo(matchingAggregateQuery, partQuery);
+            } else {
+                aggregate.getQuery().add(partQuery.clone());
+            }
+        }
+        for (RepositorySlowQueryType partSlowQuery : part.getSlowQuery()) {
+            aggregate.getSlowQuery().add(partSlowQuery.clone());
+        }
+        List<RepositorySlowQueryType> slowQueries = aggregate.getSlowQuery();
+        if (slowQueries.size() > MAX_SLOW_QUERIES) {
+            // the oldest ones are removed
+            slowQueries.sort(Comparator.comparingLong(q -> XmlTypeConverter.toMillis(q.getTimestamp())));
+            slowQueries.subList(0, slowQueries.size() - MAX_SLOW_QUERIES).clear();
+        }
+    }
+
+    private static void addTo(@NotNull RepositoryQueryPerformanceInformationType aggregate,
+            @NotNull RepositoryQueryPerformanceInformationType part) {
+        aggregate.setInvocationCount(defaultIfNull(aggregate.getInvocationCount(), 0) + defaultIfNull(part.getInvocationCount(), 0));
+        aggregate.setTotalTime(defaultIfNull(aggregate.getTotalTime(), 0L) + defaultIfNull(part.getTotalTime(), 0L));
+        aggregate.setMaxTime(max(aggregate.getMaxTime(), part.getMaxTime()));
+        aggregate.setRowsReturned(defaultIfNull(aggregate.getRowsReturned(), 0L) + defaultIfNull(part.getRowsReturned(), 0L));
     }
 
     private static void addTo(@NotNull RepositoryOperationPerformanceInformationType aggregate,
@@ -91,6 +131,27 @@ public class RepositoryPerformanceInformationUtil {
             }
             sb.append("\n");
         }
+        if (!i.getQuery().isEmpty()) {
+            List<RepositoryQueryPerformanceInformationType> queries = new ArrayList<>(i.getQuery());
+            queries.sort(Comparator.comparing((RepositoryQueryPerformanceInformationType q) -> defaultIfNull(q.getTotalTime(), 0L))
+                    .reversed());
+            sb.append(String.format("\n  Queries (top %d of %d by total time):\n", Math.min(FORMATTED_QUERIES, queries.size()),
+                    queries.size()));
+            for (RepositoryQueryPerformanceInformationType q : queries.subList(0, Math.min(FORMATTED_QUERIES, queries.size()))) {
+                int invocationCount = defaultIfNull(q.getInvocationCount(), 0);
+                sb.append(String.format(Locale.US, "  count:%7d, total time: %8d ms, max: %5d ms, rows: %8d: %s\n",
+                        invocationCount, defaultIfNull(q.getTotalTime(), 0L), defaultIfNull(q.getMaxTime(), 0L),
+                        defaultIfNull(q.getRowsReturned(), 0L), q.getText()));
+            }
+        }
+        if (!i.getSlowQuery().isEmpty()) {
+            sb.append(String.format("\n  Slow queries (%d):\n", i.getSlowQuery().size()));
+            for (RepositorySlowQueryType q : i.getSlowQuery()) {
+                sb.append(String.format(Locale.US, "  %s: %6d ms, rows: %s, operation: %s, thread: %s: %s\n",
+                        q.getTimestamp(), defaultIfNull(q.getTime(), 0L), q.getRowsReturned(), q.getOperation(),
+                        q.getThread(), q.getText()));
+            }
+        }
         return sb.toString();
     }
 
@@ -22,6 +22,8 @@ import java.util.Map;
 public class CacheConfiguration implements DebugDumpable {
 
     private Integer maxSize;
+    private Long maxSizeInBytes;
+    private Storage storage;
     private Integer timeToLive;
     private Boolean traceMiss;
     private Boolean tracePass;
@@ -41,6 +43,10 @@ public class CacheConfiguration implements DebugDumpable {
         SKIP, PER_CACHE, PER_OBJECT_TYPE
     }
 
+    public enum Storage {
+        OBJECTS, SERIALIZED, SERIALIZED_OFF_HEAP
+    }
+
     public boolean supportsObjectType(Class<?> type) {
         if (!isAvailable()) {
             return false;
@@ -55,7 +61,7 @@ public class CacheConfiguration implements DebugDumpable {
     }
 
     public boolean isAvailable() {
-        return (maxSize == null || maxSize > 0) && (timeToLive == null || timeToLive > 0) && !objectTypes.isEmpty();
+        return (maxSize == null || maxSize > 0) && (maxSizeInBytes == null || maxSizeInBytes > 0) && (timeToLive == null || timeToLive > 0) && !objectTypes.isEmpty();
     }
 
     public class CacheObjectTypeConfiguration {
@@ -163,6 +169,26 @@ public class CacheConfiguration implements DebugDumpable {
         this.maxSize = maxSize;
     }
 
+    public Long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    public void setMaxSizeInBytes(Long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public void setStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    public boolean isSerializedStorage() {
+        return storage == Storage.SERIALIZED || storage == Storage.SERIALIZED_OFF_HEAP;
+    }
+
     public Integer getTimeToLive() {
         return timeToLive;
     }
@@ -223,6 +249,12 @@ public class CacheConfiguration implements DebugDumpable {
         if (maxSize != null) {
             DebugUtil.debugDumpWithLabelLn(sb, "maxSize", maxSize, indent);
         }
+        if (maxSizeInBytes != null) {
+            DebugUtil.debugDumpWithLabelLn(sb, "maxSizeInBytes", maxSizeInBytes, indent);
+        }
+        if (storage != null) {
+            DebugUtil.debugDumpWithLabelLn(sb, "storage", String.valueOf(storage), indent);
+        }
         if (timeToLive != null) {
             DebugUtil.debugDumpWithLabelLn(sb, "timeToLive", timeToLive, indent);
         }
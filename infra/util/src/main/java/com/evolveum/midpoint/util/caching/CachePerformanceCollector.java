@@ -14,9 +14,11 @@ import com.evolveum.midpoint.util.annotation.Experimental;
 import com.evolveum.midpoint.util.caching.CacheConfiguration.StatisticsLevel;
 
 import java.util.ArrayList;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
@@ -44,6 +46,13 @@ public class CachePerformanceCollector implements DebugDumpable {
         @Experimental public final AtomicInteger overSizedQueries = new AtomicInteger(0);
         @Experimental public final AtomicInteger skippedStaleData = new AtomicInteger(0);
 
+        // Cost of invalidation of cached entries: number of invalidation runs, entries examined and removed,
+        // and the time spent (in nanoseconds). Currently reported by query caches only.
+        @Experimental public final AtomicInteger invalidations = new AtomicInteger(0);
+        @Experimental public final AtomicInteger invalidationEntriesExamined = new AtomicInteger(0);
+        @Experimental public final AtomicInteger invalidationEntriesRemoved = new AtomicInteger(0);
+        @Experimental public final AtomicLong invalidationTime = new AtomicLong(0);
+
         private AtomicInteger getHits() {
             return hits;
         }
@@ -72,6 +81,13 @@ public class CachePerformanceCollector implements DebugDumpable {
             return skippedStaleData;
         }
 
+        private void addInvalidation(int examined, int removed, long time) {
+            invalidations.incrementAndGet();
+            invalidationEntriesExamined.addAndGet(examined);
+            invalidationEntriesRemoved.addAndGet(removed);
+            invalidationTime.addAndGet(time);
+        }
+
         public void add(AbstractThreadLocalCache cache) {
             hits.addAndGet(cache.getHits());
             misses.addAndGet(cache.getMisses());
@@ -87,6 +103,12 @@ public class CachePerformanceCollector implements DebugDumpable {
             int notAvailable = this.notAvailable.get();
             int sum = hits + weakHits + misses + passes + notAvailable;
             CacheUtil.formatPerformanceData(sb, hits, weakHits, misses, passes, notAvailable, sum);
+            int invalidations = this.invalidations.get();
+            if (invalidations > 0) {
+                sb.append(String.format(Locale.US, ", invalidations: %6d (examined: %d, removed: %d, time: %.1f ms)",
+                        invalidations, invalidationEntriesExamined.get(), invalidationEntriesRemoved.get(),
+                        invalidationTime.get() / 1000000.0));
+            }
         }
     }
 
@@ -136,6 +158,23 @@ public class CachePerformanceCollector implements DebugDumpable {
         increment(cacheClass, type, statisticsLevel, CacheData::getNotAvailable);
     }
 
+    /**
+     * Registers an invalidation run: how many cache entries were examined, how many were removed,
+     * and how long it took (in nanoseconds).
+     */
+    @Experimental
+    public void registerInvalidation(Class<?> cacheClass, Class<?> type, StatisticsLevel statisticsLevel,
+            int examined, int removed, long time) {
+        String key = createKey(cacheClass, type, statisticsLevel);
+        if (key != null) {
+            getOrCreate(performanceMap, key).addInvalidation(examined, removed, time);
+            Map<String, CacheData> localMap = threadLocalPerformanceMap.get();
+            if (localMap != null) {
+                getOrCreate(localMap, key).addInvalidation(examined, removed, time);
+            }
+        }
+    }
+
     @Experimental
     public void registerSkippedStaleData(Class<?> type) {
         increment(null, type, CacheConfiguration.StatisticsLevel.PER_OBJECT_TYPE, CacheData::getSkippedStaleData);
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.core.Response;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.ClusterExecutionHelper;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventBatchType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Distributes cache invalidation events to other cluster nodes in batches, and processes batches received from them.
+ *
+ * Events are collected for a short time, coalesced by (type, OID), and then sent as a single message to each node
+ * from a background thread. So the thread that modified the objects does not wait for the remote calls.
+ *
+ * Batches sent by a node are numbered consecutively. The receiving node remembers the last number for each sender.
+ * If it detects a gap (e.g. because it was not reachable or not alive when a batch was sent), some events were lost,
+ * so it clears all its caches instead of applying the events one by one.
+ */
+@Component
+public class ClusterCacheInvalidationBroadcaster {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ClusterCacheInvalidationBroadcaster.class);
+
+    private static final String OP_SEND_BATCH = ClusterCacheInvalidationBroadcaster.class.getName() + ".sendBatch";
+
+    /** How long (in milliseconds) are the events collected before they are sent. */
+    private static final long BATCH_WINDOW = 100;
+
+    @Autowired private TaskManager taskManager;
+    @Autowired private CacheDispatcher cacheDispatcher;
+    @Autowired private ClusterExecutionHelper clusterExecutionHelper;
+
+    /** Events waiting to be sent. Guarded by this. */
+    private final Set<Event> pendingEvents = new LinkedHashSet<>();
+
+    /** Is sending of pending events scheduled? Guarded by this. */
+    private boolean sendScheduled;
+
+    /** Sequence number of the last batch sent. Used only by the sending thread. */
+    private long lastSentSequenceNumber;
+
+    /** Sequence numbers of the last batches received, indexed by sender node identifier. */
+    private final Map<String, Long> lastReceivedSequenceNumbers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void initialize() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-cache-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // events that are already scheduled are still sent
+        executor.shutdown();
+    }
+
+    /**
+     * Schedules sending of the invalidation event to other nodes.
+     *
+     * @param type Type of object (null means all types).
+     * @param oid OID of object (null means all object(s) of given type(s)).
+     */
+    public void broadcast(Class<? extends ObjectType> type, String oid) {
+        synchronized (this) {
+            addPendingEvent(new Event(type, oid));
+            if (sendScheduled) {
+                return;
+            }
+            sendScheduled = true;
+        }
+        try {
+            executor.schedule(this::sendPendingEvents, BATCH_WINDOW, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Couldn't schedule cluster-wide cache invalidation, probably because the system is shutting down: {}",
+                    e.getMessage());
+            synchronized (this) {
+                sendScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Adds the event unless it is covered by an already pending one. Pending events covered by it are removed.
+     */
+    private void addPendingEvent(Event event) {
+        if (pendingEvents.contains(Event.ALL) ||
+                event.type != null && pendingEvents.contains(new Event(event.type, null))) {
+            return;
+        }
+        if (event.type == null) {
+            pendingEvents.clear();
+        } else if (event.oid == null) {
+            pendingEvents.removeIf(pending -> event.type.equals(pending.type));
+        }
+        pendingEvents.add(event);
+    }
+
+    private void sendPendingEvents() {
+        List<Event> events;
+        synchronized (this) {
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            sendScheduled = false;
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+
+        CacheInvalidationEventBatchType batch = new CacheInvalidationEventBatchType();
+        // The number is consumed even if the batch is not delivered to some (or all) nodes: they detect the gap later.
+        batch.setSequenceNumber(++lastSentSequenceNumber);
+        for (Event event : events) {
+            batch.getEvent().add(event.toEventType());
+        }
+        LOGGER.trace("Sending cache invalidation batch #{} with {} event(s)", lastSentSequenceNumber, events.size());
+        sendBatch(batch);
+    }
+
+    /**
+     * Sends the batch to all other nodes. Called from the sending thread only. (Overridden in tests.)
+     */
+    void sendBatch(CacheInvalidationEventBatchType batch) {
+        batch.setSenderNodeIdentifier(taskManager.getNodeId());
+        OperationResult result = new OperationResult(OP_SEND_BATCH);
+        try {
+            // Regular cache invalidation can be skipped for nodes not checking in. Cache entries will expire on such nodes
+            // eventually, or they will be cleared when the node gets next batch. (We can revisit this design decision if needed.)
+            clusterExecutionHelper.execute((client, node, result1) -> {
+                client.path(ClusterServiceConsts.EVENT_INVALIDATION_BATCH);
+                Response response = client.post(batch);
+                Response.StatusType statusInfo = response.getStatusInfo();
+                if (statusInfo.getFamily() != Response.Status.Family.SUCCESSFUL) {
+                    LOGGER.warn("Cluster-wide cache clearance finished on {} with status {}, {}", node.getNodeIdentifier(),
+                            statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
+                } else {
+                    LOGGER.debug("Cluster-wide cache clearance finished on {} with status {}, {}", node.getNodeIdentifier(),
+                            statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
+                }
+                response.close();
+            }, null, "cache invalidation", result);
+        } catch (Throwable t) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't send cache invalidation batch #{}", t, batch.getSequenceNumber());
+        }
+    }
+
+    /**
+     * Applies invalidation events received from another node.
+     */
+    public void processReceivedBatch(@NotNull CacheInvalidationEventBatchType batch) {
+        // We got this from another node so we don't need to redistribute it (clusterwide = false).
+        CacheInvalidationContext context = new CacheInvalidationContext(true, null);
+        if (isSequenceComplete(batch)) {
+            LOGGER.trace("Processing cache invalidation batch #{} from {} with {} event(s)", batch.getSequenceNumber(),
+                    batch.getSenderNodeIdentifier(), batch.getEvent().size());
+            for (CacheInvalidationEventType event : batch.getEvent()) {
+                Class<? extends ObjectType> type = event.getType() != null ?
+                        ObjectTypes.getClassFromRestType(event.getType()) : null;
+                dispatchInvalidation(type, event.getOid(), context);
+            }
+        } else {
+            dispatchInvalidation(null, null, context);
+        }
+    }
+
+    /**
+     * Invalidates local caches. (Overridden in tests.)
+     */
+    void dispatchInvalidation(Class<? extends ObjectType> type, String oid, CacheInvalidationContext context) {
+        cacheDispatcher.dispatchInvalidation(type, oid, false, context);
+    }
+
+    private boolean isSequenceComplete(CacheInvalidationEventBatchType batch) {
+        String sender = batch.getSenderNodeIdentifier();
+        Long sequenceNumber = batch.getSequenceNumber();
+        if (sender == null || sequenceNumber == null) {
+            return true;
+        }
+        Long lastSequenceNumber = lastReceivedSequenceNumbers.put(sender, sequenceNumber);
+        if (lastSequenceNumber == null || sequenceNumber == lastSequenceNumber + 1) {
+            return true;
+        } else {
+            // This occurs also when the sender was restarted.
+            LOGGER.info("Received cache invalidation batch #{} from {} but the last one was #{}. Some events might have "
+                    + "been lost, so all caches will be cleared.", sequenceNumber, sender, lastSequenceNumber);
+            return false;
+        }
+    }
+
+    /**
+     * Invalidation event to be sent.
+     */
+    private static class Event {
+
+        private static final Event ALL = new Event(null, null);
+
+        private final Class<? extends ObjectType> type;
+        private final String oid;
+
+        private Event(Class<? extends ObjectType> type, String oid) {
+            this.type = type;
+            this.oid = type != null ? oid : null;
+        }
+
+        private CacheInvalidationEventType toEventType() {
+            CacheInvalidationEventType eventType = new CacheInvalidationEventType();
+            eventType.setType(type != null ? ObjectTypes.getRestTypeFromClass(type) : null);
+            eventType.setOid(oid);
+            return eventType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Event)) {
+                return false;
+            } else {
+                Event event = (Event) o;
+                return Objects.equals(type, event.type) && Objects.equals(oid, event.oid);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, oid);
+        }
+
+        @Override
+        public String toString() {
+            return (type != null ? type.getSimpleName() : "all") + ":" + oid;
+        }
+    }
+}
@@ -7,7 +7,6 @@
 package com.evolveum.midpoint.model.impl;
 
 import javax.annotation.PostConstruct;
-import javax.ws.rs.core.Response;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
@@ -18,10 +17,6 @@ import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.model.impl.security.NodeAuthenticationToken;
 import com.evolveum.midpoint.repo.api.CacheDispatcher;
 import com.evolveum.midpoint.repo.api.CacheListener;
-import com.evolveum.midpoint.schema.constants.ObjectTypes;
-import com.evolveum.midpoint.schema.result.OperationResult;
-import com.evolveum.midpoint.task.api.ClusterExecutionHelper;
-import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.task.api.TaskManager;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
@@ -34,7 +29,7 @@ public class ClusterCacheListener implements CacheListener {
 
     @Autowired private TaskManager taskManager;
     @Autowired private CacheDispatcher cacheDispatcher;
-    @Autowired private ClusterExecutionHelper clusterExecutionHelper;
+    @Autowired private ClusterCacheInvalidationBroadcaster broadcaster;
 
     @PostConstruct
     public void addListener() {
@@ -49,27 +44,10 @@ public class ClusterCacheListener implements CacheListener {
             return;
         }
 
-        Task task = taskManager.createTaskInstance("invalidate");
-        OperationResult result = task.getResult();
-
         LOGGER.trace("Cache invalidation context {}", context);
 
-        // Regular cache invalidation can be skipped for nodes not checking in. Cache entries will expire on such nodes
-        // eventually. (We can revisit this design decision if needed.)
-        clusterExecutionHelper.execute((client, node, result1) -> {
-            client.path(ClusterServiceConsts.EVENT_INVALIDATION +
-                    ObjectTypes.getRestTypeFromClass(type) + (oid != null ? "/" + oid : ""));
-            Response response = client.post(null);
-            Response.StatusType statusInfo = response.getStatusInfo();
-            if (statusInfo.getFamily() != Response.Status.Family.SUCCESSFUL) {
-                LOGGER.warn("Cluster-wide cache clearance finished on {} with status {}, {}", node.getNodeIdentifier(),
-                        statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
-            } else {
-                LOGGER.debug("Cluster-wide cache clearance finished on {} with status {}, {}", node.getNodeIdentifier(),
-                        statusInfo.getStatusCode(), statusInfo.getReasonPhrase());
-            }
-            response.close();
-        }, null, "cache invalidation", result);
+        // The events are sent in batches from a background thread; see ClusterCacheInvalidationBroadcaster.
+        broadcaster.broadcast(type, oid);
     }
 
     private <O extends ObjectType> boolean canExecute(Class<O> type, String oid, boolean clusterwide, CacheInvalidationContext context) {
@@ -6,6 +6,7 @@ package com.evolveum.midpoint.model.impl;
 public class ClusterServiceConsts {
 
     public static final String EVENT_INVALIDATION = "/event/invalidation/";
+    public static final String EVENT_INVALIDATION_BATCH = "/event/invalidationBatch";
     public static final String EVENT_TERMINATE_SESSION = "/event/terminateSession/";
     public static final String EVENT_LIST_USER_SESSION = "/event/listUserSession";
 }
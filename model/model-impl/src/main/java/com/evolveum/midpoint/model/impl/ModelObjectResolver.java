@@ -239,7 +239,8 @@ public class ModelObjectResolver implements ObjectResolver {
             if (orgRefValue != null) {
 
                 try {
-                    PrismObject<OrgType> org = resolve(orgRefValue, "resolving parent org ref", null, null, result);
+                    // orgs are only traversed, not modified
+                    PrismObject<OrgType> org = resolve(orgRefValue, "resolving parent org ref", GetOperationOptions.createReadOnly(), null, result);
                     orgs.add(org);
                     ObjectReferenceType ref = function.apply(org);
 
@@ -300,7 +301,8 @@ public class ModelObjectResolver implements ObjectResolver {
             if (orgRefValue != null) {
 
                 try {
-                    PrismObject<OrgType> org = resolve(orgRefValue, "resolving parent org ref", null, null, result);
+                    // orgs are only traversed, not modified
+                    PrismObject<OrgType> org = resolve(orgRefValue, "resolving parent org ref", GetOperationOptions.createReadOnly(), null, result);
                     orgs.add(org);
                     R val = function.apply(org);
 
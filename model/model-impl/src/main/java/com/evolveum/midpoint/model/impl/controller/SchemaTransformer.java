@@ -642,7 +642,8 @@ public class SchemaTransformer {
         if (objectTemplateRef == null || StringUtils.isEmpty(objectTemplateRef.getOid())) {
             return null;
         }
-        PrismObject<ObjectTemplateType> template = cacheRepositoryService.getObject(ObjectTemplateType.class, objectTemplateRef.getOid(), null, result);
+        PrismObject<ObjectTemplateType> template = cacheRepositoryService.getObject(ObjectTemplateType.class, objectTemplateRef.getOid(),
+                GetOperationOptions.createReadOnlyCollection(), result);
         return template.asObjectable();
     }
 
@@ -659,7 +660,8 @@ public class SchemaTransformer {
         if (objectTemplateRef == null) {
             return null;
         }
-        PrismObject<ObjectTemplateType> template = cacheRepositoryService.getObject(ObjectTemplateType.class, objectTemplateRef.getOid(), null, result);
+        PrismObject<ObjectTemplateType> template = cacheRepositoryService.getObject(ObjectTemplateType.class, objectTemplateRef.getOid(),
+                GetOperationOptions.createReadOnlyCollection(), result);
         return template.asObjectable();
     }
 
@@ -668,7 +670,8 @@ public class SchemaTransformer {
             return;
         }
         for (ObjectReferenceType includeRef: objectTemplateType.getIncludeRef()) {
-            PrismObject<ObjectTemplateType> subTemplate = cacheRepositoryService.getObject(ObjectTemplateType.class, includeRef.getOid(), null, result);
+            PrismObject<ObjectTemplateType> subTemplate = cacheRepositoryService.getObject(ObjectTemplateType.class, includeRef.getOid(),
+                    GetOperationOptions.createReadOnlyCollection(), result);
             applyObjectTemplateToDefinition(objectDefinition, subTemplate.asObjectable(), result);
         }
         for (ObjectTemplateItemDefinitionType templateItemDefType: objectTemplateType.getItem()) {
@@ -693,7 +696,8 @@ public class SchemaTransformer {
             return;
         }
         for (ObjectReferenceType includeRef: objectTemplateType.getIncludeRef()) {
-            PrismObject<ObjectTemplateType> subTemplate = cacheRepositoryService.getObject(ObjectTemplateType.class, includeRef.getOid(), null, result);
+            PrismObject<ObjectTemplateType> subTemplate = cacheRepositoryService.getObject(ObjectTemplateType.class, includeRef.getOid(),
+                    GetOperationOptions.createReadOnlyCollection(), result);
             applyObjectTemplateToObject(object, subTemplate.asObjectable(), result);
         }
         for (ObjectTemplateItemDefinitionType templateItemDefType: objectTemplateType.getItem()) {
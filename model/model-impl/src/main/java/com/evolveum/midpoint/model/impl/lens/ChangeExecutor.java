@@ -13,10 +13,7 @@ import static com.evolveum.midpoint.model.api.ProgressInformation.StateType.ENTE
 import static com.evolveum.midpoint.prism.PrismContainerValue.asContainerables;
 import static com.evolveum.midpoint.schema.internals.InternalsConfig.consistencyChecks;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import javax.annotation.PostConstruct;
 import javax.xml.bind.JAXBElement;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -50,6 +47,8 @@ import com.evolveum.midpoint.prism.equivalence.EquivalenceStrategy;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.xnode.PrimitiveXNode;
 import com.evolveum.midpoint.prism.xnode.XNodeFactory;
+import com.evolveum.midpoint.provisioning.api.ChangeNotificationDispatcher;
+import com.evolveum.midpoint.provisioning.api.DeferredOperationNotifications;
 import com.evolveum.midpoint.provisioning.api.ProvisioningOperationOptions;
 import com.evolveum.midpoint.provisioning.api.ProvisioningService;
 import com.evolveum.midpoint.repo.api.*;
@@ -102,6 +101,8 @@ public class ChangeExecutor {
     private static final String OPERATION_UNLINK_ACCOUNT = ChangeExecutor.class.getName() + ".unlinkShadow";
     private static final String OPERATION_UPDATE_SITUATION_IN_SHADOW = ChangeExecutor.class.getName() + ".updateSituationInShadow";
 
+    private static final String PROJECTION_EXECUTION_POOL = "projection-execution";
+
     @Autowired private TaskManager taskManager;
     @Autowired(required = false) private WorkflowManager workflowManager; // not available e.g. during tests
     @Autowired @Qualifier("cacheRepositoryService") private transient RepositoryService cacheRepositoryService;
@@ -115,6 +116,8 @@ public class ChangeExecutor {
     @Autowired private OperationalDataManager metadataManager;
     @Autowired private CredentialsProcessor credentialsProcessor;
     @Autowired private ClockworkConflictResolver clockworkConflictResolver;
+    @Autowired private ParallelProjectionExecutor parallelProjectionExecutor;
+    @Autowired private ChangeNotificationDispatcher changeNotificationDispatcher;
 
     private PrismObjectDefinition<UserType> userDefinition = null;
     private PrismObjectDefinition<ShadowType> shadowDefinition = null;
@@ -222,177 +225,506 @@ public class ChangeExecutor {
 
             boolean restartRequested = false;
 
+            List<LensProjectionContext> projectionsToExecute = new ArrayList<>();
             for (LensProjectionContext projCtx : context.getProjectionContexts()) {
-                if (projCtx.getWave() != context.getExecutionWave()) {
-                    LOGGER.trace("Skipping projection context {} because its wave ({}) is different from execution wave ({})",
-                            projCtx.toHumanReadableString(), projCtx.getWave(), context.getExecutionWave());
-                    continue;
+                if (shouldExecuteProjection(context, projCtx)) {
+                    projectionsToExecute.add(projCtx);
                 }
+            }
 
-                if (!projCtx.isCanProject()) {
-                    LOGGER.trace("Skipping projection context {} because canProject is false", projCtx.toHumanReadableString());
-                    continue;
-                }
+            List<LensProjectionContext> parallelProjections = selectProjectionsForParallelExecution(context, projectionsToExecute);
+            if (!parallelProjections.isEmpty()) {
+                restartRequested = executeProjectionsInParallel(context, parallelProjections, task, result);
+                projectionsToExecute.removeAll(parallelProjections);
+            }
 
-                // we should not get here, but just to be sure
-                if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.IGNORE) {
-                    LOGGER.trace("Skipping ignored projection context {}", projCtx.toHumanReadableString());
-                    continue;
+            if (!restartRequested) {
+                for (LensProjectionContext projCtx : projectionsToExecute) {
+                    if (executeProjection(context, projCtx, task, result)) {
+                        restartRequested = true;
+                        // we will process remaining projections when retrying the wave
+                        break;
+                    }
                 }
+            }
 
-                OperationResult subResult = result.subresult(OPERATION_EXECUTE_PROJECTION + "." + projCtx.getObjectTypeClass().getSimpleName())
-                        .addParam("resource", projCtx.getResource())
-                        .addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator())
-                        .build();
+            // Result computation here needs to be slightly different
+            result.computeStatusComposite();
+            return restartRequested;
 
-                PrismObject<ShadowType> shadowAfterModification = null;
-                try {
-                    LOGGER.trace("Executing projection context {}", projCtx.toHumanReadableString());
+        } catch (Throwable t) {
+            result.recordThrowableIfNeeded(t);      // last resort: to avoid UNKNOWN subresults
+            throw t;
+        }
+    }
+
+    private <O extends ObjectType> boolean shouldExecuteProjection(LensContext<O> context, LensProjectionContext projCtx) {
+        if (projCtx.getWave() != context.getExecutionWave()) {
+            LOGGER.trace("Skipping projection context {} because its wave ({}) is different from execution wave ({})",
+                    projCtx.toHumanReadableString(), projCtx.getWave(), context.getExecutionWave());
+            return false;
+        }
 
-                    context.checkAbortRequested();
+        if (!projCtx.isCanProject()) {
+            LOGGER.trace("Skipping projection context {} because canProject is false", projCtx.toHumanReadableString());
+            return false;
+        }
 
-                    context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
-                            projCtx.getResourceShadowDiscriminator(), ENTERING));
+        // we should not get here, but just to be sure
+        if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.IGNORE) {
+            LOGGER.trace("Skipping ignored projection context {}", projCtx.toHumanReadableString());
+            return false;
+        }
 
-                    executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, subResult);
+        return true;
+    }
 
-                    ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
+    /**
+     * Executes changes of a single projection.
+     *
+     * @return true if the operation has to be restarted (see ObjectAlreadyExistsException handling)
+     */
+    private <O extends ObjectType> boolean executeProjection(LensContext<O> context, LensProjectionContext projCtx,
+            Task task, OperationResult result) throws ObjectAlreadyExistsException, ObjectNotFoundException,
+            SchemaException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException, PreconditionViolationException, PolicyViolationException {
 
-                    if (shouldBeDeleted(projDelta, projCtx)) {
-                        projDelta = prismContext.deltaFactory().object()
-                                .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
-                    }
+        LensFocusContext<O> focusContext = context.getFocusContext();
 
-                    if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
-                        if (context.getFocusContext() != null
-                                && context.getFocusContext().getDelta() != null
-                                && context.getFocusContext().getDelta().isDelete()
-                                && context.getOptions() != null
-                                && ModelExecuteOptions.isForce(context.getOptions())) {
-                            if (projDelta == null) {
-                                projDelta = prismContext.deltaFactory().object()
-                                        .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
-                            }
-                        }
-                        if (projDelta != null && projDelta.isDelete()) {
+        OperationResult subResult = result.subresult(OPERATION_EXECUTE_PROJECTION + "." + projCtx.getObjectTypeClass().getSimpleName())
+                .addParam("resource", projCtx.getResource())
+                .addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator())
+                .build();
 
-                            shadowAfterModification = executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task,
-                                    subResult);
+        PrismObject<ShadowType> shadowAfterModification = null;
+        try {
+            LOGGER.trace("Executing projection context {}", projCtx.toHumanReadableString());
 
-                        }
-                    } else {
+            context.checkAbortRequested();
 
-                        if (projDelta == null || projDelta.isEmpty()) {
-                            LOGGER.trace("No change for {}", projCtx.getResourceShadowDiscriminator());
-                            shadowAfterModification = projCtx.getObjectCurrent();
-                            if (focusContext != null) {
-                                updateLinks(context, focusContext, projCtx, shadowAfterModification, task, subResult);
-                            }
+            context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                    projCtx.getResourceShadowDiscriminator(), ENTERING));
 
-                            // Make sure post-reconcile delta is always executed,
-                            // even if there is no change
-                            executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task,
-                                    subResult);
-
-                            subResult.computeStatus();
-                            subResult.recordNotApplicableIfUnknown();
-                            continue;
-
-                        } else if (projDelta.isDelete() && projCtx.getResourceShadowDiscriminator() != null
-                                && projCtx.getResourceShadowDiscriminator().getOrder() > 0) {
-                            // HACK ... for higher-order context check if this was
-                            // already deleted
-                            LensProjectionContext lowerOrderContext = LensUtil.findLowerOrderContext(context,
-                                    projCtx);
-                            if (lowerOrderContext != null && lowerOrderContext.isDelete()) {
-                                // We assume that this was already executed
-                                subResult.setStatus(OperationResultStatus.NOT_APPLICABLE);
-                                continue;
-                            }
-                        }
+            executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, subResult);
 
-                        shadowAfterModification = executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, subResult);
+            ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
 
-                        if (projCtx.isAdd() && shadowAfterModification != null) {
-                            projCtx.setExists(true);
-                        }
+            if (shouldBeDeleted(projDelta, projCtx)) {
+                projDelta = prismContext.deltaFactory().object()
+                        .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
+            }
 
+            if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+                if (context.getFocusContext() != null
+                        && context.getFocusContext().getDelta() != null
+                        && context.getFocusContext().getDelta().isDelete()
+                        && context.getOptions() != null
+                        && ModelExecuteOptions.isForce(context.getOptions())) {
+                    if (projDelta == null) {
+                        projDelta = prismContext.deltaFactory().object()
+                                .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
                     }
+                }
+                if (projDelta != null && projDelta.isDelete()) {
 
-                    subResult.computeStatus();
+                    shadowAfterModification = executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task,
+                            subResult);
+
+                }
+            } else {
+
+                if (projDelta == null || projDelta.isEmpty()) {
+                    LOGGER.trace("No change for {}", projCtx.getResourceShadowDiscriminator());
+                    shadowAfterModification = projCtx.getObjectCurrent();
                     if (focusContext != null) {
                         updateLinks(context, focusContext, projCtx, shadowAfterModification, task, subResult);
                     }
 
-                    executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task, subResult);
+                    // Make sure post-reconcile delta is always executed,
+                    // even if there is no change
+                    executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task,
+                            subResult);
 
                     subResult.computeStatus();
                     subResult.recordNotApplicableIfUnknown();
+                    return false;
+
+                } else if (projDelta.isDelete() && projCtx.getResourceShadowDiscriminator() != null
+                        && projCtx.getResourceShadowDiscriminator().getOrder() > 0) {
+                    // HACK ... for higher-order context check if this was
+                    // already deleted
+                    LensProjectionContext lowerOrderContext = LensUtil.findLowerOrderContext(context,
+                            projCtx);
+                    if (lowerOrderContext != null && lowerOrderContext.isDelete()) {
+                        // We assume that this was already executed
+                        subResult.setStatus(OperationResultStatus.NOT_APPLICABLE);
+                        return false;
+                    }
+                }
 
-                } catch (SchemaException | ObjectNotFoundException | PreconditionViolationException | CommunicationException |
-                        ConfigurationException | SecurityViolationException | PolicyViolationException | ExpressionEvaluationException | RuntimeException | Error e) {
-                    recordProjectionExecutionException(e, projCtx, subResult, SynchronizationPolicyDecision.BROKEN);
+                shadowAfterModification = executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, subResult);
 
-                    // We still want to update the links here. E.g. this may be live sync case where we discovered new account
-                    // try to reconcile, but the reconciliation fails. We still want this shadow linked to user.
-                    if (focusContext != null) {
-                        updateLinks(context, focusContext, projCtx, shadowAfterModification, task, subResult);
+                if (projCtx.isAdd() && shadowAfterModification != null) {
+                    projCtx.setExists(true);
+                }
+
+            }
+
+            subResult.computeStatus();
+            if (focusContext != null) {
+                updateLinks(context, focusContext, projCtx, shadowAfterModification, task, subResult);
+            }
+
+            executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task, subResult);
+
+            subResult.computeStatus();
+            subResult.recordNotApplicableIfUnknown();
+
+        } catch (SchemaException | ObjectNotFoundException | PreconditionViolationException | CommunicationException |
+                ConfigurationException | SecurityViolationException | PolicyViolationException | ExpressionEvaluationException | RuntimeException | Error e) {
+            recordProjectionExecutionException(e, projCtx, subResult, SynchronizationPolicyDecision.BROKEN);
+
+            // We still want to update the links here. E.g. this may be live sync case where we discovered new account
+            // try to reconcile, but the reconciliation fails. We still want this shadow linked to user.
+            if (focusContext != null) {
+                updateLinks(context, focusContext, projCtx, shadowAfterModification, task, subResult);
+            }
+
+            ModelImplUtils.handleConnectorErrorCriticality(projCtx.getResource(), e, subResult);
+
+        } catch (ObjectAlreadyExistsException e) {
+
+            // This exception is quite special. We have to decide how bad this really is.
+            // This may be rename conflict. Which would be bad.
+            // Or this may be attempt to create account that already exists and just needs
+            // to be linked. Which is no big deal and consistency mechanism (discovery) will
+            // easily handle that. In that case it is done in "another task" which is
+            // quasi-asynchornously executed from provisioning by calling notifyChange.
+            // Once that is done then the account is already linked. And all we need to do
+            // is to restart this whole operation.
+
+            // check if this is a repeated attempt - OAEE was not handled
+            // correctly, e.g. if creating "Users" user in AD, whereas
+            // "Users" is SAM Account Name which is used by a built-in group
+            // - in such case, mark the context as broken
+            if (isRepeatedAlreadyExistsException(projCtx)) {
+                // This is the bad case. Currently we do not do anything more intelligent than to look for
+                // repeated error. If we get OAEE twice then this is bad and we thow up.
+                // TODO: do something smarter here
+                LOGGER.debug("Repeated ObjectAlreadyExistsException detected, marking projection {} as broken", projCtx.toHumanReadableString());
+                recordProjectionExecutionException(e, projCtx, subResult,
+                        SynchronizationPolicyDecision.BROKEN);
+                return false;
+            }
+
+            // in his case we do not need to set account context as
+            // broken, instead we need to restart projector for this
+            // context to recompute new account or find out if the
+            // account was already linked..
+            // and also do not set fatal error to the operation result, this
+            // is a special case
+            // if it is fatal, it will be set later
+            // but we need to set some result
+            subResult.recordSuccess();
+            LOGGER.debug("ObjectAlreadyExistsException for projection {}, requesting projector restart", projCtx.toHumanReadableString());
+            return true;
+
+        } finally {
+            context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                    projCtx.getResourceShadowDiscriminator(), subResult));
+        }
+        return false;
+    }
+
+    /**
+     * Selects projections whose deltas can be executed concurrently (if enabled by internals configuration).
+     * We are conservative here: no higher-order or otherwise equivalent contexts (they share OIDs),
+     * no dependencies in either direction, and no special cases (broken contexts, empty deltas).
+     */
+    private <O extends ObjectType> List<LensProjectionContext> selectProjectionsForParallelExecution(LensContext<O> context,
+            List<LensProjectionContext> projectionsToExecute) throws SchemaException {
+        InternalsConfigurationType internals = context.getInternalsConfiguration();
+        if (internals == null || !ParallelProjectionExecutor.isEnabled(internals.getProjectionExecution())
+                || projectionsToExecute.size() < 2 || parallelProjectionExecutor.isInWorkerThread()) {
+            return Collections.emptyList();
+        }
+        List<LensProjectionContext> selected = new ArrayList<>();
+        for (LensProjectionContext projCtx : projectionsToExecute) {
+            if (isIndependentProjection(context, projCtx, projectionsToExecute)) {
+                selected.add(projCtx);
+            }
+        }
+        LOGGER.trace("Selected {} of {} projection context(s) for parallel execution", selected.size(), projectionsToExecute.size());
+        return selected.size() >= 2 ? selected : Collections.emptyList();
+    }
+
+    private <O extends ObjectType> boolean isIndependentProjection(LensContext<O> context, LensProjectionContext projCtx,
+            List<LensProjectionContext> projectionsToExecute) throws SchemaException {
+        ResourceShadowDiscriminator discriminator = projCtx.getResourceShadowDiscriminator();
+        if (discriminator == null || discriminator.getOrder() != 0 || projCtx.getResource() == null
+                || projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN
+                || !projCtx.getDependencies().isEmpty()) {
+            return false;
+        }
+        ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
+        if ((projDelta == null || projDelta.isEmpty()) && !shouldBeDeleted(projDelta, projCtx)) {
+            return false;
+        }
+        for (LensProjectionContext other : context.getProjectionContexts()) {
+            if (other != projCtx && discriminator.equivalent(other.getResourceShadowDiscriminator())) {
+                return false;
+            }
+        }
+        for (LensProjectionContext other : projectionsToExecute) {
+            if (other != projCtx && dependsOnResource(other, projCtx.getResourceOid())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean dependsOnResource(LensProjectionContext projCtx, String resourceOid) {
+        for (ResourceObjectTypeDependencyType dependency : projCtx.getDependencies()) {
+            String dependencyResourceOid = dependency.getResourceRef() != null ?
+                    dependency.getResourceRef().getOid() : projCtx.getResourceOid();
+            if (Objects.equals(dependencyResourceOid, resourceOid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes deltas of independent projections concurrently. Everything else (reconciliation scripts,
+     * linking, progress reporting, error handling, resource operation notifications) is done in this thread,
+     * in the order of the projection contexts, just like for sequential execution.
+     *
+     * @return true if the operation has to be restarted (see ObjectAlreadyExistsException handling)
+     */
+    private <O extends ObjectType> boolean executeProjectionsInParallel(LensContext<O> context,
+            List<LensProjectionContext> projections, Task task, OperationResult result) throws ObjectAlreadyExistsException,
+            ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException, PreconditionViolationException, PolicyViolationException {
+
+        List<ProjectionExecution> executions = new ArrayList<>(projections.size());
+        for (LensProjectionContext projCtx : projections) {
+            OperationResult subResult = result.subresult(OPERATION_EXECUTE_PROJECTION + "." + projCtx.getObjectTypeClass().getSimpleName())
+                    .addParam("resource", projCtx.getResource())
+                    .addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator())
+                    .build();
+            ProjectionExecution execution = new ProjectionExecution(context, projCtx, task, subResult);
+            executions.add(execution);
+            try {
+                LOGGER.trace("Preparing parallel execution of projection context {}", projCtx.toHumanReadableString());
+
+                context.checkAbortRequested();
+
+                context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                        projCtx.getResourceShadowDiscriminator(), ENTERING));
+
+                executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, subResult);
+
+                ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
+                if (shouldBeDeleted(projDelta, projCtx)) {
+                    projDelta = prismContext.deltaFactory().object()
+                            .createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid());
+                }
+                execution.delta = projDelta;
+            } catch (Throwable t) {
+                execution.exception = t;
+            }
+        }
+
+        // Workers must not clear the requestee while others are still executing (see clearRequesteeIfNotParallel).
+        ModelImplUtils.setRequestee(task, context);
+        try {
+            parallelProjectionExecutor.executeAndWait(PROJECTION_EXECUTION_POOL,
+                    context.getInternalsConfiguration().getProjectionExecution(), executions);
+        } finally {
+            ModelImplUtils.clearRequestee(task);
+        }
+
+        boolean restartRequested = false;
+        Throwable firstException = null;
+        for (ProjectionExecution execution : executions) {
+            try {
+                if (finishProjectionExecution(context, execution, task)) {
+                    restartRequested = true;
+                }
+            } catch (Throwable t) {
+                // We want to finish (link, report) all projections, as their deltas were already executed.
+                if (firstException == null) {
+                    firstException = t;
+                }
+            }
+        }
+        if (firstException != null) {
+            RepoCommonUtils.throwException(firstException, null);
+        }
+        return restartRequested;
+    }
+
+    /**
+     * Does the same as {@link #executeProjection(LensContext, LensProjectionContext, Task, OperationResult)} after
+     * the delta was executed. Deferred notifications are delivered after the projection is linked, with the requestee set.
+     */
+    private <O extends ObjectType> boolean finishProjectionExecution(LensContext<O> context, ProjectionExecution execution,
+            Task task) throws ObjectAlreadyExistsException, ObjectNotFoundException,
+            SchemaException, CommunicationException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException, PreconditionViolationException, PolicyViolationException {
+
+        LensFocusContext<O> focusContext = context.getFocusContext();
+        LensProjectionContext projCtx = execution.projCtx;
+        OperationResult subResult = execution.result;
+
+        try {
+            if (execution.exception instanceof ObjectAlreadyExistsException && execution.delta != null
+                    && isDiscoveryAllowed(context)) {
+                reExecuteWithDiscovery(context, execution, task);
+            }
+
+            if (execution.exception == null) {
+                try {
+                    if (projCtx.isAdd() && execution.shadowAfterModification != null) {
+                        projCtx.setExists(true);
                     }
 
-                    ModelImplUtils.handleConnectorErrorCriticality(projCtx.getResource(), e, subResult);
-
-                } catch (ObjectAlreadyExistsException e) {
-
-                    // This exception is quite special. We have to decide how bad this really is.
-                    // This may be rename conflict. Which would be bad.
-                    // Or this may be attempt to create account that already exists and just needs
-                    // to be linked. Which is no big deal and consistency mechanism (discovery) will
-                    // easily handle that. In that case it is done in "another task" which is
-                    // quasi-asynchornously executed from provisioning by calling notifyChange.
-                    // Once that is done then the account is already linked. And all we need to do
-                    // is to restart this whole operation.
-
-                    // check if this is a repeated attempt - OAEE was not handled
-                    // correctly, e.g. if creating "Users" user in AD, whereas
-                    // "Users" is SAM Account Name which is used by a built-in group
-                    // - in such case, mark the context as broken
-                    if (isRepeatedAlreadyExistsException(projCtx)) {
-                        // This is the bad case. Currently we do not do anything more intelligent than to look for
-                        // repeated error. If we get OAEE twice then this is bad and we thow up.
-                        // TODO: do something smarter here
-                        LOGGER.debug("Repeated ObjectAlreadyExistsException detected, marking projection {} as broken", projCtx.toHumanReadableString());
-                        recordProjectionExecutionException(e, projCtx, subResult,
-                                SynchronizationPolicyDecision.BROKEN);
-                        continue;
+                    subResult.computeStatus();
+                    if (focusContext != null) {
+                        updateLinks(context, focusContext, projCtx, execution.shadowAfterModification, task, subResult);
                     }
+                    deliverDeferredNotifications(context, execution, task);
 
-                    // in his case we do not need to set account context as
-                    // broken, instead we need to restart projector for this
-                    // context to recompute new account or find out if the
-                    // account was already linked..
-                    // and also do not set fatal error to the operation result, this
-                    // is a special case
-                    // if it is fatal, it will be set later
-                    // but we need to set some result
-                    subResult.recordSuccess();
-                    restartRequested = true;
-                    LOGGER.debug("ObjectAlreadyExistsException for projection {}, requesting projector restart", projCtx.toHumanReadableString());
-                    // we will process remaining projections when retrying the wave
-                    break;
+                    executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task, subResult);
 
-                } finally {
-                    context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
-                            projCtx.getResourceShadowDiscriminator(), subResult));
+                    subResult.computeStatus();
+                    subResult.recordNotApplicableIfUnknown();
+                } catch (Throwable t) {
+                    execution.exception = t;
                 }
             }
 
-            // Result computation here needs to be slightly different
-            result.computeStatusComposite();
-            return restartRequested;
+            Throwable e = execution.exception;
+            if (e instanceof ObjectAlreadyExistsException) {
+                // See executeProjection(..) for the explanation. Other projections of this group were executed
+                // anyway; the restarted wave will find no changes for them.
+                deliverDeferredNotifications(context, execution, task);
+                if (isRepeatedAlreadyExistsException(projCtx)) {
+                    LOGGER.debug("Repeated ObjectAlreadyExistsException detected, marking projection {} as broken", projCtx.toHumanReadableString());
+                    recordProjectionExecutionException(e, projCtx, subResult, SynchronizationPolicyDecision.BROKEN);
+                    return false;
+                }
+                subResult.recordSuccess();
+                LOGGER.debug("ObjectAlreadyExistsException for projection {}, requesting projector restart", projCtx.toHumanReadableString());
+                return true;
+            } else if (e != null) {
+                recordProjectionExecutionException(e, projCtx, subResult, SynchronizationPolicyDecision.BROKEN);
+                if (focusContext != null) {
+                    updateLinks(context, focusContext, projCtx, execution.shadowAfterModification, task, subResult);
+                }
+                deliverDeferredNotifications(context, execution, task);
+                ModelImplUtils.handleConnectorErrorCriticality(projCtx.getResource(), e, subResult);
+            }
+            return false;
+        } finally {
+            deliverDeferredNotifications(context, execution, task);
+            context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+                    projCtx.getResourceShadowDiscriminator(), subResult));
+        }
+    }
 
+    /**
+     * Discovery is suppressed in worker threads, because it runs a nested clockwork (for the conflicting object)
+     * while other projections may still be executing. So the delta that failed on an existing object is executed
+     * again here, when all the workers are done; this time with discovery, just like in the sequential case.
+     * Notifications and the executed delta record of the first attempt are dropped, as the second attempt creates
+     * its own. (Otherwise the second attempt would be considered a repeated failure.)
+     */
+    private void reExecuteWithDiscovery(LensContext<?> context, ProjectionExecution execution, Task task) {
+        LensProjectionContext projCtx = execution.projCtx;
+        LOGGER.debug("ObjectAlreadyExistsException for projection {} executed in parallel, executing it again with discovery",
+                projCtx.toHumanReadableString());
+        List<LensObjectDeltaOperation<ShadowType>> executedDeltas = projCtx.getExecutedDeltas();
+        executedDeltas.subList(execution.executedDeltasBefore, executedDeltas.size()).clear();
+        execution.notifications = null;
+        execution.exception = null;
+        try {
+            execution.shadowAfterModification = executeDelta(execution.delta, projCtx, context, null, null,
+                    projCtx.getResource(), task, execution.result);
         } catch (Throwable t) {
-            result.recordThrowableIfNeeded(t);      // last resort: to avoid UNKNOWN subresults
-            throw t;
+            execution.exception = t;
+        }
+    }
+
+    private boolean isDiscoveryAllowed(LensContext<?> context) {
+        return !SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel());
+    }
+
+    private void deliverDeferredNotifications(LensContext<?> context, ProjectionExecution execution, Task task) {
+        DeferredOperationNotifications notifications = execution.notifications;
+        if (notifications != null) {
+            execution.notifications = null;
+            ModelImplUtils.setRequestee(task, context);
+            try {
+                notifications.deliver();
+            } finally {
+                ModelImplUtils.clearRequestee(task);
+            }
+        }
+    }
+
+    /**
+     * Execution of a projection delta in a worker thread. Resource operation notifications are deferred
+     * until the outcome is processed in the main thread.
+     */
+    private class ProjectionExecution implements ParallelProjectionExecutor.Job {
+
+        private final LensContext<?> context;
+        private final LensProjectionContext projCtx;
+        private final Task task;
+        private final OperationResult result;
+
+        private ObjectDelta<ShadowType> delta;
+        private PrismObject<ShadowType> shadowAfterModification;
+        private Throwable exception;
+        private DeferredOperationNotifications notifications;
+
+        /** Number of executed deltas of the projection context before this execution. */
+        private int executedDeltasBefore;
+
+        private ProjectionExecution(LensContext<?> context, LensProjectionContext projCtx, Task task, OperationResult result) {
+            this.context = context;
+            this.projCtx = projCtx;
+            this.task = task;
+            this.result = result;
+        }
+
+        @Override
+        public String getResourceOid() {
+            return projCtx.getResourceOid();
+        }
+
+        @Override
+        public void run() {
+            if (exception != null) {
+                return;
+            }
+            executedDeltasBefore = projCtx.getExecutedDeltas().size();
+            DeferredOperationNotifications deferred = changeNotificationDispatcher.deferOperationNotifications();
+            try {
+                LOGGER.trace("Executing projection context {}", projCtx.toHumanReadableString());
+                shadowAfterModification = executeDelta(delta, projCtx, context, null, null, projCtx.getResource(), task, result);
+            } catch (Throwable t) {
+                exception = t;
+            } finally {
+                deferred.stop();
+                notifications = deferred;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ProjectionExecution(" + projCtx.toHumanReadableString() + ")";
         }
     }
 
@@ -1219,6 +1551,11 @@ public class ChangeExecutor {
             }
         }
 
+        if (parallelProjectionExecutor.isInWorkerThread()) {
+            // Discovery is done in the main thread after all the workers finish, see reExecuteWithDiscovery.
+            provisioningOptions.setDoNotDiscovery(true);
+        }
+
         return provisioningOptions;
     }
 
@@ -1574,7 +1911,7 @@ public class ChangeExecutor {
         }
         ModelImplUtils.setRequestee(task, context);
         String oid = provisioning.addObject(object, scripts, options, task, result);
-        ModelImplUtils.clearRequestee(task);
+        clearRequesteeIfNotParallel(task);
         return oid;
     }
 
@@ -1603,7 +1940,7 @@ public class ChangeExecutor {
         }
         ModelImplUtils.setRequestee(task, context);
         PrismObject<T> objectAfterModification = provisioning.deleteObject(objectTypeClass, oid, options, scripts, task, result);
-        ModelImplUtils.clearRequestee(task);
+        clearRequesteeIfNotParallel(task);
         return objectAfterModification;
     }
 
@@ -1638,10 +1975,19 @@ public class ChangeExecutor {
         ModelImplUtils.setRequestee(task, context);
         String changedOid = provisioning.modifyObject(objectTypeClass, oid, modifications, scripts, options,
                 task, result);
-        ModelImplUtils.clearRequestee(task);
+        clearRequesteeIfNotParallel(task);
         return changedOid;
     }
 
+    /**
+     * When executing projection deltas in parallel, the requestee is set and cleared by the main thread.
+     */
+    private void clearRequesteeIfNotParallel(Task task) {
+        if (!parallelProjectionExecutor.isInWorkerThread()) {
+            ModelImplUtils.clearRequestee(task);
+        }
+    }
+
     private <F extends ObjectType, T extends ObjectType> OperationProvisioningScriptsType prepareScripts(
             PrismObject<T> changedObject, LensContext<F> context, LensElementContext<T> objectContext,
             ProvisioningOperationTypeType operation, ResourceType resource, Task task, OperationResult result)
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ParallelProjectionProcessingType;
+
+/**
+ * Executes jobs related to individual projections (e.g. fetching their shadows from resources) concurrently.
+ *
+ * Each kind of processing has its own thread pool, limiting the number of concurrent jobs on this node.
+ * Jobs for the same resource are divided into at most maxThreadsPerResource lanes; jobs in a lane run
+ * one after another. So a single operation does not overload a (slow) resource.
+ *
+ * The jobs must not touch the lens context nor any operation result other than their own: the caller
+ * waits until all of them are finished, and only then processes their outcomes.
+ */
+@Component
+public class ParallelProjectionExecutor {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ParallelProjectionExecutor.class);
+
+    public static final int DEFAULT_MAX_THREADS = 8;
+    public static final int DEFAULT_MAX_THREADS_PER_RESOURCE = 2;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final Map<String, ThreadPoolExecutor> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Are we in a thread of any of our pools? Jobs started from there (e.g. via discovery) are executed
+     * in the current thread, as waiting for other threads of the same pool could lead to a deadlock.
+     */
+    private final ThreadLocal<Boolean> inWorkerThread = new ThreadLocal<>();
+
+    public static boolean isEnabled(ParallelProjectionProcessingType config) {
+        return config != null && Boolean.TRUE.equals(config.isEnabled());
+    }
+
+    /**
+     * Is the current thread executing a projection job? Such jobs must not change state shared with
+     * other jobs of the same operation (e.g. the requestee of the task).
+     */
+    public boolean isInWorkerThread() {
+        return Boolean.TRUE.equals(inWorkerThread.get());
+    }
+
+    /**
+     * Runs the jobs and waits until all of them are finished.
+     *
+     * @param poolName Name of the pool (kind of processing), e.g. "projection-loading".
+     */
+    public void executeAndWait(@NotNull String poolName, ParallelProjectionProcessingType config,
+            @NotNull List<? extends Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        if (jobs.size() == 1 || isInWorkerThread()) {
+            jobs.forEach(Job::run);
+            return;
+        }
+
+        List<List<Job>> lanes = divideToLanes(jobs, getMaxThreadsPerResource(config));
+        LOGGER.trace("Executing {} job(s) in {} lane(s) using '{}' pool", jobs.size(), lanes.size(), poolName);
+
+        ThreadPoolExecutor pool = getPool(poolName, getMaxThreads(config));
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        List<Future<?>> futures = new ArrayList<>(lanes.size());
+        for (List<Job> lane : lanes) {
+            try {
+                futures.add(pool.submit(() -> runLane(lane, securityContext)));
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Couldn't submit job(s) to '{}' pool, probably because the system is shutting down;"
+                        + " running them in the current thread", poolName);
+                lane.forEach(Job::run);
+            }
+        }
+        waitFor(futures);
+    }
+
+    private void runLane(List<Job> lane, SecurityContext securityContext) {
+        inWorkerThread.set(true);
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            for (Job job : lane) {
+                try {
+                    job.run();
+                } catch (Throwable t) {
+                    // Jobs should take care of their exceptions themselves. This is just to be sure the rest of the lane runs.
+                    LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception in projection job {}", t, job);
+                }
+            }
+        } finally {
+            SecurityContextHolder.clearContext();
+            inWorkerThread.remove();
+        }
+    }
+
+    /**
+     * Waits for all the futures, even if interrupted: the jobs use the data of the caller.
+     */
+    private void waitFor(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception in projection job lane", e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<List<Job>> divideToLanes(List<? extends Job> jobs, int maxLanesPerResource) {
+        Map<String, List<List<Job>>> lanesByResource = new LinkedHashMap<>();
+        Map<String, Integer> jobCounts = new HashMap<>();
+        for (Job job : jobs) {
+            String resourceOid = String.valueOf(job.getResourceOid());
+            List<List<Job>> resourceLanes = lanesByResource.computeIfAbsent(resourceOid, k -> new ArrayList<>());
+            int index = jobCounts.merge(resourceOid, 1, Integer::sum) - 1;
+            if (index < maxLanesPerResource) {
+                resourceLanes.add(new ArrayList<>());
+            }
+            resourceLanes.get(index % maxLanesPerResource).add(job);
+        }
+        List<List<Job>> lanes = new ArrayList<>();
+        lanesByResource.values().forEach(lanes::addAll);
+        return lanes;
+    }
+
+    private ThreadPoolExecutor getPool(String poolName, int maxThreads) {
+        ThreadPoolExecutor pool = pools.computeIfAbsent(poolName, name -> createPool(name, maxThreads));
+        if (pool.getMaximumPoolSize() != maxThreads) {
+            synchronized (pool) {
+                LOGGER.debug("Changing size of '{}' pool from {} to {}", poolName, pool.getMaximumPoolSize(), maxThreads);
+                if (maxThreads > pool.getMaximumPoolSize()) {
+                    pool.setMaximumPoolSize(maxThreads);
+                    pool.setCorePoolSize(maxThreads);
+                } else {
+                    pool.setCorePoolSize(maxThreads);
+                    pool.setMaximumPoolSize(maxThreads);
+                }
+            }
+        }
+        return pool;
+    }
+
+    private ThreadPoolExecutor createPool(String poolName, int maxThreads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, poolName + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private int getMaxThreads(ParallelProjectionProcessingType config) {
+        Integer value = config != null ? config.getMaxThreads() : null;
+        return value != null && value > 0 ? value : DEFAULT_MAX_THREADS;
+    }
+
+    private int getMaxThreadsPerResource(ParallelProjectionProcessingType config) {
+        Integer value = config != null ? config.getMaxThreadsPerResource() : null;
+        return value != null && value > 0 ? value : DEFAULT_MAX_THREADS_PER_RESOURCE;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    /**
+     * A job related to a projection. It must not throw any exception; the outcome should be stored
+     * in the job itself and processed by the caller.
+     */
+    public interface Job extends Runnable {
+
+        /**
+         * OID of the resource the job works with. Null if not known.
+         */
+        String getResourceOid();
+    }
+}
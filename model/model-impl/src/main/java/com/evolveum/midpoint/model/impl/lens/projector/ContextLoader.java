@@ -10,9 +10,7 @@ import static com.evolveum.midpoint.model.impl.lens.LensUtil.getExportType;
 import static com.evolveum.midpoint.schema.internals.InternalsConfig.consistencyChecks;
 import static com.evolveum.midpoint.schema.result.OperationResult.DEFAULT;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 import com.evolveum.midpoint.model.impl.lens.projector.util.ProcessorExecution;
 import com.evolveum.midpoint.model.impl.lens.projector.util.ProcessorMethod;
@@ -46,6 +44,7 @@ import com.evolveum.midpoint.model.impl.lens.LensFocusContext;
 import com.evolveum.midpoint.model.impl.lens.LensObjectDeltaOperation;
 import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
 import com.evolveum.midpoint.model.impl.lens.LensUtil;
+import com.evolveum.midpoint.model.impl.lens.ParallelProjectionExecutor;
 import com.evolveum.midpoint.model.api.context.SynchronizationIntent;
 import com.evolveum.midpoint.model.impl.security.SecurityHelper;
 import com.evolveum.midpoint.provisioning.api.ProvisioningService;
@@ -91,12 +90,16 @@ public class ContextLoader implements ProjectorProcessor {
     @Autowired private PrismContext prismContext;
     @Autowired private SecurityHelper securityHelper;
     @Autowired private ClockworkMedic medic;
+    @Autowired private ParallelProjectionExecutor parallelProjectionExecutor;
 
     private static final Trace LOGGER = TraceManager.getTrace(ContextLoader.class);
 
     public static final String CLASS_DOT = ContextLoader.class.getName() + ".";
     private static final String OPERATION_LOAD = CLASS_DOT + "load";
     private static final String OPERATION_LOAD_PROJECTION = CLASS_DOT + "loadProjection";
+    private static final String OPERATION_FETCH_PROJECTION_SHADOW = CLASS_DOT + "fetchProjectionShadow";
+
+    private static final String PROJECTION_LOADING_POOL = "projection-loading";
 
     @ProcessorMethod
     <F extends ObjectType> void load(LensContext<F> context, String activityDescription,
@@ -169,13 +172,16 @@ public class ContextLoader implements ProjectorProcessor {
 
             context.checkConsistenceIfNeeded();
 
+            Map<LensProjectionContext, ShadowFetch> prefetchedShadows = prefetchProjectionShadows(context, task, result);
+
             for (LensProjectionContext projectionContext: context.getProjectionContexts()) {
                 context.checkAbortRequested();
                 // TODO: not perfect. Practically, we want loadProjection operation to contain all the projection
                 //  results. But for that we would need code restructure.
                 OperationResult projectionResult = result.createMinorSubresult(OPERATION_LOAD_PROJECTION);
                 try {
-                    finishLoadOfProjectionContext(context, projectionContext, task, projectionResult);
+                    finishLoadOfProjectionContext(context, projectionContext, prefetchedShadows.get(projectionContext),
+                            task, projectionResult);
                 } catch (Throwable e) {
                     projectionResult.recordFatalError(e);
                     throw e;
@@ -601,7 +607,9 @@ public class ContextLoader implements ProjectorProcessor {
         if (!java.util.Objects.equals(currentOid, newOid)) {
             ObjectTemplateType template;
             if (newOid != null) {
-                template = cacheRepositoryService.getObject(ObjectTemplateType.class, newOid, null, result).asObjectable();
+                // The template is never modified; included templates are resolved by ObjectTemplateProcessor each time.
+                template = cacheRepositoryService.getObject(ObjectTemplateType.class, newOid,
+                        GetOperationOptions.createReadOnlyCollection(), result).asObjectable();
             } else {
                 template = null;
             }
@@ -1160,18 +1168,55 @@ public class ContextLoader implements ProjectorProcessor {
     }
 
     /**
-     * Check reconcile flag in account sync context and set accountOld
-     * variable if it's not set (from provisioning), load resource (if not set already), etc.
+     * Fetches shadows of projections that are to be loaded from their resources in parallel, if configured so.
+     * Only fetches that really go to the resources (i.e. for reconciliation) are done here; repository reads are cheap.
+     *
+     * The fetched shadows (or exceptions) are then processed in {@link #finishLoadOfProjectionContext(LensContext,
+     * LensProjectionContext, ShadowFetch, Task, OperationResult)}, one projection after another.
      */
-    private <F extends ObjectType> void finishLoadOfProjectionContext(LensContext<F> context,
-            LensProjectionContext projContext, Task task, OperationResult result)
-            throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException,
-            SecurityViolationException, ExpressionEvaluationException {
+    private <F extends ObjectType> Map<LensProjectionContext, ShadowFetch> prefetchProjectionShadows(LensContext<F> context,
+            Task task, OperationResult result) {
+        InternalsConfigurationType internals = context.getInternalsConfiguration();
+        ParallelProjectionProcessingType config = internals != null ? internals.getProjectionLoading() : null;
+        if (!ParallelProjectionExecutor.isEnabled(config)) {
+            return Collections.emptyMap();
+        }
+        List<ShadowFetch> fetches = new ArrayList<>();
+        for (LensProjectionContext projContext : context.getProjectionContexts()) {
+            if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+                continue;
+            }
+            String projectionObjectOid = projContext.getOid();
+            prepareProjectionContextForLoad(projContext);
+            if ((projContext.getObjectCurrent() == null || needToReload(context, projContext)) && !projContext.isAdd()
+                    && projectionObjectOid != null && projContext.isDoReconciliation()) {
+                fetches.add(new ShadowFetch(projContext, projectionObjectOid, createLoadOptions(context, projContext), task));
+            }
+        }
+        if (fetches.size() < 2) {
+            // Nothing to be done in parallel. The shadow (if any) will be fetched in the usual way.
+            return Collections.emptyMap();
+        }
 
-        if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
-            return;
+        LOGGER.trace("Fetching {} projection shadows in parallel", fetches.size());
+        Map<LensProjectionContext, ShadowFetch> fetchesByContext = new IdentityHashMap<>();
+        for (ShadowFetch fetch : fetches) {
+            fetch.result = result.subresult(OPERATION_FETCH_PROJECTION_SHADOW)
+                    .setMinor()
+                    .addParam("oid", fetch.oid)
+                    .addParam("resourceOid", fetch.resourceOid)
+                    .build();
+            fetchesByContext.put(fetch.projectionContext, fetch);
         }
+        parallelProjectionExecutor.executeAndWait(PROJECTION_LOADING_POOL, config, fetches);
+        return fetchesByContext;
+    }
 
+    /**
+     * Sets the reconciliation flag for volatile objects and wipes the current object if it is useless.
+     * Can be called repeatedly.
+     */
+    private void prepareProjectionContextForLoad(LensProjectionContext projContext) {
         // MID-2436 (volatile objects) - as a quick but effective hack, we set reconciliation:=TRUE for volatile accounts
         ResourceObjectTypeDefinitionType objectDefinition = projContext.getResourceObjectTypeDefinitionType();
         if (objectDefinition != null && objectDefinition.getVolatility() == ResourceObjectVolatilityType.UNPREDICTABLE && !projContext.isDoReconciliation()) {
@@ -1179,12 +1224,46 @@ public class ContextLoader implements ProjectorProcessor {
             projContext.setDoReconciliation(true);
         }
 
-        // Remember OID before the object could be wiped
-        String projectionObjectOid = projContext.getOid();
         if (projContext.isDoReconciliation() && !projContext.isFullShadow()) {
             // The current object is useless here. So lets just wipe it so it will get loaded
             projContext.setObjectCurrent(null);
         }
+    }
+
+    private <F extends ObjectType> Collection<SelectorOptions<GetOperationOptions>> createLoadOptions(LensContext<F> context,
+            LensProjectionContext projContext) {
+        GetOperationOptions rootOptions = GetOperationOptions.createPointInTimeType(PointInTimeType.FUTURE);
+        if (projContext.isDoReconciliation()) {
+            rootOptions.setForceRefresh(true);
+            if (SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
+                // Avoid discovery loops
+                rootOptions.setDoNotDiscovery(true);
+            }
+        } else {
+            rootOptions.setNoFetch(true);
+        }
+        rootOptions.setAllowNotFound(true);
+        return SelectorOptions.createCollection(rootOptions);
+    }
+
+    /**
+     * Check reconcile flag in account sync context and set accountOld
+     * variable if it's not set (from provisioning), load resource (if not set already), etc.
+     *
+     * @param prefetched Shadow fetched in advance (in parallel with other ones), if any.
+     */
+    private <F extends ObjectType> void finishLoadOfProjectionContext(LensContext<F> context,
+            LensProjectionContext projContext, ShadowFetch prefetched, Task task, OperationResult result)
+            throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException,
+            SecurityViolationException, ExpressionEvaluationException {
+
+        if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+            return;
+        }
+
+        // Remember OID before the object could be wiped
+        String projectionObjectOid = projContext.getOid();
+        prepareProjectionContextForLoad(projContext);
 
         // Load current object
         boolean tombstone = false;
@@ -1203,25 +1282,22 @@ public class ContextLoader implements ProjectorProcessor {
                                 "Projection "+projContext.getHumanReadableName()+" with null OID, no representation and no resource OID in account sync context "+projContext);
                     }
                 } else {
-                    GetOperationOptions rootOptions = GetOperationOptions.createPointInTimeType(PointInTimeType.FUTURE);
-                    if (projContext.isDoReconciliation()) {
-                        rootOptions.setForceRefresh(true);
-                        if (SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
-                            // Avoid discovery loops
-                            rootOptions.setDoNotDiscovery(true);
-                        }
-                    } else {
-                        rootOptions.setNoFetch(true);
-                    }
-                    rootOptions.setAllowNotFound(true);
-                    Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(rootOptions);
+                    Collection<SelectorOptions<GetOperationOptions>> options = prefetched != null ?
+                            prefetched.options : createLoadOptions(context, projContext);
+                    GetOperationOptions rootOptions = SelectorOptions.findRootOptions(options);
                     if (LOGGER.isTraceEnabled()) {
-                        LOGGER.trace("Loading shadow {} for projection {}, options={}", projectionObjectOid, projContext.getHumanReadableName(), options);
+                        LOGGER.trace("Loading shadow {} for projection {}, options={}, prefetched={}", projectionObjectOid,
+                                projContext.getHumanReadableName(), options, prefetched != null);
                     }
 
                     try {
-                        PrismObject<ShadowType> objectOld = provisioningService.getObject(
-                                projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+                        PrismObject<ShadowType> objectOld;
+                        if (prefetched != null) {
+                            objectOld = prefetched.getObject();
+                        } else {
+                            objectOld = provisioningService.getObject(
+                                    projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+                        }
                         if (LOGGER.isTraceEnabled()) {
                             if (!GetOperationOptions.isNoFetch(rootOptions) && !GetOperationOptions.isRaw(rootOptions)) {
                                 LOGGER.trace("Full shadow loaded for {}:\n{}", projContext.getHumanReadableName(), objectOld.debugDump(1));
@@ -1259,7 +1335,9 @@ public class ContextLoader implements ProjectorProcessor {
                         // This does not mean BROKEN. The projection was there, but it gone now.
                         // Consistency mechanism might have kicked in and fixed the shadow.
                         // What we really want here is a thombstone projection or a refreshed projection.
-                        result.muteLastSubresultError();
+                        if (prefetched == null) {
+                            result.muteLastSubresultError();
+                        }
                         projContext.setShadowExistsInRepo(false);
                         refreshContextAfterShadowNotFound(context, projContext, options, task, result);
 
@@ -1530,7 +1608,9 @@ public class ContextLoader implements ProjectorProcessor {
                     LOGGER.trace("Reloading focus to check for new links");
                     PrismObject<F> focusCurrent;
                     try {
-                        focusCurrent = cacheRepositoryService.getObject(focusContext.getObjectTypeClass(), focusContext.getOid(), null, result);
+                        // we only look at the links here
+                        focusCurrent = cacheRepositoryService.getObject(focusContext.getObjectTypeClass(), focusContext.getOid(),
+                                GetOperationOptions.createReadOnlyCollection(), result);
                     } catch (ObjectNotFoundException e) {
                         if (focusContext.isDelete()) {
                             // This may be OK. This may be later wave and the focus may be already deleted.
@@ -1679,4 +1759,88 @@ public class ContextLoader implements ProjectorProcessor {
             return resultingPolicy;
         }
     }
+    /**
+     * Fetching of a projection shadow from its resource, executed in parallel with other ones.
+     * Touches only its own operation result; the outcome is processed by the loader thread afterwards.
+     */
+    private class ShadowFetch implements ParallelProjectionExecutor.Job {
+
+        @NotNull private final LensProjectionContext projectionContext;
+        @NotNull private final String oid;
+        private final String resourceOid;
+        @NotNull private final Collection<SelectorOptions<GetOperationOptions>> options;
+        @NotNull private final Task task;
+        private OperationResult result;
+
+        private PrismObject<ShadowType> object;
+        private Throwable exception;
+
+        private ShadowFetch(@NotNull LensProjectionContext projectionContext, @NotNull String oid,
+                @NotNull Collection<SelectorOptions<GetOperationOptions>> options, @NotNull Task task) {
+            this.projectionContext = projectionContext;
+            this.oid = oid;
+            this.resourceOid = projectionContext.getResourceOid();
+            this.options = options;
+            this.task = task;
+        }
+
+        @Override
+        public String getResourceOid() {
+            return resourceOid;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                object = provisioningService.getObject(ShadowType.class, oid, options, task, result);
+            } catch (ObjectNotFoundException e) {
+                // This is processed by the loader (see finishLoadOfProjectionContext).
+                result.muteLastSubresultError();
+                exception = e;
+            } catch (Throwable t) {
+                exception = t;
+            } finally {
+                long duration = System.currentTimeMillis() - start;
+                LOGGER.trace("Fetched shadow {} from resource {} in {} ms (exception: {})", oid, resourceOid, duration, exception);
+                result.addReturn("duration", duration);
+                result.addReturn("thread", Thread.currentThread().getName());
+                result.computeStatusIfUnknown();
+            }
+        }
+
+        /**
+         * Returns the fetched object or throws the exception that occurred during fetching.
+         */
+        private PrismObject<ShadowType> getObject() throws ObjectNotFoundException, CommunicationException, SchemaException,
+                ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+            if (exception == null) {
+                return object;
+            } else if (exception instanceof ObjectNotFoundException) {
+                throw (ObjectNotFoundException) exception;
+            } else if (exception instanceof CommunicationException) {
+                throw (CommunicationException) exception;
+            } else if (exception instanceof SchemaException) {
+                throw (SchemaException) exception;
+            } else if (exception instanceof ConfigurationException) {
+                throw (ConfigurationException) exception;
+            } else if (exception instanceof SecurityViolationException) {
+                throw (SecurityViolationException) exception;
+            } else if (exception instanceof ExpressionEvaluationException) {
+                throw (ExpressionEvaluationException) exception;
+            } else if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            } else if (exception instanceof Error) {
+                throw (Error) exception;
+            } else {
+                throw new SystemException("Unexpected exception while fetching shadow " + oid + ": " + exception.getMessage(),
+                        exception);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ShadowFetch(" + oid + " on " + resourceOid + ")";
+        }
+    }
 }
@@ -55,6 +55,9 @@ import com.evolveum.midpoint.model.impl.lens.LensUtil;
 import com.evolveum.midpoint.prism.path.UniformItemPath;
 import com.evolveum.midpoint.prism.util.ObjectDeltaObject;
 import com.evolveum.midpoint.provisioning.api.ProvisioningService;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.ResourceShadowDiscriminator;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -113,6 +116,10 @@ public class AssignmentProcessor implements ProjectorProcessor {
     @Autowired private PolicyRuleProcessor policyRuleProcessor;
     @Autowired private ContextLoader contextLoader;
 
+    @Autowired
+    @Qualifier("cacheRepositoryService")
+    private RepositoryService cacheRepositoryService;
+
     private static final Trace LOGGER = TraceManager.getTrace(AssignmentProcessor.class);
 
     private static final String OP_EVALUATE_FOCUS_MAPPINGS = AssignmentProcessor.class.getName() + ".evaluateFocusMappings";
@@ -188,6 +195,8 @@ public class AssignmentProcessor implements ProjectorProcessor {
         AssignmentEvaluator<AH> assignmentEvaluator = createAssignmentEvaluator(context, now);
         AssignmentHolderType source = determineSource(focusContext);
 
+        prefetchAssignmentTargets(focusContext, result);
+
         AssignmentTripleEvaluator<AH> assignmentTripleEvaluator = new AssignmentTripleEvaluator<>();
         assignmentTripleEvaluator.setActivationComputer(activationComputer);
         assignmentTripleEvaluator.setAssignmentEvaluator(assignmentEvaluator);
@@ -1120,6 +1129,46 @@ public class AssignmentProcessor implements ProjectorProcessor {
         }
     }
 
+    /**
+     * Loads direct assignment targets (roles, orgs, services, ...) using one repository call per target type.
+     * The objects end up in the repository cache, so the subsequent per-assignment resolution is served from it
+     * instead of hitting the database once per assignment. Failures are ignored here; they are reported
+     * when the individual targets are resolved.
+     */
+    private <AH extends AssignmentHolderType> void prefetchAssignmentTargets(LensFocusContext<AH> focusContext,
+            OperationResult result) {
+        Map<QName, Set<String>> oidsByType = new HashMap<>();
+        collectAssignmentTargetOids(focusContext.getObjectCurrent(), oidsByType);
+        collectAssignmentTargetOids(focusContext.getObjectNew(), oidsByType);
+        Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(GetOperationOptions.createReadOnly());
+        for (Entry<QName, Set<String>> entry : oidsByType.entrySet()) {
+            if (entry.getValue().size() < 2) {
+                continue;       // nothing to gain
+            }
+            try {
+                Class<? extends ObjectType> targetClass =
+                        prismContext.getSchemaRegistry().determineClassForTypeRequired(entry.getKey(), ObjectType.class);
+                cacheRepositoryService.getObjects(targetClass, entry.getValue(), options, result);
+            } catch (SchemaException | RuntimeException e) {
+                LOGGER.debug("Couldn't prefetch assignment targets of type {}, they will be resolved one by one: {}",
+                        entry.getKey(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private <AH extends AssignmentHolderType> void collectAssignmentTargetOids(PrismObject<AH> object,
+            Map<QName, Set<String>> oidsByType) {
+        if (object == null) {
+            return;
+        }
+        for (AssignmentType assignment : object.asObjectable().getAssignment()) {
+            ObjectReferenceType targetRef = assignment.getTargetRef();
+            if (targetRef != null && targetRef.getOid() != null && targetRef.getType() != null) {
+                oidsByType.computeIfAbsent(targetRef.getType(), k -> new LinkedHashSet<>()).add(targetRef.getOid());
+            }
+        }
+    }
+
     private <F extends AssignmentHolderType> AssignmentEvaluator<F> createAssignmentEvaluator(LensContext<F> context,
             XMLGregorianCalendar now) throws SchemaException {
         return new AssignmentEvaluator.Builder<F>()
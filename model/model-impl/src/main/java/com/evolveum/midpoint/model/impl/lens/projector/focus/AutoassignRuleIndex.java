@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.BooleanUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.AutoassignRoleMappingEvaluationRequest;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.Cacheable;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.cache.registry.CacheRegistry;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+
+/**
+ * Node-wide index of autoassign rules, i.e. focus mappings of abstract roles with autoassign enabled.
+ *
+ * The rules are compiled once (instead of searching for the roles during each focus projection) and dropped
+ * whenever any abstract role changes. Rules are keyed by focus items their mappings read (declared sources),
+ * so only rules whose inputs changed in the current focus delta need to be evaluated. Rules whose inputs cannot be
+ * determined from the declaration (e.g. conditions reading the whole focus) are not indexed and are always evaluated.
+ */
+@Component
+public class AutoassignRuleIndex implements Cacheable {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AutoassignRuleIndex.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(AutoassignRuleIndex.class.getName() + ".content");
+
+    @Autowired
+    @Qualifier("cacheRepositoryService")
+    private transient RepositoryService cacheRepositoryService;
+
+    @Autowired private CacheRegistry cacheRegistry;
+    @Autowired private PrismContext prismContext;
+
+    private volatile CompiledRules compiledRules;
+
+    /** Incremented on each invalidation, so rules compiled concurrently with a role change are not kept. */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    @PostConstruct
+    public void register() {
+        cacheRegistry.registerCacheableService(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        cacheRegistry.unregisterCacheableService(this);
+    }
+
+    /**
+     * Returns all autoassign rules, in the order of the roles in the repository.
+     */
+    @NotNull
+    public List<AutoassignRule> getAllRules(OperationResult result) throws SchemaException {
+        return getCompiledRules(result).allRules;
+    }
+
+    /**
+     * Returns the rules that have to be evaluated for given focus delta.
+     *
+     * Rules with declared focus sources produce no new values unless some of the sources changed. The exception
+     * are strong and weak rules whose (unchanged) values are applied if they are missing in the focus; these are
+     * returned always if reconcile is true, or if the delta removes any assignment.
+     *
+     * @param focusDelta Current focus delta (relative to the old object). Null means no change.
+     */
+    @NotNull
+    public List<AutoassignRule> getRulesToEvaluate(@Nullable ObjectDelta<?> focusDelta, boolean reconcile,
+            OperationResult result) throws SchemaException {
+        CompiledRules rules = getCompiledRules(result);
+        if (focusDelta != null && !focusDelta.isModify()) {
+            return rules.allRules;
+        }
+
+        Set<AutoassignRule> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean reconcileApplied = reconcile;
+        if (focusDelta != null) {
+            for (ItemDelta<?, ?> modification : focusDelta.getModifications()) {
+                ItemPath modifiedPath = modification.getPath().namedSegmentsOnly();
+                if (modifiedPath.isEmpty()) {
+                    return rules.allRules;
+                }
+                if (SchemaConstants.PATH_ASSIGNMENT.isSubPathOrEquivalent(modifiedPath)
+                        && (modification.isReplace() || modification.isDelete())) {
+                    reconcileApplied = true;
+                }
+                for (AutoassignRule rule : rules.getIndexedRules(modifiedPath.firstToNameOrNull())) {
+                    if (rule.isAffectedBy(modifiedPath)) {
+                        affected.add(rule);
+                    }
+                }
+            }
+        }
+
+        List<AutoassignRule> rulesToEvaluate = new ArrayList<>();
+        for (AutoassignRule rule : rules.allRules) {
+            if (!rule.isIndexed() || reconcileApplied && !rule.isNormalStrength() || affected.contains(rule)) {
+                rulesToEvaluate.add(rule);
+            }
+        }
+        LOGGER.trace("Selected {} of {} autoassign rule(s) to be evaluated (reconcile: {})", rulesToEvaluate.size(),
+                rules.allRules.size(), reconcileApplied);
+        return rulesToEvaluate;
+    }
+
+    @NotNull
+    private CompiledRules getCompiledRules(OperationResult result) throws SchemaException {
+        CompiledRules current = compiledRules;
+        if (current != null) {
+            return current;
+        }
+        long invalidationsBefore = invalidationCount.get();
+        CompiledRules compiled = compileRules(result);
+        synchronized (this) {
+            if (invalidationCount.get() == invalidationsBefore) {
+                compiledRules = compiled;
+            } else {
+                LOGGER.trace("Autoassign rules were invalidated while being compiled, not storing them");
+            }
+        }
+        return compiled;
+    }
+
+    private CompiledRules compileRules(OperationResult result) throws SchemaException {
+        ObjectQuery query = prismContext
+                .queryFor(AbstractRoleType.class)
+                .item(SchemaConstants.PATH_AUTOASSIGN_ENABLED)
+                .eq(true)
+                .build();
+
+        CompiledRules compiled = new CompiledRules();
+        ResultHandler<AbstractRoleType> handler = (role, objectResult) -> {
+            AutoassignSpecificationType autoassign = role.asObjectable().getAutoassign();
+            if (autoassign == null || !BooleanUtils.isTrue(autoassign.isEnabled())) {
+                return true;
+            }
+            FocalAutoassignSpecificationType focalAutoassignSpec = autoassign.getFocus();
+            if (focalAutoassignSpec == null) {
+                return true;
+            }
+            for (AutoassignMappingType autoMapping : focalAutoassignSpec.getMapping()) {
+                AutoassignMappingType mapping = autoMapping.clone();
+                ObjectTemplateProcessor.setMappingTarget(mapping, new ItemPathType(SchemaConstants.PATH_ASSIGNMENT));
+                compiled.add(new AutoassignRule(role.asObjectable(), focalAutoassignSpec.getSelector(), mapping,
+                        getSourcePaths(focalAutoassignSpec.getSelector(), mapping)));
+            }
+            return true;
+        };
+        cacheRepositoryService.searchObjectsIterative(AbstractRoleType.class, query, handler,
+                GetOperationOptions.createReadOnlyCollection(), true, result);
+        LOGGER.debug("Compiled {} autoassign rule(s), {} of them indexed by their sources", compiled.allRules.size(),
+                compiled.indexedCount);
+        return compiled;
+    }
+
+    /**
+     * Returns focus paths the mapping reads, or null if they cannot be determined (see {@link MappingInputs}),
+     * or if the selector of the rule can start or stop matching the focus when other items change.
+     */
+    private List<ItemPath> getSourcePaths(ObjectSelectorType selector, AutoassignMappingType mapping) {
+        if (selector != null && (selector.getSubtype() != null || !selector.getArchetypeRef().isEmpty()
+                || selector.getOrgRef() != null || selector.getFilter() != null)) {
+            return null;
+        }
+        return MappingInputs.isOpaque(mapping) ? null : MappingInputs.getSourcePaths(mapping);
+    }
+
+    @Override
+    public void invalidate(Class<?> type, String oid, CacheInvalidationContext context) {
+        if (type == null || AbstractRoleType.class.isAssignableFrom(type) || type.isAssignableFrom(AbstractRoleType.class)) {
+            synchronized (this) {
+                invalidationCount.incrementAndGet();
+                if (compiledRules != null) {
+                    LOGGER.trace("Invalidating autoassign rules because of change of {}:{}", type, oid);
+                    compiledRules = null;
+                }
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        CompiledRules current = compiledRules;
+        return Collections.singleton(
+                new SingleCacheStateInformationType(prismContext)
+                        .name(AutoassignRuleIndex.class.getName())
+                        .size(current != null ? current.allRules.size() : 0)
+        );
+    }
+
+    @Override
+    public void dumpContent() {
+        CompiledRules current = compiledRules;
+        if (LOGGER_CONTENT.isInfoEnabled() && current != null) {
+            current.allRules.forEach(rule -> LOGGER_CONTENT.info("Autoassign rule: {}", rule));
+        }
+    }
+
+    private static class CompiledRules {
+
+        private final List<AutoassignRule> allRules = new ArrayList<>();
+
+        /** Indexed rules keyed by the local name of the first segment of their source paths. */
+        private final Map<String, List<AutoassignRule>> indexedRules = new HashMap<>();
+
+        private int indexedCount;
+
+        private void add(AutoassignRule rule) {
+            allRules.add(rule);
+            if (rule.isIndexed()) {
+                indexedCount++;
+                Set<String> keys = new HashSet<>();
+                for (ItemPath sourcePath : rule.sourcePaths) {
+                    keys.add(sourcePath.firstToNameOrNull().getLocalPart());
+                }
+                keys.forEach(key -> indexedRules.computeIfAbsent(key, k -> new ArrayList<>()).add(rule));
+            }
+        }
+
+        private List<AutoassignRule> getIndexedRules(ItemName firstName) {
+            if (firstName == null) {
+                return Collections.emptyList();
+            }
+            return indexedRules.getOrDefault(firstName.getLocalPart(), Collections.emptyList());
+        }
+    }
+
+    /**
+     * Compiled autoassign mapping of a role.
+     */
+    public static class AutoassignRule {
+
+        @NotNull private final AbstractRoleType role;
+        private final ObjectSelectorType selector;
+        @NotNull private final AutoassignMappingType mapping;
+
+        /** Focus paths read by the mapping; null if not known (the rule has to be evaluated always). */
+        private final List<ItemPath> sourcePaths;
+
+        private AutoassignRule(@NotNull AbstractRoleType role, ObjectSelectorType selector,
+                @NotNull AutoassignMappingType mapping, List<ItemPath> sourcePaths) {
+            this.role = role;
+            this.selector = selector;
+            this.mapping = mapping;
+            this.sourcePaths = sourcePaths;
+        }
+
+        @NotNull
+        public AbstractRoleType getRole() {
+            return role;
+        }
+
+        public ObjectSelectorType getSelector() {
+            return selector;
+        }
+
+        /**
+         * Creates a new evaluation request. The mapping is cloned, as the rule is shared among threads.
+         */
+        public AutoassignRoleMappingEvaluationRequest createEvaluationRequest() {
+            return new AutoassignRoleMappingEvaluationRequest(mapping.clone(), role);
+        }
+
+        private boolean isIndexed() {
+            return sourcePaths != null;
+        }
+
+        private boolean isNormalStrength() {
+            return mapping.getStrength() == null || mapping.getStrength() == MappingStrengthType.NORMAL;
+        }
+
+        private boolean isAffectedBy(ItemPath modifiedPath) {
+            for (ItemPath sourcePath : sourcePaths) {
+                if (sourcePath.isSubPathOrEquivalent(modifiedPath) || modifiedPath.isSubPathOrEquivalent(sourcePath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "AutoassignRule(" + mapping.getName() + " in " + role + ", sources: " + sourcePaths + ")";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.FocalMappingEvaluationRequest;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.TemplateMappingEvaluationRequest;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MappingType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.VariableBindingDefinitionType;
+
+/**
+ * Selects object template mappings that have to be evaluated for given focus delta (incremental evaluation).
+ *
+ * Mappings form a graph: a mapping depends on the focus items it declares as sources, and it (possibly) changes
+ * its target item. We start with items modified by the delta and select mappings reading them. Then we add
+ * mappings reading targets of already selected ones, until nothing changes. If a target item is computed
+ * by a selected mapping, all other mappings for that item are selected as well, so the consolidation
+ * (e.g. of non-tolerant items or weak values) sees their outputs.
+ *
+ * Mappings whose inputs cannot be determined from their declaration are "opaque" and they are always selected
+ * (see {@link MappingInputs#isOpaque(MappingType)}), as well as mappings with sources outside the focus.
+ * Mappings other than template ones (e.g. autoassign ones) are always selected, too.
+ */
+class IncrementalMappingSelector {
+
+    private static final Trace LOGGER = TraceManager.getTrace(IncrementalMappingSelector.class);
+
+    private final List<MappingNode> nodes = new ArrayList<>();
+
+    IncrementalMappingSelector(@NotNull List<FocalMappingEvaluationRequest<?, ?>> requests) {
+        for (FocalMappingEvaluationRequest<?, ?> request : requests) {
+            nodes.add(new MappingNode(request));
+        }
+    }
+
+    /**
+     * Returns mappings that can produce a change for given focus delta, in their original order.
+     */
+    @NotNull
+    List<FocalMappingEvaluationRequest<?, ?>> select(@NotNull ObjectDelta<?> focusDelta) {
+        Deque<ItemPath> changedPaths = new ArrayDeque<>();
+        for (ItemDelta<?, ?> modification : focusDelta.getModifications()) {
+            ItemPath modifiedPath = modification.getPath().namedSegmentsOnly();
+            if (modifiedPath.isEmpty()) {
+                return getAllRequests();
+            }
+            changedPaths.add(modifiedPath);
+        }
+
+        Set<MappingNode> selected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MappingNode node : nodes) {
+            if (node.isOpaque()) {
+                select(node, selected, changedPaths);
+            }
+        }
+        while (!changedPaths.isEmpty()) {
+            ItemPath changedPath = changedPaths.poll();
+            for (MappingNode node : nodes) {
+                if (!selected.contains(node) && (node.isAffectedBy(changedPath) || node.hasTarget(changedPath))) {
+                    select(node, selected, changedPaths);
+                }
+            }
+        }
+
+        List<FocalMappingEvaluationRequest<?, ?>> rv = new ArrayList<>();
+        for (MappingNode node : nodes) {
+            if (selected.contains(node)) {
+                rv.add(node.request);
+            } else {
+                LOGGER.trace("Skipping {} because its sources were not changed", DebugUtil.shortDumpLazily(node.request));
+            }
+        }
+        LOGGER.trace("Selected {} of {} mapping(s) to be evaluated incrementally", rv.size(), nodes.size());
+        return rv;
+    }
+
+    private void select(MappingNode node, Set<MappingNode> selected, Deque<ItemPath> changedPaths) {
+        selected.add(node);
+        if (node.targetPath != null) {
+            changedPaths.add(node.targetPath);
+        }
+    }
+
+    private List<FocalMappingEvaluationRequest<?, ?>> getAllRequests() {
+        List<FocalMappingEvaluationRequest<?, ?>> rv = new ArrayList<>();
+        nodes.forEach(node -> rv.add(node.request));
+        return rv;
+    }
+
+    private static class MappingNode {
+
+        @NotNull private final FocalMappingEvaluationRequest<?, ?> request;
+
+        /** Null if the mapping is opaque. */
+        private final List<ItemPath> sourcePaths;
+
+        /** Target item path (without focus variable). Null if not known. */
+        private final ItemPath targetPath;
+
+        private MappingNode(@NotNull FocalMappingEvaluationRequest<?, ?> request) {
+            this.request = request;
+            MappingType mapping = request.getMapping();
+            this.targetPath = getTargetPath(mapping);
+            if (request instanceof TemplateMappingEvaluationRequest && targetPath != null && !MappingInputs.isOpaque(mapping)) {
+                this.sourcePaths = MappingInputs.getSourcePaths(mapping);
+            } else {
+                this.sourcePaths = null;
+            }
+        }
+
+        private boolean isOpaque() {
+            return sourcePaths == null;
+        }
+
+        private boolean isAffectedBy(ItemPath changedPath) {
+            if (sourcePaths == null) {
+                return true;
+            }
+            for (ItemPath sourcePath : sourcePaths) {
+                if (sourcePath.isSubPathOrEquivalent(changedPath) || changedPath.isSubPathOrEquivalent(sourcePath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean hasTarget(ItemPath path) {
+            return targetPath != null && (targetPath.isSubPathOrEquivalent(path) || path.isSubPathOrEquivalent(targetPath));
+        }
+
+        private static ItemPath getTargetPath(MappingType mapping) {
+            VariableBindingDefinitionType target = mapping.getTarget();
+            if (target == null || target.getPath() == null) {
+                return null;
+            }
+            ItemPath path = MappingInputs.stripFocusVariable(target.getPath().getItemPath());
+            return path != null ? path.namedSegmentsOnly() : null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
+import com.evolveum.midpoint.schema.constants.ExpressionConstants;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ExpressionType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MappingType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.VariableBindingDefinitionType;
+
+/**
+ * Determines focus items a focus mapping reads, based on its declaration.
+ *
+ * Used to skip evaluation of mappings whose inputs were not changed (see {@link IncrementalMappingSelector}
+ * and {@link AutoassignRuleIndex}).
+ */
+class MappingInputs {
+
+    /**
+     * Variables and libraries that give scripts access to data other than mapping sources.
+     */
+    private static final Pattern OPAQUE_SCRIPT_PATTERN = Pattern.compile("\\b(" +
+            ExpressionConstants.VAR_FOCUS + "|" + ExpressionConstants.VAR_USER + "|" +
+            ExpressionConstants.VAR_ITERATION + "|" + ExpressionConstants.VAR_ITERATION_TOKEN + "|" +
+            ExpressionConstants.VAR_CONFIGURATION + "|" + ExpressionConstants.VAR_OPERATION + "|" +
+            ExpressionConstants.VAR_SOURCE + "|" + ExpressionConstants.VAR_ACTOR + "|midpoint)\\b");
+
+    /**
+     * Returns true if the inputs of the mapping cannot be determined from its declaration, or if the mapping can
+     * produce different output even if they do not change: no sources, time constraints, range specification,
+     * and expressions or conditions that are neither as-is, literal values, nor scripts that use only the declared
+     * sources (e.g. scripts reading focus, configuration or midpoint functions, custom variables, other evaluators).
+     */
+    static boolean isOpaque(MappingType mapping) {
+        return mapping.getSource().isEmpty()
+                || mapping.getTimeFrom() != null || mapping.getTimeTo() != null
+                || mapping.getTarget() != null && mapping.getTarget().getSet() != null
+                || isOpaque(mapping.getExpression())
+                || isOpaque(mapping.getCondition());
+    }
+
+    private static boolean isOpaque(ExpressionType expression) {
+        if (expression == null) {
+            return false;       // as-is
+        }
+        if (!expression.getVariable().isEmpty() || expression.getRunAsRef() != null) {
+            return true;
+        }
+        for (JAXBElement<?> evaluator : expression.getExpressionEvaluator()) {
+            QName name = evaluator.getName();
+            if (SchemaConstantsGenerated.C_SCRIPT.equals(name)) {
+                ScriptExpressionEvaluatorType script = (ScriptExpressionEvaluatorType) evaluator.getValue();
+                if (script.getCode() == null || OPAQUE_SCRIPT_PATTERN.matcher(script.getCode()).find()) {
+                    return true;
+                }
+            } else if (!SchemaConstantsGenerated.C_AS_IS.equals(name) && !SchemaConstantsGenerated.C_VALUE.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns focus paths (without $focus variable and container IDs) declared as sources of the mapping,
+     * or null if some of the sources is not a focus item.
+     */
+    static List<ItemPath> getSourcePaths(MappingType mapping) {
+        List<ItemPath> paths = new ArrayList<>();
+        for (VariableBindingDefinitionType source : mapping.getSource()) {
+            ItemPath path = source.getPath() != null ? stripFocusVariable(source.getPath().getItemPath()) : null;
+            if (path == null) {
+                return null;
+            }
+            path = path.namedSegmentsOnly();
+            if (path.isEmpty() || path.firstToNameOrNull() == null) {
+                return null;
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the path without $focus (or $user) variable; null if the path starts with another variable.
+     */
+    static ItemPath stripFocusVariable(ItemPath path) {
+        if (path == null || !path.startsWithVariable()) {
+            return path;
+        }
+        String variableName = path.firstToVariableNameOrNull().getLocalPart();
+        if (ExpressionConstants.VAR_FOCUS.equals(variableName) || ExpressionConstants.VAR_USER.equals(variableName)) {
+            return path.rest();
+        } else {
+            return null;
+        }
+    }
+}
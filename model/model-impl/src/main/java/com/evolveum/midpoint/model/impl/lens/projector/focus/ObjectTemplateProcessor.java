@@ -52,12 +52,10 @@ import com.evolveum.midpoint.prism.PrismValue;
 import com.evolveum.midpoint.prism.match.MatchingRule;
 import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.prism.path.UniformItemPath;
-import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.util.ObjectDeltaObject;
 import com.evolveum.midpoint.prism.util.PrismUtil;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.GetOperationOptions;
-import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
@@ -91,6 +89,7 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
 
     @Autowired private MappingSetEvaluator mappingSetEvaluator;
     @Autowired private MatchingRuleRegistry matchingRuleRegistry;
+    @Autowired private AutoassignRuleIndex autoassignRuleIndex;
 
     @ProcessorMethod
     <AH extends AssignmentHolderType> void processTemplateBeforeAssignments(LensContext<AH> context,
@@ -135,7 +134,12 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
 
         List<FocalMappingEvaluationRequest<?, ?>> mappings = new ArrayList<>();
         collectMappingsFromTemplate(mappings, objectTemplate, objectTemplateDesc, task, result);
-        collectAutoassignMappings(context, mappings, result);
+        collectAutoassignMappings(context, mappings, focusOdo.getObjectDelta(),
+                isNonTolerant(itemDefinitionsMap, prismContext.toUniformPath(SchemaConstants.PATH_ASSIGNMENT))
+                        || !isIncrementalAutoassignEvaluation(context), result);
+        if (isIncrementalEvaluation(context, focusOdo.getObjectDelta())) {
+            mappings = new IncrementalMappingSelector(mappings).select(focusOdo.getObjectDelta());
+        }
 
         Map<UniformItemPath,DeltaSetTriple<? extends ItemValueWithOrigin<?,?>>> outputTripleMap = new HashMap<>();
 
@@ -186,7 +190,7 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
 
         List<FocalMappingEvaluationRequest<?, ?>> mappings = new ArrayList<>();
         collectMappingsFromTemplate(mappings, objectMappingType, objectMappingType.toString(), task, result);
-        collectAutoassignMappings(context, mappings, result);
+        collectAutoassignMappings(context, mappings, null, true, result);
 
         Map<UniformItemPath,DeltaSetTriple<? extends ItemValueWithOrigin<?,?>>> outputTripleMap = new HashMap<>();
         mappingSetEvaluator.evaluateMappingsToTriples(context, mappings, BEFORE_ASSIGNMENTS,
@@ -223,10 +227,14 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
                 includedObject = includeRef.asReferenceValue().getObject();
             } else {
                 ObjectTemplateType includeObjectType = modelObjectResolver.resolve(includeRef, ObjectTemplateType.class,
-                        null, "include reference in "+objectTemplate + " in " + contextDesc, task, result);
+                        GetOperationOptions.createReadOnlyCollection(), "include reference in "+objectTemplate + " in " + contextDesc,
+                        task, result);
                 includedObject = includeObjectType.asPrismObject();
-                // Store resolved object for future use (e.g. next waves).
-                includeRef.asReferenceValue().setObject(includedObject);
+                // Store resolved object for future use (e.g. next waves). Templates obtained from the cache are immutable,
+                // so the object cannot be stored there; but getting it from the cache again is cheap.
+                if (!includeRef.asReferenceValue().isImmutable()) {
+                    includeRef.asReferenceValue().setObject(includedObject);
+                }
             }
             LOGGER.trace("Including template {}", includedObject);
             processor.process(includedObject.asObjectable());
@@ -415,45 +423,34 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
         }
     }
 
+    /**
+     * Collects autoassign mappings from the rule index. If focus delta is provided, only rules that can produce
+     * a change are collected (see {@link AutoassignRuleIndex#getRulesToEvaluate(ObjectDelta, boolean, OperationResult)}).
+     */
     private <AH extends AssignmentHolderType> void collectAutoassignMappings(LensContext<AH> context,
-            List<FocalMappingEvaluationRequest<?, ?>> mappings, OperationResult result) throws SchemaException {
+            List<FocalMappingEvaluationRequest<?, ?>> mappings, @Nullable ObjectDelta<AH> focusDelta, boolean allRules,
+            OperationResult result) throws SchemaException {
 
         if (!autoassignEnabled(context.getSystemConfiguration())) {
             return;
         }
 
-        ObjectQuery query = prismContext
-                .queryFor(AbstractRoleType.class)
-                .item(SchemaConstants.PATH_AUTOASSIGN_ENABLED)
-                .eq(true)
-                .build();
-
-        ResultHandler<AbstractRoleType> handler = (role, objectResult) -> {
-            AutoassignSpecificationType autoassign = role.asObjectable().getAutoassign();
-            if (autoassign == null) {
-                return true;
-            }
-            if (!BooleanUtils.isTrue(autoassign.isEnabled())) {
-                return true;
-            }
-            FocalAutoassignSpecificationType focalAutoassignSpec = autoassign.getFocus();
-            if (focalAutoassignSpec == null) {
-                return true;
-            }
-
-            if (!isApplicableFor(focalAutoassignSpec.getSelector(), context.getFocusContext(), objectResult)) {
-                return true;
-            }
+        List<AutoassignRuleIndex.AutoassignRule> rules;
+        if (allRules) {
+            rules = autoassignRuleIndex.getAllRules(result);
+        } else {
+            boolean reconcile = context.isReconcileFocus() || ObjectDelta.isEmpty(context.getFocusContext().getPrimaryDelta());
+            rules = autoassignRuleIndex.getRulesToEvaluate(focusDelta, reconcile, result);
+        }
 
-            for (AutoassignMappingType autoMapping: focalAutoassignSpec.getMapping()) {
-                AutoassignMappingType mapping = autoMapping.clone();
-                setMappingTarget(mapping, new ItemPathType(SchemaConstants.PATH_ASSIGNMENT));
-                mappings.add(new AutoassignRoleMappingEvaluationRequest(mapping, role.asObjectable()));
-                LOGGER.trace("Collected autoassign mapping {} from {}", mapping.getName(), role);
+        for (AutoassignRuleIndex.AutoassignRule rule : rules) {
+            if (!isApplicableFor(rule.getSelector(), context.getFocusContext(), result)) {
+                continue;
             }
-            return true;
-        };
-        cacheRepositoryService.searchObjectsIterative(AbstractRoleType.class, query, handler, GetOperationOptions.createReadOnlyCollection(), true, result);
+            AutoassignRoleMappingEvaluationRequest request = rule.createEvaluationRequest();
+            mappings.add(request);
+            LOGGER.trace("Collected autoassign mapping {} from {}", request.getMapping().getName(), rule.getRole());
+        }
     }
 
     private <AH extends AssignmentHolderType> boolean isApplicableFor(ObjectSelectorType selector, LensFocusContext<AH> focusContext, OperationResult result) {
@@ -469,7 +466,7 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
         }
     }
 
-    private void setMappingTarget(MappingType mapping, ItemPathType path) {
+    static void setMappingTarget(MappingType mapping, ItemPathType path) {
         VariableBindingDefinitionType target = mapping.getTarget();
         if (target == null) {
             target = new VariableBindingDefinitionType();
@@ -482,6 +479,33 @@ public class ObjectTemplateProcessor implements ProjectorProcessor {
         }
     }
 
+    private boolean isNonTolerant(Map<UniformItemPath, ObjectTemplateItemDefinitionType> itemDefinitionsMap, UniformItemPath itemPath) {
+        ObjectTemplateItemDefinitionType templateItemDefinition = ItemPathCollectionsUtil.getFromMap(itemDefinitionsMap, itemPath);
+        return templateItemDefinition != null && Boolean.FALSE.equals(templateItemDefinition.isTolerant());
+    }
+
+    /**
+     * Mappings are evaluated incrementally (only those whose sources changed) if configured so, and if the focus
+     * is being modified. Recompute and reconciliation evaluate all mappings, as values produced by strong mappings
+     * could be missing in the focus, or the template could have been changed.
+     */
+    private <AH extends AssignmentHolderType> boolean isIncrementalEvaluation(LensContext<AH> context, ObjectDelta<AH> focusDelta) {
+        InternalsConfigurationType internals = context.getInternalsConfiguration();
+        return internals != null && Boolean.TRUE.equals(internals.isIncrementalTemplateMappingEvaluation())
+                && !context.isReconcileFocus()
+                && !ObjectDelta.isEmpty(context.getFocusContext().getPrimaryDelta())
+                && focusDelta != null && focusDelta.isModify()
+                && context.getFocusContext().getIteration() == 0;
+    }
+
+    /**
+     * Autoassign rules are selected by the changed focus items only if configured so.
+     */
+    private <AH extends AssignmentHolderType> boolean isIncrementalAutoassignEvaluation(LensContext<AH> context) {
+        InternalsConfigurationType internals = context.getInternalsConfiguration();
+        return internals != null && Boolean.TRUE.equals(internals.isIncrementalAutoassignRuleEvaluation());
+    }
+
     private boolean autoassignEnabled(PrismObject<SystemConfigurationType> systemConfiguration) {
         if (systemConfiguration == null) {
             return false;
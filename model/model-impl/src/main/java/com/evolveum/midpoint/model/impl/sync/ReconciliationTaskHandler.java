@@ -6,6 +6,8 @@
  */
 package com.evolveum.midpoint.model.impl.sync;
 
+import static com.evolveum.midpoint.prism.PrismProperty.getRealValue;
+
 import java.util.Collection;
 import java.util.List;
 
@@ -625,7 +627,12 @@ public class ReconciliationTaskHandler implements WorkBucketAwareTaskHandler {
             return localCoordinatorTask.canRun();
         };
 
-        repositoryService.searchObjectsIterative(ShadowType.class, bucketNarrowedQuery, handler, null, true, opResult);
+        // The task can specify the iteration method; otherwise the repository decides.
+        IterationMethodType iterationMethod =
+                getRealValue(localCoordinatorTask.getExtensionPropertyOrClone(SchemaConstants.MODEL_EXTENSION_ITERATION_METHOD));
+        Collection<SelectorOptions<GetOperationOptions>> options = iterationMethod != null ?
+                SelectorOptions.createCollection(new GetOperationOptions().iterationMethod(iterationMethod)) : null;
+        repositoryService.searchObjectsIterative(ShadowType.class, bucketNarrowedQuery, handler, options, true, opResult);
         interrupted = !localCoordinatorTask.canRun();
 
         // for each try the operation again
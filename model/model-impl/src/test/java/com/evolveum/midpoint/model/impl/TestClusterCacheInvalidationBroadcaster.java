@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.CacheInvalidationContext;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventBatchType;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests batching of outgoing cluster cache invalidation events and processing of incoming batches
+ * (as delivered by the /event/invalidationBatch REST endpoint).
+ */
+public class TestClusterCacheInvalidationBroadcaster extends AbstractUnitTest {
+
+    private static final long WAIT_TIMEOUT = 5000;
+
+    private TestBroadcaster broadcaster;
+
+    @BeforeMethod
+    public void createBroadcaster() {
+        broadcaster = new TestBroadcaster();
+        broadcaster.initialize();
+    }
+
+    @AfterMethod
+    public void shutdownBroadcaster() {
+        broadcaster.shutdown();
+    }
+
+    @Test
+    public void test100MergeEventsInWindow() throws Exception {
+        when();
+        broadcaster.broadcast(UserType.class, "a");
+        broadcaster.broadcast(UserType.class, "a");
+        broadcaster.broadcast(UserType.class, "b");
+        broadcaster.broadcast(RoleType.class, "c");
+        broadcaster.broadcast(RoleType.class, null);
+        broadcaster.broadcast(RoleType.class, "d");
+
+        then();
+        CacheInvalidationEventBatchType batch = broadcaster.awaitBatch();
+        assertEquals("Wrong sequence number", Long.valueOf(1), batch.getSequenceNumber());
+        assertEquals("Wrong events", Arrays.asList(event(UserType.class, "a"), event(UserType.class, "b"),
+                event(RoleType.class, null)), describe(batch));
+        assertNoMoreBatches();
+    }
+
+    @Test
+    public void test110MergeEventsIntoFullInvalidation() throws Exception {
+        when();
+        broadcaster.broadcast(UserType.class, "a");
+        broadcaster.broadcast(null, null);
+        broadcaster.broadcast(RoleType.class, "c");
+
+        then();
+        CacheInvalidationEventBatchType batch = broadcaster.awaitBatch();
+        assertEquals("Wrong events", Collections.singletonList(event(null, null)), describe(batch));
+        assertNoMoreBatches();
+    }
+
+    @Test
+    public void test120SequenceNumbers() throws Exception {
+        when();
+        List<CacheInvalidationEventBatchType> batches = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            broadcaster.broadcast(UserType.class, "user-" + i);
+            batches.add(broadcaster.awaitBatch());
+        }
+
+        then();
+        for (int i = 0; i < 3; i++) {
+            CacheInvalidationEventBatchType batch = batches.get(i);
+            assertEquals("Wrong sequence number", Long.valueOf(i + 1), batch.getSequenceNumber());
+            assertEquals("Wrong events", Collections.singletonList(event(UserType.class, "user-" + i)), describe(batch));
+        }
+        assertNoMoreBatches();
+    }
+
+    @Test
+    public void test200ReceiveBatchesInSequence() {
+        when();
+        broadcaster.processReceivedBatch(batch("node1", 1L, UserType.class, "a"));
+        broadcaster.processReceivedBatch(batch("node1", 2L, RoleType.class, null));
+        broadcaster.processReceivedBatch(batch("node2", 7L, UserType.class, "b"));
+
+        then();
+        assertEquals("Wrong invalidations", Arrays.asList(event(UserType.class, "a"), event(RoleType.class, null),
+                event(UserType.class, "b")), broadcaster.invalidations);
+    }
+
+    @Test
+    public void test210ReceiveBatchAfterGap() {
+        given();
+        broadcaster.processReceivedBatch(batch("node1", 1L, UserType.class, "a"));
+        broadcaster.processReceivedBatch(batch("node2", 1L, UserType.class, "b"));
+        broadcaster.invalidations.clear();
+
+        when("batch #2 from node1 is lost");
+        broadcaster.processReceivedBatch(batch("node1", 3L, UserType.class, "c"));
+        broadcaster.processReceivedBatch(batch("node2", 2L, UserType.class, "d"));
+
+        then();
+        assertEquals("Wrong invalidations", Arrays.asList(event(null, null), event(UserType.class, "d")),
+                broadcaster.invalidations);
+
+        when("node1 continues");
+        broadcaster.invalidations.clear();
+        broadcaster.processReceivedBatch(batch("node1", 4L, UserType.class, "e"));
+
+        then();
+        assertEquals("Wrong invalidations", Collections.singletonList(event(UserType.class, "e")),
+                broadcaster.invalidations);
+    }
+
+    @Test
+    public void test220ReceiveBatchAfterSenderRestart() {
+        given();
+        broadcaster.processReceivedBatch(batch("node1", 1L, UserType.class, "a"));
+        broadcaster.processReceivedBatch(batch("node1", 2L, UserType.class, "b"));
+        broadcaster.invalidations.clear();
+
+        when();
+        broadcaster.processReceivedBatch(batch("node1", 1L, UserType.class, "c"));
+
+        then();
+        assertEquals("Wrong invalidations", Collections.singletonList(event(null, null)), broadcaster.invalidations);
+    }
+
+    @Test
+    public void test230ReceiveBatchWithoutSequenceNumber() {
+        when();
+        broadcaster.processReceivedBatch(batch("node1", 5L, UserType.class, "a"));
+        broadcaster.processReceivedBatch(batch("node1", null, UserType.class, "b"));
+        broadcaster.processReceivedBatch(batch(null, 9L, UserType.class, "c"));
+        broadcaster.processReceivedBatch(batch("node1", 6L, UserType.class, "d"));
+
+        then();
+        assertEquals("Wrong invalidations", Arrays.asList(event(UserType.class, "a"), event(UserType.class, "b"),
+                event(UserType.class, "c"), event(UserType.class, "d")), broadcaster.invalidations);
+    }
+
+    private void assertNoMoreBatches() throws InterruptedException {
+        assertNull("Unexpected batch", broadcaster.sentBatches.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    private CacheInvalidationEventBatchType batch(String sender, Long sequenceNumber,
+            Class<? extends ObjectType> type, String oid) {
+        CacheInvalidationEventBatchType batch = new CacheInvalidationEventBatchType();
+        batch.setSenderNodeIdentifier(sender);
+        batch.setSequenceNumber(sequenceNumber);
+        CacheInvalidationEventType event = new CacheInvalidationEventType();
+        event.setType(type != null ? ObjectTypes.getRestTypeFromClass(type) : null);
+        event.setOid(oid);
+        batch.getEvent().add(event);
+        return batch;
+    }
+
+    private List<String> describe(CacheInvalidationEventBatchType batch) {
+        return batch.getEvent().stream()
+                .map(event -> event(event.getType() != null ? ObjectTypes.getClassFromRestType(event.getType()) : null,
+                        event.getOid()))
+                .collect(Collectors.toList());
+    }
+
+    private static String event(Class<? extends ObjectType> type, String oid) {
+        return (type != null ? type.getSimpleName() : "all") + ":" + oid;
+    }
+
+    /**
+     * Broadcaster that records sent batches and local invalidations instead of talking to the cluster and caches.
+     */
+    private static class TestBroadcaster extends ClusterCacheInvalidationBroadcaster {
+
+        private final BlockingQueue<CacheInvalidationEventBatchType> sentBatches = new LinkedBlockingQueue<>();
+        private final List<String> invalidations = new ArrayList<>();
+
+        @Override
+        void sendBatch(CacheInvalidationEventBatchType batch) {
+            sentBatches.add(batch);
+        }
+
+        @Override
+        void dispatchInvalidation(Class<? extends ObjectType> type, String oid, CacheInvalidationContext context) {
+            invalidations.add(event(type, oid));
+        }
+
+        private CacheInvalidationEventBatchType awaitBatch() throws InterruptedException {
+            CacheInvalidationEventBatchType batch = sentBatches.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull("No batch was sent", batch);
+            return batch;
+        }
+    }
+}
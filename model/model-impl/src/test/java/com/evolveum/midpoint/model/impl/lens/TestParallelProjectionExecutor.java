@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import static org.testng.AssertJUnit.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ParallelProjectionProcessingType;
+
+public class TestParallelProjectionExecutor extends AbstractUnitTest {
+
+    private static final String POOL = "test-projection-pool";
+
+    private final ParallelProjectionExecutor executor = new ParallelProjectionExecutor();
+
+    @AfterClass
+    public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void test100LimitsPerResource() {
+        given();
+        ParallelProjectionProcessingType config = new ParallelProjectionProcessingType()
+                .enabled(true)
+                .maxThreads(4)
+                .maxThreadsPerResource(2);
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(new TestJob("resource-a", running, maxRunning));
+            jobs.add(new TestJob("resource-b", running, maxRunning));
+        }
+
+        when();
+        executor.executeAndWait(POOL, config, jobs);
+
+        then();
+        for (TestJob job : jobs) {
+            assertTrue("Job was not executed: " + job, job.executed);
+        }
+        assertTrue("Too many concurrent jobs on resource-a: " + maxRunning.get("resource-a"),
+                maxRunning.get("resource-a").get() <= 2);
+        assertTrue("Too many concurrent jobs on resource-b: " + maxRunning.get("resource-b"),
+                maxRunning.get("resource-b").get() <= 2);
+    }
+
+    @Test
+    public void test110PropagatesSecurityContext() {
+        given();
+        Authentication authentication = new TestingAuthenticationToken("administrator", null);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        List<Authentication> seen = Collections.synchronizedList(new ArrayList<>());
+        List<ParallelProjectionExecutor.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(new SimpleJob("resource-" + i,
+                    () -> seen.add(SecurityContextHolder.getContext().getAuthentication())));
+        }
+
+        try {
+            when();
+            executor.executeAndWait(POOL, new ParallelProjectionProcessingType().enabled(true), jobs);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        then();
+        assertEquals("Wrong # of jobs executed", 4, seen.size());
+        for (Authentication seenAuthentication : seen) {
+            assertSame("Wrong authentication in job", authentication, seenAuthentication);
+        }
+    }
+
+    @Test
+    public void test120NestedJobsRunInWorkerThread() {
+        given();
+        List<String> nestedThreads = Collections.synchronizedList(new ArrayList<>());
+        List<ParallelProjectionExecutor.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            jobs.add(new SimpleJob("resource-" + i, () -> {
+                String outerThread = Thread.currentThread().getName();
+                executor.executeAndWait(POOL, null, Arrays.asList(
+                        new SimpleJob("nested-1", () -> nestedThreads.add(outerThread + "/" + Thread.currentThread().getName())),
+                        new SimpleJob("nested-2", () -> nestedThreads.add(outerThread + "/" + Thread.currentThread().getName()))));
+            }));
+        }
+
+        when();
+        executor.executeAndWait(POOL, null, jobs);
+
+        then();
+        assertEquals("Wrong # of nested jobs executed", 4, nestedThreads.size());
+        for (String threads : nestedThreads) {
+            String[] parts = threads.split("/");
+            assertEquals("Nested job was not executed in the outer thread", parts[0], parts[1]);
+        }
+    }
+
+    private static class SimpleJob implements ParallelProjectionExecutor.Job {
+        private final String resourceOid;
+        private final Runnable runnable;
+
+        private SimpleJob(String resourceOid, Runnable runnable) {
+            this.resourceOid = resourceOid;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public String getResourceOid() {
+            return resourceOid;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+
+    private static class TestJob implements ParallelProjectionExecutor.Job {
+        private final String resourceOid;
+        private final Map<String, AtomicInteger> running;
+        private final Map<String, AtomicInteger> maxRunning;
+        private volatile boolean executed;
+
+        private TestJob(String resourceOid, Map<String, AtomicInteger> running, Map<String, AtomicInteger> maxRunning) {
+            this.resourceOid = resourceOid;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public String getResourceOid() {
+            return resourceOid;
+        }
+
+        @Override
+        public void run() {
+            int current = running.computeIfAbsent(resourceOid, k -> new AtomicInteger()).incrementAndGet();
+            maxRunning.computeIfAbsent(resourceOid, k -> new AtomicInteger()).accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.get(resourceOid).decrementAndGet();
+            executed = true;
+        }
+
+        @Override
+        public String toString() {
+            return "TestJob(" + resourceOid + ")";
+        }
+    }
+}
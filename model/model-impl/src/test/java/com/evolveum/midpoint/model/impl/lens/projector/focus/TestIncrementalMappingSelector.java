@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector.focus;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.xml.bind.JAXBElement;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.FocalMappingEvaluationRequest;
+import com.evolveum.midpoint.model.impl.lens.projector.mappings.TemplateMappingEvaluationRequest;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.SchemaConstantsGenerated;
+import com.evolveum.midpoint.tools.testng.AbstractUnitTest;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+
+public class TestIncrementalMappingSelector extends AbstractUnitTest {
+
+    private final ObjectTemplateType template = new ObjectTemplateType().name("template");
+
+    private List<FocalMappingEvaluationRequest<?, ?>> requests;
+
+    @BeforeClass
+    public void setup() throws SchemaException, SAXException, IOException {
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+
+        requests = new ArrayList<>();
+        requests.add(request("fullName", script("givenName + ' ' + familyName"), UserType.F_FULL_NAME,
+                UserType.F_GIVEN_NAME, UserType.F_FAMILY_NAME));
+        requests.add(request("description", null, UserType.F_DESCRIPTION, UserType.F_FULL_NAME));
+        requests.add(request("costCenter", null, UserType.F_COST_CENTER, UserType.F_EMPLOYEE_NUMBER));
+        requests.add(request("title", script("focus?.getLocality()"), UserType.F_TITLE, UserType.F_LOCALITY));
+        requests.add(request("organization", script("'Example'"), UserType.F_ORGANIZATION));
+    }
+
+    @Test
+    public void test100ChainedMappings() throws SchemaException {
+        when();
+        List<String> selected = select(UserType.F_GIVEN_NAME, new PolyString("Jack"));
+
+        then();
+        assertEquals("Wrong selected mappings", Arrays.asList("fullName", "description", "title", "organization"), selected);
+    }
+
+    @Test
+    public void test110UnrelatedChange() throws SchemaException {
+        when();
+        List<String> selected = select(UserType.F_TELEPHONE_NUMBER, "123");
+
+        then();
+        assertEquals("Wrong selected mappings", Arrays.asList("title", "organization"), selected);
+    }
+
+    @Test
+    public void test120ChangeOfTarget() throws SchemaException {
+        when();
+        List<String> selected = select(UserType.F_COST_CENTER, "CC-1");
+
+        then();
+        assertEquals("Wrong selected mappings", Arrays.asList("costCenter", "title", "organization"), selected);
+    }
+
+    private List<String> select(ItemPath path, Object value) throws SchemaException {
+        ObjectDelta<UserType> delta = PrismTestUtil.getPrismContext().deltaFor(UserType.class)
+                .item(path).replace(value)
+                .asObjectDelta("oid");
+        return new IncrementalMappingSelector(requests).select(delta).stream()
+                .map(request -> request.getMapping().getName())
+                .collect(Collectors.toList());
+    }
+
+    private FocalMappingEvaluationRequest<?, ?> request(String name, ExpressionType expression, ItemPath target,
+            ItemPath... sources) {
+        ObjectTemplateMappingType mapping = new ObjectTemplateMappingType();
+        mapping.setName(name);
+        for (ItemPath source : sources) {
+            mapping.getSource().add(new VariableBindingDefinitionType().path(new ItemPathType(source)));
+        }
+        mapping.setExpression(expression);
+        mapping.setTarget(new VariableBindingDefinitionType().path(new ItemPathType(target)));
+        return new TemplateMappingEvaluationRequest(mapping, template);
+    }
+
+    private ExpressionType script(String code) {
+        ScriptExpressionEvaluatorType script = new ScriptExpressionEvaluatorType();
+        script.setCode(code);
+        ExpressionType expression = new ExpressionType();
+        expression.getExpressionEvaluator().add(
+                new JAXBElement<>(SchemaConstantsGenerated.C_SCRIPT, ScriptExpressionEvaluatorType.class, script));
+        return expression;
+    }
+}
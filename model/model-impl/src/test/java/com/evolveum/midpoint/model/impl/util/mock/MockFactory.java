@@ -182,6 +182,12 @@ public class MockFactory {
                 throw new UnsupportedOperationException();
             }
 
+            @NotNull
+            @Override
+            public <O extends ObjectType> SearchResultList<PrismObject<O>> getObjects(Class<O> type, Collection<String> oids, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
+                return new SearchResultList<>(new ArrayList<>(0));
+            }
+
             @Override
             public <T extends ObjectType> String getVersion(Class<T> type, String oid, OperationResult parentResult) {
                 return null;
@@ -197,6 +203,12 @@ public class MockFactory {
                 return null;
             }
 
+            @NotNull
+            @Override
+            public List<BulkOperationItemResult> addObjects(@NotNull List<? extends PrismObject<? extends ObjectType>> objects, RepoAddOptions options, OperationResult parentResult) {
+                return new ArrayList<>();
+            }
+
             @NotNull
             @Override
             public <T extends ObjectType> SearchResultList<PrismObject<T>> searchObjects(Class<T> type, ObjectQuery query, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
@@ -251,6 +263,12 @@ public class MockFactory {
                 return null;
             }
 
+            @NotNull
+            @Override
+            public List<BulkOperationItemResult> modifyObjects(@NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas, RepoModifyOptions options, OperationResult parentResult) {
+                return new ArrayList<>();
+            }
+
             @NotNull
             @Override
             public <T extends ObjectType> DeleteObjectResult deleteObject(Class<T> type, String oid, OperationResult parentResult) {
@@ -400,6 +418,19 @@ public class MockFactory {
             public String getName() {
                 return null;
             }
+
+            @Override
+            public DeferredOperationNotifications deferOperationNotifications() {
+                return new DeferredOperationNotifications() {
+                    @Override
+                    public void stop() {
+                    }
+
+                    @Override
+                    public void deliver() {
+                    }
+                };
+            }
         };
     }
 }
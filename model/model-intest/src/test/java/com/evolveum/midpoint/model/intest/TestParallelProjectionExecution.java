@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.model.intest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.notifications.api.transports.Message;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.schema.ObjectDeltaOperation;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+
+/**
+ * Tests parallel execution of projection deltas (internals/projectionExecution) on two independent resources.
+ * Audit records and notifications have to be produced just like for sequential execution.
+ */
+@ContextConfiguration(locations = { "classpath:ctx-model-intest-test-main.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestParallelProjectionExecution extends AbstractInitializedModelIntegrationTest {
+
+    private static final String ADD_SUCCESS_TRANSPORT = "simpleAccountNotifier-ADD-SUCCESS";
+
+    @Override
+    public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+        super.initSystem(initTask, initResult);
+
+        modifyObjectReplaceContainer(SystemConfigurationType.class, SYSTEM_CONFIGURATION_OID,
+                ItemPath.create(SystemConfigurationType.F_INTERNALS, InternalsConfigurationType.F_PROJECTION_EXECUTION),
+                initTask, initResult, new ParallelProjectionProcessingType(prismContext).enabled(true));
+    }
+
+    /**
+     * Accounts on red and blue resources are created in parallel. Notifications have to be sent after the accounts
+     * are linked, with the user as the requestee, and in the same order as the deltas in the audit record.
+     */
+    @Test
+    public void test100AddUserWithTwoAccounts() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        dummyAuditService.clear();
+        prepareNotifications();
+
+        PrismObject<UserType> user = createUserWithAccounts("parallel1", "Parallel One");
+
+        when();
+        String oid = addObject(user, task, result);
+
+        then();
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+
+        assertUserAfter(oid)
+                .assertLinks(2);
+        assertDummyAccount(RESOURCE_DUMMY_RED_NAME, "parallel1", "Parallel One", true);
+        assertDummyAccount(RESOURCE_DUMMY_BLUE_NAME, "parallel1", "Parallel One", true);
+
+        displayDumpable("Audit", dummyAuditService);
+        List<String> auditedResources = getAuditedShadowAdditions();
+        assertThat(auditedResources).as("resources of audited account additions")
+                .containsExactlyInAnyOrder(RESOURCE_DUMMY_RED_OID, RESOURCE_DUMMY_BLUE_OID);
+
+        displayDumpable("Notifications", dummyTransport);
+        checkDummyTransportMessages(ADD_SUCCESS_TRANSPORT, 2);
+        List<Message> messages = dummyTransport.getMessages("dummy:" + ADD_SUCCESS_TRANSPORT);
+        assertThat(getNotifiedResources(messages)).as("resources of account addition notifications")
+                .containsExactlyElementsOf(auditedResources);
+        for (Message message : messages) {
+            assertThat(message.getBody()).as("notification body")
+                    .contains("User: Parallel One (parallel1, oid " + oid + ")");
+        }
+    }
+
+    /**
+     * The blue account already exists, so its creation fails. Discovery (that links the existing account)
+     * must be carried out after the red account is created, and then the wave is restarted.
+     */
+    @Test
+    public void test110AddUserWithConflictingAccount() throws Exception {
+        given();
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+        getDummyResourceController(RESOURCE_DUMMY_BLUE_NAME).addAccount("parallel2", "Parallel Two");
+        dummyAuditService.clear();
+        prepareNotifications();
+
+        PrismObject<UserType> user = createUserWithAccounts("parallel2", "Parallel Two");
+
+        when();
+        String oid = addObject(user, task, result);
+
+        then();
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+
+        assertUserAfter(oid)
+                .assertLinks(2);
+        assertDummyAccount(RESOURCE_DUMMY_RED_NAME, "parallel2", "Parallel Two", true);
+        assertDummyAccount(RESOURCE_DUMMY_BLUE_NAME, "parallel2", "Parallel Two", true);
+
+        displayDumpable("Audit", dummyAuditService);
+        assertThat(getAuditedShadowAdditions()).as("resources of audited account additions")
+                .contains(RESOURCE_DUMMY_RED_OID);
+
+        displayDumpable("Notifications", dummyTransport);
+        checkDummyTransportMessages(ADD_SUCCESS_TRANSPORT, 1);
+        Message message = dummyTransport.getMessages("dummy:" + ADD_SUCCESS_TRANSPORT).get(0);
+        assertThat(message.getBody()).as("notification body")
+                .contains(RESOURCE_DUMMY_RED_OID)
+                .contains("User: Parallel Two (parallel2, oid " + oid + ")");
+    }
+
+    private PrismObject<UserType> createUserWithAccounts(String name, String fullName) {
+        UserType user = new UserType(prismContext)
+                .name(name)
+                .fullName(PolyStringType.fromOrig(fullName));
+        user.getAssignment().add(createConstructionAssignment(RESOURCE_DUMMY_RED_OID, ShadowKindType.ACCOUNT, null));
+        user.getAssignment().add(createConstructionAssignment(RESOURCE_DUMMY_BLUE_OID, ShadowKindType.ACCOUNT, null));
+        return user.asPrismObject();
+    }
+
+    /** Resource OIDs of successful shadow additions in the execution audit records, in their order. */
+    private List<String> getAuditedShadowAdditions() {
+        List<String> resourceOids = new ArrayList<>();
+        for (AuditEventRecord record : dummyAuditService.getExecutionRecords()) {
+            for (ObjectDeltaOperation<? extends ObjectType> deltaOperation : record.getDeltas()) {
+                if (ShadowType.class.equals(deltaOperation.getObjectDelta().getObjectTypeClass())
+                        && deltaOperation.getObjectDelta().isAdd()
+                        && deltaOperation.getExecutionResult() != null
+                        && deltaOperation.getExecutionResult().isSuccess()) {
+                    resourceOids.add(deltaOperation.getResourceOid());
+                }
+            }
+        }
+        return resourceOids;
+    }
+
+    private List<String> getNotifiedResources(List<Message> messages) {
+        List<String> resourceOids = new ArrayList<>();
+        for (Message message : messages) {
+            if (message.getBody().contains(RESOURCE_DUMMY_RED_OID)) {
+                resourceOids.add(RESOURCE_DUMMY_RED_OID);
+            } else if (message.getBody().contains(RESOURCE_DUMMY_BLUE_OID)) {
+                resourceOids.add(RESOURCE_DUMMY_BLUE_OID);
+            }
+        }
+        return resourceOids;
+    }
+}
@@ -50,10 +50,14 @@ public class TestAutoassign extends AbstractRbacTest {
     protected static final String ROLE_UNIT_RIDER_OID = "9a60cdc6-f2ad-4414-964b-5fd1dfaec157";
     protected static final String ROLE_UNIT_RIDER_TITLE = "Rider";
 
+    protected static final File ROLE_UNIT_SAILOR_FILE = new File(AUTOASSIGN_DIR, "role-unit-sailor.xml");
+    protected static final String ROLE_UNIT_SAILOR_OID = "3e4d2a1c-0f6b-4b8e-9d57-6c1f0a2b7e93";
+
     protected static final String UNIT_WORKER = "worker";
     protected static final String UNIT_SLEEPER = "sleeper";
     protected static final String UNIT_WALKER = "walker";
     protected static final String UNIT_RIDER = "rider";
+    protected static final String UNIT_SAILOR = "sailor";
 
     private static final XMLGregorianCalendar ROLE_SLEEPER_AUTOASSIGN_VALID_TO =
             XmlTypeConverter.createXMLGregorianCalendar(2222, 1, 2, 3, 4, 5);
@@ -67,12 +71,16 @@ public class TestAutoassign extends AbstractRbacTest {
         repoAddObjectFromFile(ROLE_UNIT_SLEEPER_FILE, RoleType.class, initResult);
         repoAddObjectFromFile(ROLE_UNIT_WALKER_FILE, RoleType.class, initResult);
         repoAddObjectFromFile(ROLE_UNIT_RIDER_FILE, RoleType.class, initResult);
+        repoAddObjectFromFile(ROLE_UNIT_SAILOR_FILE, RoleType.class, initResult);
 
         repoAddObjectFromFile(ARCHETYPE_EMPLOYEE_FILE, ArchetypeType.class, initResult);
 
         modifyObjectReplaceProperty(SystemConfigurationType.class, SystemObjectsType.SYSTEM_CONFIGURATION.value(),
                 ItemPath.create(SystemConfigurationType.F_ROLE_MANAGEMENT, RoleManagementConfigurationType.F_AUTOASSIGN_ENABLED),
                 initTask, initResult, Boolean.TRUE);
+        modifyObjectReplaceProperty(SystemConfigurationType.class, SystemObjectsType.SYSTEM_CONFIGURATION.value(),
+                ItemPath.create(SystemConfigurationType.F_INTERNALS, InternalsConfigurationType.F_INCREMENTAL_AUTOASSIGN_RULE_EVALUATION),
+                initTask, initResult, Boolean.TRUE);
     }
 
     /**
@@ -360,6 +368,103 @@ public class TestAutoassign extends AbstractRbacTest {
     }
 
 
+    /**
+     * Change of an item not read by any autoassign mapping. Autoassigned roles must stay.
+     */
+    @Test
+    public void test210modifyDescriptionGuybrush() throws Exception {
+        //GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        //WHEN
+        modifyUserReplace(USER_GUYBRUSH_OID, UserType.F_DESCRIPTION, task, result, "Mighty pirate");
+
+        //THEN
+        assertSuccess(result);
+        assertUserAfter(USER_GUYBRUSH_OID)
+                .assignments()
+                    .assertAssignments(2)
+                        .assertArchetype(ARCHETYPE_EMPLOYEE_OID)
+                        .assertRole(ROLE_UNIT_SLEEPER_OID)
+                    .end()
+                .links()
+                    .single();
+    }
+
+    /**
+     * Autoassign rules are compiled once. Here we check they are invalidated when a role changes.
+     */
+    @Test
+    public void test220disableAutoassignWorkerAndAddUnitWorkerGuybrush() throws Exception {
+        //GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        modifyObjectReplaceProperty(RoleType.class, ROLE_UNIT_WORKER_OID,
+                ItemPath.create(RoleType.F_AUTOASSIGN, AutoassignSpecificationType.F_ENABLED), task, result, false);
+
+        //WHEN
+        modifyUserAdd(USER_GUYBRUSH_OID, UserType.F_ORGANIZATIONAL_UNIT, task, result, createPolyString(UNIT_WORKER));
+
+        //THEN
+        assertSuccess(result);
+        assertUserAfter(USER_GUYBRUSH_OID)
+                .assignments()
+                    .assertAssignments(2)
+                        .assertArchetype(ARCHETYPE_EMPLOYEE_OID)
+                        .assertRole(ROLE_UNIT_SLEEPER_OID)
+                        .assertNoRole(ROLE_UNIT_WORKER_OID)
+                    .end();
+    }
+
+    /**
+     * Autoassign rule with a condition reading the focus directly (not via declared sources).
+     * The unit alone is not enough.
+     */
+    @Test
+    public void test230addUnitSailorGuybrush() throws Exception {
+        //GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        //WHEN
+        modifyUserAdd(USER_GUYBRUSH_OID, UserType.F_ORGANIZATIONAL_UNIT, task, result, createPolyString(UNIT_SAILOR));
+
+        //THEN
+        assertSuccess(result);
+        assertUserAfter(USER_GUYBRUSH_OID)
+                .assignments()
+                    .assertAssignments(2)
+                        .assertRole(ROLE_UNIT_SLEEPER_OID)
+                        .assertNoRole(ROLE_UNIT_SAILOR_OID)
+                    .end();
+    }
+
+    /**
+     * Cost center is not a declared source of the sailor rule, but its condition reads it from the focus.
+     * So the rule must not be skipped when only the cost center changes.
+     */
+    @Test
+    public void test231modifyCostCenterGuybrush() throws Exception {
+        //GIVEN
+        Task task = getTestTask();
+        OperationResult result = task.getResult();
+
+        //WHEN
+        modifyUserReplace(USER_GUYBRUSH_OID, UserType.F_COST_CENTER, task, result, "ship");
+
+        //THEN
+        assertSuccess(result);
+        assertUserAfter(USER_GUYBRUSH_OID)
+                .assignments()
+                    .assertAssignments(3)
+                        .assertArchetype(ARCHETYPE_EMPLOYEE_OID)
+                        .assertRole(ROLE_UNIT_SLEEPER_OID)
+                        .assertRole(ROLE_UNIT_SAILOR_OID)
+                    .end();
+    }
+
     // TODO: org and relation
 
     // TODO: combine autoassign with object template role assign
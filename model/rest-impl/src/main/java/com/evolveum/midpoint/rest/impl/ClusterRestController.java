@@ -23,6 +23,7 @@ import com.evolveum.midpoint.TerminateSessionEvent;
 import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
 import com.evolveum.midpoint.model.api.ModelPublicConstants;
 import com.evolveum.midpoint.model.api.authentication.GuiProfiledPrincipalManager;
+import com.evolveum.midpoint.model.impl.ClusterCacheInvalidationBroadcaster;
 import com.evolveum.midpoint.model.impl.ClusterServiceConsts;
 import com.evolveum.midpoint.model.impl.security.NodeAuthenticationToken;
 import com.evolveum.midpoint.repo.api.CacheDispatcher;
@@ -31,6 +32,7 @@ import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.task.api.TaskConstants;
 import com.evolveum.midpoint.util.exception.SecurityViolationException;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.CacheInvalidationEventBatchType;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.TerminateSessionEventType;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.UserSessionManagementListType;
 import com.evolveum.midpoint.xml.ns._public.common.api_types_3.UserSessionManagementType;
@@ -53,6 +55,7 @@ public class ClusterRestController extends AbstractRestController {
     public static final String CLASS_DOT = ClusterRestController.class.getName() + ".";
 
     private static final String OPERATION_EXECUTE_CLUSTER_CACHE_INVALIDATION_EVENT = CLASS_DOT + "executeClusterCacheInvalidationEvent";
+    private static final String OPERATION_EXECUTE_CLUSTER_CACHE_INVALIDATION_EVENT_BATCH = CLASS_DOT + "executeClusterCacheInvalidationEventBatch";
     private static final String OPERATION_EXECUTE_CLUSTER_TERMINATE_SESSION_EVENT = CLASS_DOT + "executeClusterTerminateSessionEvent";
     private static final String OPERATION_GET_LOCAL_SCHEDULER_INFORMATION = CLASS_DOT + "getLocalSchedulerInformation";
     private static final String OPERATION_STOP_LOCAL_SCHEDULER = CLASS_DOT + "stopLocalScheduler";
@@ -68,6 +71,7 @@ public class ClusterRestController extends AbstractRestController {
     @Autowired private GuiProfiledPrincipalManager focusProfileService;
 
     @Autowired private CacheDispatcher cacheDispatcher;
+    @Autowired private ClusterCacheInvalidationBroadcaster cacheInvalidationBroadcaster;
 
     public ClusterRestController() {
         // nothing to do
@@ -104,6 +108,27 @@ public class ClusterRestController extends AbstractRestController {
         return response;
     }
 
+    @PostMapping(ClusterServiceConsts.EVENT_INVALIDATION_BATCH)
+    public ResponseEntity<?> executeClusterCacheInvalidationEventBatch(
+            @RequestBody CacheInvalidationEventBatchType batch) {
+        Task task = initRequest();
+        OperationResult result = createSubresult(task, OPERATION_EXECUTE_CLUSTER_CACHE_INVALIDATION_EVENT_BATCH);
+
+        ResponseEntity<?> response;
+        try {
+            checkNodeAuthentication();
+
+            cacheInvalidationBroadcaster.processReceivedBatch(batch);
+
+            result.recordSuccess();
+            response = createResponse(HttpStatus.OK, result);
+        } catch (Throwable t) {
+            response = handleException(result, t);
+        }
+        finishRequest();
+        return response;
+    }
+
     @PostMapping(ClusterServiceConsts.EVENT_TERMINATE_SESSION)
     public ResponseEntity<?> executeClusterTerminateSessionEvent(
             @RequestBody TerminateSessionEventType event) {
@@ -28,4 +28,13 @@ public interface ChangeNotificationDispatcher extends ResourceObjectChangeListen
     void unregisterNotificationListener(ResourceObjectChangeListener listener);
     void unregisterNotificationListener(ResourceOperationListener listener);
     void unregisterNotificationListener(ResourceEventListener listener);
+
+    /**
+     * Starts deferring resource operation notifications (success, failure, in progress) issued in the current thread.
+     * They are relayed to the listeners only when {@link DeferredOperationNotifications#deliver()} is called.
+     *
+     * This is used when operations are executed in parallel threads, so the listeners can get the notifications
+     * in a deterministic order.
+     */
+    DeferredOperationNotifications deferOperationNotifications();
 }
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.provisioning.api;
+
+/**
+ * Resource operation notifications that were deferred, to be delivered later.
+ *
+ * @see ChangeNotificationDispatcher#deferOperationNotifications()
+ */
+public interface DeferredOperationNotifications {
+
+    /**
+     * Stops deferring the notifications. Must be called in the thread that started the deferring.
+     */
+    void stop();
+
+    /**
+     * Relays the deferred notifications to the listeners, in the order they were issued.
+     * Can be called in any thread, but only after deferring was stopped.
+     */
+    void deliver();
+}
@@ -13,6 +13,7 @@ import org.apache.commons.lang.Validate;
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.provisioning.api.ChangeNotificationDispatcher;
+import com.evolveum.midpoint.provisioning.api.DeferredOperationNotifications;
 import com.evolveum.midpoint.provisioning.api.GenericConnectorException;
 import com.evolveum.midpoint.provisioning.api.ResourceEventDescription;
 import com.evolveum.midpoint.provisioning.api.ResourceEventListener;
@@ -56,6 +57,9 @@ public class ChangeNotificationDispatcherImpl implements ChangeNotificationDispa
     private List<ResourceOperationListener> operationListeners = new ArrayList<>();
     private List<ResourceEventListener> eventListeners = new ArrayList<>();
 
+    /** Operation notifications deferred in the current thread, if any. */
+    private final ThreadLocal<DeferredOperationNotificationsImpl> deferredOperationNotifications = new ThreadLocal<>();
+
     private static final Trace LOGGER = TraceManager.getTrace(ChangeNotificationDispatcherImpl.class);
 
     public boolean isFilterProtectedObjects() {
@@ -185,6 +189,13 @@ public class ChangeNotificationDispatcherImpl implements ChangeNotificationDispa
     public void notifyFailure(ResourceOperationDescription failureDescription, Task task, OperationResult parentResult) {
         Validate.notNull(failureDescription, "Operation description of resource object shadow must not be null.");
 
+        DeferredOperationNotificationsImpl deferred = deferredOperationNotifications.get();
+        if (deferred != null) {
+            LOGGER.trace("Deferring resource operation failure notification");
+            deferred.add(() -> notifyFailure(failureDescription, task, parentResult));
+            return;
+        }
+
         LOGGER.trace("Resource operation failure notification\n{} ", failureDescription.debugDumpLazily());
 
         failureDescription.checkConsistence();
@@ -210,6 +221,13 @@ public class ChangeNotificationDispatcherImpl implements ChangeNotificationDispa
     public void notifySuccess(ResourceOperationDescription successDescription, Task task, OperationResult parentResult) {
         Validate.notNull(successDescription, "Operation description of resource object shadow must not be null.");
 
+        DeferredOperationNotificationsImpl deferred = deferredOperationNotifications.get();
+        if (deferred != null) {
+            LOGGER.trace("Deferring resource operation success notification");
+            deferred.add(() -> notifySuccess(successDescription, task, parentResult));
+            return;
+        }
+
         LOGGER.trace("Resource operation success notification\n{} ", successDescription.debugDumpLazily());
 
         successDescription.checkConsistence();
@@ -236,6 +254,13 @@ public class ChangeNotificationDispatcherImpl implements ChangeNotificationDispa
             Task task, OperationResult parentResult) {
         Validate.notNull(inProgressDescription, "Operation description of resource object shadow must not be null.");
 
+        DeferredOperationNotificationsImpl deferred = deferredOperationNotifications.get();
+        if (deferred != null) {
+            LOGGER.trace("Deferring resource operation in-progress notification");
+            deferred.add(() -> notifyInProgress(inProgressDescription, task, parentResult));
+            return;
+        }
+
         LOGGER.trace("Resource operation in-progress notification\n{} ", inProgressDescription.debugDumpLazily());
 
         inProgressDescription.checkConsistence();
@@ -296,4 +321,41 @@ public class ChangeNotificationDispatcherImpl implements ChangeNotificationDispa
             LOGGER.warn("Event notification received but listener list is empty, there is nobody to get the message");
         }
     }
+
+    @Override
+    public DeferredOperationNotifications deferOperationNotifications() {
+        if (deferredOperationNotifications.get() != null) {
+            throw new IllegalStateException("Operation notifications are already being deferred in this thread");
+        }
+        DeferredOperationNotificationsImpl deferred = new DeferredOperationNotificationsImpl();
+        deferredOperationNotifications.set(deferred);
+        return deferred;
+    }
+
+    private class DeferredOperationNotificationsImpl implements DeferredOperationNotifications {
+
+        private final List<Runnable> notifications = new ArrayList<>();
+        private volatile boolean stopped;
+
+        private void add(Runnable notification) {
+            notifications.add(notification);
+        }
+
+        @Override
+        public void stop() {
+            if (deferredOperationNotifications.get() == this) {
+                deferredOperationNotifications.remove();
+            }
+            stopped = true;
+        }
+
+        @Override
+        public void deliver() {
+            if (!stopped) {
+                throw new IllegalStateException("Deferring of operation notifications was not stopped");
+            }
+            notifications.forEach(Runnable::run);
+            notifications.clear();
+        }
+    }
 }
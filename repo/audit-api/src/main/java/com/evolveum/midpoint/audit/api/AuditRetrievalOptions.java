@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+package com.evolveum.midpoint.audit.api;
+
+import java.io.Serializable;
+
+/**
+ * Tells what parts of audit records should be retrieved when iterating over them, and how.
+ *
+ * The defaults give the same records as {@link AuditService#listRecords(String, java.util.Map,
+ * com.evolveum.midpoint.schema.result.OperationResult)}. Leaving out deltas and full resolution
+ * of referenced objects makes iteration over large number of records substantially cheaper.
+ */
+public class AuditRetrievalOptions implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * How objects referenced by the record (initiator, attorney, target, target owner) are provided.
+     */
+    public enum ObjectResolution {
+
+        /** Full objects are fetched from the repository (if they exist). */
+        FULL,
+
+        /** Only current names of the objects are fetched from the repository; other data are not available. */
+        NAME_ONLY,
+
+        /** No repository access; only the names stored in the audit record are used. */
+        NONE
+    }
+
+    private boolean retrieveDeltas = true;
+    private boolean retrieveDetails = true;
+    private ObjectResolution objectResolution = ObjectResolution.FULL;
+    private Integer fetchSize;
+
+    public static AuditRetrievalOptions create() {
+        return new AuditRetrievalOptions();
+    }
+
+    /**
+     * Options for iterating over large number of records: no deltas, objects not resolved.
+     */
+    public static AuditRetrievalOptions createLightweight() {
+        return new AuditRetrievalOptions()
+                .retrieveDeltas(false)
+                .objectResolution(ObjectResolution.NONE);
+    }
+
+    /**
+     * Should object deltas (including their execution results) be retrieved and parsed?
+     */
+    public boolean isRetrieveDeltas() {
+        return retrieveDeltas;
+    }
+
+    public AuditRetrievalOptions retrieveDeltas(boolean value) {
+        this.retrieveDeltas = value;
+        return this;
+    }
+
+    /**
+     * Should property values, reference values and resource OIDs be retrieved?
+     */
+    public boolean isRetrieveDetails() {
+        return retrieveDetails;
+    }
+
+    public AuditRetrievalOptions retrieveDetails(boolean value) {
+        this.retrieveDetails = value;
+        return this;
+    }
+
+    public ObjectResolution getObjectResolution() {
+        return objectResolution;
+    }
+
+    public AuditRetrievalOptions objectResolution(ObjectResolution value) {
+        this.objectResolution = value;
+        return this;
+    }
+
+    /**
+     * Number of records the database driver should fetch at once. Null means the default of the implementation.
+     */
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
+    public AuditRetrievalOptions fetchSize(Integer value) {
+        this.fetchSize = value;
+        return this;
+    }
+
+    public static boolean isRetrieveDeltas(AuditRetrievalOptions options) {
+        return options == null || options.isRetrieveDeltas();
+    }
+
+    public static boolean isRetrieveDetails(AuditRetrievalOptions options) {
+        return options == null || options.isRetrieveDetails();
+    }
+
+    public static ObjectResolution getObjectResolution(AuditRetrievalOptions options) {
+        return options != null && options.getObjectResolution() != null ? options.getObjectResolution() : ObjectResolution.FULL;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditRetrievalOptions(" +
+                "retrieveDeltas=" + retrieveDeltas +
+                ", retrieveDetails=" + retrieveDetails +
+                ", objectResolution=" + objectResolution +
+                ", fetchSize=" + fetchSize +
+                ')';
+    }
+}
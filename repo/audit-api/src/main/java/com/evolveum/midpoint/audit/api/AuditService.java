@@ -38,6 +38,17 @@ public interface AuditService {
 
     void listRecordsIterative(String query, Map<String, Object> params, AuditResultHandler auditResultHandler, OperationResult result);
 
+    /**
+     * Iterates over audit records, retrieving only their parts requested by the options. Records are passed
+     * to the handler as they are read, so this is the method of choice for processing large number of records.
+     *
+     * Implementations not supporting the options may ignore them.
+     */
+    default void listRecordsIterative(String query, Map<String, Object> params, AuditRetrievalOptions options,
+            AuditResultHandler auditResultHandler, OperationResult result) {
+        listRecordsIterative(query, params, auditResultHandler, result);
+    }
+
     /**
      * Reindex items, e.g. if new columns were created for audit table according to which the search should be possible
      */
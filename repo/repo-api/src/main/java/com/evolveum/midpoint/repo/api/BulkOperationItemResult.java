@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.api;
+
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Result of processing a single item of a bulk repository operation, i.e.
+ * {@link RepositoryService#addObjects} or {@link RepositoryService#modifyObjects}.
+ *
+ * A failure of one item does not abort the processing of other items: the exception is
+ * stored here instead of being thrown.
+ *
+ * EXPERIMENTAL
+ */
+public class BulkOperationItemResult {
+
+    private final String oid;
+    private final ModifyObjectResult<? extends ObjectType> modifyObjectResult;
+    private final Throwable exception;
+
+    private BulkOperationItemResult(String oid, ModifyObjectResult<? extends ObjectType> modifyObjectResult,
+            Throwable exception) {
+        this.oid = oid;
+        this.modifyObjectResult = modifyObjectResult;
+        this.exception = exception;
+    }
+
+    public static BulkOperationItemResult added(String oid) {
+        return new BulkOperationItemResult(oid, null, null);
+    }
+
+    public static BulkOperationItemResult modified(String oid, ModifyObjectResult<? extends ObjectType> modifyObjectResult) {
+        return new BulkOperationItemResult(oid, modifyObjectResult, null);
+    }
+
+    public static BulkOperationItemResult failed(String oid, Throwable exception) {
+        return new BulkOperationItemResult(oid, null, exception);
+    }
+
+    /**
+     * OID of the object added or modified. For failed additions it is the OID provided by the caller (if any).
+     */
+    public String getOid() {
+        return oid;
+    }
+
+    /**
+     * Information about the modification (for modifyObjects only); needed by repository caching algorithms.
+     */
+    public ModifyObjectResult<? extends ObjectType> getModifyObjectResult() {
+        return modifyObjectResult;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOperationItemResult{" +
+                "oid='" + oid + '\'' +
+                (exception != null ? ", exception=" + exception : "") +
+                '}';
+    }
+}
@@ -20,7 +20,10 @@ import java.util.Collection;
  *
  *  Note that objectBefore and objectAfter might be null if the object XML representation was not changed.
  *  It is currently the case for lookup tables (when rows are modified) and certification campaigns (when cases are modified).
- *  In all other cases these are non-null.
+ *
+ *  If only externally stored items are modified, the repository does not parse the whole object. Then objectBefore
+ *  and objectAfter contain only the modified items (plus OID and version), see {@link #isModifiedItemsOnly()}.
+ *  In all other cases these are full objects.
  *
  *  EXPERIMENTAL. We will probably drop objectBefore and modifications.
  */
@@ -29,15 +32,22 @@ public class ModifyObjectResult<T extends ObjectType> {
     private final PrismObject<T> objectBefore;
     private final PrismObject<T> objectAfter;
     private final Collection<? extends ItemDelta> modifications;
+    private final boolean modifiedItemsOnly;
 
     public ModifyObjectResult(Collection<? extends ItemDelta> modifications) {
         this(null, null, modifications);
     }
 
     public ModifyObjectResult(PrismObject<T> objectBefore, PrismObject<T> objectAfter, Collection<? extends ItemDelta> modifications) {
+        this(objectBefore, objectAfter, modifications, false);
+    }
+
+    public ModifyObjectResult(PrismObject<T> objectBefore, PrismObject<T> objectAfter, Collection<? extends ItemDelta> modifications,
+            boolean modifiedItemsOnly) {
         this.objectBefore = objectBefore;
         this.objectAfter = objectAfter;
         this.modifications = modifications;
+        this.modifiedItemsOnly = modifiedItemsOnly;
     }
 
     public PrismObject<T> getObjectBefore() {
@@ -48,12 +58,26 @@ public class ModifyObjectResult<T extends ObjectType> {
         return objectAfter;
     }
 
+    public Collection<? extends ItemDelta> getModifications() {
+        return modifications;
+    }
+
+    /**
+     * True if nothing but the items touched by the modifications was changed, and objectBefore and objectAfter
+     * (if present) contain only these items. So the object matches a filter that refers to none of them after
+     * the change if and only if it matched it before.
+     */
+    public boolean isModifiedItemsOnly() {
+        return modifiedItemsOnly;
+    }
+
     @Override
     public String toString() {
         return "ModifyObjectResult{" +
                 "objectBefore=" + objectBefore +
                 ", objectAfter=" + objectAfter +
                 ", modifications=" + modifications +
+                ", modifiedItemsOnly=" + modifiedItemsOnly +
                 '}';
     }
 
@@ -7,12 +7,14 @@
 package com.evolveum.midpoint.repo.api;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
 import com.evolveum.midpoint.repo.api.query.ObjectFilterExpressionEvaluator;
@@ -108,12 +110,15 @@ public interface RepositoryService {
 
     String CLASS_NAME_WITH_DOT = RepositoryService.class.getName() + ".";
     String GET_OBJECT = CLASS_NAME_WITH_DOT + "getObject";
+    String GET_OBJECTS = CLASS_NAME_WITH_DOT + "getObjects";
     String ADD_OBJECT = CLASS_NAME_WITH_DOT + "addObject";
+    String ADD_OBJECTS = CLASS_NAME_WITH_DOT + "addObjects";
     String DELETE_OBJECT = CLASS_NAME_WITH_DOT + "deleteObject";
     String SEARCH_OBJECTS = CLASS_NAME_WITH_DOT + "searchObjects";
     String SEARCH_CONTAINERS = CLASS_NAME_WITH_DOT + "searchContainers";
     String COUNT_CONTAINERS = CLASS_NAME_WITH_DOT + "countContainers";
     String MODIFY_OBJECT = CLASS_NAME_WITH_DOT + "modifyObject";
+    String MODIFY_OBJECTS = CLASS_NAME_WITH_DOT + "modifyObjects";
     String COUNT_OBJECTS = CLASS_NAME_WITH_DOT + "countObjects";
     String GET_VERSION = CLASS_NAME_WITH_DOT + "getVersion";
     String SEARCH_OBJECTS_ITERATIVE = CLASS_NAME_WITH_DOT + "searchObjectsIterative";
@@ -128,19 +133,24 @@ public interface RepositoryService {
     String KEY_ORIGINAL_OBJECT = "repositoryOriginalObject";
 
     String OP_ADD_OBJECT = "addObject";
+    String OP_ADD_OBJECTS = "addObjects";
     String OP_DELETE_OBJECT = "deleteObject";
     String OP_COUNT_OBJECTS = "countObjects";
     String OP_MODIFY_OBJECT = "modifyObject";
+    String OP_MODIFY_OBJECTS = "modifyObjects";
     String OP_GET_VERSION = "getVersion";
     String OP_IS_ANY_SUBORDINATE = "isAnySubordinate";
     String OP_ADVANCE_SEQUENCE = "advanceSequence";
     String OP_RETURN_UNUSED_VALUES_TO_SEQUENCE = "returnUnusedValuesToSequence";
     String OP_EXECUTE_QUERY_DIAGNOSTICS = "executeQueryDiagnostics";
     String OP_GET_OBJECT = "getObject";
+    String OP_GET_OBJECTS = "getObjects";
     String OP_SEARCH_SHADOW_OWNER = "searchShadowOwner";
     String OP_SEARCH_OBJECTS = "searchObjects";
     String OP_SEARCH_OBJECTS_ITERATIVE = "searchObjectsIterative";
+    String OP_SEARCH_OBJECTS_ITERATIVE_PAGE = "searchObjectsIterativePage";
     String OP_FETCH_EXT_ITEMS = "fetchExtItems";
+    String OP_FETCH_EXT_ITEM = "fetchExtItem";
 
     /**
      * Returns object for provided OID.
@@ -158,6 +168,23 @@ public interface RepositoryService {
             OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException;
 
+    /**
+     * Returns objects for provided OIDs, fetched in as few round-trips as possible.
+     * <p>
+     * Unlike {@link #getObject(Class, String, Collection, OperationResult)}, this method does not fail
+     * if some of the objects do not exist: they are simply missing from the returned list. The same holds for objects
+     * that are not of the requested type.
+     * The order of returned objects follows the order of the OIDs; duplicate OIDs are returned once.
+     *
+     * @param oids OIDs of the objects to get
+     * @param parentResult parent OperationResult (in/out)
+     * @return Objects fetched from repository
+     * @throws SchemaException error dealing with storage schema
+     */
+    @NotNull <O extends ObjectType> SearchResultList<PrismObject<O>> getObjects(Class<O> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
+            throws SchemaException;
+
 //    <T extends ObjectType> PrismObject<T> getContainerValue(Class<T> type, String oid, long id,
 //                                                            Collection<SelectorOptions<GetOperationOptions>> options,
 //                                                            OperationResult parentResult)
@@ -218,6 +245,21 @@ public interface RepositoryService {
     <T extends ObjectType> String addObject(PrismObject<T> object, RepoAddOptions options, OperationResult parentResult)
             throws ObjectAlreadyExistsException, SchemaException;
 
+    /**
+     * Adds a list of new objects, sharing database transactions among them as much as possible.
+     * It is meant for mass operations like initial imports.
+     * <p>
+     * Semantics of each item is the same as of {@link #addObject(PrismObject, RepoAddOptions, OperationResult)}
+     * but the failure of one item does not abort processing of the other ones: the exception is recorded
+     * in the respective item result. The operation is atomic only with respect to individual objects.
+     *
+     * @param objects objects to create
+     * @param parentResult parent OperationResult (in/out)
+     * @return results for individual objects, in the order of the input list
+     */
+    @NotNull List<BulkOperationItemResult> addObjects(@NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            RepoAddOptions options, OperationResult parentResult);
+
     /**
      * <p>Search for objects in the repository.</p>
      * <p>If no search criteria specified, list of all objects of specified type is returned.</p>
@@ -278,7 +320,7 @@ public interface RepositoryService {
      * <p>
      * A note related to iteration method:
      * <p>
-     * There are three iteration methods (see IterationMethodType):
+     * There are these iteration methods (see IterationMethodType):
      * - SINGLE_TRANSACTION: Fetches objects in single DB transaction. Not supported for all DBMSs.
      * - SIMPLE_PAGING: Uses the "simple paging" method: takes objects (e.g.) numbered 0 to 49, then 50 to 99,
      * then 100 to 149, and so on. The disadvantage is that if the order of objects is changed
@@ -287,14 +329,18 @@ public interface RepositoryService {
      * - STRICTLY_SEQUENTIAL_PAGING: Uses the "strictly sequential paging" method: sorting returned objects by OID. This
      * is (almost) reliable in such a way that no object would be skipped. However, custom
      * paging cannot be used in this mode.
+     * - KEYSET_PAGING: Sorts returned objects by custom ordering (if any) and OID, and starts each page right after
+     * the last object of the previous one. It is as reliable as STRICTLY_SEQUENTIAL_PAGING, but custom ordering
+     * (not offset) can be used. Ordering items must be present in all objects (name or mandatory single-valued items).
      * <p>
      * If GetOperationOptions.iterationMethod is specified, it is used without any further considerations.
      * Otherwise, the repository configuration determines whether to use SINGLE_TRANSACTION or a paging. In the latter case,
      * strictlySequential flag determines between SIMPLE_PAGING (if false) and STRICTLY_SEQUENTIAL_PAGING (if true).
      * <p>
      * If explicit GetOperationOptions.iterationMethod is not provided, and paging is prescribed, and strictlySequential flag
-     * is true and client-provided paging conflicts with the paging used by the iteration method, a warning is issued, and
-     * iteration method is switched to SIMPLE_PAGING.
+     * is true and client-provided paging contains ordering by items present in all objects (but no offset), KEYSET_PAGING
+     * is used. If the client-provided paging conflicts with the paging used by the iteration method in other ways,
+     * a warning is issued, and iteration method is switched to SIMPLE_PAGING.
      * <p>
      * Sources of conflicts:
      * - ordering is specified
@@ -369,6 +415,20 @@ public interface RepositoryService {
             ModificationPrecondition<T> precondition, RepoModifyOptions options, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException;
 
+    /**
+     * Applies a list of object deltas (of MODIFY type), sharing database transactions among them as much as possible.
+     * <p>
+     * Semantics of each item is the same as of {@link #modifyObject(Class, String, Collection, RepoModifyOptions, OperationResult)}
+     * but the failure of one item does not abort processing of the other ones: the exception is recorded
+     * in the respective item result. The operation is atomic only with respect to individual objects.
+     *
+     * @param deltas MODIFY deltas to be applied; each must have type and OID set
+     * @param parentResult parent OperationResult (in/out)
+     * @return results for individual deltas, in the order of the input list
+     */
+    @NotNull List<BulkOperationItemResult> modifyObjects(@NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            RepoModifyOptions options, OperationResult parentResult);
+
     /**
      * <p>Deletes object with specified OID.</p>
      * <p>
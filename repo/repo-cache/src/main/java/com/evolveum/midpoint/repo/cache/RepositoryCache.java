@@ -14,6 +14,7 @@ import javax.annotation.PreDestroy;
 
 import com.evolveum.midpoint.repo.cache.global.GlobalObjectCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalQueryCache;
+import com.evolveum.midpoint.repo.cache.global.GlobalNegativeCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalVersionCache;
 import com.evolveum.midpoint.repo.cache.handlers.*;
 import com.evolveum.midpoint.repo.cache.local.LocalRepoCacheCollection;
@@ -28,6 +29,7 @@ import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
@@ -58,6 +60,7 @@ public class RepositoryCache implements RepositoryService, Cacheable {
     @Autowired private GlobalQueryCache globalQueryCache;
     @Autowired private GlobalObjectCache globalObjectCache;
     @Autowired private GlobalVersionCache globalVersionCache;
+    @Autowired private GlobalNegativeCache globalNegativeCache;
     @Autowired private LocalRepoCacheCollection localRepoCacheCollection;
 
     // handlers
@@ -96,6 +99,13 @@ public class RepositoryCache implements RepositoryService, Cacheable {
         return getObjectOpHandler.getObject(type, oid, options, parentResult);
     }
 
+    @NotNull
+    @Override
+    public <T extends ObjectType> SearchResultList<PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) throws SchemaException {
+        return getObjectOpHandler.getObjects(type, oids, options, parentResult);
+    }
+
     @Override
     public <T extends ObjectType> String getVersion(Class<T> type, String oid, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
@@ -150,6 +160,13 @@ public class RepositoryCache implements RepositoryService, Cacheable {
         return modificationOpHandler.addObject(object, options, parentResult);
     }
 
+    @NotNull
+    @Override
+    public List<BulkOperationItemResult> addObjects(@NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            RepoAddOptions options, OperationResult parentResult) {
+        return modificationOpHandler.addObjects(objects, options, parentResult);
+    }
+
     @NotNull
     public <T extends ObjectType> ModifyObjectResult<T> modifyObject(Class<T> type, String oid, Collection<? extends ItemDelta> modifications,
             OperationResult parentResult) throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
@@ -176,6 +193,13 @@ public class RepositoryCache implements RepositoryService, Cacheable {
         return modificationOpHandler.modifyObject(type, oid, modifications, precondition, options, parentResult);
     }
 
+    @NotNull
+    @Override
+    public List<BulkOperationItemResult> modifyObjects(@NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            RepoModifyOptions options, OperationResult parentResult) {
+        return modificationOpHandler.modifyObjects(deltas, options, parentResult);
+    }
+
     @NotNull
     @Override
     public <T extends ObjectType> DeleteObjectResult deleteObject(Class<T> type, String oid, OperationResult parentResult)
@@ -347,6 +371,7 @@ public class RepositoryCache implements RepositoryService, Cacheable {
         globalObjectCache.initialize();
         globalVersionCache.initialize();
         globalQueryCache.initialize();
+        globalNegativeCache.initialize();
         cacheRegistry.registerCacheableService(this);
     }
 
@@ -371,6 +396,7 @@ public class RepositoryCache implements RepositoryService, Cacheable {
         rv.addAll(globalObjectCache.getStateInformation());
         rv.addAll(globalVersionCache.getStateInformation());
         rv.addAll(globalQueryCache.getStateInformation());
+        rv.addAll(globalNegativeCache.getStateInformation());
         return rv;
     }
 
@@ -380,6 +406,7 @@ public class RepositoryCache implements RepositoryService, Cacheable {
         globalObjectCache.dumpContent();
         globalVersionCache.dumpContent();
         globalQueryCache.dumpContent();
+        globalNegativeCache.dumpContent();
     }
     //endregion
 
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.global;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Negative result: an object of given type (or any of its subtypes) does not exist, or a shadow has no owner
+ * (in that case the type is ShadowType).
+ */
+class GlobalCacheNegativeValue extends AbstractGlobalCacheValue {
+
+    @NotNull private final Class<?> objectType;
+
+    GlobalCacheNegativeValue(@NotNull Class<?> objectType) {
+        this.objectType = objectType;
+    }
+
+    @NotNull
+    Class<?> getObjectType() {
+        return objectType;
+    }
+
+    @Override
+    public String toString() {
+        return "GlobalCacheNegativeValue{" +
+                "objectType=" + objectType.getSimpleName() +
+                '}';
+    }
+}
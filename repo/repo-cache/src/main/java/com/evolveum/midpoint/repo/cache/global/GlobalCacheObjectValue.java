@@ -21,9 +21,19 @@ public class GlobalCacheObjectValue<T extends ObjectType> extends AbstractGlobal
 
     private volatile long checkVersionTime;
 
+    /** Value stored in the cache, if this one was materialized from a serialized form. */
+    private final GlobalCacheSerializedObjectValue storedValue;
+
     public GlobalCacheObjectValue(@NotNull PrismObject<T> object, long checkVersionTime) {
         this.object = object;
         this.checkVersionTime = checkVersionTime;
+        this.storedValue = null;
+    }
+
+    GlobalCacheObjectValue(@NotNull PrismObject<T> object, @NotNull GlobalCacheSerializedObjectValue storedValue) {
+        this.object = object;
+        this.checkVersionTime = storedValue.getCheckVersionTime();
+        this.storedValue = storedValue;
     }
 
     String getObjectOid() {
@@ -43,8 +53,15 @@ public class GlobalCacheObjectValue<T extends ObjectType> extends AbstractGlobal
         return object;      // cloning is done in RepositoryCache
     }
 
+    long getCheckVersionTime() {
+        return checkVersionTime;
+    }
+
     public void setCheckVersionTime(long checkVersionTime) {
         this.checkVersionTime = checkVersionTime;
+        if (storedValue != null) {
+            storedValue.setCheckVersionTime(checkVersionTime);
+        }
     }
 
     public boolean shouldCheckVersion() {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.global;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Object stored in the global object cache in a serialized form: JSON compressed by deflate.
+ * The data are kept either in a heap byte array or in a direct (off-heap) buffer.
+ *
+ * Version check time is kept here (and not in the serialized data), because it is updated while the object
+ * is in the cache.
+ */
+class GlobalCacheSerializedObjectValue extends AbstractGlobalCacheValue {
+
+    /** Size of chunks in which off-heap data are passed to the inflater. */
+    private static final int INPUT_CHUNK_SIZE = 8192;
+
+    @NotNull private final Class<? extends ObjectType> objectType;
+    @NotNull private final String objectOid;
+    private final String objectVersion;
+
+    /** Compressed JSON form of the object. Read only via duplicates, so it can be shared by threads. */
+    @NotNull private final ByteBuffer data;
+
+    /** Length of uncompressed data; to size the buffer when inflating. */
+    private final int uncompressedLength;
+
+    private volatile long checkVersionTime;
+
+    private GlobalCacheSerializedObjectValue(@NotNull Class<? extends ObjectType> objectType, @NotNull String objectOid,
+            String objectVersion, @NotNull ByteBuffer data, int uncompressedLength, long checkVersionTime) {
+        this.objectType = objectType;
+        this.objectOid = objectOid;
+        this.objectVersion = objectVersion;
+        this.data = data;
+        this.uncompressedLength = uncompressedLength;
+        this.checkVersionTime = checkVersionTime;
+    }
+
+    static GlobalCacheSerializedObjectValue create(@NotNull PrismObject<? extends ObjectType> object, long checkVersionTime,
+            boolean offHeap, @NotNull PrismContext prismContext) throws SchemaException {
+        byte[] serialized = prismContext.jsonSerializer().serialize(object).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(serialized);
+        ByteBuffer buffer;
+        if (offHeap) {
+            buffer = ByteBuffer.allocateDirect(compressed.length);
+            buffer.put(compressed);
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(compressed);
+        }
+        return new GlobalCacheSerializedObjectValue(object.getCompileTimeClass(), object.getOid(), object.getVersion(),
+                buffer, serialized.length, checkVersionTime);
+    }
+
+    /**
+     * Parses the stored data into a new object. The object is frozen.
+     */
+    @NotNull
+    <T extends ObjectType> PrismObject<T> materialize(@NotNull PrismContext prismContext) throws SchemaException {
+        String serialized = new String(decompress(), StandardCharsets.UTF_8);
+        PrismObject<T> object = prismContext.parserFor(serialized).json().parse();
+        object.freeze();
+        return object;
+    }
+
+    @NotNull
+    Class<? extends ObjectType> getObjectType() {
+        return objectType;
+    }
+
+    @NotNull
+    String getObjectOid() {
+        return objectOid;
+    }
+
+    String getObjectVersion() {
+        return objectVersion;
+    }
+
+    long getCheckVersionTime() {
+        return checkVersionTime;
+    }
+
+    void setCheckVersionTime(long checkVersionTime) {
+        this.checkVersionTime = checkVersionTime;
+    }
+
+    /**
+     * Size of the stored data in bytes. (Used as a weight for eviction.)
+     */
+    int getSize() {
+        return data.capacity();
+    }
+
+    boolean isOffHeap() {
+        return data.isDirect();
+    }
+
+    private static byte[] compress(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Inflates the data. Off-heap data are fed to the inflater in small chunks, so the hit does not copy
+     * the whole buffer to the heap. (Java 8 inflater accepts byte arrays only.)
+     */
+    private byte[] decompress() throws SchemaException {
+        ByteBuffer input = data.duplicate(); // own position and limit, so concurrent readers do not interfere
+        byte[] chunk;
+        Inflater inflater = new Inflater();
+        try {
+            if (input.hasArray()) {
+                inflater.setInput(input.array(), input.arrayOffset(), input.remaining());
+                input.position(input.limit());
+                chunk = null;
+            } else {
+                chunk = new byte[Math.min(INPUT_CHUNK_SIZE, input.remaining())];
+            }
+            byte[] output = new byte[uncompressedLength];
+            int length = 0;
+            while (length < uncompressedLength && !inflater.finished()) {
+                if (inflater.needsInput() && input.hasRemaining()) {
+                    int chunkLength = Math.min(chunk.length, input.remaining());
+                    input.get(chunk, 0, chunkLength);
+                    inflater.setInput(chunk, 0, chunkLength);
+                }
+                int count = inflater.inflate(output, length, uncompressedLength - length);
+                if (count == 0 && (inflater.needsDictionary() || inflater.needsInput() && !input.hasRemaining())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != uncompressedLength) {
+                throw new SchemaException("Couldn't decompress cached object " + this + ": got " + length
+                        + " bytes instead of " + uncompressedLength);
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new SchemaException("Couldn't decompress cached object " + this + ": " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GlobalCacheSerializedObjectValue{" + "checkVersionTime=" + checkVersionTime + " (" + (checkVersionTime - System.currentTimeMillis()) + " left)"
+                + ", object=" + objectType.getSimpleName() + ":" + objectOid + " (version " + objectVersion + ")"
+                + ", size=" + getSize() + (isOffHeap() ? " off-heap" : "") + "}";
+    }
+}
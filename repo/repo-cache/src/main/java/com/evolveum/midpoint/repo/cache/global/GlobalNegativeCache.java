@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.global;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.PreDestroy;
+
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.schema.cache.CacheType;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
+
+/**
+ * Node-level cache for negative results: objects that were not found (by type and OID) and shadows that have no owner.
+ *
+ * A negative result must not be stored if the object was created (or the shadow was linked) after the repository
+ * was asked. So the callers obtain {@link #getInvalidationCount()} before asking the repository and pass it
+ * to the put methods: the result is stored only if no invalidation came in the meanwhile.
+ */
+@Component
+public class GlobalNegativeCache extends AbstractGlobalCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(GlobalNegativeCache.class);
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(GlobalNegativeCache.class.getName() + ".content");
+
+    private static final String ABSENT_OBJECTS_CACHE_NAME = "negativeObjectCache";
+    private static final String SHADOWS_WITHOUT_OWNER_CACHE_NAME = "negativeShadowOwnerCache";
+
+    private static final long DEFAULT_CAPACITY = 10000;
+
+    /** Type of object that was not found, indexed by OID. (Objects of its subtypes do not exist either.) */
+    private Cache<String, GlobalCacheNegativeValue> absentObjects;
+
+    /** Shadows for which no owner was found. */
+    private Cache<String, GlobalCacheNegativeValue> shadowsWithoutOwner;
+
+    /** Number of invalidations processed. Guarded by this. */
+    private long invalidationCount;
+
+    public void initialize() {
+        if (absentObjects != null) {
+            LOGGER.warn("Global negative cache was already initialized -- ignoring this request.");
+            return;
+        }
+        CacheConfiguration configuration = getConfiguration();
+        long capacity = configuration != null && configuration.getMaxSize() != null ?
+                configuration.getMaxSize() : DEFAULT_CAPACITY;
+        if (configuration == null || capacity == 0) {
+            LOGGER.debug("Global negative cache is not configured or its capacity is 0; it will be disabled (until system restart)");
+        } else {
+            absentObjects = createCache(ABSENT_OBJECTS_CACHE_NAME, capacity);
+            shadowsWithoutOwner = createCache(SHADOWS_WITHOUT_OWNER_CACHE_NAME, capacity);
+            LOGGER.info("Created global repository negative cache with a capacity of {} entries", capacity);
+        }
+    }
+
+    private Cache<String, GlobalCacheNegativeValue> createCache(String name, long capacity) {
+        return new Cache2kBuilder<String, GlobalCacheNegativeValue>() {}
+                .name(name)
+                .entryCapacity(capacity)
+                .expiryPolicy((key, value, loadTime, oldEntry) -> getExpiryTime(value.getObjectType()))
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (absentObjects != null) {
+            absentObjects.close();
+            absentObjects = null;
+        }
+        if (shadowsWithoutOwner != null) {
+            shadowsWithoutOwner.close();
+            shadowsWithoutOwner = null;
+        }
+    }
+
+    public boolean isAvailable() {
+        return absentObjects != null;
+    }
+
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public boolean isAbsent(@NotNull Class<?> type, @NotNull String oid) {
+        if (absentObjects != null) {
+            GlobalCacheNegativeValue value = absentObjects.peek(oid);
+            return value != null && value.getObjectType().isAssignableFrom(type);
+        } else {
+            return false;
+        }
+    }
+
+    public synchronized void putAbsent(@NotNull Class<?> type, @NotNull String oid, long invalidationCountBefore) {
+        if (absentObjects != null && invalidationCount == invalidationCountBefore) {
+            LOGGER.trace("Putting absent object {}:{} into cache", type.getSimpleName(), oid);
+            absentObjects.put(oid, new GlobalCacheNegativeValue(type));
+        }
+    }
+
+    public boolean isWithoutOwner(@NotNull String shadowOid) {
+        return shadowsWithoutOwner != null && shadowsWithoutOwner.containsKey(shadowOid);
+    }
+
+    public synchronized void putWithoutOwner(@NotNull String shadowOid, long invalidationCountBefore) {
+        if (shadowsWithoutOwner != null && invalidationCount == invalidationCountBefore) {
+            LOGGER.trace("Putting shadow without owner {} into cache", shadowOid);
+            shadowsWithoutOwner.put(shadowOid, new GlobalCacheNegativeValue(ShadowType.class));
+        }
+    }
+
+    /**
+     * Removes absence information for given type and OID. If OID is null, information on all objects related
+     * to the type is removed.
+     */
+    public synchronized void removeAbsent(@NotNull Class<?> type, String oid) {
+        invalidationCount++;
+        if (absentObjects != null) {
+            if (oid != null) {
+                absentObjects.remove(oid);
+            } else {
+                absentObjects.invokeAll(absentObjects.keys(), e -> {
+                    if (e.getValue() != null && (type.isAssignableFrom(e.getValue().getObjectType())
+                            || e.getValue().getObjectType().isAssignableFrom(type))) {
+                        e.remove();
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    public synchronized void removeAllWithoutOwner() {
+        invalidationCount++;
+        if (shadowsWithoutOwner != null) {
+            shadowsWithoutOwner.clear();
+        }
+    }
+
+    @Override
+    protected CacheType getCacheType() {
+        return CacheType.GLOBAL_REPO_NEGATIVE_CACHE;
+    }
+
+    @Override
+    public synchronized void clear() {
+        invalidationCount++;
+        if (absentObjects != null) {
+            absentObjects.clear();
+        }
+        if (shadowsWithoutOwner != null) {
+            shadowsWithoutOwner.clear();
+        }
+    }
+
+    public Collection<SingleCacheStateInformationType> getStateInformation() {
+        List<SingleCacheStateInformationType> rv = new ArrayList<>();
+        if (absentObjects != null) {
+            int absent = absentObjects.asMap().size();
+            int withoutOwner = shadowsWithoutOwner.asMap().size();
+            SingleCacheStateInformationType info = new SingleCacheStateInformationType(prismContext)
+                    .name(GlobalNegativeCache.class.getName())
+                    .size(absent + withoutOwner);
+            info.beginComponent()
+                    .name("absentObjects")
+                    .size(absent);
+            info.beginComponent()
+                    .name("shadowsWithoutOwner")
+                    .size(withoutOwner);
+            rv.add(info);
+        }
+        return rv;
+    }
+
+    public void dumpContent() {
+        if (absentObjects != null && LOGGER_CONTENT.isInfoEnabled()) {
+            absentObjects.invokeAll(absentObjects.keys(), e -> {
+                LOGGER_CONTENT.info("Absent object: {}: {} (cached {} ms ago)", e.getKey(), e.getValue(), e.getValue().getAge());
+                return null;
+            });
+            shadowsWithoutOwner.invokeAll(shadowsWithoutOwner.keys(), e -> {
+                LOGGER_CONTENT.info("Shadow without owner: {} (cached {} ms ago)", e.getKey(), e.getValue().getAge());
+                return null;
+            });
+        }
+    }
+}
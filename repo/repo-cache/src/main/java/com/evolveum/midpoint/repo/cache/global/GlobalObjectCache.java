@@ -10,9 +10,12 @@ package com.evolveum.midpoint.repo.cache.global;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.schema.cache.CacheType;
 import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCachePerformanceInformationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
 import org.cache2k.Cache2kBuilder;
 import org.cache2k.expiry.ExpiryPolicy;
@@ -25,9 +28,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Node-level cache for objects.
+ *
+ * Objects are stored either as (immutable) prism objects, or - if "storage" is set to "serialized" or "serializedOffHeap" -
+ * in a compressed serialized form, see {@link GlobalCacheSerializedObjectValue}. The latter takes much less memory,
+ * and its size can be limited in bytes (maxSizeInBytes). On the other hand, each hit has to parse the object.
  */
 @Component
 public class GlobalObjectCache extends AbstractGlobalCache {
@@ -39,15 +47,41 @@ public class GlobalObjectCache extends AbstractGlobalCache {
 
     private org.cache2k.Cache<String, GlobalCacheObjectValue> cache;
 
+    /** Used instead of {@link #cache} if objects are stored in a serialized form. */
+    private org.cache2k.Cache<String, GlobalCacheSerializedObjectValue> serializedCache;
+    private boolean offHeap;
+
+    // Counters for serialized storage (hits and misses of other storage are known to CachePerformanceCollector)
+    private final AtomicLong serializedHits = new AtomicLong();
+    private final AtomicLong serializedMisses = new AtomicLong();
+
     public void initialize() {
-        if (cache != null) {
+        if (cache != null || serializedCache != null) {
             LOGGER.warn("Global object cache was already initialized -- ignoring this request.");
             return;
         }
+        CacheConfiguration configuration = getConfiguration();
         long capacity = getCapacity();
         if (capacity == 0) {
             LOGGER.warn("Capacity for " + getCacheType() + " is set to 0; this cache will be disabled (until system restart)");
             cache = null;
+        } else if (configuration != null && configuration.isSerializedStorage()) {
+            offHeap = configuration.getStorage() == CacheConfiguration.Storage.SERIALIZED_OFF_HEAP;
+            Long maxSizeInBytes = configuration.getMaxSizeInBytes();
+            Cache2kBuilder<String, GlobalCacheSerializedObjectValue> builder =
+                    new Cache2kBuilder<String, GlobalCacheSerializedObjectValue>() {}
+                            .name(CACHE_NAME)
+                            .expiryPolicy((key, value, loadTime, oldEntry) -> getExpiryTime(value.getObjectType()))
+                            .storeByReference(true); // we update TTL value for cached objects
+            if (maxSizeInBytes != null) {
+                builder.weigher((key, value) -> value.getSize())
+                        .maximumWeight(maxSizeInBytes);
+            } else {
+                builder.entryCapacity(capacity);
+            }
+            serializedCache = builder.build();
+            LOGGER.info("Created global repository object cache storing serialized objects {}with a capacity of {}",
+                    offHeap ? "off-heap " : "", maxSizeInBytes != null ? maxSizeInBytes + " bytes" : capacity + " objects");
         } else {
             cache = new Cache2kBuilder<String, GlobalCacheObjectValue>() {}
                     .name(CACHE_NAME)
@@ -69,21 +103,52 @@ public class GlobalObjectCache extends AbstractGlobalCache {
             cache.close();
             cache = null;
         }
+        if (serializedCache != null) {
+            serializedCache.close();
+            serializedCache = null;
+        }
     }
 
     public boolean isAvailable() {
-        return cache != null;
+        return cache != null || serializedCache != null;
     }
 
     public <T extends ObjectType> GlobalCacheObjectValue<T> get(String oid) {
+        if (serializedCache != null) {
+            return getSerialized(oid);
+        }
         //noinspection unchecked
         return cache != null ? cache.peek(oid) : null;
     }
 
+    /**
+     * Each call returns a newly parsed object. (Callers are expected to put it into local caches, if needed.)
+     */
+    private <T extends ObjectType> GlobalCacheObjectValue<T> getSerialized(String oid) {
+        GlobalCacheSerializedObjectValue storedValue = serializedCache.peek(oid);
+        if (storedValue == null) {
+            serializedMisses.incrementAndGet();
+            return null;
+        }
+        try {
+            PrismObject<T> object = storedValue.materialize(prismContext);
+            serializedHits.incrementAndGet();
+            return new GlobalCacheObjectValue<>(object, storedValue);
+        } catch (SchemaException | RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't parse cached object {}, removing it from the cache", e, storedValue);
+            serializedCache.remove(oid);
+            serializedMisses.incrementAndGet();
+            return null;
+        }
+    }
+
     public void remove(@NotNull String oid) {
         if (cache != null) {
             cache.remove(oid);
         }
+        if (serializedCache != null) {
+            serializedCache.remove(oid);
+        }
     }
 
     public void remove(@NotNull Class<?> type, String oid) {
@@ -101,6 +166,18 @@ public class GlobalObjectCache extends AbstractGlobalCache {
                 });
             }
         }
+        if (serializedCache != null) {
+            if (oid != null) {
+                serializedCache.remove(oid);
+            } else {
+                serializedCache.invokeAll(serializedCache.keys(), e -> {
+                    if (e.getValue() != null && type.isAssignableFrom(e.getValue().getObjectType())) {
+                        e.remove();
+                    }
+                    return null;
+                });
+            }
+        }
     }
 
     public <T extends ObjectType> void put(GlobalCacheObjectValue<T> cacheObject) {
@@ -110,6 +187,20 @@ public class GlobalObjectCache extends AbstractGlobalCache {
             LOGGER.trace("Putting {} into cache (v{})", prismObject, prismObject.getVersion());
             cache.put(cacheObject.getObjectOid(), cacheObject);
         }
+        if (serializedCache != null) {
+            PrismObject<T> prismObject = cacheObject.getObject();
+            GlobalCacheSerializedObjectValue storedValue;
+            try {
+                storedValue = GlobalCacheSerializedObjectValue.create(prismObject, cacheObject.getCheckVersionTime(),
+                        offHeap, prismContext);
+            } catch (SchemaException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't serialize {}, not putting it into the cache", e, prismObject);
+                serializedCache.remove(cacheObject.getObjectOid());
+                return;
+            }
+            LOGGER.trace("Putting {} into cache (v{}, {} bytes)", prismObject, prismObject.getVersion(), storedValue.getSize());
+            serializedCache.put(storedValue.getObjectOid(), storedValue);
+        }
     }
 
     @Override
@@ -122,6 +213,9 @@ public class GlobalObjectCache extends AbstractGlobalCache {
         if (cache != null) {
             cache.clear();
         }
+        if (serializedCache != null) {
+            serializedCache.clear();
+        }
     }
 
     public Collection<SingleCacheStateInformationType> getStateInformation() {
@@ -142,11 +236,46 @@ public class GlobalObjectCache extends AbstractGlobalCache {
                         .name(type.getSimpleName())
                         .size(count));
             return Collections.singleton(info);
+        } else if (serializedCache != null) {
+            return Collections.singleton(getSerializedStateInformation());
         } else {
             return Collections.emptySet();
         }
     }
 
+    private SingleCacheStateInformationType getSerializedStateInformation() {
+        Map<Class<?>, Integer> counts = new HashMap<>();
+        Map<Class<?>, Long> bytes = new HashMap<>();
+        AtomicInteger size = new AtomicInteger(0);
+        AtomicLong totalBytes = new AtomicLong(0);
+        serializedCache.invokeAll(serializedCache.keys(), e -> {
+            GlobalCacheSerializedObjectValue value = e.getValue();
+            if (value != null) {
+                counts.compute(value.getObjectType(), (type, count) -> count != null ? count + 1 : 1);
+                bytes.merge(value.getObjectType(), (long) value.getSize(), Long::sum);
+                size.incrementAndGet();
+                totalBytes.addAndGet(value.getSize());
+            }
+            return null;
+        });
+        SingleCachePerformanceInformationType performance = new SingleCachePerformanceInformationType();
+        performance.setName(GlobalObjectCache.class.getName());
+        performance.setHitCount((int) serializedHits.get());
+        performance.setMissCount((int) serializedMisses.get());
+        SingleCacheStateInformationType info = new SingleCacheStateInformationType(prismContext)
+                .name(GlobalObjectCache.class.getName())
+                .size(size.get())
+                .bytes(totalBytes.get())
+                .performance(performance);
+        // secondary size of a component is the number of bytes (capped, as it is an int)
+        counts.forEach((type, count) ->
+                info.beginComponent()
+                        .name(type.getSimpleName())
+                        .size(count)
+                        .secondarySize((int) Math.min(bytes.get(type), Integer.MAX_VALUE)));
+        return info;
+    }
+
     public void dumpContent() {
         if (cache != null && LOGGER_CONTENT.isInfoEnabled()) {
             cache.invokeAll(cache.keys(), e -> {
@@ -156,6 +285,14 @@ public class GlobalObjectCache extends AbstractGlobalCache {
                 return null;
             });
         }
+        if (serializedCache != null && LOGGER_CONTENT.isInfoEnabled()) {
+            serializedCache.invokeAll(serializedCache.keys(), e -> {
+                String key = e.getKey();
+                GlobalCacheSerializedObjectValue value = e.getValue();
+                LOGGER_CONTENT.info("Cached object: {}: {} (cached {} ms ago)", key, value, value.getAge());
+                return null;
+            });
+        }
     }
 
     public Long getNextVersionCheckTime(@NotNull Class<? extends ObjectType> type) {
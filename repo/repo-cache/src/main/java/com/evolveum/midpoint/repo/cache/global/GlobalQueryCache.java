@@ -8,6 +8,8 @@
 package com.evolveum.midpoint.repo.cache.global;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.cache.invalidation.ChangeDescription;
+import com.evolveum.midpoint.repo.cache.invalidation.QueryIndex;
 import com.evolveum.midpoint.repo.cache.local.QueryKey;
 import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.schema.cache.CacheType;
@@ -28,6 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.evolveum.midpoint.repo.cache.handlers.SearchOpHandler.QUERY_RESULT_SIZE_LIMIT;
@@ -43,8 +46,19 @@ public class GlobalQueryCache extends AbstractGlobalCache {
 
     private static final String CACHE_NAME = "queryCache";
 
+    /** Index is pruned of evicted and expired keys when it grows over this size (adapted after each pruning). */
+    private static final int MIN_PRUNE_SIZE = 1000;
+
     private org.cache2k.Cache<QueryKey, GlobalCacheQueryValue> cache;
 
+    /**
+     * Used to find entries to be invalidated. All keys in the cache are there; adding to the cache and index pruning
+     * is done under the index lock.
+     */
+    private final QueryIndex index = new QueryIndex();
+
+    private int nextPruneSize = MIN_PRUNE_SIZE;
+
     public void initialize() {
         if (cache != null) {
             LOGGER.warn("Global query cache was already initialized -- ignoring this request.");
@@ -74,6 +88,7 @@ public class GlobalQueryCache extends AbstractGlobalCache {
             cache.close();
             cache = null;
         }
+        index.clear();
     }
 
     public boolean isAvailable() {
@@ -92,7 +107,10 @@ public class GlobalQueryCache extends AbstractGlobalCache {
 
     public void remove(QueryKey cacheKey) {
         if (cache != null) {
-            cache.remove(cacheKey);
+            synchronized (index) {
+                cache.remove(cacheKey);
+                index.remove(cacheKey);
+            }
         }
     }
 
@@ -102,14 +120,33 @@ public class GlobalQueryCache extends AbstractGlobalCache {
             if (cacheObject.size() > QUERY_RESULT_SIZE_LIMIT) {
                 throw new IllegalStateException("Trying to cache result list greater than " + QUERY_RESULT_SIZE_LIMIT + ": " + cacheObject.size());
             }
-            //noinspection unchecked
-            cache.put(key, new GlobalCacheQueryValue(cacheObject));
+            synchronized (index) {
+                index.add(key, cacheObject);
+                //noinspection unchecked
+                cache.put(key, new GlobalCacheQueryValue(cacheObject));
+                if (index.size() >= nextPruneSize) {
+                    index.prune(cache::containsKey);
+                    nextPruneSize = Math.max(2 * index.size(), MIN_PRUNE_SIZE);
+                }
+            }
         }
     }
 
-    public void invokeAll(EntryProcessor<QueryKey, GlobalCacheQueryValue, Void> entryProcessor) {
-        if (cache != null) {
-            cache.invokeAll(cache.keys(), entryProcessor);
+    /**
+     * Returns keys of entries that can be affected by the change. (They have to be checked further.)
+     */
+    @NotNull
+    public Set<QueryKey<?>> getInvalidationCandidates(@NotNull ChangeDescription change) {
+        return cache != null ? index.getCandidates(change) : Collections.emptySet();
+    }
+
+    /**
+     * Invokes the processor on given entries. Note that some of them may not exist.
+     */
+    public void invoke(Set<QueryKey<?>> keys, EntryProcessor<QueryKey, GlobalCacheQueryValue, Void> entryProcessor) {
+        if (cache != null && !keys.isEmpty()) {
+            cache.invokeAll(keys, entryProcessor);
+            index.removeAbsent(keys, cache::containsKey);
         }
     }
 
@@ -125,7 +162,10 @@ public class GlobalQueryCache extends AbstractGlobalCache {
     @Override
     public void clear() {
         if (cache != null) {
-            cache.clear();
+            synchronized (index) {
+                cache.clear();
+                index.clear();
+            }
         }
     }
 
@@ -39,4 +39,5 @@ abstract public class BaseOpHandler {
     @Autowired Invalidator invalidator;
     @Autowired CacheSetAccessInfoFactory cacheSetAccessInfoFactory;
     @Autowired CacheUpdater cacheUpdater;
+    @Autowired NegativeCacheAccess negativeCacheAccess;
 }
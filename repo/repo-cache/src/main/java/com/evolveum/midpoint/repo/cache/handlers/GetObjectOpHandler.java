@@ -11,21 +11,25 @@ import static com.evolveum.midpoint.repo.cache.RepositoryCache.CLASS_NAME_WITH_D
 import static com.evolveum.midpoint.repo.cache.other.MonitoringUtil.repoOpEnd;
 import static com.evolveum.midpoint.repo.cache.other.MonitoringUtil.repoOpStart;
 import static com.evolveum.midpoint.schema.GetOperationOptions.isAllowNotFound;
+import static com.evolveum.midpoint.schema.GetOperationOptions.isReadOnly;
 import static com.evolveum.midpoint.schema.SelectorOptions.findRootOptions;
 import static com.evolveum.midpoint.schema.util.TraceUtil.isAtLeastMinimal;
 
-import java.util.Collection;
-import java.util.Objects;
+import java.util.*;
 
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.cache.global.GlobalCacheObjectValue;
+import com.evolveum.midpoint.repo.cache.global.GlobalObjectCache;
+import com.evolveum.midpoint.repo.cache.local.LocalObjectCache;
 import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryGetObjectTraceType;
@@ -38,6 +42,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.TracingLevelType;
 public class GetObjectOpHandler extends CachedOpHandler {
 
     private static final String GET_OBJECT = CLASS_NAME_WITH_DOT + "getObject";
+    private static final String GET_OBJECTS = CLASS_NAME_WITH_DOT + "getObjects";
 
     @NotNull
     public <T extends ObjectType> PrismObject<T> getObject(Class<T> type, String oid,
@@ -55,6 +60,9 @@ public class GetObjectOpHandler extends CachedOpHandler {
                 return exec.prepareReturnValueAsIs(loaded);
             }
 
+            // Objects that are known not to exist
+            negativeCacheAccess.checkNotAbsent(type, oid);
+
             // Let's try local cache first
             if (!exec.local.available) {
                 exec.reportLocalNotAvailable();
@@ -121,6 +129,113 @@ public class GetObjectOpHandler extends CachedOpHandler {
         }
     }
 
+    /**
+     * Serves cached objects from local and global object caches; only the misses are fetched from the repository
+     * (in a single multi-get call). Objects with global cache entries needing version check are treated as misses.
+     */
+    @NotNull
+    public <T extends ObjectType> SearchResultList<PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) throws SchemaException {
+        OperationResult result = parentResult.subresult(GET_OBJECTS)
+                .addQualifier(type.getSimpleName())
+                .addParam("type", type)
+                .addArbitraryObjectCollectionAsParam("oids", oids)
+                .addArbitraryObjectCollectionAsParam("options", options)
+                .build();
+        try {
+            CacheSetAccessInfo<T> caches = cacheSetAccessInfoFactory.determine(type);
+            CacheAccessInfo<LocalObjectCache, T> local = caches.localObject;
+            CacheAccessInfo<GlobalObjectCache, T> global = caches.globalObject;
+            boolean readOnly = isReadOnly(findRootOptions(options));
+
+            PassReason passReason = PassReason.determine(options, type);
+            if (passReason != null) {
+                CachePerformanceCollector.INSTANCE.registerPass(LocalObjectCache.class, type, local.statisticsLevel);
+                CachePerformanceCollector.INSTANCE.registerPass(GlobalObjectCache.class, type, global.statisticsLevel);
+                return getObjectsInternal(type, oids, options, result);
+            }
+
+            Map<String, PrismObject<T>> found = new HashMap<>();
+            List<String> toFetch = new ArrayList<>();
+            for (String oid : new LinkedHashSet<>(oids)) {
+                PrismObject<T> cachedObject = getFromCaches(type, oid, caches);
+                if (cachedObject != null) {
+                    found.put(oid, readOnly ? cachedObject : cachedObject.clone());
+                } else {
+                    toFetch.add(oid);
+                }
+            }
+
+            if (!toFetch.isEmpty()) {
+                for (PrismObject<T> object : getObjectsInternal(type, toFetch, options, result)) {
+                    PrismObject<T> immutable = toImmutable(object);
+                    cacheUpdater.storeImmutableObjectToObjectLocal(immutable, caches);
+                    cacheUpdater.storeImmutableObjectToObjectGlobal(immutable);
+                    cacheUpdater.storeObjectToVersionGlobal(immutable, caches.globalVersion);
+                    cacheUpdater.storeObjectToVersionLocal(immutable, caches.localVersion);
+                    found.put(object.getOid(), readOnly ? immutable : object.cloneIfImmutable());
+                }
+            }
+
+            List<PrismObject<T>> list = new ArrayList<>(found.size());
+            for (String oid : new LinkedHashSet<>(oids)) {
+                PrismObject<T> object = found.get(oid);
+                if (object != null) {
+                    list.add(object);
+                }
+            }
+            result.addReturn("found", list.size());
+            result.addReturn("fetched", toFetch.size());
+            return new SearchResultList<>(list);
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    /**
+     * Returns immutable cached object (local cache first, then global one), or null if there's none usable.
+     */
+    private <T extends ObjectType> PrismObject<T> getFromCaches(Class<T> type, String oid, CacheSetAccessInfo<T> caches) {
+        CacheAccessInfo<LocalObjectCache, T> local = caches.localObject;
+        if (local.effectivelySupports()) {
+            PrismObject<T> cachedObject = local.getCache().get(oid);
+            if (cachedObject != null && type.isAssignableFrom(cachedObject.getCompileTimeClass())) {
+                local.getCache().registerHit();
+                CachePerformanceCollector.INSTANCE.registerHit(LocalObjectCache.class, type, local.statisticsLevel);
+                return cachedObject;
+            }
+            local.getCache().registerMiss();
+            CachePerformanceCollector.INSTANCE.registerMiss(LocalObjectCache.class, type, local.statisticsLevel);
+        }
+        CacheAccessInfo<GlobalObjectCache, T> global = caches.globalObject;
+        if (global.effectivelySupports()) {
+            GlobalCacheObjectValue<T> cachedValue = globalObjectCache.get(oid);
+            if (cachedValue != null && !cachedValue.shouldCheckVersion()
+                    && type.isAssignableFrom(cachedValue.getObject().getCompileTimeClass())) {
+                CachePerformanceCollector.INSTANCE.registerHit(GlobalObjectCache.class, type, global.statisticsLevel);
+                PrismObject<T> cachedObject = cachedValue.getObject();
+                cacheUpdater.storeImmutableObjectToAllLocal(cachedObject, caches);
+                return cachedObject;
+            }
+            CachePerformanceCollector.INSTANCE.registerMiss(GlobalObjectCache.class, type, global.statisticsLevel);
+        }
+        return null;
+    }
+
+    @NotNull
+    private <T extends ObjectType> SearchResultList<PrismObject<T>> getObjectsInternal(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) throws SchemaException {
+        Long startTime = repoOpStart();
+        try {
+            return repositoryService.getObjects(type, oids, options, parentResult);
+        } finally {
+            repoOpEnd(startTime);
+        }
+    }
+
     private <T extends ObjectType> GetObjectOpExecution<T> initializeExecution(Class<T> type, String oid,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) {
         OperationResult result = parentResult.subresult(GET_OBJECT)
@@ -161,6 +276,7 @@ public class GetObjectOpHandler extends CachedOpHandler {
     // returns directly returnable object (frozen if readonly, mutable if not readonly)
     private <T extends ObjectType> PrismObject<T> executeAndCache(GetObjectOpExecution<T> exec)
             throws SchemaException, ObjectNotFoundException {
+        long negativeCacheInvalidationCount = negativeCacheAccess.getInvalidationCount();
         try {
             PrismObject<T> object = getObjectInternal(exec.type, exec.oid, exec.options, exec.result);
             PrismObject<T> immutable = toImmutable(object);
@@ -173,7 +289,12 @@ public class GetObjectOpHandler extends CachedOpHandler {
             } else {
                 return object.cloneIfImmutable();
             }
-        } catch (ObjectNotFoundException | SchemaException ex) {
+        } catch (ObjectNotFoundException ex) {
+            globalObjectCache.remove(exec.oid);
+            globalVersionCache.remove(exec.oid);
+            negativeCacheAccess.storeAbsent(exec.type, exec.oid, negativeCacheInvalidationCount);
+            throw ex;
+        } catch (SchemaException ex) {
             globalObjectCache.remove(exec.oid);
             globalVersionCache.remove(exec.oid);
             throw ex;
@@ -9,6 +9,7 @@ package com.evolveum.midpoint.repo.cache.handlers;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.cache.other.MonitoringUtil;
 import com.evolveum.midpoint.schema.DeltaConvertor;
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 import static com.evolveum.midpoint.repo.cache.RepositoryCache.CLASS_NAME_WITH_DOT;
@@ -38,7 +40,9 @@ import static com.evolveum.midpoint.schema.util.TraceUtil.isAtLeastNormal;
 public class ModificationOpHandler extends BaseOpHandler {
 
     private static final String ADD_OBJECT = CLASS_NAME_WITH_DOT + "addObject";
+    private static final String ADD_OBJECTS = CLASS_NAME_WITH_DOT + "addObjects";
     private static final String MODIFY_OBJECT = CLASS_NAME_WITH_DOT + "modifyObject";
+    private static final String MODIFY_OBJECTS = CLASS_NAME_WITH_DOT + "modifyObjects";
     private static final String DELETE_OBJECT = CLASS_NAME_WITH_DOT + "deleteObject";
     private static final String ADVANCE_SEQUENCE = CLASS_NAME_WITH_DOT + "advanceSequence";
     private static final String RETURN_UNUSED_VALUES_TO_SEQUENCE = CLASS_NAME_WITH_DOT + "returnUnusedValuesToSequence";
@@ -100,6 +104,80 @@ public class ModificationOpHandler extends BaseOpHandler {
         }
     }
 
+    @NotNull
+    public List<BulkOperationItemResult> addObjects(@NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            RepoAddOptions options, OperationResult parentResult) {
+        OperationResult result = parentResult.subresult(ADD_OBJECTS)
+                .addParam("count", objects.size())
+                .addArbitraryObjectAsParam("options", options)
+                .build();
+        try {
+            List<BulkOperationItemResult> itemResults;
+            Long startTime = MonitoringUtil.repoOpStart();
+            try {
+                itemResults = repositoryService.addObjects(objects, options, result);
+            } finally {
+                MonitoringUtil.repoOpEnd(startTime);
+            }
+            // As in addObject, the objects are not cached, only invalidated.
+            for (int i = 0; i < objects.size(); i++) {
+                BulkOperationItemResult itemResult = itemResults.get(i);
+                if (itemResult.isSuccess()) {
+                    invalidateAfterAdd(objects.get(i), itemResult.getOid(), options, result);
+                }
+            }
+            return itemResults;
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
+    private <T extends ObjectType> void invalidateAfterAdd(PrismObject<T> object, String oid, RepoAddOptions options,
+            OperationResult result) {
+        if (options != null && options.isOverwrite()) {
+            invalidator.invalidateCacheEntries(object.getCompileTimeClass(), oid,
+                    new ModifyObjectResult<>(object.getUserData(RepositoryService.KEY_ORIGINAL_OBJECT), object,
+                            Collections.emptyList()), result);
+        } else {
+            invalidator.invalidateCacheEntries(object.getCompileTimeClass(), oid, new AddObjectResult<>(object), result);
+        }
+    }
+
+    @NotNull
+    public List<BulkOperationItemResult> modifyObjects(@NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            RepoModifyOptions options, OperationResult parentResult) {
+        OperationResult result = parentResult.subresult(MODIFY_OBJECTS)
+                .addParam("count", deltas.size())
+                .addArbitraryObjectAsParam("options", options)
+                .build();
+        try {
+            randomDelay();
+            Long startTime = MonitoringUtil.repoOpStart();
+            List<BulkOperationItemResult> itemResults = null;
+            try {
+                itemResults = repositoryService.modifyObjects(deltas, options, result);
+                return itemResults;
+            } finally {
+                MonitoringUtil.repoOpEnd(startTime);
+                // Invalidating also objects whose modification failed, just like modifyObject does.
+                for (int i = 0; i < deltas.size(); i++) {
+                    ObjectDelta<? extends ObjectType> delta = deltas.get(i);
+                    ModifyObjectResult<? extends ObjectType> modifyInfo =
+                            itemResults != null ? itemResults.get(i).getModifyObjectResult() : null;
+                    invalidator.invalidateCacheEntries(delta.getObjectTypeClass(), delta.getOid(), modifyInfo, result);
+                }
+            }
+        } catch (Throwable t) {
+            result.recordFatalError(t);
+            throw t;
+        } finally {
+            result.computeStatusIfUnknown();
+        }
+    }
+
     @NotNull
     public <T extends ObjectType> ModifyObjectResult<T> modifyObject(@NotNull Class<T> type, @NotNull String oid,
             @NotNull Collection<? extends ItemDelta> modifications,
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.handlers;
+
+import static com.evolveum.midpoint.repo.cache.local.LocalRepoCacheCollection.getLocalNegativeCache;
+import static com.evolveum.midpoint.repo.cache.other.MonitoringUtil.log;
+import static com.evolveum.midpoint.schema.cache.CacheType.LOCAL_REPO_NEGATIVE_CACHE;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.repo.cache.global.GlobalNegativeCache;
+import com.evolveum.midpoint.repo.cache.local.LocalNegativeCache;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Access to local and global negative caches: objects not found and shadows without owner.
+ *
+ * Hits and misses are reported separately from the positive (object) caches.
+ */
+@Component
+class NegativeCacheAccess {
+
+    @Autowired GlobalNegativeCache globalNegativeCache;
+    @Autowired CacheConfigurationManager cacheConfigurationManager;
+
+    /**
+     * Throws {@link ObjectNotFoundException} if the object is known not to exist.
+     */
+    <T extends ObjectType> void checkNotAbsent(Class<T> type, String oid) throws ObjectNotFoundException {
+        CacheAccessInfo<LocalNegativeCache, T> local = getLocal(type);
+        if (local.effectivelySupports()) {
+            if (local.getCache().isAbsent(type, oid)) {
+                CachePerformanceCollector.INSTANCE.registerHit(LocalNegativeCache.class, type, local.statisticsLevel);
+                log("Cache (local negative): HIT - getObject {}:{}", false, type.getSimpleName(), oid);
+                throw createNotFoundException(type, oid);
+            }
+            CachePerformanceCollector.INSTANCE.registerMiss(LocalNegativeCache.class, type, local.statisticsLevel);
+        }
+        CacheAccessInfo<GlobalNegativeCache, T> global = getGlobal(type);
+        if (global.effectivelySupports()) {
+            if (globalNegativeCache.isAbsent(type, oid)) {
+                CachePerformanceCollector.INSTANCE.registerHit(GlobalNegativeCache.class, type, global.statisticsLevel);
+                log("Cache (global negative): HIT - getObject {}:{}", false, type.getSimpleName(), oid);
+                if (local.effectivelySupports()) {
+                    local.getCache().putAbsent(type, oid);
+                }
+                throw createNotFoundException(type, oid);
+            }
+            CachePerformanceCollector.INSTANCE.registerMiss(GlobalNegativeCache.class, type, global.statisticsLevel);
+        }
+    }
+
+    /**
+     * To be called before the repository is asked; the value is then passed to store methods.
+     */
+    long getInvalidationCount() {
+        return globalNegativeCache.getInvalidationCount();
+    }
+
+    <T extends ObjectType> void storeAbsent(Class<T> type, String oid, long invalidationCountBefore) {
+        CacheAccessInfo<LocalNegativeCache, T> local = getLocal(type);
+        if (local.effectivelySupports()) {
+            local.getCache().putAbsent(type, oid);
+        }
+        if (getGlobal(type).effectivelySupports()) {
+            globalNegativeCache.putAbsent(type, oid, invalidationCountBefore);
+        }
+    }
+
+    boolean isWithoutOwner(String shadowOid) {
+        CacheAccessInfo<LocalNegativeCache, ShadowType> local = getLocal(ShadowType.class);
+        if (local.effectivelySupports()) {
+            if (local.getCache().isWithoutOwner(shadowOid)) {
+                CachePerformanceCollector.INSTANCE.registerHit(LocalNegativeCache.class, ShadowType.class, local.statisticsLevel);
+                log("Cache (local negative): HIT - searchShadowOwner {}", false, shadowOid);
+                return true;
+            }
+            CachePerformanceCollector.INSTANCE.registerMiss(LocalNegativeCache.class, ShadowType.class, local.statisticsLevel);
+        }
+        CacheAccessInfo<GlobalNegativeCache, ShadowType> global = getGlobal(ShadowType.class);
+        if (global.effectivelySupports()) {
+            if (globalNegativeCache.isWithoutOwner(shadowOid)) {
+                CachePerformanceCollector.INSTANCE.registerHit(GlobalNegativeCache.class, ShadowType.class, global.statisticsLevel);
+                log("Cache (global negative): HIT - searchShadowOwner {}", false, shadowOid);
+                if (local.effectivelySupports()) {
+                    local.getCache().putWithoutOwner(shadowOid);
+                }
+                return true;
+            }
+            CachePerformanceCollector.INSTANCE.registerMiss(GlobalNegativeCache.class, ShadowType.class, global.statisticsLevel);
+        }
+        return false;
+    }
+
+    void storeWithoutOwner(String shadowOid, long invalidationCountBefore) {
+        CacheAccessInfo<LocalNegativeCache, ShadowType> local = getLocal(ShadowType.class);
+        if (local.effectivelySupports()) {
+            local.getCache().putWithoutOwner(shadowOid);
+        }
+        if (getGlobal(ShadowType.class).effectivelySupports()) {
+            globalNegativeCache.putWithoutOwner(shadowOid, invalidationCountBefore);
+        }
+    }
+
+    private <T extends ObjectType> CacheAccessInfo<LocalNegativeCache, T> getLocal(Class<T> type) {
+        LocalNegativeCache cache = getLocalNegativeCache();
+        return cache != null ?
+                new CacheAccessInfo<>(cache, cache.getConfiguration(), type, true) :
+                new CacheAccessInfo<>(null, cacheConfigurationManager.getConfiguration(LOCAL_REPO_NEGATIVE_CACHE), type, false);
+    }
+
+    private <T extends ObjectType> CacheAccessInfo<GlobalNegativeCache, T> getGlobal(Class<T> type) {
+        return new CacheAccessInfo<>(globalNegativeCache, globalNegativeCache.getConfiguration(), type,
+                globalNegativeCache.isAvailable());
+    }
+
+    private ObjectNotFoundException createNotFoundException(Class<?> type, String oid) {
+        return new ObjectNotFoundException("Object of type '" + type.getSimpleName() + "' with oid '" + oid
+                + "' was not found (cached negative result)", oid);
+    }
+}
@@ -32,6 +32,7 @@ import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositorySearchObjectsTraceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.TracingLevelType;
 
 /**
@@ -305,7 +306,13 @@ public class SearchOpHandler extends CachedOpHandler {
                 .addArbitraryObjectCollectionAsParam("options", options)
                 .build();
         try {
-            // TODO cache the search operation?
+            // Only negative results are cached; the owner itself is cached as an object (below).
+            boolean useNegativeCache = PassReason.determine(options, ShadowType.class) == null;
+            if (useNegativeCache && negativeCacheAccess.isWithoutOwner(shadowOid)) {
+                result.addReturnComment("Shadow without owner (cached)");
+                return null;
+            }
+            long negativeCacheInvalidationCount = negativeCacheAccess.getInvalidationCount();
             PrismObject<F> ownerObject;
             Long startTime = repoOpStart();
             try {
@@ -313,7 +320,11 @@ public class SearchOpHandler extends CachedOpHandler {
             } finally {
                 repoOpEnd(startTime);
             }
-            if (ownerObject != null) {
+            if (ownerObject == null) {
+                if (useNegativeCache) {
+                    negativeCacheAccess.storeWithoutOwner(shadowOid, negativeCacheInvalidationCount);
+                }
+            } else {
                 Class<F> type = ownerObject.getCompileTimeClass();
                 if (type != null && PassReason.determine(options, type) == null) {
                     boolean readOnly = isReadOnly(findRootOptions(options));
@@ -9,6 +9,8 @@ package com.evolveum.midpoint.repo.cache.invalidation;
 
 import com.evolveum.midpoint.CacheInvalidationContext;
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
@@ -26,6 +28,11 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  *  Describes a change that was detected on a repository object:
  *  - type
@@ -68,6 +75,11 @@ public abstract class ChangeDescription {
             return filter.match(addInfo.getObject().getValue(), matchingRuleRegistry);
         }
 
+        @Override
+        Set<String> getChangedItemNames() {
+            return null;
+        }
+
         @Override
         public String toString() { return "Add{" + addInfo + '}';
         }
@@ -88,14 +100,40 @@ public abstract class ChangeDescription {
         public boolean mayMatchAfterChange(@NotNull ObjectFilter filter, SearchResultList list, MatchingRuleRegistry matchingRuleRegistry)
                 throws SchemaException {
             //noinspection SimplifiableIfStatement
-            if (modifyInfo.getObjectAfter() == null) {
-                // This can occur only for lookup tables and certification cases. These are handled by evicting all related queries anyway.
+            if (modifyInfo.getObjectAfter() == null || modifyInfo.isModifiedItemsOnly()) {
+                // This occurs for lookup tables and certification cases (handled by evicting all related queries anyway)
+                // and for modifications of externally stored items only. The object after change is not known
+                // as a whole, so we have to assume the query matches. (Queries that do not refer to the modified items
+                // are sorted out earlier, see mayAffect.)
                 return true;
             } else {
                 return filter.match(modifyInfo.getObjectAfter().getValue(), matchingRuleRegistry);
             }
         }
 
+        @Override
+        Set<String> getChangedItemNames() {
+            Collection<? extends ItemDelta> modifications = modifyInfo.getModifications();
+            if (modifyInfo.isModifiedItemsOnly() && (modifications == null || modifications.isEmpty())) {
+                // Nothing was changed.
+                return Collections.emptySet();
+            }
+            if (modifyInfo.getObjectAfter() == null && !modifyInfo.isModifiedItemsOnly()
+                    || modifications == null || modifications.isEmpty()) {
+                // Either we know nothing about the object after change (see above), or the object was overwritten.
+                return null;
+            }
+            Set<String> names = new HashSet<>();
+            for (ItemDelta<?, ?> modification : modifications) {
+                ItemPath path = modification.getPath();
+                if (path == null || !path.startsWithName()) {
+                    return null;
+                }
+                names.add(path.firstToName().getLocalPart());
+            }
+            return names;
+        }
+
         @Override
         public String toString() {
             return "Modify{" +
@@ -120,6 +158,11 @@ public abstract class ChangeDescription {
             return false;
         }
 
+        @Override
+        Set<String> getChangedItemNames() {
+            return Collections.emptySet();
+        }
+
         @Override
         public String toString() {
             return "Delete{" +
@@ -143,6 +186,11 @@ public abstract class ChangeDescription {
             return safeInvalidation;
         }
 
+        @Override
+        Set<String> getChangedItemNames() {
+            return safeInvalidation ? null : Collections.emptySet();
+        }
+
         @Override
         public String toString() {
             return "Any{" +
@@ -223,6 +271,15 @@ public abstract class ChangeDescription {
             // (In very strange cases, also the object being added -- although this should never happen.)
             return true;
         }
+        Set<String> changedItemNames = getChangedItemNames();
+        if (changedItemNames != null) {
+            Set<String> referencedItemNames = QueryIndex.getReferencedItemNames(queryKey.getQuery());
+            if (referencedItemNames != null && Collections.disjoint(referencedItemNames, changedItemNames)) {
+                // The object did not match the query before (it is not in the result), and the change
+                // cannot make it match (see getChangedItemNames).
+                return false;
+            }
+        }
         try {
             return mayMatchAfterChange(filter, list, matchingRuleRegistry);
         } catch (UnsupportedOperationException e) {
@@ -240,6 +297,15 @@ public abstract class ChangeDescription {
     public abstract boolean mayMatchAfterChange(@NotNull ObjectFilter filter, SearchResultList list, MatchingRuleRegistry matchingRuleRegistry)
             throws SchemaException;
 
+    /**
+     * Returns local names of top-level items whose change can cause the object to match a query it did not match before;
+     * null if that can be any item. It must be consistent with {@link #mayMatchAfterChange(ObjectFilter, SearchResultList,
+     * MatchingRuleRegistry)}: a filter that refers to none of these items matches the object after change only if it
+     * matched it before.
+     */
+    @Nullable
+    abstract Set<String> getChangedItemNames();
+
     @Nullable
     private ObjectFilter getFilter(QueryKey queryKey) {
         ObjectQuery query = queryKey.getQuery();
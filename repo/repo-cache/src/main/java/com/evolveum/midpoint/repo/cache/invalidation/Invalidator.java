@@ -13,9 +13,11 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.repo.api.CacheDispatcher;
 import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.cache.global.GlobalNegativeCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalObjectCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalQueryCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalVersionCache;
+import com.evolveum.midpoint.repo.cache.local.LocalNegativeCache;
 import com.evolveum.midpoint.repo.cache.local.LocalObjectCache;
 import com.evolveum.midpoint.repo.cache.local.LocalQueryCache;
 import com.evolveum.midpoint.repo.cache.local.LocalVersionCache;
@@ -23,9 +25,13 @@ import com.evolveum.midpoint.repo.cache.local.QueryKey;
 import com.evolveum.midpoint.repo.cache.registry.CacheRegistry;
 import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
+import com.evolveum.midpoint.schema.cache.CacheType;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.caching.CacheConfiguration;
+import com.evolveum.midpoint.util.caching.CachePerformanceCollector;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FunctionLibraryType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
@@ -57,6 +63,7 @@ public class Invalidator {
     @Autowired private GlobalQueryCache globalQueryCache;
     @Autowired private GlobalObjectCache globalObjectCache;
     @Autowired private GlobalVersionCache globalVersionCache;
+    @Autowired private GlobalNegativeCache globalNegativeCache;
     @Autowired PrismContext prismContext;
     @Autowired RepositoryService repositoryService;
     @Autowired CacheDispatcher cacheDispatcher;
@@ -75,12 +82,18 @@ public class Invalidator {
             globalObjectCache.clear();
             globalVersionCache.clear();
             globalQueryCache.clear();
+            globalNegativeCache.clear();
         } else {
             globalObjectCache.remove(type, oid);
             globalVersionCache.remove(type, oid);
+            globalNegativeCache.removeAbsent(type, oid);
             if (ObjectType.class.isAssignableFrom(type)) {
                 //noinspection unchecked
-                clearQueryResultsGlobally((Class<? extends ObjectType>) type, oid, context);
+                Class<? extends ObjectType> objectType = (Class<? extends ObjectType>) type;
+                clearQueryResultsGlobally(objectType, oid, context);
+                if (mayChangeShadowOwner(objectType, ChangeDescription.getFrom(objectType, oid, context, true))) {
+                    globalNegativeCache.removeAllWithoutOwner();
+                }
             }
         }
         if (!listeners.isEmpty()) {
@@ -109,10 +122,18 @@ public class Invalidator {
             if (localQueryCache != null) {
                 clearQueryResultsLocally(localQueryCache, type, oid, additionalInfo, matchingRuleRegistry);
             }
+            LocalNegativeCache localNegativeCache = getLocalNegativeCache();
+            if (localNegativeCache != null) {
+                localNegativeCache.removeAbsent(type, oid);
+                if (mayChangeShadowOwner(type, ChangeDescription.getFrom(type, oid, additionalInfo, true))) {
+                    localNegativeCache.removeAllWithoutOwner();
+                }
+            }
             boolean clusterwide = TYPES_ALWAYS_INVALIDATED_CLUSTERWIDE.contains(type) ||
                     globalObjectCache.hasClusterwideInvalidationFor(type) ||
                     globalVersionCache.hasClusterwideInvalidationFor(type) ||
-                    globalQueryCache.hasClusterwideInvalidationFor(type);
+                    globalQueryCache.hasClusterwideInvalidationFor(type) ||
+                    globalNegativeCache.hasClusterwideInvalidationFor(type);
             cacheDispatcher.dispatchInvalidation(type, oid, clusterwide,
                     new CacheInvalidationContext(false, new RepositoryCacheInvalidationDetails(additionalInfo)));
         } catch (Throwable t) {
@@ -125,49 +146,69 @@ public class Invalidator {
 
     private <T extends ObjectType> void clearQueryResultsLocally(LocalQueryCache cache, Class<T> type, String oid,
             Object additionalInfo, MatchingRuleRegistry matchingRuleRegistry) {
-        // TODO implement more efficiently
-
         ChangeDescription change = ChangeDescription.getFrom(type, oid, additionalInfo, true);
 
-        long start = System.currentTimeMillis();
-        int all = 0;
+        long start = System.nanoTime();
         int removed = 0;
-        Iterator<Map.Entry<QueryKey, SearchResultList>> iterator = cache.getEntryIterator();
-        while (iterator.hasNext()) {
-            Map.Entry<QueryKey, SearchResultList> entry = iterator.next();
-            QueryKey<?> queryKey = entry.getKey();
-            all++;
-            if (change.mayAffect(queryKey, entry.getValue(), matchingRuleRegistry)) {
+        Set<QueryKey<?>> candidates = cache.getInvalidationCandidates(change);
+        for (QueryKey<?> queryKey : candidates) {
+            SearchResultList<?> list = cache.get(queryKey);
+            if (list != null && change.mayAffect(queryKey, list, matchingRuleRegistry)) {
                 LOGGER.trace("Removing (from local cache) query for type={}, change={}: {}", type, change, queryKey.getQuery());
-                iterator.remove();
+                cache.remove(queryKey);
                 removed++;
             }
         }
-        LOGGER.trace("Removed (from local cache) {} (of {}) query result entries of type {} in {} ms", removed, all, type, System.currentTimeMillis() - start);
+        long time = System.nanoTime() - start;
+        registerInvalidation(LocalQueryCache.class, CacheType.LOCAL_REPO_QUERY_CACHE, type, candidates.size(), removed, time);
+        LOGGER.trace("Removed (from local cache) {} (of {} candidate) query result entries of type {} in {} ms",
+                removed, candidates.size(), type, time / 1000000);
     }
 
     private <T extends ObjectType> void clearQueryResultsGlobally(Class<T> type, String oid, CacheInvalidationContext context) {
-        // TODO implement more efficiently
-
         // Safe invalidation means we evict queries without looking at details of the change.
         boolean safeIfUnknown = !context.isFromRemoteNode() || globalQueryCache.shouldDoSafeRemoteInvalidationFor(type);
         ChangeDescription change = ChangeDescription.getFrom(type, oid, context, safeIfUnknown);
 
-        long start = System.currentTimeMillis();
-        AtomicInteger all = new AtomicInteger(0);
+        long start = System.nanoTime();
+        AtomicInteger examined = new AtomicInteger(0);
         AtomicInteger removed = new AtomicInteger(0);
 
-        globalQueryCache.invokeAll(entry -> {
-            QueryKey queryKey = entry.getKey();
-            all.incrementAndGet();
-            if (change.mayAffect(queryKey, entry.getValue().getResult(), matchingRuleRegistry)) {
-                LOGGER.trace("Removing (from global cache) query for type={}, change={}: {}", type, change, queryKey.getQuery());
-                entry.remove();
-                removed.incrementAndGet();
+        globalQueryCache.invoke(globalQueryCache.getInvalidationCandidates(change), entry -> {
+            if (entry.exists()) {
+                QueryKey queryKey = entry.getKey();
+                examined.incrementAndGet();
+                if (change.mayAffect(queryKey, entry.getValue().getResult(), matchingRuleRegistry)) {
+                    LOGGER.trace("Removing (from global cache) query for type={}, change={}: {}", type, change, queryKey.getQuery());
+                    entry.remove();
+                    removed.incrementAndGet();
+                }
             }
             return null;
         });
-        LOGGER.trace("Removed (from global cache) {} (of {}) query result entries of type {} in {} ms", removed, all, type, System.currentTimeMillis() - start);
+        long time = System.nanoTime() - start;
+        registerInvalidation(GlobalQueryCache.class, CacheType.GLOBAL_REPO_QUERY_CACHE, type, examined.get(), removed.get(), time);
+        LOGGER.trace("Removed (from global cache) {} (of {} candidate) query result entries of type {} in {} ms",
+                removed, examined, type, time / 1000000);
+    }
+
+    /**
+     * Shadow gets an owner when a focus with a linkRef is added, or when a linkRef is added to a focus.
+     */
+    private boolean mayChangeShadowOwner(Class<? extends ObjectType> type, ChangeDescription change) {
+        if (!type.isAssignableFrom(FocusType.class) && !FocusType.class.isAssignableFrom(type)) {
+            return false;
+        }
+        Set<String> changedItemNames = change.getChangedItemNames();
+        return changedItemNames == null || changedItemNames.contains(FocusType.F_LINK_REF.getLocalPart());
+    }
+
+    private void registerInvalidation(Class<?> cacheClass, CacheType cacheType, Class<?> type, int examined, int removed,
+            long time) {
+        CacheConfiguration configuration = cacheConfigurationManager.getConfiguration(cacheType);
+        CacheConfiguration.StatisticsLevel statisticsLevel = CacheConfiguration.getStatisticsLevel(
+                configuration != null ? configuration.getForObjectType(type) : null, configuration);
+        CachePerformanceCollector.INSTANCE.registerInvalidation(cacheClass, type, statisticsLevel, examined, removed, time);
     }
 
     public void registerInvalidationEventsListener(InvalidationEventListener listener) {
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.invalidation;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.*;
+import com.evolveum.midpoint.repo.cache.local.QueryKey;
+import com.evolveum.midpoint.schema.SearchResultList;
+
+/**
+ * Secondary index over entries of a query cache. It is used to find entries that can be affected by a change
+ * of an object without going through the whole cache. Candidates are queries over the type of the object (or its supertypes)
+ * that
+ *
+ * - contain the object in their result, or
+ * - refer to an item that was changed (all queries are candidates if we don't know what was changed), or
+ * - cannot be indexed by item names: queries without a filter, with paging, or with filters that depend on something
+ * else than items of the object (e.g. org or full text filters).
+ *
+ * Candidates are then checked by {@link ChangeDescription#mayAffect(QueryKey, SearchResultList,
+ * com.evolveum.midpoint.prism.match.MatchingRuleRegistry)} just like before.
+ *
+ * The index is maintained by the cache. It may contain keys that are no longer in the cache (e.g. evicted or expired ones),
+ * so they have to be pruned from time to time. Keys that are in the cache must always be in the index.
+ *
+ * All methods are synchronized on the index. Callers can synchronize on it as well to do compound operations atomically.
+ */
+public class QueryIndex {
+
+    private final Map<Class<?>, TypeQueries> queriesByType = new HashMap<>();
+
+    /** Queries that contain given object (OID) in their result. */
+    private final Map<String, Set<QueryKey<?>>> queriesByOid = new HashMap<>();
+
+    /** OIDs under which the query is indexed. Needed to remove the query from the index. */
+    private final Map<QueryKey<?>, Set<String>> oidsByQuery = new HashMap<>();
+
+    /**
+     * Adds the query with its result to the index. If the query is already there, OIDs from both results are kept;
+     * the union is removed together with the query.
+     */
+    public synchronized void add(@NotNull QueryKey<?> key, @NotNull SearchResultList<?> result) {
+        Set<String> oids = oidsByQuery.get(key);
+        if (oids == null) {
+            oids = new HashSet<>();
+            oidsByQuery.put(key, oids);
+            queriesByType.computeIfAbsent(key.getType(), k -> new TypeQueries()).add(key);
+        }
+        for (Object object : result) {
+            if (object instanceof PrismObject<?>) {
+                String oid = ((PrismObject<?>) object).getOid();
+                if (oid != null && oids.add(oid)) {
+                    queriesByOid.computeIfAbsent(oid, k -> new HashSet<>()).add(key);
+                }
+            }
+        }
+    }
+
+    public synchronized void remove(@NotNull QueryKey<?> key) {
+        Set<String> oids = oidsByQuery.remove(key);
+        if (oids == null) {
+            return;
+        }
+        for (String oid : oids) {
+            Set<QueryKey<?>> queries = queriesByOid.get(oid);
+            if (queries != null) {
+                queries.remove(key);
+                if (queries.isEmpty()) {
+                    queriesByOid.remove(oid);
+                }
+            }
+        }
+        TypeQueries typeQueries = queriesByType.get(key.getType());
+        if (typeQueries != null) {
+            typeQueries.remove(key);
+            if (typeQueries.all.isEmpty()) {
+                queriesByType.remove(key.getType());
+            }
+        }
+    }
+
+    /**
+     * Removes given keys that are not present in the cache any more.
+     */
+    public synchronized void removeAbsent(@NotNull Collection<? extends QueryKey<?>> keys, @NotNull Predicate<QueryKey<?>> present) {
+        for (QueryKey<?> key : keys) {
+            if (!present.test(key)) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all keys that are not present in the cache any more.
+     */
+    public synchronized void prune(@NotNull Predicate<QueryKey<?>> present) {
+        removeAbsent(new ArrayList<>(oidsByQuery.keySet()), present);
+    }
+
+    public synchronized void clear() {
+        queriesByType.clear();
+        queriesByOid.clear();
+        oidsByQuery.clear();
+    }
+
+    public synchronized int size() {
+        return oidsByQuery.size();
+    }
+
+    /**
+     * Returns queries whose results can be affected by the change. Some of them can be no longer cached.
+     */
+    @NotNull
+    public synchronized Set<QueryKey<?>> getCandidates(@NotNull ChangeDescription change) {
+        Set<QueryKey<?>> candidates = new HashSet<>();
+        if (change.oid != null) {
+            Set<QueryKey<?>> containing = queriesByOid.get(change.oid);
+            if (containing != null) {
+                candidates.addAll(containing);
+            }
+        }
+        Set<String> changedItemNames = change.getChangedItemNames();
+        for (Map.Entry<Class<?>, TypeQueries> entry : queriesByType.entrySet()) {
+            if (change.type == null || entry.getKey().isAssignableFrom(change.type)) {
+                entry.getValue().collectCandidates(changedItemNames, candidates);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Queries over a given type.
+     */
+    private static class TypeQueries {
+
+        private final Set<QueryKey<?>> all = new HashSet<>();
+
+        /** Queries that are candidates for any change of an object of this type. */
+        private final Set<QueryKey<?>> unindexed = new HashSet<>();
+
+        /** Queries by local names of top-level items they refer to. */
+        private final Map<String, Set<QueryKey<?>>> byItemName = new HashMap<>();
+
+        private void add(QueryKey<?> key) {
+            all.add(key);
+            Set<String> itemNames = getReferencedItemNames(key.getQuery());
+            if (itemNames == null || itemNames.isEmpty()) {
+                unindexed.add(key);
+            } else {
+                for (String itemName : itemNames) {
+                    byItemName.computeIfAbsent(itemName, k -> new HashSet<>()).add(key);
+                }
+            }
+        }
+
+        private void remove(QueryKey<?> key) {
+            all.remove(key);
+            if (!unindexed.remove(key)) {
+                Iterator<Set<QueryKey<?>>> iterator = byItemName.values().iterator();
+                while (iterator.hasNext()) {
+                    Set<QueryKey<?>> queries = iterator.next();
+                    if (queries.remove(key) && queries.isEmpty()) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+
+        private void collectCandidates(Set<String> changedItemNames, Set<QueryKey<?>> candidates) {
+            if (changedItemNames == null) {
+                candidates.addAll(all);
+            } else {
+                candidates.addAll(unindexed);
+                for (String itemName : changedItemNames) {
+                    Set<QueryKey<?>> queries = byItemName.get(itemName);
+                    if (queries != null) {
+                        candidates.addAll(queries);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns local names of top-level items the query result depends on; null if it can depend on anything.
+     *
+     * Queries with paging are not indexed, because an object that matches the filter but is not in the result
+     * can get there by being changed.
+     */
+    static Set<String> getReferencedItemNames(ObjectQuery query) {
+        if (query == null || query.getFilter() == null || query.getPaging() != null) {
+            return null;
+        }
+        Set<String> names = new HashSet<>();
+        return collectReferencedItemNames(query.getFilter(), names) ? names : null;
+    }
+
+    private static boolean collectReferencedItemNames(ObjectFilter filter, Set<String> names) {
+        if (filter instanceof NaryLogicalFilter) {
+            for (ObjectFilter condition : ((NaryLogicalFilter) filter).getConditions()) {
+                if (!collectReferencedItemNames(condition, names)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (filter instanceof NotFilter) {
+            return collectReferencedItemNames(((NotFilter) filter).getFilter(), names);
+        } else if (filter instanceof TypeFilter) {
+            ObjectFilter inner = ((TypeFilter) filter).getFilter();
+            return inner == null || collectReferencedItemNames(inner, names);
+        } else if (filter instanceof ValueFilter) {
+            ValueFilter<?, ?> valueFilter = (ValueFilter<?, ?>) filter;
+            return valueFilter.getExpression() == null
+                    && collectItemName(valueFilter.getFullPath(), names)
+                    && (valueFilter.getRightHandSidePath() == null || collectItemName(valueFilter.getRightHandSidePath(), names));
+        } else if (filter instanceof ExistsFilter) {
+            return collectItemName(((ExistsFilter) filter).getFullPath(), names);
+        } else if (filter instanceof InOidFilter) {
+            // OID of an object cannot change
+            InOidFilter inOidFilter = (InOidFilter) filter;
+            return !inOidFilter.isConsiderOwner() && inOidFilter.getExpression() == null;
+        } else {
+            return filter instanceof AllFilter || filter instanceof NoneFilter || filter instanceof UndefinedFilter;
+        }
+    }
+
+    private static boolean collectItemName(ItemPath path, Set<String> names) {
+        if (path == null || !path.startsWithName()) {
+            return false;
+        }
+        names.add(path.firstToName().getLocalPart());
+        return true;
+    }
+}
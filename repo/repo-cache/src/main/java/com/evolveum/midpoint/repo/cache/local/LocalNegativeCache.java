@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.cache.local;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.evolveum.midpoint.util.caching.AbstractThreadLocalCache;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Thread-local cache for negative results: objects that were not found (by type and OID)
+ * and shadows that have no owner.
+ *
+ * The number of entries of each kind is limited by maxSize (or {@link #DEFAULT_MAX_SIZE});
+ * least recently used entries are evicted first.
+ */
+public class LocalNegativeCache extends AbstractThreadLocalCache {
+
+    private static final Trace LOGGER_CONTENT = TraceManager.getTrace(LocalNegativeCache.class.getName() + ".content");
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** Type of object that was not found, indexed by OID. (Objects of its subtypes do not exist either.) */
+    private final Map<String, Class<?>> absentObjects = new BoundedMap<>();
+
+    /** Shadows for which no owner was found. */
+    private final Map<String, Boolean> shadowsWithoutOwner = new BoundedMap<>();
+
+    public synchronized boolean isAbsent(Class<?> type, String oid) {
+        Class<?> absentType = absentObjects.get(oid);
+        return absentType != null && absentType.isAssignableFrom(type);
+    }
+
+    public synchronized void putAbsent(Class<?> type, String oid) {
+        absentObjects.put(oid, type);
+    }
+
+    public synchronized boolean isWithoutOwner(String shadowOid) {
+        return shadowsWithoutOwner.containsKey(shadowOid);
+    }
+
+    public synchronized void putWithoutOwner(String shadowOid) {
+        shadowsWithoutOwner.put(shadowOid, Boolean.TRUE);
+    }
+
+    /**
+     * Removes absence information for given type and OID. If OID is null, information on all objects related
+     * to the type is removed.
+     */
+    public synchronized void removeAbsent(Class<?> type, String oid) {
+        if (oid != null) {
+            absentObjects.remove(oid);
+        } else {
+            absentObjects.values().removeIf(absentType -> type.isAssignableFrom(absentType) || absentType.isAssignableFrom(type));
+        }
+    }
+
+    public synchronized void removeAllWithoutOwner() {
+        shadowsWithoutOwner.clear();
+    }
+
+    @Override
+    public synchronized String description() {
+        return "N:" + absentObjects.size() + "/" + shadowsWithoutOwner.size();
+    }
+
+    @Override
+    protected synchronized int getSize() {
+        return absentObjects.size() + shadowsWithoutOwner.size();
+    }
+
+    @Override
+    protected synchronized void dumpContent(String threadName) {
+        if (LOGGER_CONTENT.isInfoEnabled()) {
+            absentObjects.forEach((k, v) -> LOGGER_CONTENT.info("Absent object [{}] {}: {}", threadName, k, v.getSimpleName()));
+            shadowsWithoutOwner.keySet().forEach(k -> LOGGER_CONTENT.info("Shadow without owner [{}] {}", threadName, k));
+        }
+    }
+
+    private int getMaxSize() {
+        return getConfiguration() != null && getConfiguration().getMaxSize() != null ?
+                getConfiguration().getMaxSize() : DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * LRU map limited to maxSize entries.
+     */
+    private class BoundedMap<V> extends LinkedHashMap<String, V> {
+
+        private BoundedMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            return size() > getMaxSize();
+        }
+    }
+}
@@ -9,13 +9,15 @@ package com.evolveum.midpoint.repo.cache.local;
 
 import static com.evolveum.midpoint.repo.cache.handlers.SearchOpHandler.QUERY_RESULT_SIZE_LIMIT;
 
-import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.cache.invalidation.ChangeDescription;
+import com.evolveum.midpoint.repo.cache.invalidation.QueryIndex;
 import com.evolveum.midpoint.schema.SearchResultList;
 import com.evolveum.midpoint.util.caching.AbstractThreadLocalCache;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -31,6 +33,9 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
 
     private final Map<QueryKey, SearchResultList> data = new ConcurrentHashMap<>();
 
+    /** Used to find entries to be invalidated. All keys in data are there. */
+    private final QueryIndex index = new QueryIndex();
+
     public <T extends ObjectType> SearchResultList<PrismObject<T>> get(QueryKey key) {
         //noinspection unchecked
         return data.get(key);
@@ -41,11 +46,13 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
         if (list.size() > QUERY_RESULT_SIZE_LIMIT) {
             throw new IllegalStateException("Trying to cache result list greater than " + QUERY_RESULT_SIZE_LIMIT + ": " + list.size());
         }
+        index.add(key, list);
         data.put(key, list);
     }
 
     public void remove(QueryKey key) {
         data.remove(key);
+        index.remove(key);
     }
 
     @Override
@@ -82,7 +89,11 @@ public class LocalQueryCache extends AbstractThreadLocalCache {
         return rv;
     }
 
-    public Iterator<Map.Entry<QueryKey, SearchResultList>> getEntryIterator() {
-        return data.entrySet().iterator();
+    /**
+     * Returns keys of entries that can be affected by the change. (They have to be checked further.)
+     */
+    @NotNull
+    public Set<QueryKey<?>> getInvalidationCandidates(@NotNull ChangeDescription change) {
+        return index.getCandidates(change);
     }
 }
@@ -23,7 +23,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import static com.evolveum.midpoint.schema.cache.CacheType.*;
 
 /**
- * Set of three thread-local repo caches (object, version, query).
+ * Set of four thread-local repo caches (object, version, query, negative results).
  */
 @Component
 public class LocalRepoCacheCollection {
@@ -35,6 +35,7 @@ public class LocalRepoCacheCollection {
     private static final ConcurrentHashMap<Thread, LocalObjectCache> LOCAL_OBJECT_CACHE_INSTANCE = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<Thread, LocalVersionCache> LOCAL_VERSION_CACHE_INSTANCE = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<Thread, LocalQueryCache> LOCAL_QUERY_CACHE_INSTANCE = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Thread, LocalNegativeCache> LOCAL_NEGATIVE_CACHE_INSTANCE = new ConcurrentHashMap<>();
 
     public static LocalObjectCache getLocalObjectCache() {
         return LOCAL_OBJECT_CACHE_INSTANCE.get(Thread.currentThread());
@@ -48,10 +49,15 @@ public class LocalRepoCacheCollection {
         return LOCAL_QUERY_CACHE_INSTANCE.get(Thread.currentThread());
     }
 
+    public static LocalNegativeCache getLocalNegativeCache() {
+        return LOCAL_NEGATIVE_CACHE_INSTANCE.get(Thread.currentThread());
+    }
+
     public static void destroy() {
         LocalObjectCache.destroy(LOCAL_OBJECT_CACHE_INSTANCE, LOGGER);
         LocalVersionCache.destroy(LOCAL_VERSION_CACHE_INSTANCE, LOGGER);
         LocalQueryCache.destroy(LOCAL_QUERY_CACHE_INSTANCE, LOGGER);
+        LocalNegativeCache.destroy(LOCAL_NEGATIVE_CACHE_INSTANCE, LOGGER);
     }
 
     public static void enter(CacheConfigurationManager mgr) {
@@ -60,29 +66,34 @@ public class LocalRepoCacheCollection {
         CacheConfiguration objectCacheConfig = mgr.getConfiguration(LOCAL_REPO_OBJECT_CACHE);
         CacheConfiguration versionCacheConfig = mgr.getConfiguration(LOCAL_REPO_VERSION_CACHE);
         CacheConfiguration queryCacheConfig = mgr.getConfiguration(LOCAL_REPO_QUERY_CACHE);
+        CacheConfiguration negativeCacheConfig = mgr.getConfiguration(LOCAL_REPO_NEGATIVE_CACHE);
 
         LocalObjectCache.enter(LOCAL_OBJECT_CACHE_INSTANCE, LocalObjectCache.class, objectCacheConfig, LOGGER);
         LocalVersionCache.enter(LOCAL_VERSION_CACHE_INSTANCE, LocalVersionCache.class, versionCacheConfig, LOGGER);
         LocalQueryCache.enter(LOCAL_QUERY_CACHE_INSTANCE, LocalQueryCache.class, queryCacheConfig, LOGGER);
+        LocalNegativeCache.enter(LOCAL_NEGATIVE_CACHE_INSTANCE, LocalNegativeCache.class, negativeCacheConfig, LOGGER);
     }
 
     public static void exit() {
         LocalObjectCache.exit(LOCAL_OBJECT_CACHE_INSTANCE, LOGGER);
         LocalVersionCache.exit(LOCAL_VERSION_CACHE_INSTANCE, LOGGER);
         LocalQueryCache.exit(LOCAL_QUERY_CACHE_INSTANCE, LOGGER);
+        LocalNegativeCache.exit(LOCAL_NEGATIVE_CACHE_INSTANCE, LOGGER);
     }
 
     public static boolean exists() {
         return LocalObjectCache.exists(LOCAL_OBJECT_CACHE_INSTANCE) ||
                 LocalVersionCache.exists(LOCAL_VERSION_CACHE_INSTANCE) ||
-                LocalQueryCache.exists(LOCAL_QUERY_CACHE_INSTANCE);
+                LocalQueryCache.exists(LOCAL_QUERY_CACHE_INSTANCE) ||
+                LocalNegativeCache.exists(LOCAL_NEGATIVE_CACHE_INSTANCE);
     }
 
     public static String debugDump() {
         // TODO
         return LocalObjectCache.debugDump(LOCAL_OBJECT_CACHE_INSTANCE) + "\n" +
                 LocalVersionCache.debugDump(LOCAL_VERSION_CACHE_INSTANCE) + "\n" +
-                LocalQueryCache.debugDump(LOCAL_QUERY_CACHE_INSTANCE);
+                LocalQueryCache.debugDump(LOCAL_QUERY_CACHE_INSTANCE) + "\n" +
+                LocalNegativeCache.debugDump(LOCAL_NEGATIVE_CACHE_INSTANCE);
     }
 
     public void getStateInformation(List<SingleCacheStateInformationType> rv) {
@@ -96,6 +107,9 @@ public class LocalRepoCacheCollection {
                 .name(LocalQueryCache.class.getName())
                 .size(LocalQueryCache.getTotalSize(LOCAL_QUERY_CACHE_INSTANCE))
                 .secondarySize(LocalQueryCache.getTotalCachedObjects(LOCAL_QUERY_CACHE_INSTANCE)));
+        rv.add(new SingleCacheStateInformationType(prismContext)
+                .name(LocalNegativeCache.class.getName())
+                .size(LocalNegativeCache.getTotalSize(LOCAL_NEGATIVE_CACHE_INSTANCE)));
 
     }
 
@@ -103,5 +117,6 @@ public class LocalRepoCacheCollection {
         LocalObjectCache.dumpContent(LOCAL_OBJECT_CACHE_INSTANCE);
         LocalVersionCache.dumpContent(LOCAL_VERSION_CACHE_INSTANCE);
         LocalQueryCache.dumpContent(LOCAL_QUERY_CACHE_INSTANCE);
+        LocalNegativeCache.dumpContent(LOCAL_NEGATIVE_CACHE_INSTANCE);
     }
 }
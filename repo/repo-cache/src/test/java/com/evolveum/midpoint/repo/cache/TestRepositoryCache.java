@@ -21,8 +21,12 @@ import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.PostConstruct;
 
 import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.path.ItemPath;
 
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.polystring.PolyString;
 
 import com.evolveum.midpoint.repo.cache.global.GlobalCacheObjectValue;
 import com.evolveum.midpoint.repo.cache.global.GlobalObjectCache;
@@ -30,6 +34,7 @@ import com.evolveum.midpoint.repo.cache.global.GlobalObjectCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalQueryCache;
 import com.evolveum.midpoint.repo.cache.global.GlobalVersionCache;
 
+import com.evolveum.midpoint.repo.cache.local.LocalNegativeCache;
 import com.evolveum.midpoint.repo.cache.local.QueryKey;
 
 import com.evolveum.midpoint.schema.statistics.CachePerformanceInformationUtil;
@@ -46,10 +51,12 @@ import org.testng.annotations.Test;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.perf.OperationPerformanceInformation;
 import com.evolveum.midpoint.repo.api.perf.PerformanceInformation;
 import com.evolveum.midpoint.schema.*;
+import com.evolveum.midpoint.schema.cache.CacheConfigurationManager;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.statistics.RepositoryPerformanceInformationUtil;
@@ -60,7 +67,14 @@ import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ArchetypeType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CacheSettingsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CacheStorageType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingProfileType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SingleCacheStateInformationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
@@ -71,11 +85,16 @@ public class TestRepositoryCache extends AbstractSpringTest implements InfraTest
 
     private static final String CLASS_DOT = TestRepositoryCache.class.getName() + ".";
 
+    private static final String NS_CACHE_EXT = "http://midpoint.evolveum.com/xml/ns/test/cache-extension";
+    private static final ItemName EXT_DYNAMIC_ITEM = new ItemName(NS_CACHE_EXT, "dynamicItem");
+    private static final ItemName EXT_RAW_ITEM = new ItemName(NS_CACHE_EXT, "rawItem");
+
     @Autowired RepositoryCache repositoryCache;
     @Autowired GlobalObjectCache globalObjectCache;
     @Autowired GlobalVersionCache globalVersionCache;
     @Autowired GlobalQueryCache globalQueryCache;
     @Autowired PrismContext prismContext;
+    @Autowired CacheConfigurationManager cacheConfigurationManager;
 
     @SuppressWarnings("unused") // used when heap dumps are uncommented
     private final long identifier = System.currentTimeMillis();
@@ -298,6 +317,359 @@ public class TestRepositoryCache extends AbstractSpringTest implements InfraTest
         assertThat(data.overSizedQueries.get()).as("over-sized counter").isEqualTo(2); // search + searchIterative
     }
 
+    /**
+     * Only queries that can be affected by the change should be examined when invalidating.
+     */
+    @Test
+    public void test340IndexedQueryInvalidation() throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        given();
+        OperationResult result = createOperationResult();
+
+        deleteExistingObjects(ArchetypeType.class, result);
+
+        clearStatistics();
+        clearCaches();
+
+        Map<String, PrismObject<ArchetypeType>> objects = new HashMap<>();
+        for (PrismObject<ArchetypeType> object : generateObjects(ArchetypeType.class, 10, result)) {
+            objects.put(object.getName().getOrig(), object);
+        }
+        for (int i = 0; i < 10; i++) {
+            repositoryCache.searchObjects(ArchetypeType.class, createNameQuery("T:" + i), null, result);
+            assertQueryIsCached(ArchetypeType.class, createNameQuery("T:" + i));
+        }
+
+        when("description is modified");
+        clearStatistics();
+        repositoryCache.modifyObject(ArchetypeType.class, objects.get("T:0").getOid(),
+                prismContext.deltaFor(ArchetypeType.class)
+                        .item(ArchetypeType.F_DESCRIPTION).replace("changed")
+                        .asItemDeltas(),
+                result);
+        dumpStatistics();
+
+        then("only the query containing the object is examined and invalidated");
+        assertQueryIsNotCached(ArchetypeType.class, createNameQuery("T:0"));
+        for (int i = 1; i < 10; i++) {
+            assertQueryIsCached(ArchetypeType.class, createNameQuery("T:" + i));
+        }
+        assertThat(getGlobalQueryCacheInvalidationEntriesExamined()).as("entries examined").isEqualTo(1);
+
+        when("name is modified");
+        clearStatistics();
+        repositoryCache.modifyObject(ArchetypeType.class, objects.get("T:1").getOid(),
+                prismContext.deltaFor(ArchetypeType.class)
+                        .item(ArchetypeType.F_NAME).replace(PolyString.fromOrig("T:2"))
+                        .asItemDeltas(),
+                result);
+        dumpStatistics();
+
+        then("queries referring to the name are examined, and the matching ones are invalidated");
+        assertQueryIsNotCached(ArchetypeType.class, createNameQuery("T:1"));
+        assertQueryIsNotCached(ArchetypeType.class, createNameQuery("T:2"));
+        for (int i = 3; i < 10; i++) {
+            assertQueryIsCached(ArchetypeType.class, createNameQuery("T:" + i));
+        }
+        assertThat(getGlobalQueryCacheInvalidationEntriesExamined()).as("entries examined").isEqualTo(9);
+    }
+
+    /**
+     * Modifications of externally stored items (here assignments, as the threshold is 3) are applied without
+     * reading the whole object. Queries not referring to the modified items should still not be examined.
+     */
+    @Test
+    public void test345ExternalItemsQueryInvalidation() throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        given();
+        OperationResult result = createOperationResult();
+
+        deleteExistingObjects(ArchetypeType.class, result);
+
+        clearStatistics();
+        clearCaches();
+
+        List<String> oids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ArchetypeType archetype = new ArchetypeType(prismContext)
+                    .name("E:" + i);
+            for (long id = 1; id <= 5; id++) {
+                archetype.getAssignment().add(new AssignmentType(prismContext).id(id).description("a" + id));
+            }
+            oids.add(repositoryCache.addObject(archetype.asPrismObject(), null, result));
+        }
+        for (int i = 0; i < 3; i++) {
+            repositoryCache.searchObjects(ArchetypeType.class, createNameQuery("E:" + i), null, result);
+            assertQueryIsCached(ArchetypeType.class, createNameQuery("E:" + i));
+        }
+
+        when("assignment is added");
+        clearStatistics();
+        ModifyObjectResult<ArchetypeType> modifyResult = repositoryCache.modifyObject(ArchetypeType.class, oids.get(0),
+                prismContext.deltaFor(ArchetypeType.class)
+                        .item(ArchetypeType.F_ASSIGNMENT).add(new AssignmentType(prismContext).id(100L))
+                        .asItemDeltas(),
+                result);
+        dumpStatistics();
+
+        then("only the query containing the object is examined and invalidated");
+        assertThat(modifyResult.isModifiedItemsOnly()).as("modified items only").isTrue();
+        assertQueryIsNotCached(ArchetypeType.class, createNameQuery("E:0"));
+        assertQueryIsCached(ArchetypeType.class, createNameQuery("E:1"));
+        assertQueryIsCached(ArchetypeType.class, createNameQuery("E:2"));
+        assertThat(getGlobalQueryCacheInvalidationEntriesExamined()).as("entries examined").isEqualTo(1);
+
+        PrismObject<ArchetypeType> object = repositoryCache.getObject(ArchetypeType.class, oids.get(0), null, result);
+        assertThat(object.asObjectable().getAssignment()).as("assignments after change").hasSize(6);
+    }
+
+    /**
+     * Repeated getObject of a non-existing object should be answered by the negative cache,
+     * until the object is created.
+     */
+    @Test
+    public void test350NegativeCache() throws ObjectAlreadyExistsException, SchemaException, ObjectNotFoundException {
+        given();
+        OperationResult result = createOperationResult();
+        String oid = UUID.randomUUID().toString();
+
+        clearStatistics();
+        clearCaches();
+        RepositoryCache.enterLocalCaches(cacheConfigurationManager);
+        try {
+            when("non-existing object is requested twice");
+            assertObjectNotFound(oid, result);
+            assertObjectNotFound(oid, result);
+            dumpStatistics();
+
+            then("only the first request goes to the repository");
+            assertGetOperations(1);
+            assertThat(getLocalNegativeCacheHits()).as("negative cache hits").isEqualTo(1);
+
+            when("the object is created");
+            PrismObject<ArchetypeType> archetype = getPrismContext().createObject(ArchetypeType.class);
+            archetype.setOid(oid);
+            archetype.asObjectable().name(PolyStringType.fromOrig("negative-" + oid));
+            repositoryCache.addObject(archetype, null, result);
+
+            then("it can be retrieved");
+            PrismObject<ArchetypeType> retrieved = repositoryCache.getObject(ArchetypeType.class, oid, null, result);
+            assertEquals("Wrong OID", oid, retrieved.getOid());
+        } finally {
+            RepositoryCache.exitLocalCaches();
+        }
+    }
+
+    private void assertObjectNotFound(String oid, OperationResult result) throws SchemaException {
+        try {
+            repositoryCache.getObject(ArchetypeType.class, oid, null, result);
+            fail("Unexpected success");
+        } catch (ObjectNotFoundException e) {
+            displayExpectedException(e);
+        }
+    }
+
+    private int getLocalNegativeCacheHits() {
+        return CachePerformanceCollector.INSTANCE.getGlobalPerformanceMap().entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(LocalNegativeCache.class.getName()))
+                .mapToInt(entry -> entry.getValue().hits.get())
+                .sum();
+    }
+
+    @Test
+    public void test400SerializedStorageRoundTrip() throws Exception {
+        testSerializedStorageRoundTrip(CacheStorageType.SERIALIZED);
+    }
+
+    @Test
+    public void test410SerializedOffHeapStorageRoundTrip() throws Exception {
+        testSerializedStorageRoundTrip(CacheStorageType.SERIALIZED_OFF_HEAP);
+    }
+
+    /**
+     * Objects put into the serialized cache are returned as equal (frozen) objects, including dynamic and raw
+     * extension items. The description is large enough for the data to be inflated in more chunks.
+     */
+    private void testSerializedStorageRoundTrip(CacheStorageType storage) throws SchemaException {
+        given();
+        String description = createRandomText(50_000);
+        PrismObject<ArchetypeType> archetype = prismContext.parserFor(
+                "<archetype xmlns='http://midpoint.evolveum.com/xml/ns/public/common/common-3'\n"
+                        + "    xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'\n"
+                        + "    xmlns:xsd='http://www.w3.org/2001/XMLSchema'\n"
+                        + "    xmlns:ext='" + NS_CACHE_EXT + "'>\n"
+                        + "  <name>" + getTestNameShort() + "</name>\n"
+                        + "  <extension>\n"
+                        + "    <ext:dynamicItem xsi:type='xsd:int'>42</ext:dynamicItem>\n"
+                        + "    <ext:rawItem>raw value</ext:rawItem>\n"
+                        + "  </extension>\n"
+                        + "</archetype>").xml().parse();
+        archetype.setOid(UUID.randomUUID().toString());
+        archetype.setVersion("3");
+        archetype.asObjectable().setDescription(description);
+        archetype.freeze();
+
+        useObjectCacheStorage(storage, null);
+        try {
+            when();
+            globalObjectCache.put(new GlobalCacheObjectValue<>(archetype, System.currentTimeMillis() + 10000));
+            GlobalCacheObjectValue<ArchetypeType> value1 = globalObjectCache.get(archetype.getOid());
+            GlobalCacheObjectValue<ArchetypeType> value2 = globalObjectCache.get(archetype.getOid());
+
+            then();
+            assertThat(value1).as("1st cached value").isNotNull();
+            assertThat(value2).as("2nd cached value").isNotNull();
+            PrismObject<ArchetypeType> retrieved = value1.getObject();
+            displayDumpable("object retrieved", retrieved);
+            assertThat(retrieved.isImmutable()).as("retrieved object immutable").isTrue();
+            assertThat(value2.getObject()).as("object from 2nd hit").isNotSameAs(retrieved);
+            assertThat(retrieved.getOid()).as("OID").isEqualTo(archetype.getOid());
+            assertThat(retrieved.getVersion()).as("version").isEqualTo("3");
+            assertThat(retrieved.asObjectable().getName().getOrig()).as("name").isEqualTo(getTestNameShort());
+            assertThat(retrieved.asObjectable().getDescription()).as("description").isEqualTo(description);
+
+            PrismProperty<Integer> dynamicItem = retrieved.findProperty(ItemPath.create(ObjectType.F_EXTENSION, EXT_DYNAMIC_ITEM));
+            assertThat(dynamicItem).as("dynamic item").isNotNull();
+            assertThat(dynamicItem.getRealValue()).as("dynamic item value").isEqualTo(42);
+            PrismProperty<?> rawItem = retrieved.findProperty(ItemPath.create(ObjectType.F_EXTENSION, EXT_RAW_ITEM));
+            assertThat(rawItem).as("raw item").isNotNull();
+            assertThat(rawItem.size()).as("raw item values").isEqualTo(1);
+            assertThat(rawItem.getValue().isRaw()).as("raw item value is raw").isTrue();
+
+            SingleCacheStateInformationType state = getObjectCacheState();
+            assertThat(state.getSize()).as("cached objects").isEqualTo(1);
+            assertThat(state.getBytes()).as("cached bytes").isGreaterThan(0L).isLessThan((long) description.length());
+        } finally {
+            useDefaultObjectCacheStorage();
+        }
+    }
+
+    /**
+     * With maxSizeInBytes set, entries are evicted so their total size fits the limit.
+     */
+    @Test
+    public void test420SerializedStorageEvictionByWeight() throws SchemaException {
+        given();
+        long maxSizeInBytes = 100_000;
+        int count = 20;
+        useObjectCacheStorage(CacheStorageType.SERIALIZED, maxSizeInBytes);
+        try {
+            when();
+            for (int i = 0; i < count; i++) {
+                PrismObject<ArchetypeType> archetype = new ArchetypeType(prismContext)
+                        .oid(UUID.randomUUID().toString())
+                        .version("1")
+                        .name(getTestNameShort() + "." + i)
+                        .description(createRandomText(20_000))
+                        .asPrismObject();
+                archetype.freeze();
+                globalObjectCache.put(new GlobalCacheObjectValue<>(archetype, System.currentTimeMillis() + 10000));
+            }
+
+            then();
+            SingleCacheStateInformationType state = getObjectCacheState();
+            displayValue("object cache state", state);
+            assertThat(state.getBytes()).as("cached bytes").isLessThanOrEqualTo(maxSizeInBytes);
+            assertThat(state.getSize()).as("cached objects").isGreaterThan(0).isLessThan(count);
+        } finally {
+            useDefaultObjectCacheStorage();
+        }
+    }
+
+    /**
+     * Serialized entries are invalidated on object modification and on type-wide invalidation.
+     */
+    @Test
+    public void test430SerializedStorageInvalidation() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+        useObjectCacheStorage(CacheStorageType.SERIALIZED, null);
+        try {
+            clearStatistics();
+            clearCaches();
+
+            PrismObject<ArchetypeType> archetype1 = new ArchetypeType(prismContext)
+                    .name(getTestNameShort() + ".1")
+                    .asPrismObject();
+            String oid1 = repositoryCache.addObject(archetype1, null, result);
+            PrismObject<ArchetypeType> archetype2 = new ArchetypeType(prismContext)
+                    .name(getTestNameShort() + ".2")
+                    .asPrismObject();
+            String oid2 = repositoryCache.addObject(archetype2, null, result);
+
+            repositoryCache.getObject(ArchetypeType.class, oid1, null, result);
+            repositoryCache.getObject(ArchetypeType.class, oid1, null, result);
+            repositoryCache.getObject(ArchetypeType.class, oid2, null, result);
+            assertGetOperations(2);
+            assertObjectIsCached(oid1);
+            assertObjectIsCached(oid2);
+
+            when("object is modified");
+            List<ItemDelta<?, ?>> deltas = prismContext.deltaFor(ArchetypeType.class)
+                    .item(ArchetypeType.F_DESCRIPTION).replace("changed")
+                    .asItemDeltas();
+            repositoryCache.modifyObject(ArchetypeType.class, oid1, deltas, result);
+
+            then("it is no longer cached");
+            assertObjectIsNotCached(oid1);
+            assertObjectIsCached(oid2);
+            PrismObject<ArchetypeType> retrieved = repositoryCache.getObject(ArchetypeType.class, oid1, null, result);
+            assertThat(retrieved.asObjectable().getDescription()).as("description after change").isEqualTo("changed");
+            assertObjectIsCached(oid1);
+
+            when("all archetypes are invalidated");
+            globalObjectCache.remove(ArchetypeType.class, null);
+
+            then("none of them is cached");
+            assertObjectIsNotCached(oid1);
+            assertObjectIsNotCached(oid2);
+        } finally {
+            useDefaultObjectCacheStorage();
+        }
+    }
+
+    /**
+     * Re-creates global object cache with given storage, keeping all other settings from the default caching profile.
+     */
+    private void useObjectCacheStorage(CacheStorageType storage, Long maxSizeInBytes) {
+        CacheSettingsType objectCacheSettings = new CacheSettingsType();
+        objectCacheSettings.setStorage(storage);
+        objectCacheSettings.setMaxSizeInBytes(maxSizeInBytes);
+        CachingProfileType profile = new CachingProfileType();
+        profile.setName("serialized");
+        profile.setGlobal(true);
+        profile.setGlobalRepoObjectCache(objectCacheSettings);
+        CachingConfigurationType caching = new CachingConfigurationType();
+        caching.getProfile().add(profile);
+        InternalsConfigurationType internals = new InternalsConfigurationType();
+        internals.setCaching(caching);
+        SystemConfigurationType systemConfiguration = new SystemConfigurationType();
+        systemConfiguration.setInternals(internals);
+
+        cacheConfigurationManager.applyCachingConfiguration(systemConfiguration);
+        globalObjectCache.destroy();
+        globalObjectCache.initialize();
+    }
+
+    private void useDefaultObjectCacheStorage() {
+        cacheConfigurationManager.applyCachingConfiguration(null);
+        globalObjectCache.destroy();
+        globalObjectCache.initialize();
+    }
+
+    private SingleCacheStateInformationType getObjectCacheState() {
+        Collection<SingleCacheStateInformationType> states = globalObjectCache.getStateInformation();
+        assertThat(states).as("object cache state information").hasSize(1);
+        return states.iterator().next();
+    }
+
+    /** Random text, so it is not compressed too much. */
+    private String createRandomText(int length) {
+        StringBuilder sb = new StringBuilder(length + 36);
+        while (sb.length() < length) {
+            sb.append(UUID.randomUUID());
+        }
+        return sb.substring(0, length);
+    }
+
     // Must be executed last, because naive deletion such large number of archetypes fails on OOM
     @Test
     public void test900HeapUsage() throws Exception {
@@ -481,6 +853,19 @@ public class TestRepositoryCache extends AbstractSpringTest implements InfraTest
         assertThat(value).as("cached version value for " + key).isNull();
     }
 
+    private ObjectQuery createNameQuery(String name) {
+        return prismContext.queryFor(ArchetypeType.class)
+                .item(ArchetypeType.F_NAME).eqPoly(name).matchingOrig()
+                .build();
+    }
+
+    private int getGlobalQueryCacheInvalidationEntriesExamined() {
+        return CachePerformanceCollector.INSTANCE.getGlobalPerformanceMap().entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(GlobalQueryCache.class.getName()))
+                .mapToInt(entry -> entry.getValue().invalidationEntriesExamined.get())
+                .sum();
+    }
+
     private void clearCaches() {
         globalObjectCache.clear();
         globalVersionCache.clear();
@@ -18,6 +18,7 @@ BEGIN
     TRUNCATE TABLE m_object_ext_date RESTART IDENTITY CASCADE;
     TRUNCATE TABLE m_object_ext_long RESTART IDENTITY CASCADE;
     TRUNCATE TABLE m_object_ext_string RESTART IDENTITY CASCADE;
+    TRUNCATE TABLE m_object_external_item RESTART IDENTITY CASCADE;
     TRUNCATE TABLE m_object_ext_poly RESTART IDENTITY CASCADE;
     TRUNCATE TABLE m_object_ext_reference RESTART IDENTITY CASCADE;
     TRUNCATE TABLE m_object_ext_boolean RESTART IDENTITY CASCADE;
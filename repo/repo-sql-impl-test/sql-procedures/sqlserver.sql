@@ -29,6 +29,7 @@ AS
     DELETE FROM m_object_ext_date;
     DELETE FROM m_object_ext_long;
     DELETE FROM m_object_ext_string;
+    DELETE FROM m_object_external_item;
     DELETE FROM m_object_ext_poly;
     DELETE FROM m_object_ext_reference;
     DELETE FROM m_object_ext_boolean;
@@ -32,7 +32,9 @@ import com.evolveum.midpoint.prism.delta.ReferenceDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.BulkOperationItemResult;
 import com.evolveum.midpoint.repo.api.RepoAddOptions;
+import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sql.data.common.RTask;
 import com.evolveum.midpoint.repo.sql.data.common.enums.ROperationResultStatus;
 import com.evolveum.midpoint.repo.sql.type.XMLGregorianCalendarType;
@@ -42,9 +44,11 @@ import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.processor.ResourceSchema;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.schema.util.ShadowUtil;
 import com.evolveum.midpoint.test.util.TestUtil;
 import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
@@ -558,6 +562,89 @@ public class AddGetObjectTest extends BaseSQLRepoTest {
         }
     }
 
+    @Test
+    public void test150GetObjects() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("three users in repository");
+        List<String> oids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            UserType user = new UserType(prismContext).name("t150-" + i);
+            oids.add(repositoryService.addObject(user.asPrismObject(), null, result));
+        }
+        String nonExistingOid = "4b1f8a41-cc6b-4a53-8f4e-2c5bd4dc6ef1";
+        String roleOid = repositoryService.addObject(new RoleType(prismContext).name("t150-role").asPrismObject(), null, result);
+
+        when("getObjects is called with reversed OIDs, a duplicate, a non-existing one and a role");
+        List<String> requested = new ArrayList<>(oids);
+        Collections.reverse(requested);
+        requested.add(nonExistingOid);
+        requested.add(roleOid);
+        requested.add(oids.get(0));
+        List<PrismObject<UserType>> users = repositoryService.getObjects(UserType.class, requested, null, result);
+
+        then("existing users are returned once each, in the requested order");
+        assertThat(users).extracting(PrismObject::getOid)
+                .containsExactly(oids.get(2), oids.get(1), oids.get(0));
+        assertEquals("t150-2", users.get(0).asObjectable().getName().getOrig());
+        assertNotNull("version is missing", users.get(0).getVersion());
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+    }
+
+    @Test
+    public void test160AddObjectsWithConflict() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("a user that conflicts with the second one to be added");
+        repositoryService.addObject(new UserType(prismContext).name("t160-b").asPrismObject(), null, result);
+        List<PrismObject<? extends ObjectType>> users = new ArrayList<>();
+        users.add(new UserType(prismContext).name("t160-a").asPrismObject());
+        users.add(new UserType(prismContext).name("t160-b").asPrismObject());
+        users.add(new UserType(prismContext).name("t160-c").asPrismObject());
+
+        when("the users are added in bulk");
+        List<BulkOperationItemResult> itemResults = repositoryService.addObjects(users, null, result);
+
+        then("the conflicting user is reported, the others are added");
+        assertEquals("wrong # of item results", 3, itemResults.size());
+        assertTrue("first user was not added", itemResults.get(0).isSuccess());
+        assertThat(itemResults.get(1).getException()).isInstanceOf(ObjectAlreadyExistsException.class);
+        assertTrue("third user was not added", itemResults.get(2).isSuccess());
+        assertEquals("wrong OID in item result", users.get(2).getOid(), itemResults.get(2).getOid());
+        PrismObject<UserType> added = repositoryService.getObject(UserType.class, itemResults.get(2).getOid(), null, result);
+        assertEquals("t160-c", added.asObjectable().getName().getOrig());
+        assertEquals("wrong result status", OperationResultStatus.PARTIAL_ERROR,
+                result.findSubresult(RepositoryService.ADD_OBJECTS).getStatus());
+    }
+
+    @Test
+    public void test170ModifyObjects() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("two users in repository");
+        String oid1 = repositoryService.addObject(new UserType(prismContext).name("t170-a").asPrismObject(), null, result);
+        String oid2 = repositoryService.addObject(new UserType(prismContext).name("t170-b").asPrismObject(), null, result);
+        String nonExistingOid = "8f1bd8c1-3a08-4cb0-a3bb-9e59e83f0b2e";
+
+        when("both users and one non-existing one are modified in bulk");
+        List<ObjectDelta<UserType>> deltas = new ArrayList<>();
+        for (String oid : Arrays.asList(oid1, nonExistingOid, oid2)) {
+            deltas.add(prismContext.deltaFor(UserType.class)
+                    .item(UserType.F_FULL_NAME).replace(PolyString.fromOrig("Modified " + oid))
+                    .asObjectDelta(oid));
+        }
+        List<BulkOperationItemResult> itemResults = repositoryService.modifyObjects(deltas, null, result);
+
+        then("existing users are modified, the missing one is reported");
+        assertTrue("first user was not modified", itemResults.get(0).isSuccess());
+        assertThat(itemResults.get(1).getException()).isInstanceOf(ObjectNotFoundException.class);
+        assertTrue("second user was not modified", itemResults.get(2).isSuccess());
+        UserType user2 = repositoryService.getObject(UserType.class, oid2, null, result).asObjectable();
+        assertEquals("Modified " + oid2, user2.getFullName().getOrig());
+        assertEquals("wrong version", "1", user2.getVersion());
+    }
+
     private static final String OID_200 = "70016628-2c41-4a2d-9558-8340014adaab";
 
     @Test
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.AssertJUnit;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.repo.sql.data.audit.RAuditEventRecord;
+import com.evolveum.midpoint.schema.ObjectDeltaOperation;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
+import com.evolveum.midpoint.task.api.test.NullTaskImpl;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CleanupPolicyType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Measures audit cleanup on partitioned audit tables (see postgresql-4.2-audit-partitioning.sql).
+ *
+ * Runs only on PostgreSQL with auditPartitioning set. The partition size should be substantially lower
+ * than {@link #RECORDS} (e.g. 10000), otherwise no partitions are dropped. Compare with {@link AuditCleanupPerformanceTest}.
+ */
+@ContextConfiguration(locations = {"../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class AuditPartitionCleanupPerformanceTest extends BaseSQLRepoTest {
+
+    private static final int RECORDS = 50000;
+    private static final int RECORDS_TO_KEEP = 1000;
+
+    @Test
+    public void testAuditPartitionCleanup() throws Exception {
+        SqlRepositoryConfiguration configuration = getRepositoryConfiguration();
+        if (!configuration.isUsingPostgreSQL() || !configuration.isAuditPartitioning()) {
+            throw new SkipException("Audit partitioning is not enabled");
+        }
+
+        //GIVEN
+        long initialCount = countAuditEventRecords();
+        prepareAuditEventRecords();
+        AssertJUnit.assertEquals(initialCount + RECORDS, countAuditEventRecords());
+
+        //WHEN
+        CleanupPolicyType policy = new CleanupPolicyType().maxRecords(RECORDS_TO_KEEP);
+
+        OperationResult result = new OperationResult("Cleanup audit");
+        long cleanupStart = System.currentTimeMillis();
+        auditService.cleanupAudit(policy, result);
+        long cleanupDuration = System.currentTimeMillis() - cleanupStart;
+        long deleted = initialCount + RECORDS - RECORDS_TO_KEEP;
+        System.out.println("Cleanup done in " + cleanupDuration + " ms (" + (double) cleanupDuration / deleted + " ms per record)");
+        result.recomputeStatus();
+
+        //THEN
+        AssertJUnit.assertTrue(result.isSuccess());
+        AssertJUnit.assertEquals(RECORDS_TO_KEEP, countAuditEventRecords());
+    }
+
+    private long countAuditEventRecords() {
+        try (Session session = getFactory().openSession()) {
+            session.beginTransaction();
+            Query query = session.createQuery("select count(*) from " + RAuditEventRecord.class.getSimpleName());
+            Long count = (Long) query.uniqueResult();
+            session.getTransaction().commit();
+            return count;
+        }
+    }
+
+    private void prepareAuditEventRecords() throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < RECORDS;) {
+            AuditEventRecord record = new AuditEventRecord();
+            record.addDelta(createObjectDeltaOperation(i));
+            record.setTimestamp(System.currentTimeMillis());
+            record.addPropertyValue("prop1", "val1");
+            record.addReferenceValue("ref1", ObjectTypeUtil.createObjectRef("oid1", ObjectTypes.USER).asReferenceValue());
+            auditService.audit(record, new NullTaskImpl());
+            i++;
+            if (i % 1000 == 0 || i == RECORDS) {
+                long duration = System.currentTimeMillis() - start;
+                System.out.println(i + " records created in " + duration + " ms (" + duration / i + " ms per record)");
+            }
+        }
+    }
+
+    private ObjectDeltaOperation<UserType> createObjectDeltaOperation(int i) throws Exception {
+        ObjectDelta<UserType> delta = prismContext.deltaFor(UserType.class)
+                .item(UserType.F_DESCRIPTION).replace("d" + i)
+                .asObjectDeltaCast("oid-" + i);
+        ObjectDeltaOperation<UserType> odo = new ObjectDeltaOperation<>();
+        odo.setObjectDelta(delta);
+        odo.setExecutionResult(new OperationResult("asdf"));
+        return odo;
+    }
+}
@@ -9,11 +9,9 @@ package com.evolveum.midpoint.repo.sql;
 
 import static org.testng.AssertJUnit.assertEquals;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
 
+import org.apache.commons.lang.StringUtils;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 import org.springframework.test.annotation.DirtiesContext;
@@ -24,9 +22,12 @@ import com.evolveum.midpoint.audit.api.AuditEventRecord;
 import com.evolveum.midpoint.audit.api.AuditEventStage;
 import com.evolveum.midpoint.audit.api.AuditEventType;
 import com.evolveum.midpoint.audit.api.AuditReferenceValue;
+import com.evolveum.midpoint.audit.api.AuditResultHandler;
+import com.evolveum.midpoint.audit.api.AuditRetrievalOptions;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.repo.sql.data.audit.RAuditEventRecord;
 import com.evolveum.midpoint.schema.ObjectDeltaOperation;
+import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.test.NullTaskImpl;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
@@ -97,6 +98,122 @@ public class AuditTest extends BaseSQLRepoTest {
         assertEquals("Wrong # of references", 0, loaded.getReferences().size());
     }
 
+    @Test
+    public void test200AuditAsynchronous() {
+        given();
+        SqlAuditServiceImpl sqlAuditService = (SqlAuditServiceImpl) auditService;
+        sqlAuditService.startAsyncWriter(AsyncAuditWriter.Durability.FLUSH_ON_COMMIT, 2, 100, 5, 1000L);
+
+        when();
+        try {
+            for (int i = 0; i < 10; i++) {
+                AuditEventRecord record = new AuditEventRecord();
+                record.addPropertyValue("async", "val" + i);
+                auditService.audit(record, new NullTaskImpl());
+            }
+        } finally {
+            sqlAuditService.stopAsyncWriter();
+        }
+
+        then();
+        AuditEventRecord loaded = getAuditEventRecord(12, 11);
+        assertEquals("Wrong # of properties", 1, loaded.getProperties().size());
+        assertEquals("Wrong async values", new HashSet<>(Collections.singletonList("val9")), loaded.getPropertyValues("async"));
+    }
+
+    @Test
+    public void test210AuditAsynchronousWithBadRecord() {
+        given("writer without threads, so all records are written as one group on stop");
+        SqlAuditServiceImpl sqlAuditService = (SqlAuditServiceImpl) auditService;
+        sqlAuditService.startAsyncWriter(AsyncAuditWriter.Durability.FIRE_AND_FORGET, 0, 100, 10, 1000L);
+        AsyncAuditWriter writer = sqlAuditService.getAsyncWriter();
+
+        when();
+        try {
+            for (int i = 0; i < 5; i++) {
+                AuditEventRecord record = new AuditEventRecord();
+                record.addPropertyValue("async-bad", "val" + i);
+                if (i == 2) {
+                    record.addResourceOid(StringUtils.repeat("x", 100)); // too long for the column
+                }
+                auditService.audit(record, new NullTaskImpl());
+            }
+        } finally {
+            sqlAuditService.stopAsyncWriter();
+        }
+
+        then("only the bad record is dropped");
+        assertEquals("Wrong # of failed records", 1, writer.getRecordsFailed());
+        assertEquals("Wrong # of written records", 4, writer.getRecordsWritten());
+        AuditEventRecord loaded = getAuditEventRecord(16, 15);
+        assertEquals("Wrong async values", new HashSet<>(Collections.singletonList("val4")), loaded.getPropertyValues("async-bad"));
+    }
+
+    @Test
+    public void test300ListRecordsIterativeWithOptions() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+        UserType jack = new UserType(prismContext).name("jack300");
+        String jackOid = repositoryService.addObject(jack.asPrismObject(), null, result);
+
+        AuditEventRecord record = new AuditEventRecord();
+        record.setEventIdentifier("test300");
+        record.setInitiator(new UserType(prismContext).oid(jackOid).name("old-jack300").asPrismObject());
+        record.addPropertyValue("prop", "val");
+        ObjectDeltaOperation<UserType> delta = new ObjectDeltaOperation<>();
+        delta.setObjectDelta(prismContext.deltaFor(UserType.class)
+                .item(UserType.F_DESCRIPTION).replace("d300")
+                .asObjectDeltaCast(jackOid));
+        record.addDelta(delta);
+        auditService.audit(record, new NullTaskImpl());
+
+        when("default options");
+        AuditEventRecord full = listSingleRecord("test300", null, result);
+
+        then("default options");
+        assertEquals("Wrong initiator name", "jack300", full.getInitiator().getName().getOrig());
+        assertEquals("Wrong # of deltas", 1, full.getDeltas().size());
+        assertEquals("Wrong # of properties", 1, full.getProperties().size());
+
+        when("names only");
+        AuditEventRecord namesOnly = listSingleRecord("test300",
+                AuditRetrievalOptions.create().objectResolution(AuditRetrievalOptions.ObjectResolution.NAME_ONLY), result);
+
+        then("names only");
+        assertEquals("Wrong initiator name", "jack300", namesOnly.getInitiator().getName().getOrig());
+        assertEquals("Wrong # of deltas", 1, namesOnly.getDeltas().size());
+
+        when("lightweight");
+        AuditEventRecord lightweight = listSingleRecord("test300", AuditRetrievalOptions.createLightweight().fetchSize(10), result);
+
+        then("lightweight");
+        assertEquals("Wrong initiator name", "old-jack300", lightweight.getInitiator().getName().getOrig());
+        assertEquals("Wrong initiator OID", jackOid, lightweight.getInitiator().getOid());
+        assertEquals("Wrong # of deltas", 0, lightweight.getDeltas().size());
+        assertEquals("Wrong # of properties", 1, lightweight.getProperties().size());
+    }
+
+    private AuditEventRecord listSingleRecord(String eventIdentifier, AuditRetrievalOptions options, OperationResult result) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("eventIdentifier", eventIdentifier);
+        List<AuditEventRecord> records = new ArrayList<>();
+        auditService.listRecordsIterative("select * from m_audit_event as aer where (aer.eventIdentifier = :eventIdentifier)",
+                params, options, new AuditResultHandler() {
+                    @Override
+                    public boolean handle(AuditEventRecord auditRecord) {
+                        records.add(auditRecord);
+                        return true;
+                    }
+
+                    @Override
+                    public int getProgress() {
+                        return 0;
+                    }
+                }, result);
+        assertEquals("Wrong # of records", 1, records.size());
+        return records.get(0);
+    }
+
     @Test
     public void testAudit() {
         AuditEventRecord record = new AuditEventRecord();
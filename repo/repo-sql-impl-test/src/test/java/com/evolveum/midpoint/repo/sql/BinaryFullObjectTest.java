@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import static org.testng.AssertJUnit.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.Objectable;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.xnode.RootXNode;
+import com.evolveum.midpoint.repo.sql.helpers.FullObjectReencoder;
+import com.evolveum.midpoint.repo.sql.util.BinaryFullObjectCodec;
+import com.evolveum.midpoint.schema.GetOperationOptionsBuilder;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+@ContextConfiguration(locations = { "../../../../../ctx-test.xml" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class BinaryFullObjectTest extends BaseSQLRepoTest {
+
+    private static final File OBJECTS_FILE = new File(FOLDER_BASIC, "objects.xml");
+
+    private static final int COMPARISON_ROUNDS = 200;
+
+    @Autowired private FullObjectReencoder fullObjectReencoder;
+
+    @AfterClass
+    public void restoreFullObjectFormat() {
+        getRepositoryConfiguration().setFullObjectFormat(PrismContext.LANG_XML);
+    }
+
+    @Test
+    public void test100AddGetBinary() throws Exception {
+        given("binary full object format");
+        getRepositoryConfiguration().setFullObjectFormat(BinaryFullObjectCodec.FORMAT_BINARY);
+        OperationResult result = createOperationResult();
+        List<PrismObject<? extends Objectable>> objects = prismContext.parserFor(OBJECTS_FILE).parseObjects();
+
+        when("objects are added");
+        List<String> oids = new ArrayList<>();
+        for (PrismObject<? extends Objectable> object : objects) {
+            //noinspection unchecked
+            oids.add(repositoryService.addObject((PrismObject<ObjectType>) object.clone(), null, result));
+        }
+
+        then("objects are stored in binary form and read back without changes");
+        for (int i = 0; i < objects.size(); i++) {
+            //noinspection unchecked
+            PrismObject<ObjectType> original = (PrismObject<ObjectType>) objects.get(i);
+            Class<ObjectType> type = original.getCompileTimeClass();
+            if (UserType.class.equals(type)) {
+                assertTrue("User is not stored in binary form", BinaryFullObjectCodec.isBinary(loadFullObject(oids.get(i))));
+            }
+            GetOperationOptionsBuilder optionsBuilder = getOperationOptionsBuilder();
+            if (UserType.class.equals(type)) {
+                optionsBuilder = optionsBuilder.item(UserType.F_JPEG_PHOTO).retrieve();
+            } else if (LookupTableType.class.equals(type)) {
+                optionsBuilder = optionsBuilder.item(LookupTableType.F_ROW).retrieve();
+            } else if (AccessCertificationCampaignType.class.equals(type)) {
+                optionsBuilder = optionsBuilder.item(AccessCertificationCampaignType.F_CASE).retrieve();
+            } else if (TaskType.class.equals(type)) {
+                optionsBuilder = optionsBuilder.item(TaskType.F_RESULT).retrieve();
+            }
+            PrismObject<ObjectType> read = repositoryService.getObject(type, oids.get(i), optionsBuilder.build(), result);
+            original.setOid(oids.get(i));
+            ObjectDelta<ObjectType> delta = original.diff(read);
+            if (!ShadowType.class.equals(type)) {
+                assertTrue("Object " + read + " differs after reading:\n" + delta.debugDump(), delta.isEmpty());
+            }
+        }
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test110TextAndBinarySideBySide() throws Exception {
+        given("user stored in XML");
+        getRepositoryConfiguration().setFullObjectFormat(PrismContext.LANG_XML);
+        OperationResult result = createOperationResult();
+        PrismObject<UserType> user = prismContext.createObjectable(UserType.class)
+                .name("side-by-side")
+                .fullName("Side By Side")
+                .asPrismObject();
+        String oid = repositoryService.addObject(user, null, result);
+        assertFalse("User is stored in binary form", BinaryFullObjectCodec.isBinary(loadFullObject(oid)));
+
+        when("format is switched to binary and the user is modified");
+        getRepositoryConfiguration().setFullObjectFormat(BinaryFullObjectCodec.FORMAT_BINARY);
+        PrismObject<UserType> beforeModify = repositoryService.getObject(UserType.class, oid, null, result);
+        repositoryService.modifyObject(UserType.class, oid,
+                deltaFor(UserType.class).item(UserType.F_DESCRIPTION).replace("modified").asItemDeltas(),
+                result);
+
+        then("XML row was readable and the modified user is stored in binary form");
+        assertEquals("Wrong name", "side-by-side", beforeModify.getName().getOrig());
+        assertTrue("User is not stored in binary form", BinaryFullObjectCodec.isBinary(loadFullObject(oid)));
+        PrismObject<UserType> afterModify = repositoryService.getObject(UserType.class, oid, null, result);
+        assertEquals("Wrong description", "modified", afterModify.asObjectable().getDescription());
+        assertEquals("Wrong full name", "Side By Side", afterModify.asObjectable().getFullName().getOrig());
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test120Reencode() throws Exception {
+        given("users stored in XML");
+        getRepositoryConfiguration().setFullObjectFormat(PrismContext.LANG_XML);
+        OperationResult result = createOperationResult();
+        List<String> oids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PrismObject<UserType> user = prismContext.createObjectable(UserType.class)
+                    .name("reencode-" + i)
+                    .asPrismObject();
+            oids.add(repositoryService.addObject(user, null, result));
+        }
+
+        when("format is switched to binary and objects are re-encoded");
+        getRepositoryConfiguration().setFullObjectFormat(BinaryFullObjectCodec.FORMAT_BINARY);
+        int reencoded = fullObjectReencoder.reencodeAll();
+
+        then("users are stored in binary form");
+        assertTrue("Too few objects re-encoded: " + reencoded, reencoded >= oids.size());
+        for (int i = 0; i < oids.size(); i++) {
+            assertTrue("User is not stored in binary form", BinaryFullObjectCodec.isBinary(loadFullObject(oids.get(i))));
+            PrismObject<UserType> user = repositoryService.getObject(UserType.class, oids.get(i), null, result);
+            assertEquals("Wrong name", "reencode-" + i, user.getName().getOrig());
+        }
+
+        when("format is switched back to XML and objects are re-encoded");
+        getRepositoryConfiguration().setFullObjectFormat(PrismContext.LANG_XML);
+        fullObjectReencoder.reencodeAll();
+
+        then("users are stored in XML");
+        for (String oid : oids) {
+            assertFalse("User is stored in binary form", BinaryFullObjectCodec.isBinary(loadFullObject(oid)));
+        }
+        assertSuccess(result);
+    }
+
+    /**
+     * Not a real benchmark, just a rough comparison of size and parsing time of binary and XML form.
+     */
+    @Test
+    public void test200CompareWithXml() throws Exception {
+        List<PrismObject<? extends Objectable>> objects = prismContext.parserFor(OBJECTS_FILE).parseObjects();
+        List<byte[]> binaryForms = new ArrayList<>();
+        List<String> xmlForms = new ArrayList<>();
+        long binarySize = 0;
+        long xmlSize = 0;
+        for (PrismObject<? extends Objectable> object : objects) {
+            RootXNode xnode = prismContext.xnodeSerializer().serialize(object);
+            String xml = prismContext.xmlSerializer().serialize(xnode);
+            try {
+                byte[] binary = BinaryFullObjectCodec.encode(xnode, false);
+                binaryForms.add(binary);
+                xmlForms.add(xml);
+                binarySize += binary.length;
+                xmlSize += xml.getBytes().length;
+            } catch (BinaryFullObjectCodec.UnsupportedContentException e) {
+                logger.info("Object {} cannot be encoded: {}", object, e.getMessage());
+            }
+        }
+
+        long binaryStart = System.currentTimeMillis();
+        for (int round = 0; round < COMPARISON_ROUNDS; round++) {
+            for (byte[] binary : binaryForms) {
+                prismContext.parserFor(BinaryFullObjectCodec.decode(binary, prismContext)).parse();
+            }
+        }
+        long binaryTime = System.currentTimeMillis() - binaryStart;
+
+        long xmlStart = System.currentTimeMillis();
+        for (int round = 0; round < COMPARISON_ROUNDS; round++) {
+            for (String xml : xmlForms) {
+                prismContext.parserFor(xml).parse();
+            }
+        }
+        long xmlTime = System.currentTimeMillis() - xmlStart;
+
+        logger.info("{} objects, {} rounds: binary {} bytes / {} ms, XML {} bytes / {} ms",
+                binaryForms.size(), COMPARISON_ROUNDS, binarySize, binaryTime, xmlSize, xmlTime);
+        assertTrue("Binary form is not smaller than XML", binarySize < xmlSize);
+    }
+
+    private byte[] loadFullObject(String oid) {
+        Session session = open();
+        try {
+            Query<?> query = session.createQuery("select o.fullObject from RObject o where o.oid = :oid");
+            query.setParameter("oid", oid);
+            return (byte[]) query.uniqueResult();
+        } finally {
+            close(session);
+        }
+    }
+}
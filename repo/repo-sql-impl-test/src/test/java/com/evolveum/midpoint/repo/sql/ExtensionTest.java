@@ -1836,6 +1836,29 @@ public class ExtensionTest extends BaseSQLRepoTest {
         close(session);
     }
 
+    /**
+     * Unknown items are fetched or created one by one; the dictionary is not reloaded.
+     */
+    @Test
+    public void test300ExtItemDictionaryMisses() {
+        QName cargoQName = new QName("http://example.com/p", "cargo");
+        PrismPropertyDefinition<String> cargoDefinition =
+                prismContext.definitionFactory().createPropertyDefinition(cargoQName, DOMUtil.XSD_STRING);
+        extItemDictionary.preload();
+        int reloadsBefore = extItemDictionary.getReloads();
+        int missesBefore = extItemDictionary.getMisses();
+
+        assertNull("Unexpected item", extItemDictionary.findItemByDefinition(cargoDefinition));
+        RExtItem created = extItemDictionary.createOrFindItemDefinition(cargoDefinition, false);
+        RExtItem found = extItemDictionary.createOrFindItemDefinition(cargoDefinition, false);
+
+        assertNotNull("No ID", created.getId());
+        assertSame("Wrong item found", created, found);
+        assertSame("Wrong item found by ID", created, extItemDictionary.getItemById(created.getId()));
+        assertEquals("Wrong # of misses", missesBefore + 2, extItemDictionary.getMisses());
+        assertEquals("Wrong # of reloads", reloadsBefore, extItemDictionary.getReloads());
+    }
+
     @Test
     public void test410AddShadow() throws Exception {
         OperationResult result = new OperationResult(ExtensionTest.class.getName() + ".test410AddShadow");
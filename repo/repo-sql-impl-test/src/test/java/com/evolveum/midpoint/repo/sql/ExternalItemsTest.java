@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import static org.testng.AssertJUnit.*;
+
+import java.util.*;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.audit.api.AuditResultHandler;
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.ModifyObjectResult;
+import com.evolveum.midpoint.schema.SearchResultList;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.test.NullTaskImpl;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+/**
+ * Tests storing of heavyweight items (assignment, operationExecution, trigger) outside of fullObject.
+ */
+@ContextConfiguration(locations = { "../../../../../ctx-test.xml" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ExternalItemsTest extends BaseSQLRepoTest {
+
+    private static final int THRESHOLD = 3;
+
+    private int originalThreshold;
+    private String userOid;
+
+    @BeforeClass
+    public void setThreshold() {
+        originalThreshold = getRepositoryConfiguration().getExternalItemValuesThreshold();
+        getRepositoryConfiguration().setExternalItemValuesThreshold(THRESHOLD);
+    }
+
+    @AfterClass
+    public void restoreThreshold() {
+        getRepositoryConfiguration().setExternalItemValuesThreshold(originalThreshold);
+    }
+
+    @Test
+    public void test100AddUserWithManyAssignments() throws Exception {
+        given("user with assignments over the threshold and operation executions under it");
+        OperationResult result = createOperationResult();
+        UserType user = new UserType(prismContext)
+                .name("heavy");
+        for (int i = 0; i < 5; i++) {
+            user.beginAssignment()
+                    .targetRef("target-" + i, RoleType.COMPLEX_TYPE);
+        }
+        user.beginOperationExecution()
+                .channel("channel-1");
+
+        when("user is added");
+        userOid = repositoryService.addObject(user.asPrismObject(), null, result);
+
+        then("assignments are stored externally, operation executions are not");
+        assertEquals("Wrong externally stored items", Collections.singletonList("assignment"), getExternalItemNames(userOid));
+
+        PrismObject<UserType> read = repositoryService.getObject(UserType.class, userOid, null, result);
+        assertEquals("Wrong # of assignments", 5, read.asObjectable().getAssignment().size());
+        assertFalse("Assignments are incomplete", read.findContainer(UserType.F_ASSIGNMENT).isIncomplete());
+        assertEquals("Wrong # of operation executions", 1, read.asObjectable().getOperationExecution().size());
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test110GetAndSearchWithExclude() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+
+        when("user is read and searched for with assignments excluded");
+        PrismObject<UserType> read = repositoryService.getObject(UserType.class, userOid,
+                getOperationOptionsBuilder().item(UserType.F_ASSIGNMENT).dontRetrieve().build(), result);
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .item(UserType.F_NAME).eqPoly("heavy")
+                .build();
+        SearchResultList<PrismObject<UserType>> found = repositoryService.searchObjects(UserType.class, query,
+                getOperationOptionsBuilder().item(UserType.F_ASSIGNMENT).dontRetrieve().build(), result);
+
+        then("assignments are marked as incomplete");
+        assertIncompleteAssignments(read);
+        assertEquals("Wrong # of users found", 1, found.size());
+        assertIncompleteAssignments(found.get(0));
+        assertEquals("Wrong # of operation executions", 1, read.asObjectable().getOperationExecution().size());
+
+        when("user is searched for without options");
+        found = repositoryService.searchObjects(UserType.class, query, null, result);
+
+        then("assignments are present");
+        assertEquals("Wrong # of assignments", 5, found.get(0).asObjectable().getAssignment().size());
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test120ModifyUnderThreshold() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+        PrismObject<UserType> user = repositoryService.getObject(UserType.class, userOid, null, result);
+        List<AssignmentType> assignments = user.asObjectable().getAssignment();
+
+        when("assignments are deleted so that their count is under the threshold");
+        repositoryService.modifyObject(UserType.class, userOid,
+                deltaFor(UserType.class)
+                        .item(UserType.F_ASSIGNMENT)
+                        .delete(assignments.get(0).clone(), assignments.get(1).clone(), assignments.get(2).clone())
+                        .asItemDeltas(),
+                result);
+
+        then("assignments are stored in fullObject again");
+        assertEquals("Wrong externally stored items", Collections.emptyList(), getExternalItemNames(userOid));
+        PrismObject<UserType> read = repositoryService.getObject(UserType.class, userOid,
+                getOperationOptionsBuilder().item(UserType.F_ASSIGNMENT).dontRetrieve().build(), result);
+        assertEquals("Wrong # of assignments", 2, read.asObjectable().getAssignment().size());
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test130ModifyOverThresholdAndDelete() throws Exception {
+        given();
+        OperationResult result = createOperationResult();
+
+        when("assignments are added over the threshold again");
+        repositoryService.modifyObject(UserType.class, userOid,
+                deltaFor(UserType.class)
+                        .item(UserType.F_ASSIGNMENT)
+                        .add(new AssignmentType(prismContext).targetRef("target-10", RoleType.COMPLEX_TYPE),
+                                new AssignmentType(prismContext).targetRef("target-11", RoleType.COMPLEX_TYPE))
+                        .asItemDeltas(),
+                result);
+
+        then("assignments are stored externally");
+        assertEquals("Wrong externally stored items", Collections.singletonList("assignment"), getExternalItemNames(userOid));
+        PrismObject<UserType> read = repositoryService.getObject(UserType.class, userOid, null, result);
+        assertEquals("Wrong # of assignments", 4, read.asObjectable().getAssignment().size());
+
+        when("user is modified (assignments untouched)");
+        repositoryService.modifyObject(UserType.class, userOid,
+                deltaFor(UserType.class).item(UserType.F_DESCRIPTION).replace("modified").asItemDeltas(),
+                result);
+
+        then("assignments are still there");
+        read = repositoryService.getObject(UserType.class, userOid, null, result);
+        assertEquals("Wrong # of assignments", 4, read.asObjectable().getAssignment().size());
+        assertEquals("Wrong description", "modified", read.asObjectable().getDescription());
+
+        when("user is deleted");
+        repositoryService.deleteObject(UserType.class, userOid, result);
+
+        then("externally stored items are deleted as well");
+        assertEquals("Wrong externally stored items", Collections.emptyList(), getExternalItemNames(userOid));
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test140ModifyExternalItemsOnly() throws Exception {
+        given("role with an inducement, an authorization and assignments over the threshold");
+        OperationResult result = createOperationResult();
+        RoleType role = new RoleType(prismContext)
+                .name("heavy-role")
+                .description("untouched");
+        for (int i = 0; i < 5; i++) {
+            role.beginAssignment()
+                    .targetRef("target-" + i, RoleType.COMPLEX_TYPE);
+        }
+        role.beginInducement()
+                .targetRef("induced", RoleType.COMPLEX_TYPE);
+        role.beginAuthorization()
+                .name("authorization");
+        String roleOid = repositoryService.addObject(role.asPrismObject(), null, result);
+        String version = repositoryService.getVersion(RoleType.class, roleOid, result);
+
+        when("an assignment without ID is added");
+        ModifyObjectResult<RoleType> modifyResult = repositoryService.modifyObject(RoleType.class, roleOid,
+                deltaFor(RoleType.class)
+                        .item(RoleType.F_ASSIGNMENT)
+                        .add(new AssignmentType(prismContext).targetRef("target-10", RoleType.COMPLEX_TYPE))
+                        .asItemDeltas(),
+                result);
+
+        then("the whole object is updated, as the new ID must be unique in the whole object");
+        assertNotNull("Object after modification was not fetched", modifyResult.getObjectAfter());
+        assertFalse("Only modified items were reported", modifyResult.isModifiedItemsOnly());
+        PrismObject<RoleType> read = repositoryService.getObject(RoleType.class, roleOid, null, result);
+        assertEquals("Wrong # of assignments", 6, read.asObjectable().getAssignment().size());
+        Set<Long> ids = new HashSet<>();
+        ids.add(read.asObjectable().getInducement().get(0).getId());
+        ids.add(read.asObjectable().getAuthorization().get(0).getId());
+        for (AssignmentType assignment : read.asObjectable().getAssignment()) {
+            assertNotNull("No assignment ID", assignment.getId());
+            assertTrue("Assignment ID collides with another container ID: " + assignment.getId(), ids.add(assignment.getId()));
+        }
+
+        when("an assignment with an ID is added");
+        modifyResult = repositoryService.modifyObject(RoleType.class, roleOid,
+                deltaFor(RoleType.class)
+                        .item(RoleType.F_ASSIGNMENT)
+                        .add(new AssignmentType(prismContext).id(100L).targetRef("target-11", RoleType.COMPLEX_TYPE))
+                        .asItemDeltas(),
+                result);
+
+        then("only the externally stored item is updated, without fetching the whole object");
+        assertTrue("Not only modified items were reported", modifyResult.isModifiedItemsOnly());
+        assertModifiedAssignmentsOnly(modifyResult.getObjectBefore(), 6);
+        assertModifiedAssignmentsOnly(modifyResult.getObjectAfter(), 7);
+        assertEquals("Wrong version after", String.valueOf(Integer.parseInt(version) + 2),
+                modifyResult.getObjectAfter().getVersion());
+        assertEquals("Wrong externally stored items", Collections.singletonList("assignment"), getExternalItemNames(roleOid));
+        read = repositoryService.getObject(RoleType.class, roleOid, null, result);
+        assertEquals("Wrong version", String.valueOf(Integer.parseInt(version) + 2), read.getVersion());
+        assertEquals("Wrong description", "untouched", read.asObjectable().getDescription());
+        assertEquals("Wrong # of assignments", 7, read.asObjectable().getAssignment().size());
+        assertEquals("Wrong # of inducements", 1, read.asObjectable().getInducement().size());
+        assertEquals("Wrong # of authorizations", 1, read.asObjectable().getAuthorization().size());
+
+        when("assignments are deleted so that their count is under the threshold");
+        List<AssignmentType> assignments = read.asObjectable().getAssignment();
+        modifyResult = repositoryService.modifyObject(RoleType.class, roleOid,
+                deltaFor(RoleType.class)
+                        .item(RoleType.F_ASSIGNMENT)
+                        .delete(assignments.get(0).clone(), assignments.get(1).clone(), assignments.get(2).clone(),
+                                assignments.get(3).clone(), assignments.get(4).clone())
+                        .asItemDeltas(),
+                result);
+
+        then("assignments are stored in fullObject again");
+        assertTrue("Not only modified items were reported", modifyResult.isModifiedItemsOnly());
+        assertModifiedAssignmentsOnly(modifyResult.getObjectAfter(), 2);
+        assertEquals("Wrong externally stored items", Collections.emptyList(), getExternalItemNames(roleOid));
+        read = repositoryService.getObject(RoleType.class, roleOid,
+                getOperationOptionsBuilder().item(RoleType.F_ASSIGNMENT).dontRetrieve().build(), result);
+        assertEquals("Wrong version", String.valueOf(Integer.parseInt(version) + 3), read.getVersion());
+        assertEquals("Wrong # of assignments", 2, read.asObjectable().getAssignment().size());
+        assertEquals("Wrong description", "untouched", read.asObjectable().getDescription());
+        assertSuccess(result);
+    }
+
+    @Test
+    public void test150AuditResolvesExternalItems() throws Exception {
+        given("audit record initiated by a user with assignments stored externally");
+        OperationResult result = createOperationResult();
+        UserType user = new UserType(prismContext)
+                .name("audited-heavy");
+        for (int i = 0; i < 5; i++) {
+            user.beginAssignment()
+                    .targetRef("target-" + i, RoleType.COMPLEX_TYPE);
+        }
+        String oid = repositoryService.addObject(user.asPrismObject(), null, result);
+        assertEquals("Wrong externally stored items", Collections.singletonList("assignment"), getExternalItemNames(oid));
+
+        AuditEventRecord record = new AuditEventRecord();
+        record.setEventIdentifier("test150");
+        record.setInitiator(new UserType(prismContext).oid(oid).name("audited-heavy").asPrismObject());
+        auditService.audit(record, new NullTaskImpl());
+
+        when("audit records are listed with full object resolution");
+        Map<String, Object> params = new HashMap<>();
+        params.put("eventIdentifier", "test150");
+        List<AuditEventRecord> records = new ArrayList<>();
+        auditService.listRecordsIterative("select * from m_audit_event as aer where (aer.eventIdentifier = :eventIdentifier)",
+                params, null, new AuditResultHandler() {
+                    @Override
+                    public boolean handle(AuditEventRecord auditRecord) {
+                        records.add(auditRecord);
+                        return true;
+                    }
+
+                    @Override
+                    public int getProgress() {
+                        return 0;
+                    }
+                }, result);
+
+        then("the initiator is resolved including externally stored assignments");
+        assertEquals("Wrong # of records", 1, records.size());
+        PrismObject<?> initiator = records.get(0).getInitiator();
+        assertNotNull("No initiator", initiator);
+        PrismContainer<?> assignment = initiator.findContainer(UserType.F_ASSIGNMENT);
+        assertNotNull("No assignments in initiator", assignment);
+        assertFalse("Assignments are incomplete", assignment.isIncomplete());
+        assertEquals("Wrong # of assignments", 5, assignment.size());
+        assertSuccess(result);
+    }
+
+    private void assertModifiedAssignmentsOnly(PrismObject<RoleType> role, int expectedAssignments) {
+        assertNotNull("No object reported", role);
+        assertEquals("Wrong # of assignments", expectedAssignments, role.asObjectable().getAssignment().size());
+        assertNull("Description is present", role.asObjectable().getDescription());
+        assertEquals("Wrong # of inducements", 0, role.asObjectable().getInducement().size());
+    }
+
+    private void assertIncompleteAssignments(PrismObject<UserType> user) {
+        PrismContainer<AssignmentType> assignment = user.findContainer(UserType.F_ASSIGNMENT);
+        assertNotNull("No assignment container", assignment);
+        assertTrue("Assignments are not incomplete", assignment.isIncomplete());
+        assertTrue("Assignments are not empty", assignment.isEmpty());
+    }
+
+    private List<String> getExternalItemNames(String oid) {
+        Session session = open();
+        try {
+            Query<String> query = session.createQuery(
+                    "select i.itemName from RObjectExternalItem i where i.ownerOid = :oid order by i.itemName", String.class);
+            query.setParameter("oid", oid);
+            return query.list();
+        } finally {
+            close(session);
+        }
+    }
+}
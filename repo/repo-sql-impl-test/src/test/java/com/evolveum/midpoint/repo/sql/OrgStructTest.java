@@ -616,4 +616,69 @@ public class OrgStructTest extends BaseSQLRepoTest {
         PrismAsserts.assertOids(orgs, ORG_F002_OID, ORG_F003_OID, ORG_F004_OID, elaineOid, elaineOid);
     }
 
+    private static final String BULK_ROOT_OID = "00000000-8888-6666-0000-300000000000";
+    private static final String BULK_LEFT_OID = "00000000-8888-6666-0000-300000000001";
+    private static final String BULK_RIGHT_OID = "00000000-8888-6666-0000-300000000002";
+    private static final String BULK_BOTTOM_OID = "00000000-8888-6666-0000-300000000003";
+    private static final String BULK_NEW_ROOT_OID = "00000000-8888-6666-0000-300000000004";
+
+    @Test
+    public void test200AddAndModifyOrgsInBulk() throws Exception {
+        OperationResult result = createOperationResult();
+
+        given("diamond-shaped org structure (children listed before parents)");
+        List<PrismObject<OrgType>> orgs = new ArrayList<>();
+        orgs.add(new OrgType(prismContext).oid(BULK_BOTTOM_OID).name("bulk-bottom")
+                .parentOrgRef(BULK_LEFT_OID, OrgType.COMPLEX_TYPE)
+                .parentOrgRef(BULK_RIGHT_OID, OrgType.COMPLEX_TYPE)
+                .asPrismObject());
+        orgs.add(new OrgType(prismContext).oid(BULK_LEFT_OID).name("bulk-left")
+                .parentOrgRef(BULK_ROOT_OID, OrgType.COMPLEX_TYPE)
+                .asPrismObject());
+        orgs.add(new OrgType(prismContext).oid(BULK_RIGHT_OID).name("bulk-right")
+                .parentOrgRef(BULK_ROOT_OID, OrgType.COMPLEX_TYPE)
+                .asPrismObject());
+        orgs.add(new OrgType(prismContext).oid(BULK_ROOT_OID).name("bulk-root").asPrismObject());
+        orgs.add(new OrgType(prismContext).oid(BULK_NEW_ROOT_OID).name("bulk-new-root").asPrismObject());
+
+        when("orgs are added in bulk");
+        repositoryService.addObjects(orgs, null, result);
+
+        then("closure contains all paths");
+        assertClosureVal(BULK_BOTTOM_OID, BULK_BOTTOM_OID, 1);
+        assertClosureVal(BULK_BOTTOM_OID, BULK_LEFT_OID, 1);
+        assertClosureVal(BULK_BOTTOM_OID, BULK_RIGHT_OID, 1);
+        assertClosureVal(BULK_BOTTOM_OID, BULK_ROOT_OID, 2);
+        assertClosureVal(BULK_LEFT_OID, BULK_ROOT_OID, 1);
+
+        when("one branch is moved under a new root in bulk");
+        List<ObjectDelta<OrgType>> deltas = new ArrayList<>();
+        deltas.add(deltaFor(OrgType.class)
+                .item(OrgType.F_PARENT_ORG_REF).replace(new ObjectReferenceType().oid(BULK_NEW_ROOT_OID).type(OrgType.COMPLEX_TYPE))
+                .asObjectDelta(BULK_LEFT_OID));
+        repositoryService.modifyObjects(deltas, null, result);
+
+        then("closure of the branch and its descendants is updated");
+        assertClosureVal(BULK_LEFT_OID, BULK_ROOT_OID, 0);
+        assertClosureVal(BULK_LEFT_OID, BULK_NEW_ROOT_OID, 1);
+        assertClosureVal(BULK_BOTTOM_OID, BULK_ROOT_OID, 1);
+        assertClosureVal(BULK_BOTTOM_OID, BULK_NEW_ROOT_OID, 1);
+        assertClosureVal(BULK_BOTTOM_OID, BULK_LEFT_OID, 1);
+        assertSuccess(result);
+    }
+
+    private void assertClosureVal(String descendantOid, String ancestorOid, int expected) {
+        Session session = open();
+        try {
+            Query<Integer> query = session.createQuery("select c.val from ROrgClosure c "
+                    + "where c.descendantOid = :descendantOid and c.ancestorOid = :ancestorOid", Integer.class);
+            query.setParameter("descendantOid", descendantOid);
+            query.setParameter("ancestorOid", ancestorOid);
+            Integer val = query.uniqueResult();
+            assertEquals("Wrong closure value for " + descendantOid + " -> " + ancestorOid,
+                    expected, val != null ? val : 0);
+        } finally {
+            close(session);
+        }
+    }
 }
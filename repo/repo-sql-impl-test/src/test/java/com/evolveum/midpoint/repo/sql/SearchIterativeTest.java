@@ -29,6 +29,7 @@ import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.IterationMethodType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
 
@@ -71,11 +72,13 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
         };
 
         SearchOpAsserter asserter = new SearchOpAsserter();
+        OpAsserter pageOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
 
         repositoryService.searchObjectsIterative(UserType.class, null, handler, null, true, result);
         result.recomputeStatus();
 
         asserter.assertIncrement(COUNT / BATCH + 1);            // extra search is to make sure no other objects are there
+        pageOpAsserter.assertIncrement(COUNT / BATCH + 1);      // each page of strictly sequential paging is monitored
 
         assertTrue(result.isSuccess());
         assertObjects(objects, COUNT);
@@ -118,12 +121,14 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
         };
 
         SearchOpAsserter asserter = new SearchOpAsserter();
+        OpAsserter pageOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
 
         ObjectQuery query = prismContext.queryFactory().createQuery(prismContext.queryFactory().createPaging(null, 70));
         repositoryService.searchObjectsIterative(UserType.class, query, handler, null, true, result);
         result.recomputeStatus();
 
         asserter.assertIncrement(2);            // assuming 50 + 20
+        pageOpAsserter.assertIncrement(2);
 
         assertTrue(result.isSuccess());
         assertObjects(objects, 70);
@@ -201,6 +206,66 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
         assertObjects(objects, COUNT);
     }
 
+    @Test
+    public void test106SequentialIterationWithOrdering() throws Exception {
+        OperationResult result = new OperationResult("test106SequentialIterationWithOrdering");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        OpAsserter pageOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
+        OpAsserter countOpAsserter = new OpAsserter(RepositoryService.OP_COUNT_OBJECTS);
+
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .desc(UserType.F_NAME)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler, null, true, result);
+        result.recomputeStatus();
+
+        countOpAsserter.assertIncrement(0);         // repo switched to keyset paging, not to simple paging
+        pageOpAsserter.assertIncrement(COUNT / BATCH + 1);
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("Wrong order", "user-" + (BASE + COUNT - 1 - i), objects.get(i).getName().getOrig());
+        }
+    }
+
+    @Test
+    public void test107KeysetIterationWithOrderingAndMaxSize() throws Exception {
+        OperationResult result = new OperationResult("test107KeysetIterationWithOrderingAndMaxSize");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        OpAsserter pageOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
+
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .asc(UserType.F_NAME)
+                .maxSize(70)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler,
+                getOperationOptionsBuilder().iterationMethod(IterationMethodType.KEYSET_PAGING).build(), false, result);
+        result.recomputeStatus();
+
+        pageOpAsserter.assertIncrement(2);            // assuming 50 + 20
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, 70);
+        for (int i = 0; i < 70; i++) {
+            assertEquals("Wrong order", String.valueOf(BASE + i), objects.get(i).asObjectable().getCostCenter());
+        }
+    }
+
     private boolean[] assertObjects(List<PrismObject<UserType>> objects, Integer count) {
         if (count != null) {
             assertEquals("Wrong # of objects", count.intValue(), objects.size());
@@ -220,6 +285,78 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
         return numbers;
     }
 
+    @Test
+    public void test108StreamingIteration() throws Exception {
+        OperationResult result = new OperationResult("test108StreamingIteration");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        OpAsserter searchOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS);
+        OpAsserter iterativeOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE);
+
+        repositoryService.searchObjectsIterative(UserType.class, null, handler,
+                getOperationOptionsBuilder().iterationMethod(IterationMethodType.STREAMING).build(), true, result);
+        result.recomputeStatus();
+
+        searchOpAsserter.assertIncrement(0);            // no paging: all objects are read by a single query
+        iterativeOpAsserter.assertIncrement(1);
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, COUNT);
+        for (int i = 1; i < COUNT; i++) {
+            assertTrue("Objects not ordered by OID", objects.get(i - 1).getOid().compareTo(objects.get(i).getOid()) < 0);
+        }
+
+        // maxSize is applied across the whole stream
+        objects.clear();
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .maxSize(70)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler,
+                getOperationOptionsBuilder().iterationMethod(IterationMethodType.STREAMING).build(), true, result);
+
+        assertObjects(objects, 70);
+    }
+
+    @Test
+    public void test109SequentialIterationWithOptionalOrderingItem() throws Exception {
+        OperationResult result = new OperationResult("test109SequentialIterationWithOptionalOrderingItem");
+
+        final List<PrismObject<UserType>> objects = new ArrayList<>();
+
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            objects.add(object);
+            return true;
+        };
+
+        OpAsserter pageOpAsserter = new OpAsserter(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE);
+
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .asc(UserType.F_COST_CENTER)
+                .build();
+        repositoryService.searchObjectsIterative(UserType.class, query, handler, null, true, result);
+        result.recomputeStatus();
+
+        pageOpAsserter.assertIncrement(0);          // cost center can be missing, so keyset paging is not used
+
+        assertTrue(result.isSuccess());
+        assertObjects(objects, COUNT);
+
+        try {
+            repositoryService.searchObjectsIterative(UserType.class, query, handler,
+                    getOperationOptionsBuilder().iterationMethod(IterationMethodType.KEYSET_PAGING).build(), true, result);
+            fail("Keyset paging by optional item was unexpectedly accepted");
+        } catch (IllegalArgumentException e) {
+            // expected: objects without cost center could be skipped
+        }
+        pageOpAsserter.assertIncrement(0);
+    }
+
     @Test
     public void test110DeleteAll() throws Exception {
         OperationResult result = new OperationResult("test110DeleteAll");
@@ -16,8 +16,10 @@ import static com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType.F_
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import javax.xml.namespace.QName;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.annotations.Test;
@@ -31,6 +33,9 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.query.OrderDirection;
+import com.evolveum.midpoint.repo.sql.perf.QueryPerformanceInformation;
+import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
+import com.evolveum.midpoint.repo.sql.query2.QueryShapeCache;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.SearchResultList;
@@ -51,6 +56,8 @@ public class SearchTest extends BaseSQLRepoTest {
     private static final String DESCRIPTION_TO_FIND = "tralala";
     private static final String ARCHETYPE1_OID = "a71e48fe-f6e2-40f4-ab76-b4ad4a0918ad";
 
+    @Autowired private QueryShapeCache queryShapeCache;
+
     private String beforeConfigOid;
 
     @Override
@@ -1187,4 +1194,123 @@ public class SearchTest extends BaseSQLRepoTest {
         int users = repositoryService.countObjects(UserType.class, null, null, result);
         assertEquals("Wrong # of objects found", users, objects.size());
     }
+
+    @Test
+    public void testQueryStatistics() throws Exception {
+        OperationResult result = new OperationResult("testQueryStatistics");
+        ObjectQuery query = prismContext.queryFor(UserType.class)
+                .item(UserType.F_DESCRIPTION).eq(DESCRIPTION_TO_FIND)
+                .build();
+        getPerformanceMonitor().getGlobalPerformanceInformation().clear();
+
+        SearchResultList<PrismObject<UserType>> objects = repositoryService.searchObjects(UserType.class, query, null, result);
+        repositoryService.searchObjects(UserType.class, query, null, result);
+        result.recomputeStatus();
+        assertTrue(result.isSuccess());
+
+        Map<String, QueryPerformanceInformation> queryData =
+                getPerformanceMonitor().getGlobalPerformanceInformation().getQueryData();
+        displayValue("Query data", queryData);
+        List<QueryPerformanceInformation> matching = queryData.entrySet().stream()
+                .filter(e -> e.getKey().contains("description"))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+        assertEquals("Wrong # of query statements", 1, matching.size());
+        QueryPerformanceInformation information = matching.get(0);
+        assertEquals("Wrong # of invocations", 2, information.getInvocationCount());
+        assertEquals("Wrong # of rows", 2 * objects.size(),
+                information.toRepositoryQueryPerformanceInformationType("").getRowsReturned().longValue());
+    }
+
+    @Test
+    public void testSearchByNameUsingQueryShapeCache() throws Exception {
+        OperationResult result = new OperationResult("testSearchByNameUsingQueryShapeCache");
+        List<PrismObject<UserType>> users = repositoryService.searchObjects(UserType.class, null, null, result);
+        assertTrue("Not enough users to test with", users.size() >= 3);
+        queryShapeCache.clear();
+        long hitsBefore = getPerformanceMonitor().getQueryShapeCacheHits();
+        long missesBefore = getPerformanceMonitor().getQueryShapeCacheMisses();
+
+        for (PrismObject<UserType> user : users) {
+            ObjectQuery query = prismContext.queryFor(UserType.class)
+                    .item(F_NAME).eq(user.getName())
+                    .build();
+            SearchResultList<PrismObject<UserType>> found = repositoryService.searchObjects(UserType.class, query, null, result);
+            assertEquals("Wrong # of users found by " + user.getName(), 1, found.size());
+            assertEquals("Wrong user found by " + user.getName(), user.getOid(), found.get(0).getOid());
+        }
+
+        ObjectQuery nonExisting = prismContext.queryFor(UserType.class)
+                .item(F_NAME).eq(new PolyString("Non-Existing", "nonexisting"))
+                .build();
+        assertEquals("Non-existing user found", 0,
+                repositoryService.searchObjects(UserType.class, nonExisting, null, result).size());
+        result.computeStatus();
+        assertTrue(result.isSuccess());
+
+        // only the first query is interpreted
+        assertEquals("Wrong # of query shape cache hits", users.size(),
+                getPerformanceMonitor().getQueryShapeCacheHits() - hitsBefore);
+        assertEquals("Wrong # of query shape cache misses", 1,
+                getPerformanceMonitor().getQueryShapeCacheMisses() - missesBefore);
+    }
+
+    /**
+     * String values compared with polystring property are converted (normalized) by the interpreter;
+     * substring operations wrap them in wildcards. Both have to be repeated for cached interpretations.
+     */
+    @Test
+    public void testSearchByNamePrefixUsingQueryShapeCache() throws Exception {
+        OperationResult result = new OperationResult("testSearchByNamePrefixUsingQueryShapeCache");
+        List<PrismObject<UserType>> users = repositoryService.searchObjects(UserType.class, null, null, result);
+        queryShapeCache.clear();
+        long hitsBefore = getPerformanceMonitor().getQueryShapeCacheHits();
+
+        for (PrismObject<UserType> user : users) {
+            String orig = user.getName().getOrig();
+            String prefix = orig.substring(0, Math.min(orig.length(), 3));
+            ObjectQuery query = prismContext.queryFor(UserType.class)
+                    .item(F_NAME).startsWith(prefix).matchingNorm()
+                    .build();
+            Set<String> expected = users.stream()
+                    .filter(u -> u.getName().getNorm().startsWith(prismContext.getDefaultPolyStringNormalizer().normalize(prefix)))
+                    .map(PrismObject::getOid)
+                    .collect(Collectors.toSet());
+            Set<String> found = repositoryService.searchObjects(UserType.class, query, null, result).stream()
+                    .map(PrismObject::getOid)
+                    .collect(Collectors.toSet());
+            assertEquals("Wrong users found by prefix " + prefix, expected, found);
+        }
+        result.computeStatus();
+        assertTrue(result.isSuccess());
+
+        assertEquals("Wrong # of query shape cache hits", users.size() - 1,
+                getPerformanceMonitor().getQueryShapeCacheHits() - hitsBefore);
+    }
+
+    /**
+     * Parameters of reference filters are not bound to query values, so such queries are not cached.
+     */
+    @Test
+    public void testSearchByReferenceNotCachedByQueryShape() throws Exception {
+        OperationResult result = new OperationResult("testSearchByReferenceNotCachedByQueryShape");
+        ObjectQuery query = prismContext.queryFor(ArchetypeType.class)
+                .item(AssignmentHolderType.F_ARCHETYPE_REF).ref(ARCHETYPE1_OID)
+                .build();
+        queryShapeCache.clear();
+        long hitsBefore = getPerformanceMonitor().getQueryShapeCacheHits();
+
+        int first = repositoryService.searchObjects(ArchetypeType.class, query, null, result).size();
+        int second = repositoryService.searchObjects(ArchetypeType.class, query, null, result).size();
+        result.computeStatus();
+        assertTrue(result.isSuccess());
+
+        assertEquals("Different results", first, second);
+        assertEquals("Unexpected query shape cache hits", 0,
+                getPerformanceMonitor().getQueryShapeCacheHits() - hitsBefore);
+    }
+
+    private SqlPerformanceMonitorImpl getPerformanceMonitor() {
+        return ((SqlRepositoryServiceImpl) repositoryService).getPerformanceMonitor();
+    }
 }
@@ -145,6 +145,48 @@ public class SequenceTest extends BaseSQLRepoTest {
         }
     }
 
+    @Test
+    public void test040_Preallocation() throws Exception {
+        OperationResult result = new OperationResult("test040_Preallocation");
+        final File file = new File(TEST_DIR + "sequence-preallocated.xml");
+        PrismObject<SequenceType> sequence = prismContext.parseObject(file);
+        String oid = repositoryService.addObject(sequence, null, result);
+
+        assertEquals(0L, repositoryService.advanceSequence(oid, result));
+        assertEquals("Wrong counter after reserving the first block", (Long) 5L, getCounter(oid, result));
+        assertEquals(1L, repositoryService.advanceSequence(oid, result));
+        assertEquals(2L, repositoryService.advanceSequence(oid, result));
+        assertEquals(3L, repositoryService.advanceSequence(oid, result));
+        assertEquals(4L, repositoryService.advanceSequence(oid, result));
+        assertEquals("Wrong counter when serving reserved values", (Long) 5L, getCounter(oid, result));
+
+        // the block does not cross the end of the counter range
+        assertEquals(5L, repositoryService.advanceSequence(oid, result));
+        assertEquals(6L, repositoryService.advanceSequence(oid, result));
+        assertEquals("Wrong counter after reserving the second block", (Long) 10L, getCounter(oid, result));
+
+        // reserved values (7, 8, 9) are returned as unused ones on shutdown
+        ((SqlRepositoryServiceImpl) repositoryService).returnPreallocatedSequenceValues();
+        SequenceType afterReturn = repositoryService.getObject(SequenceType.class, oid, null, result).asObjectable();
+        assertEquals("Wrong unused values", Arrays.asList(7L, 8L, 9L), afterReturn.getUnusedValues());
+
+        assertEquals(7L, repositoryService.advanceSequence(oid, result));
+        assertEquals(8L, repositoryService.advanceSequence(oid, result));
+        assertEquals(9L, repositoryService.advanceSequence(oid, result));
+        assertEquals(10L, repositoryService.advanceSequence(oid, result));
+        assertEquals(11L, repositoryService.advanceSequence(oid, result));
+        try {
+            long value = repositoryService.advanceSequence(oid, result);
+            fail("Expected an exception, got value of " + value);
+        } catch (SystemException e) {
+            // ok
+        }
+    }
+
+    private Long getCounter(String oid, OperationResult result) throws Exception {
+        return repositoryService.getObject(SequenceType.class, oid, null, result).asObjectable().getCounter();
+    }
+
     @Test
     public void test031_OneThreadReturning() throws Exception {
 
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Writes audit records asynchronously: callers put records into a bounded in-memory queue
+ * and writer threads drain it, storing many records in a single transaction (group commit).
+ *
+ * When the queue is full, the caller waits up to {@link #enqueueTimeout} milliseconds
+ * and then writes the record synchronously itself (back-pressure without losing records).
+ * If a group cannot be written, its records are written one by one, so only the offending record fails.
+ */
+public class AsyncAuditWriter {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsyncAuditWriter.class);
+
+    private static final long POLL_INTERVAL = 100L;
+    private static final long SHUTDOWN_WAIT = 10000L;
+
+    /**
+     * When is the caller of {@link SqlAuditServiceImpl#audit} released.
+     */
+    public enum Durability {
+        /**
+         * Caller waits until the transaction containing its record is committed. This is the default.
+         */
+        FLUSH_ON_COMMIT("flushOnCommit"),
+        /**
+         * Caller returns immediately after the record is queued. Records still in the queue
+         * are lost if the node crashes.
+         */
+        FIRE_AND_FORGET("fireAndForget");
+
+        private final String value;
+
+        Durability(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public static Durability fromValue(String text) {
+            if (StringUtils.isEmpty(text)) {
+                return null;
+            }
+            for (Durability d : values()) {
+                if (text.equals(d.value)) {
+                    return d;
+                }
+            }
+            throw new IllegalArgumentException("Unknown audit durability: " + text);
+        }
+    }
+
+    private static class QueuedRecord {
+        private final AuditEventRecord record;
+        private final CompletableFuture<Void> committed;
+
+        private QueuedRecord(AuditEventRecord record, boolean waitForCommit) {
+            this.record = record;
+            this.committed = waitForCommit ? new CompletableFuture<>() : null;
+        }
+    }
+
+    private final Consumer<List<AuditEventRecord>> batchWriter;
+    private final Durability durability;
+    private final int batchSize;
+    private final long enqueueTimeout;
+    private final BlockingQueue<QueuedRecord> queue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+
+    private volatile boolean running;
+
+    // metrics
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong recordsFailed = new AtomicLong();
+    private final AtomicLong recordsWrittenSynchronously = new AtomicLong();
+    private final AtomicLong totalFlushTime = new AtomicLong();
+    private final AtomicLong maxFlushTime = new AtomicLong();
+
+    AsyncAuditWriter(Consumer<List<AuditEventRecord>> batchWriter, Durability durability,
+            int queueSize, int batchSize, long enqueueTimeout) {
+        this.batchWriter = batchWriter;
+        this.durability = durability;
+        this.batchSize = batchSize;
+        this.enqueueTimeout = enqueueTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    synchronized void start(int threads) {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::writerLoop, "midpoint-audit-writer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            writerThreads.add(thread);
+        }
+        LOGGER.info("Asynchronous audit writer started: {} thread(s), queue size {}, batch size {}, durability {}",
+                threads, queue.remainingCapacity(), batchSize, durability);
+    }
+
+    /**
+     * Stops the writer threads. Records remaining in the queue are written by the calling thread.
+     */
+    synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread thread : writerThreads) {
+            try {
+                thread.join(SHUTDOWN_WAIT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        writerThreads.clear();
+        List<QueuedRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            LOGGER.info("Writing {} remaining audit record(s) on shutdown", remaining.size());
+            flush(remaining);
+        }
+        LOGGER.info("Asynchronous audit writer stopped: {}", getStatistics());
+    }
+
+    void enqueue(AuditEventRecord record) {
+        QueuedRecord queued = new QueuedRecord(record, durability == Durability.FLUSH_ON_COMMIT);
+        boolean accepted;
+        try {
+            accepted = running && queue.offer(queued, enqueueTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            // queue full (or writer not running) - the caller pays for the write itself
+            LOGGER.debug("Audit queue is full or writer is stopped, writing audit record synchronously");
+            recordsWrittenSynchronously.incrementAndGet();
+            batchWriter.accept(Collections.singletonList(record));
+            return;
+        }
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        if (queued.committed != null) {
+            waitForCommit(queued.committed);
+        }
+    }
+
+    private void waitForCommit(CompletableFuture<Void> committed) {
+        try {
+            committed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for audit record to be written", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new SystemException("Couldn't write audit record: " + cause.getMessage(), cause);
+            }
+        }
+    }
+
+    private void writerLoop() {
+        List<QueuedRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedRecord first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                LOGGER.debug("Audit writer thread interrupted");
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                LOGGER.error("Unexpected exception in audit writer thread: {}", t.getMessage(), t);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<QueuedRecord> batch) {
+        List<AuditEventRecord> records = new ArrayList<>(batch.size());
+        for (QueuedRecord queued : batch) {
+            records.add(queued.record);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            batchWriter.accept(records);
+            long time = System.currentTimeMillis() - start;
+            batchesWritten.incrementAndGet();
+            recordsWritten.addAndGet(records.size());
+            totalFlushTime.addAndGet(time);
+            maxFlushTime.accumulateAndGet(time, Math::max);
+            LOGGER.trace("Written {} audit record(s) in {} ms, queue depth is {}", records.size(), time, queue.size());
+            for (QueuedRecord queued : batch) {
+                if (queued.committed != null) {
+                    queued.committed.complete(null);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                // A single bad record (e.g. with a value too long for its column) must not take the others with it.
+                LOGGER.warn("Couldn't write {} audit records together, writing them one by one: {}", batch.size(),
+                        e.getMessage(), e);
+                for (QueuedRecord queued : batch) {
+                    flush(Collections.singletonList(queued));
+                }
+                return;
+            }
+            recordsFailed.incrementAndGet();
+            LOGGER.error("Couldn't write audit record {}: {}", records.get(0), e.getMessage(), e);
+            QueuedRecord queued = batch.get(0);
+            if (queued.committed != null) {
+                queued.committed.completeExceptionally(e);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten.get();
+    }
+
+    public long getRecordsFailed() {
+        return recordsFailed.get();
+    }
+
+    public long getRecordsWrittenSynchronously() {
+        return recordsWrittenSynchronously.get();
+    }
+
+    public long getMaxFlushTime() {
+        return maxFlushTime.get();
+    }
+
+    public double getAverageFlushTime() {
+        long batches = batchesWritten.get();
+        return batches > 0 ? (double) totalFlushTime.get() / batches : 0;
+    }
+
+    public String getStatistics() {
+        return "queue depth: " + getQueueDepth() + " (max " + getMaxQueueDepth() + ")"
+                + ", batches: " + getBatchesWritten()
+                + ", records: " + getRecordsWritten()
+                + ", failed: " + getRecordsFailed()
+                + ", written synchronously: " + getRecordsWrittenSynchronously()
+                + ", flush time avg/max: " + String.format("%.1f", getAverageFlushTime()) + "/" + getMaxFlushTime() + " ms";
+    }
+}
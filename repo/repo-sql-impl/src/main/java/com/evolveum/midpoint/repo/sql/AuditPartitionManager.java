@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hibernate.Session;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.repo.sql.data.audit.*;
+import com.evolveum.midpoint.repo.sql.helpers.BaseHelper;
+import com.evolveum.midpoint.util.Holder;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Maintains audit tables partitioned by range of audit record ID (PostgreSQL only).
+ *
+ * All audit tables are partitioned with the same boundaries: m_audit_event by id, the other ones by record_id.
+ * (See postgresql-4.2-audit-partitioning.sql for the migration.) Record IDs grow with time, so the oldest records
+ * are in the partitions with the lowest IDs. Cleanup drops whole partitions whose records are all to be deleted;
+ * remaining records are then deleted row by row as before.
+ *
+ * Partitions are created ahead of the current maximal ID. Records that do not fit into any of them go to
+ * the default partition; this should not happen if the cleanup (that creates the partitions) runs regularly.
+ */
+class AuditPartitionManager {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AuditPartitionManager.class);
+
+    /** How many empty partitions should be there for new records. */
+    private static final int PARTITIONS_AHEAD = 2;
+
+    /** Partitioned tables; the referencing ones first. */
+    private static final List<String> TABLES = Arrays.asList(
+            RAuditItem.TABLE_NAME,
+            RObjectDeltaOperation.TABLE_NAME,
+            RAuditPropertyValue.TABLE_NAME,
+            RAuditReferenceValue.TABLE_NAME,
+            RTargetResourceOid.TABLE_NAME,
+            RAuditEventRecord.TABLE_NAME);
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+
+    private final BaseHelper baseHelper;
+    private final long partitionSize;
+
+    AuditPartitionManager(BaseHelper baseHelper, long partitionSize) {
+        this.baseHelper = baseHelper;
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Creates partitions for records to come.
+     */
+    void createPartitionsAhead() {
+        executeInTransaction(connection -> {
+            List<Partition> partitions = getPartitions(connection, RAuditEventRecord.TABLE_NAME);
+            long maxId = queryLong(connection, "select max(id) from " + RAuditEventRecord.TABLE_NAME);
+            long from;
+            if (partitions.isEmpty()) {
+                from = floorToPartition(maxId + 1);
+            } else {
+                from = partitions.get(partitions.size() - 1).to;
+                if (from <= maxId) {
+                    // Some records are in the default partition. New partitions must not overlap them.
+                    LOGGER.warn("Audit records with IDs from {} to {} are in the default partition. Please run the audit"
+                            + " cleanup more often, or use larger partitions.", from, maxId);
+                    from = floorToPartition(maxId) + partitionSize;
+                }
+            }
+            long needed = floorToPartition(maxId + 1) + PARTITIONS_AHEAD * partitionSize;
+            for (; from < needed; from += partitionSize) {
+                for (String table : TABLES) {
+                    String sql = "create table " + getPartitionName(table, from) + " partition of " + table
+                            + " for values from (" + from + ") to (" + (from + partitionSize) + ")";
+                    LOGGER.debug("Creating audit partition: {}", sql);
+                    execute(connection, sql);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Drops partitions containing only records older than given time.
+     *
+     * @return Number of records deleted.
+     */
+    int dropPartitionsOlderThan(@NotNull Date minValue) {
+        Timestamp minTimestamp = new Timestamp(minValue.getTime());
+        return dropOldestPartitions((connection, partition, totalCount) -> {
+            Timestamp newest = queryTimestamp(connection, "select max(timestampValue) from " + partition.name);
+            return newest == null || newest.before(minTimestamp);
+        });
+    }
+
+    /**
+     * Drops the oldest partitions as long as at least given number of records remains.
+     *
+     * @return Number of records deleted.
+     */
+    int dropPartitionsExceedingMaxRecords(int recordsToKeep) {
+        return dropOldestPartitions((connection, partition, totalCount) -> {
+            long count = queryLong(connection, "select count(*) from " + partition.name);
+            return totalCount.getValue() - count >= recordsToKeep;
+        });
+    }
+
+    private int dropOldestPartitions(PartitionPredicate canDrop) {
+        return executeInTransaction(connection -> {
+            Map<String, Map<Long, Partition>> partitionsByTable = new HashMap<>();
+            for (String table : TABLES) {
+                Map<Long, Partition> byStart = new HashMap<>();
+                getPartitions(connection, table).forEach(p -> byStart.put(p.from, p));
+                partitionsByTable.put(table, byStart);
+            }
+            long maxId = queryLong(connection, "select max(id) from " + RAuditEventRecord.TABLE_NAME);
+            Holder<Long> totalCount = new Holder<>(queryLong(connection, "select count(*) from " + RAuditEventRecord.TABLE_NAME));
+            long deleted = 0;
+            for (Partition partition : getPartitions(connection, RAuditEventRecord.TABLE_NAME)) {
+                // The partition receiving new records is never dropped.
+                if (partition.to > maxId || !canDrop.test(connection, partition, totalCount)) {
+                    break;
+                }
+                long count = queryLong(connection, "select count(*) from " + partition.name);
+                for (String table : TABLES) {
+                    Partition tablePartition = partitionsByTable.get(table).get(partition.from);
+                    if (tablePartition != null) {
+                        LOGGER.debug("Dropping audit partition {} with IDs from {} to {}", tablePartition.name,
+                                tablePartition.from, tablePartition.to);
+                        execute(connection, "drop table " + tablePartition.name);
+                    }
+                }
+                totalCount.setValue(totalCount.getValue() - count);
+                deleted += count;
+            }
+            return (int) deleted;
+        });
+    }
+
+    /**
+     * Returns range partitions of given table, ordered by their lower bound. The default partition is not included.
+     */
+    private List<Partition> getPartitions(Connection connection, String table) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "select c.relname, pg_get_expr(c.relpartbound, c.oid) from pg_inherits i"
+                        + " join pg_class c on c.oid = i.inhrelid"
+                        + " join pg_class p on p.oid = i.inhparent"
+                        + " where p.relname = ?")) {
+            stmt.setString(1, table.toLowerCase());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Matcher matcher = RANGE_PATTERN.matcher(rs.getString(2));
+                    if (matcher.find()) {
+                        partitions.add(new Partition(rs.getString(1),
+                                Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))));
+                    }
+                }
+            }
+        }
+        partitions.sort(Comparator.comparingLong(p -> p.from));
+        return partitions;
+    }
+
+    private String getPartitionName(String table, long from) {
+        return table + "_p" + from;
+    }
+
+    private long floorToPartition(long id) {
+        return Math.floorDiv(id, partitionSize) * partitionSize;
+    }
+
+    private long queryLong(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private Timestamp queryTimestamp(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getTimestamp(1) : null;
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private <T> T executeInTransaction(ConnectionFunction<T> function) {
+        Session session = baseHelper.beginTransaction();
+        try {
+            T rv = session.doReturningWork(function::apply);
+            session.getTransaction().commit();
+            return rv;
+        } catch (RuntimeException ex) {
+            baseHelper.handleGeneralRuntimeException(ex, session, null);
+            throw new AssertionError("We shouldn't get here.");
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface PartitionPredicate {
+        boolean test(Connection connection, Partition partition, Holder<Long> totalCount) throws SQLException;
+    }
+
+    private static class Partition {
+        private final String name;
+        private final long from;
+        private final long to;
+
+        private Partition(String name, long from, long to) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -106,6 +106,11 @@ public class DataSourceFactory {
             config.addDataSourceProperty("cachePrepStmts", "true");
             config.addDataSourceProperty("prepStmtCacheSize", "250");
             config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            if (configuration.isUsingMySql()) {
+                // Server-side cursors for iterative search (positive fetch size); other queries can be executed
+                // on the connection while the cursor is open, unlike with row-by-row streaming.
+                config.addDataSourceProperty("useCursorFetch", "true");
+            }
 
 //            config.addDataSourceProperty("useServerPrepStmts", "true");
 //            config.addDataSourceProperty("useLocalSessionState", "true");
@@ -22,6 +22,7 @@ import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.HierarchicalConfiguration;
 import org.apache.commons.configuration2.tree.ImmutableNode;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.ObjectUtils;
 
 /**
  * @author lazyman
@@ -34,6 +35,18 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
     private static final String CONF_AUDIT_SERVICE_COLUMN_NAME = "columnName";
     private static final String CONF_AUDIT_SERVICE_EVENT_RECORD_PROPERTY_NAME = "eventRecordPropertyName";
 
+    private static final String CONF_ASYNC_WRITE = "asyncWrite";
+    private static final String CONF_ASYNC_DURABILITY = "asyncDurability";
+    private static final String CONF_ASYNC_WRITER_THREADS = "asyncWriterThreads";
+    private static final String CONF_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    private static final String CONF_ASYNC_BATCH_SIZE = "asyncBatchSize";
+    private static final String CONF_ASYNC_ENQUEUE_TIMEOUT = "asyncEnqueueTimeout";
+
+    private static final int DEFAULT_ASYNC_WRITER_THREADS = 2;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_ASYNC_BATCH_SIZE = 100;
+    private static final long DEFAULT_ASYNC_ENQUEUE_TIMEOUT = 1000L;
+
     private SqlRepositoryFactory repositoryFactory;
     private SqlAuditServiceImpl auditService;
 
@@ -48,6 +61,9 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
     @Override
     public synchronized void destroy() throws AuditServiceFactoryException {
         LOGGER.info("Destroying Sql audit service factory.");
+        if (auditService != null) {
+            auditService.stopAsyncWriter();
+        }
         try {
             repositoryFactory.destroy();
         } catch (RepositoryServiceFactoryException ex) {
@@ -68,6 +84,16 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
                 String eventRecordPropertyName = getStringFromConfig(subConfigColumn, CONF_AUDIT_SERVICE_EVENT_RECORD_PROPERTY_NAME);
                 auditService.getCustomColumn().put(eventRecordPropertyName, columnName);
             }
+            if (config.getBoolean(CONF_ASYNC_WRITE, false)) {
+                AsyncAuditWriter.Durability durability = ObjectUtils.defaultIfNull(
+                        AsyncAuditWriter.Durability.fromValue(config.getString(CONF_ASYNC_DURABILITY)),
+                        AsyncAuditWriter.Durability.FLUSH_ON_COMMIT);
+                auditService.startAsyncWriter(durability,
+                        config.getInt(CONF_ASYNC_WRITER_THREADS, DEFAULT_ASYNC_WRITER_THREADS),
+                        config.getInt(CONF_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE),
+                        config.getInt(CONF_ASYNC_BATCH_SIZE, DEFAULT_ASYNC_BATCH_SIZE),
+                        config.getLong(CONF_ASYNC_ENQUEUE_TIMEOUT, DEFAULT_ASYNC_ENQUEUE_TIMEOUT));
+            }
         } catch (RepositoryServiceFactoryException ex) {
             throw new AuditServiceFactoryException(ex.getMessage(), ex);
         }
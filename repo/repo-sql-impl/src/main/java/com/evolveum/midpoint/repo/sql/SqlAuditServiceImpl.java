@@ -35,6 +35,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import com.evolveum.midpoint.audit.api.AuditEventRecord;
 import com.evolveum.midpoint.audit.api.AuditReferenceValue;
 import com.evolveum.midpoint.audit.api.AuditResultHandler;
+import com.evolveum.midpoint.audit.api.AuditRetrievalOptions;
 import com.evolveum.midpoint.audit.api.AuditService;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
@@ -48,9 +49,9 @@ import com.evolveum.midpoint.repo.sql.data.SingleSqlQuery;
 import com.evolveum.midpoint.repo.sql.data.audit.*;
 import com.evolveum.midpoint.repo.sql.data.common.other.RObjectType;
 import com.evolveum.midpoint.repo.sql.helpers.BaseHelper;
+import com.evolveum.midpoint.repo.sql.helpers.ExternalItemHelper;
 import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sql.util.DtoTranslationException;
-import com.evolveum.midpoint.repo.sql.util.GetObjectResult;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.repo.sql.util.TemporaryTableDialect;
 import com.evolveum.midpoint.schema.ObjectDeltaOperation;
@@ -71,6 +72,8 @@ import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
  */
 public class SqlAuditServiceImpl extends SqlBaseService implements AuditService {
 
+    private static final String OP_AUDIT = "audit";
+    private static final String OP_AUDIT_BATCH = "auditBatch";
     private static final String OP_CLEANUP_AUDIT_MAX_AGE = "cleanupAuditMaxAge";
     private static final String OP_CLEANUP_AUDIT_MAX_RECORDS = "cleanupAuditMaxRecords";
     private static final String OP_LIST_RECORDS = "listRecords";
@@ -80,9 +83,15 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
     @Autowired
     private BaseHelper baseHelper;
 
+    @Autowired
+    private ExternalItemHelper externalItemHelper;
+
     private static final Trace LOGGER = TraceManager.getTrace(SqlAuditServiceImpl.class);
     private static final Integer CLEANUP_AUDIT_BATCH_SIZE = 500;
 
+    /** Number of listed records whose details are fetched together. */
+    private static final int LIST_RECORDS_PAGE_SIZE = 100;
+
     private static final String QUERY_MAX_RESULT = "setMaxResults";
     private static final String QUERY_FIRST_RESULT = "setFirstResult";
 
@@ -90,6 +99,10 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     private volatile SystemConfigurationAuditType auditConfiguration;
 
+    private volatile AsyncAuditWriter asyncWriter;
+
+    private volatile AuditPartitionManager partitionManager;
+
     public SqlAuditServiceImpl(SqlRepositoryFactory repositoryFactory) {
         super(repositoryFactory);
     }
@@ -99,14 +112,29 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         Validate.notNull(record, "Audit event record must not be null.");
         Validate.notNull(task, "Task must not be null.");
 
-        final String operation = "audit";
+        AsyncAuditWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.enqueue(record);
+        } else {
+            auditBatch(Collections.singletonList(record), OP_AUDIT);
+        }
+    }
+
+    /**
+     * Stores a group of audit records in a single transaction. Used by the asynchronous writer.
+     */
+    void auditBatch(List<AuditEventRecord> records) {
+        auditBatch(records, OP_AUDIT_BATCH);
+    }
+
+    private void auditBatch(List<AuditEventRecord> records, String operation) {
         SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
         long opHandle = pm.registerOperationStart(operation, AuditEventRecord.class);
         int attempt = 1;
 
         while (true) {
             try {
-                auditAttempt(record);
+                auditAttempt(records);
                 return;
             } catch (RuntimeException ex) {
                 attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
@@ -117,6 +145,35 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         }
     }
 
+    /**
+     * Switches the service to asynchronous mode: records are queued and written in groups by background threads.
+     */
+    public synchronized void startAsyncWriter(AsyncAuditWriter.Durability durability, int threads, int queueSize,
+            int batchSize, long enqueueTimeout) {
+        if (asyncWriter != null) {
+            LOGGER.warn("Asynchronous audit writer is already running, ignoring the start request.");
+            return;
+        }
+        AsyncAuditWriter writer = new AsyncAuditWriter(this::auditBatch, durability, queueSize, batchSize, enqueueTimeout);
+        writer.start(threads);
+        asyncWriter = writer;
+    }
+
+    /**
+     * Stops asynchronous writing (if running), flushing all queued records.
+     */
+    public synchronized void stopAsyncWriter() {
+        AsyncAuditWriter writer = asyncWriter;
+        if (writer != null) {
+            asyncWriter = null;
+            writer.shutdown();
+        }
+    }
+
+    public AsyncAuditWriter getAsyncWriter() {
+        return asyncWriter;
+    }
+
     @Override
     public List<AuditEventRecord> listRecords(String query, Map<String, Object> params, OperationResult parentResult) {
         final String operation = "listRecords";
@@ -145,7 +202,7 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                         return 0;
                     }
                 };
-                listRecordsIterativeAttempt(query, params, handler, attemptResult);
+                listRecordsIterativeAttempt(query, params, null, handler, attemptResult);
                 return auditEventRecords;
             } catch (RuntimeException ex) {
                 attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
@@ -163,6 +220,12 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     @Override
     public void listRecordsIterative(String query, Map<String, Object> params, AuditResultHandler handler, OperationResult parentResult) {
+        listRecordsIterative(query, params, null, handler, parentResult);
+    }
+
+    @Override
+    public void listRecordsIterative(String query, Map<String, Object> params, AuditRetrievalOptions options,
+            AuditResultHandler handler, OperationResult parentResult) {
         // TODO operation recording ... but beware, this method is called from within listRecords
         //  (fortunately, currently it is not used from the outside, so it does not matter that it skips recording)
         final String operation = "listRecordsIterative";
@@ -171,7 +234,7 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         while (true) {
             OperationResult result = parentResult.createMinorSubresult(OP_LIST_RECORDS_ATTEMPT);
             try {
-                listRecordsIterativeAttempt(query, params, handler, result);
+                listRecordsIterativeAttempt(query, params, options, handler, result);
                 result.recordSuccess();
                 return;
             } catch (RuntimeException ex) {
@@ -228,12 +291,12 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     }
 
-    private void listRecordsIterativeAttempt(String query, Map<String, Object> params,
+    private void listRecordsIterativeAttempt(String query, Map<String, Object> params, AuditRetrievalOptions options,
             AuditResultHandler handler, OperationResult result) {
 
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("List records attempt\n  query: {}\n params:\n{}", query,
-                    DebugUtil.debugDump(params, 2));
+            LOGGER.trace("List records attempt\n  query: {}\n params:\n{}\n options: {}", query,
+                    DebugUtil.debugDump(params, 2), options);
         }
 
         Session session = baseHelper.beginReadOnlyTransaction();
@@ -247,18 +310,6 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                             + (database.equals(Database.ORACLE) ? "" : "as ")
                             + "aer where 1=1 order by aer.timestampValue desc";
                 }
-                String deltaQuery = "select * from m_audit_delta "
-                        + (database.equals(Database.ORACLE) ? "" : "as ")
-                        + "delta where delta.record_id=?";
-                String propertyQuery = "select * from m_audit_prop_value "
-                        + (database.equals(Database.ORACLE) ? "" : "as ")
-                        + "prop where prop.record_id=?";
-                String refQuery = "select * from m_audit_ref_value "
-                        + (database.equals(Database.ORACLE) ? "" : "as ")
-                        + "ref where ref.record_id=?";
-                String resourceQuery = "select * from m_audit_resource "
-                        + (database.equals(Database.ORACLE) ? "" : "as ")
-                        + "res where res.record_id=?";
                 SelectQueryBuilder queryBuilder = new SelectQueryBuilder(database, basicQuery);
                 setParametersToQuery(queryBuilder, params);
 
@@ -267,111 +318,28 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                 }
 
                 try (PreparedStatement stmt = queryBuilder.build().createPreparedStatement(con)) {
-                    ResultSet resultList = stmt.executeQuery();
-                    while (resultList.next()) {
-
-                        AuditEventRecord audit = RAuditEventRecord.fromRepo(resultList);
-                        if (!customColumn.isEmpty()) {
-                            for (Entry<String, String> property : customColumn.entrySet()) {
-                                audit.getCustomColumnProperty().put(property.getKey(), resultList.getString(property.getValue()));
-                            }
-                        }
-
-                        //query for deltas
-                        PreparedStatement subStmt = con.prepareStatement(deltaQuery);
-                        subStmt.setLong(1, resultList.getLong(RAuditEventRecord.ID_COLUMN_NAME));
-                        ResultSet subResultList = subStmt.executeQuery();
-
-                        OperationResult deltaResult = result.createMinorSubresult(OP_LOAD_AUDIT_DELTA);
-                        try {
-                            while (subResultList.next()) {
-                                try {
-                                    ObjectDeltaOperation<?> odo = RObjectDeltaOperation.fromRepo(
-                                            subResultList, getPrismContext(), getConfiguration().isUsingSQLServer());
-                                    audit.addDelta(odo);
-                                } catch (DtoTranslationException ex) {
-                                    LOGGER.error("Cannot convert stored audit delta. Reason: {}", ex.getMessage(), ex);
-                                    deltaResult.recordPartialError("Cannot convert stored audit delta. Reason: " + ex.getMessage(), ex);
-                                    //do not throw an error. rather audit record without delta than fatal error.
-                                }
-                            }
-                        } finally {
-                            subResultList.close();
-                            subStmt.close();
-                            deltaResult.computeStatus();
-                        }
-
-                        //query for properties
-                        subStmt = con.prepareStatement(propertyQuery);
-                        subStmt.setLong(1, resultList.getLong(RAuditEventRecord.ID_COLUMN_NAME));
-                        subResultList = subStmt.executeQuery();
-
-                        try {
-                            while (subResultList.next()) {
-                                audit.addPropertyValue(subResultList.getString(RAuditPropertyValue.NAME_COLUMN_NAME),
-                                        subResultList.getString(RAuditPropertyValue.VALUE_COLUMN_NAME));
-                            }
-                        } finally {
-                            subResultList.close();
-                            subStmt.close();
-                        }
-
-                        //query for references
-                        subStmt = con.prepareStatement(refQuery);
-                        subStmt.setLong(1, resultList.getLong(RAuditEventRecord.ID_COLUMN_NAME));
-                        subResultList = subStmt.executeQuery();
-
-                        try {
-                            while (subResultList.next()) {
-                                audit.addReferenceValue(subResultList.getString(RAuditReferenceValue.NAME_COLUMN_NAME),
-                                        RAuditReferenceValue.fromRepo(subResultList));
-                            }
-                        } finally {
-                            subResultList.close();
-                            subStmt.close();
-                        }
-
-                        //query for target resource oids
-                        subStmt = con.prepareStatement(resourceQuery);
-                        subStmt.setLong(1, resultList.getLong(RAuditEventRecord.ID_COLUMN_NAME));
-                        subResultList = subStmt.executeQuery();
-
-                        try {
-                            while (subResultList.next()) {
-                                audit.addResourceOid(subResultList.getString(RTargetResourceOid.RESOURCE_OID_COLUMN_NAME));
+                    if (options != null && options.getFetchSize() != null) {
+                        stmt.setFetchSize(options.getFetchSize());
+                    }
+                    // Records are processed in pages: details for all records in a page are fetched at once.
+                    List<ListedRecord> page = new ArrayList<>(LIST_RECORDS_PAGE_SIZE);
+                    Holder<Boolean> stopRequested = new Holder<>(false);
+                    try (ResultSet resultList = stmt.executeQuery()) {
+                        while (!stopRequested.getValue() && resultList.next()) {
+                            page.add(new ListedRecord(resultList));
+                            if (page.size() == LIST_RECORDS_PAGE_SIZE) {
+                                count += processListedRecords(con, session, page, options, handler, stopRequested, result);
+                                page.clear();
                             }
-                        } finally {
-                            subResultList.close();
-                            subStmt.close();
-                        }
-
-                        try {
-                            // TODO what if original name (in audit log) differs from the current one (in repo) ?
-                            audit.setInitiator(resolve(session, resultList.getString(RAuditEventRecord.INITIATOR_OID_COLUMN_NAME),
-                                    resultList.getString(RAuditEventRecord.INITIATOR_NAME_COLUMN_NAME),
-                                    defaultIfNull(RObjectType.values()[resultList.getInt(RAuditEventRecord.INITIATOR_TYPE_COLUMN_NAME)], RObjectType.FOCUS)));
-                            audit.setAttorney(resolve(session, resultList.getString(RAuditEventRecord.ATTORNEY_OID_COLUMN_NAME),
-                                    resultList.getString(RAuditEventRecord.ATTORNEY_NAME_COLUMN_NAME), RObjectType.FOCUS));
-                            audit.setTarget(resolve(session, resultList.getString(RAuditEventRecord.TARGET_OID_COLUMN_NAME),
-                                    resultList.getString(RAuditEventRecord.TARGET_NAME_COLUMN_NAME),
-                                    RObjectType.values()[resultList.getInt(RAuditEventRecord.TARGET_TYPE_COLUMN_NAME)]), getPrismContext());
-                            audit.setTargetOwner(resolve(session, resultList.getString(RAuditEventRecord.TARGET_OWNER_OID_COLUMN_NAME),
-                                    resultList.getString(RAuditEventRecord.TARGET_OWNER_NAME_COLUMN_NAME),
-                                    RObjectType.values()[resultList.getInt(RAuditEventRecord.TARGET_OWNER_TYPE_COLUMN_NAME)]));
-                        } catch (SchemaException ex) {
-                            baseHelper.handleGeneralCheckedException(ex, session, null);
-                        }
-                        count++;
-                        if (!handler.handle(audit)) {
-                            LOGGER.trace("Skipping handling of objects after {} was handled. ", audit);
-                            break;
                         }
                     }
+                    if (!stopRequested.getValue() && !page.isEmpty()) {
+                        count += processListedRecords(con, session, page, options, handler, stopRequested, result);
+                    }
                 } finally {
                     result.computeStatus();
                 }
 
-//
                 LOGGER.trace("List records iterative attempt processed {} records", count);
             });
             session.getTransaction().commit();
@@ -381,9 +349,187 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         } finally {
             baseHelper.cleanupSessionAndResult(session, null);
         }
+    }
+
+    /**
+     * Fills in the details for given records and passes them to the handler, until it requests stop
+     * (this is then recorded in stopRequested holder).
+     *
+     * @return number of records passed to the handler
+     */
+    private int processListedRecords(Connection con, Session session, List<ListedRecord> records,
+            AuditRetrievalOptions options, AuditResultHandler handler, Holder<Boolean> stopRequested,
+            OperationResult result) throws SQLException {
+
+        Map<Long, AuditEventRecord> recordsById = new HashMap<>();
+        for (ListedRecord record : records) {
+            recordsById.put(record.id, record.audit);
+        }
+
+        if (AuditRetrievalOptions.isRetrieveDeltas(options)) {
+            OperationResult deltaResult = result.createMinorSubresult(OP_LOAD_AUDIT_DELTA);
+            try {
+                selectByRecordIds(con, RObjectDeltaOperation.TABLE_NAME, RObjectDeltaOperation.COLUMN_RECORD_ID, recordsById.keySet(),
+                        (audit, rs) -> {
+                            try {
+                                audit.addDelta(RObjectDeltaOperation.fromRepo(rs, getPrismContext(), getConfiguration().isUsingSQLServer()));
+                            } catch (DtoTranslationException ex) {
+                                LOGGER.error("Cannot convert stored audit delta. Reason: {}", ex.getMessage(), ex);
+                                deltaResult.recordPartialError("Cannot convert stored audit delta. Reason: " + ex.getMessage(), ex);
+                                //do not throw an error. rather audit record without delta than fatal error.
+                            }
+                        }, recordsById);
+            } finally {
+                deltaResult.computeStatus();
+            }
+        }
+
+        if (AuditRetrievalOptions.isRetrieveDetails(options)) {
+            selectByRecordIds(con, RAuditPropertyValue.TABLE_NAME, RAuditPropertyValue.COLUMN_RECORD_ID, recordsById.keySet(),
+                    (audit, rs) -> audit.addPropertyValue(rs.getString(RAuditPropertyValue.NAME_COLUMN_NAME),
+                            rs.getString(RAuditPropertyValue.VALUE_COLUMN_NAME)), recordsById);
+            selectByRecordIds(con, RAuditReferenceValue.TABLE_NAME, RAuditReferenceValue.COLUMN_RECORD_ID, recordsById.keySet(),
+                    (audit, rs) -> audit.addReferenceValue(rs.getString(RAuditReferenceValue.NAME_COLUMN_NAME),
+                            RAuditReferenceValue.fromRepo(rs)), recordsById);
+            selectByRecordIds(con, RTargetResourceOid.TABLE_NAME, RTargetResourceOid.COLUMN_RECORD_ID, recordsById.keySet(),
+                    (audit, rs) -> audit.addResourceOid(rs.getString(RTargetResourceOid.RESOURCE_OID_COLUMN_NAME)), recordsById);
+        }
+
+        try {
+            // TODO what if original name (in audit log) differs from the current one (in repo) ?
+            Set<String> oids = new HashSet<>();
+            for (ListedRecord record : records) {
+                record.collectOids(oids);
+            }
+            Map<String, PrismObject<?>> objects = resolve(session, oids, AuditRetrievalOptions.getObjectResolution(options));
+            for (ListedRecord record : records) {
+                AuditEventRecord audit = record.audit;
+                audit.setInitiator(record.initiator.toObject(objects));
+                audit.setAttorney(record.attorney.toObject(objects));
+                audit.setTarget(record.target.toObject(objects), getPrismContext());
+                audit.setTargetOwner(record.targetOwner.toObject(objects));
+            }
+        } catch (SchemaException ex) {
+            baseHelper.handleGeneralCheckedException(ex, session, null);
+        }
+
+        int handled = 0;
+        for (ListedRecord record : records) {
+            handled++;
+            if (!handler.handle(record.audit)) {
+                LOGGER.trace("Skipping handling of objects after {} was handled. ", record.audit);
+                stopRequested.setValue(true);
+                break;
+            }
+        }
+        return handled;
+    }
 
+    /**
+     * Selects rows of given audit table belonging to any of given records, and passes them to the consumer
+     * along with the respective record.
+     */
+    private void selectByRecordIds(Connection con, String table, String recordIdColumn, Collection<Long> recordIds,
+            ListedRowConsumer consumer, Map<Long, AuditEventRecord> recordsById) throws SQLException {
+        String placeholders = String.join(",", Collections.nCopies(recordIds.size(), "?"));
+        String sql = "select * from " + table + " where " + recordIdColumn + " in (" + placeholders + ")";
+        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+            int index = 1;
+            for (Long recordId : recordIds) {
+                stmt.setLong(index++, recordId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    AuditEventRecord audit = recordsById.get(rs.getLong(recordIdColumn));
+                    if (audit != null) {
+                        consumer.accept(audit, rs);
+                    }
+                }
+            }
+        }
     }
 
+    @FunctionalInterface
+    private interface ListedRowConsumer {
+        void accept(AuditEventRecord audit, ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Audit record read from m_audit_event, along with information on objects it refers to.
+     */
+    private class ListedRecord {
+
+        private final long id;
+        private final AuditEventRecord audit;
+        private final ObjectInfo initiator;
+        private final ObjectInfo attorney;
+        private final ObjectInfo target;
+        private final ObjectInfo targetOwner;
+
+        private ListedRecord(ResultSet resultList) throws SQLException {
+            id = resultList.getLong(RAuditEventRecord.ID_COLUMN_NAME);
+            audit = RAuditEventRecord.fromRepo(resultList);
+            if (!customColumn.isEmpty()) {
+                for (Entry<String, String> property : customColumn.entrySet()) {
+                    audit.getCustomColumnProperty().put(property.getKey(), resultList.getString(property.getValue()));
+                }
+            }
+            initiator = new ObjectInfo(resultList.getString(RAuditEventRecord.INITIATOR_OID_COLUMN_NAME),
+                    resultList.getString(RAuditEventRecord.INITIATOR_NAME_COLUMN_NAME),
+                    defaultIfNull(RObjectType.values()[resultList.getInt(RAuditEventRecord.INITIATOR_TYPE_COLUMN_NAME)], RObjectType.FOCUS));
+            attorney = new ObjectInfo(resultList.getString(RAuditEventRecord.ATTORNEY_OID_COLUMN_NAME),
+                    resultList.getString(RAuditEventRecord.ATTORNEY_NAME_COLUMN_NAME), RObjectType.FOCUS);
+            target = new ObjectInfo(resultList.getString(RAuditEventRecord.TARGET_OID_COLUMN_NAME),
+                    resultList.getString(RAuditEventRecord.TARGET_NAME_COLUMN_NAME),
+                    RObjectType.values()[resultList.getInt(RAuditEventRecord.TARGET_TYPE_COLUMN_NAME)]);
+            targetOwner = new ObjectInfo(resultList.getString(RAuditEventRecord.TARGET_OWNER_OID_COLUMN_NAME),
+                    resultList.getString(RAuditEventRecord.TARGET_OWNER_NAME_COLUMN_NAME),
+                    RObjectType.values()[resultList.getInt(RAuditEventRecord.TARGET_OWNER_TYPE_COLUMN_NAME)]);
+        }
+
+        private void collectOids(Set<String> oids) {
+            for (ObjectInfo info : Arrays.asList(initiator, attorney, target, targetOwner)) {
+                if (info.oid != null) {
+                    oids.add(info.oid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Object referenced by an audit record: OID, plus name and type as stored in the record.
+     */
+    private class ObjectInfo {
+
+        private final String oid;
+        private final String storedName;
+        private final RObjectType storedType;
+
+        private ObjectInfo(String oid, String storedName, RObjectType storedType) {
+            this.oid = oid;
+            this.storedName = storedName;
+            this.storedType = storedType;
+        }
+
+        // using generic parameter to avoid typing warnings
+        private <X extends ObjectType> PrismObject<X> toObject(Map<String, PrismObject<?>> resolvedObjects) throws SchemaException {
+            if (oid == null) {
+                return null;
+            }
+            PrismObject<?> resolved = resolvedObjects.get(oid);
+            PrismObject result;
+            if (resolved != null) {
+                // the same object can be referenced by many records
+                result = resolved.clone();
+            } else if (storedType != null) {
+                result = createObjectStub(storedType, oid, storedName);
+            } else {
+                result = null;
+            }
+            //noinspection unchecked
+            return result;
+        }
+    }
     private void setParametersToQuery(SelectQueryBuilder queryBuilder, Map<String, Object> params) {
         if (params == null) {
             return;
@@ -400,128 +546,149 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         queryBuilder.addParameters(params);
     }
 
-    // using generic parameter to avoid typing warnings
-    private <X extends ObjectType> PrismObject<X> resolve(Session session, String oid, String defaultName, RObjectType defaultType) throws SchemaException {
-        if (oid == null) {
-            return null;
+    /**
+     * Fetches objects with given OIDs from the repository, using a single query.
+     * Objects that do not exist are not present in the returned map.
+     */
+    private Map<String, PrismObject<?>> resolve(Session session, Collection<String> oids,
+            AuditRetrievalOptions.ObjectResolution resolution) throws SchemaException {
+        Map<String, PrismObject<?>> objects = new HashMap<>();
+        if (oids.isEmpty() || resolution == AuditRetrievalOptions.ObjectResolution.NONE) {
+            return objects;
         }
-        Query<?> query = session.getNamedQuery("get.object");
-        query.setParameter("oid", oid);
-        query.setResultTransformer(GetObjectResult.RESULT_STYLE.getResultTransformer());
-        GetObjectResult object = (GetObjectResult) query.uniqueResult();
-
-        PrismObject result;
-        if (object != null) {
-            String serializedForm = RUtil.getSerializedFormFromBytes(object.getFullObject());
-            result = getPrismContext().parserFor(serializedForm)
-                    .compat().parse();
-        } else if (defaultType != null) {
-            result = getPrismContext().createObject(defaultType.getJaxbClass());
-            result.asObjectable().setName(PolyStringType.fromOrig(defaultName != null ? defaultName : oid));
-            result.setOid(oid);
+        if (resolution == AuditRetrievalOptions.ObjectResolution.NAME_ONLY) {
+            Query<?> query = session.createQuery("select o.oid, o.name.orig, o.objectTypeClass from RObject o where o.oid in (:oids)");
+            query.setParameterList("oids", oids);
+            for (Object row : query.list()) {
+                Object[] values = (Object[]) row;
+                String oid = (String) values[0];
+                objects.put(oid, createObjectStub((RObjectType) values[2], oid, (String) values[1]));
+            }
         } else {
-            result = null;
+            Query<?> query = session.createQuery("select o.oid, o.fullObject from RObject o where o.oid in (:oids)");
+            query.setParameterList("oids", oids);
+            ExternalItemHelper.Prefetch prefetch = new ExternalItemHelper.Prefetch(oids);
+            for (Object row : query.list()) {
+                Object[] values = (Object[]) row;
+                PrismObject<ObjectType> object = RUtil.parseFullObject((byte[]) values[1], getPrismContext(),
+                        getPrismContext().createParsingContextForCompatibilityMode());
+                externalItemHelper.loadExternalItems(object, null, prefetch, session);
+                objects.put((String) values[0], object);
+            }
         }
-        //noinspection unchecked
-        return result;
+        return objects;
     }
 
-    private void auditAttempt(AuditEventRecord record) {
+    private PrismObject<?> createObjectStub(RObjectType type, String oid, String name) throws SchemaException {
+        PrismObject<?> object = getPrismContext().createObject(type.getJaxbClass());
+        object.asObjectable().setName(PolyStringType.fromOrig(name != null ? name : oid));
+        object.setOid(oid);
+        return object;
+    }
+
+    private void auditAttempt(List<AuditEventRecord> records) {
         Session session = baseHelper.beginTransaction();
         try {
-            SingleSqlQuery query = RAuditEventRecord.toRepo(record, customColumn);
             session.doWork(connection -> {
                 Database database = getConfiguration().getDatabase();
                 String[] keyColumn = { RAuditEventRecord.ID_COLUMN_NAME };
-                PreparedStatement smtp = query.createPreparedStatement(connection, keyColumn);
-                Long id = null;
-                try {
-                    smtp.executeUpdate();
-                    ResultSet resultSet = smtp.getGeneratedKeys();
 
-                    if (resultSet.next()) {
-                        id = resultSet.getLong(1);
+                // child rows of all records are collected and sent as one batch per table
+                BatchSqlQuery deltaBatchQuery = new BatchSqlQuery(database);
+                BatchSqlQuery itemBatchQuery = new BatchSqlQuery(database);
+                BatchSqlQuery propertyBatchQuery = new BatchSqlQuery(database);
+                BatchSqlQuery referenceBatchQuery = new BatchSqlQuery(database);
+                BatchSqlQuery resourceOidBatchQuery = new BatchSqlQuery(database);
 
+                for (AuditEventRecord record : records) {
+                    SingleSqlQuery query;
+                    try {
+                        query = RAuditEventRecord.toRepo(record, customColumn);
+                    } catch (DtoTranslationException e) {
+                        baseHelper.handleGeneralCheckedException(e, session, null);
+                        throw new AssertionError("We shouldn't get here.");
                     }
-                } finally {
-                    smtp.close();
-                }
-                if (id == null) {
-                    throw new IllegalArgumentException("Returned id of new record is null");
-                }
+                    PreparedStatement smtp = query.createPreparedStatement(connection, keyColumn);
+                    Long id = null;
+                    try {
+                        smtp.executeUpdate();
+                        ResultSet resultSet = smtp.getGeneratedKeys();
 
-                BatchSqlQuery deltaBatchQuery = new BatchSqlQuery(database);
-                BatchSqlQuery itemBatchQuery = new BatchSqlQuery(database);
+                        if (resultSet.next()) {
+                            id = resultSet.getLong(1);
 
-                for (ObjectDeltaOperation<?> delta : record.getDeltas()) {
-                    if (delta == null) {
-                        continue;
+                        }
+                    } finally {
+                        smtp.close();
+                    }
+                    if (id == null) {
+                        throw new IllegalArgumentException("Returned id of new record is null");
                     }
 
-                    ObjectDelta<?> objectDelta = delta.getObjectDelta();
-                    for (ItemDelta<?, ?> itemDelta : objectDelta.getModifications()) {
-                        ItemPath path = itemDelta.getPath();
-                        CanonicalItemPath canonical = getPrismContext().createCanonicalItemPath(path, objectDelta.getObjectTypeClass());
-                        for (int i = 0; i < canonical.size(); i++) {
+                    for (ObjectDeltaOperation<?> delta : record.getDeltas()) {
+                        if (delta == null) {
+                            continue;
+                        }
+
+                        ObjectDelta<?> objectDelta = delta.getObjectDelta();
+                        for (ItemDelta<?, ?> itemDelta : objectDelta.getModifications()) {
+                            ItemPath path = itemDelta.getPath();
+                            CanonicalItemPath canonical = getPrismContext().createCanonicalItemPath(path, objectDelta.getObjectTypeClass());
+                            for (int i = 0; i < canonical.size(); i++) {
 
-                            SingleSqlQuery itemQuery = RAuditItem.toRepo(id, canonical.allUpToIncluding(i).asString());
-                            itemBatchQuery.addQueryForBatch(itemQuery);
+                                SingleSqlQuery itemQuery = RAuditItem.toRepo(id, canonical.allUpToIncluding(i).asString());
+                                itemBatchQuery.addQueryForBatch(itemQuery);
+                            }
+                        }
+
+                        SingleSqlQuery deltaQuery;
+                        try {
+                            deltaQuery = RObjectDeltaOperation.toRepo(id, delta, getPrismContext(), auditConfiguration);
+                            deltaBatchQuery.addQueryForBatch(deltaQuery);
+                        } catch (DtoTranslationException e) {
+                            baseHelper.handleGeneralCheckedException(e, session, null);
                         }
                     }
 
-                    SingleSqlQuery deltaQuery;
-                    try {
-                        deltaQuery = RObjectDeltaOperation.toRepo(id, delta, getPrismContext(), auditConfiguration);
-                        deltaBatchQuery.addQueryForBatch(deltaQuery);
-                    } catch (DtoTranslationException e) {
-                        baseHelper.handleGeneralCheckedException(e, session, null);
+                    for (Entry<String, Set<String>> propertyEntry : record.getProperties().entrySet()) {
+                        for (String propertyValue : propertyEntry.getValue()) {
+                            SingleSqlQuery propertyQuery = RAuditPropertyValue.toRepo(
+                                    id, propertyEntry.getKey(), RUtil.trimString(propertyValue, AuditService.MAX_PROPERTY_SIZE));
+                            propertyBatchQuery.addQueryForBatch(propertyQuery);
+                        }
+                    }
+
+                    for (Entry<String, Set<AuditReferenceValue>> referenceEntry : record.getReferences().entrySet()) {
+                        for (AuditReferenceValue referenceValue : referenceEntry.getValue()) {
+                            SingleSqlQuery referenceQuery = RAuditReferenceValue.toRepo(id, referenceEntry.getKey(), referenceValue);
+                            referenceBatchQuery.addQueryForBatch(referenceQuery);
+                        }
+                    }
+
+                    for (String resourceOid : record.getResourceOids()) {
+                        SingleSqlQuery resourceOidQuery = RTargetResourceOid.toRepo(id, resourceOid);
+                        resourceOidBatchQuery.addQueryForBatch(resourceOidQuery);
                     }
                 }
+
                 if (!deltaBatchQuery.isEmpty()) {
                     deltaBatchQuery.execute(connection);
                 }
                 if (!itemBatchQuery.isEmpty()) {
                     itemBatchQuery.execute(connection);
                 }
-
-                BatchSqlQuery propertyBatchQuery = new BatchSqlQuery(database);
-                for (Entry<String, Set<String>> propertyEntry : record.getProperties().entrySet()) {
-                    for (String propertyValue : propertyEntry.getValue()) {
-                        SingleSqlQuery propertyQuery = RAuditPropertyValue.toRepo(
-                                id, propertyEntry.getKey(), RUtil.trimString(propertyValue, AuditService.MAX_PROPERTY_SIZE));
-//                                val.setTransient(isTransient);
-                        propertyBatchQuery.addQueryForBatch(propertyQuery);
-                    }
-                }
                 if (!propertyBatchQuery.isEmpty()) {
                     propertyBatchQuery.execute(connection);
                 }
-
-                BatchSqlQuery referenceBatchQuery = new BatchSqlQuery(database);
-                for (Entry<String, Set<AuditReferenceValue>> referenceEntry : record.getReferences().entrySet()) {
-                    for (AuditReferenceValue referenceValue : referenceEntry.getValue()) {
-                        SingleSqlQuery referenceQuery = RAuditReferenceValue.toRepo(id, referenceEntry.getKey(), referenceValue);
-//                                 val.setTransient(isTransient);
-                        referenceBatchQuery.addQueryForBatch(referenceQuery);
-                    }
-                }
                 if (!referenceBatchQuery.isEmpty()) {
                     referenceBatchQuery.execute(connection);
                 }
-
-                BatchSqlQuery resourceOidBatchQuery = new BatchSqlQuery(database);
-                for (String resourceOid : record.getResourceOids()) {
-                    SingleSqlQuery resourceOidQuery = RTargetResourceOid.toRepo(id, resourceOid);
-                    resourceOidBatchQuery.addQueryForBatch(resourceOidQuery);
-                }
                 if (!resourceOidBatchQuery.isEmpty()) {
                     resourceOidBatchQuery.execute(connection);
                 }
             });
 
             session.getTransaction().commit();
-        } catch (DtoTranslationException ex) {
-            baseHelper.handleGeneralCheckedException(ex, session, null);
         } catch (RuntimeException ex) {
             baseHelper.handleGeneralRuntimeException(ex, session, null);
         } finally {
@@ -538,6 +705,30 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         //  It looks like the attempts (and wasted time) are not counted correctly
         cleanupAuditMaxRecords(policy, parentResult);
         cleanupAuditMaxAge(policy, parentResult);
+
+        AuditPartitionManager partitionManager = getPartitionManager();
+        if (partitionManager != null) {
+            partitionManager.createPartitionsAhead();
+        }
+    }
+
+    /**
+     * Returns the partition manager if the audit tables are partitioned; null otherwise.
+     */
+    private AuditPartitionManager getPartitionManager() {
+        SqlRepositoryConfiguration configuration = getConfiguration();
+        if (!configuration.isAuditPartitioning()) {
+            return null;
+        }
+        if (!configuration.isUsingPostgreSQL()) {
+            LOGGER.warn("Audit partitioning is supported only on PostgreSQL; ignoring the '{}' setting.",
+                    SqlRepositoryConfiguration.PROPERTY_AUDIT_PARTITIONING);
+            return null;
+        }
+        if (partitionManager == null) {
+            partitionManager = new AuditPartitionManager(baseHelper, configuration.getAuditPartitionSize());
+        }
+        return partitionManager;
     }
 
     private void cleanupAuditMaxAge(CleanupPolicyType policy, OperationResult parentResult) {
@@ -573,6 +764,12 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                             first ? "Starting" : "Continuing with ", minValue, duration, CLEANUP_AUDIT_BATCH_SIZE,
                             first ? "" : ", up to now deleted " + totalCountHolder.getValue() + " entries");
                     first = false;
+                    AuditPartitionManager partitionManager = getPartitionManager();
+                    if (partitionManager != null) {
+                        int dropped = partitionManager.dropPartitionsOlderThan(minValue);
+                        LOGGER.info("Dropped audit partitions containing {} entries.", dropped);
+                        totalCountHolder.setValue(totalCountHolder.getValue() + dropped);
+                    }
                     int count;
                     do {
                         // the following method may restart due to concurrency
@@ -625,6 +822,12 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                             first ? "Starting" : "Continuing with ", recordsToKeep, CLEANUP_AUDIT_BATCH_SIZE,
                             first ? "" : ", up to now deleted " + totalCountHolder.getValue() + " entries");
                     first = false;
+                    AuditPartitionManager partitionManager = getPartitionManager();
+                    if (partitionManager != null) {
+                        int dropped = partitionManager.dropPartitionsExceedingMaxRecords(recordsToKeep);
+                        LOGGER.info("Dropped audit partitions containing {} entries.", dropped);
+                        totalCountHolder.setValue(totalCountHolder.getValue() + dropped);
+                    }
                     int count;
                     do {
                         // the following method may restart due to concurrency
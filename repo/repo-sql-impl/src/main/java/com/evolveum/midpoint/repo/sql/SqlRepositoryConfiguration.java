@@ -31,6 +31,7 @@ import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactoryException;
 import com.evolveum.midpoint.repo.sql.helpers.OrgClosureManager;
 import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
+import com.evolveum.midpoint.repo.sql.util.BinaryFullObjectCodec;
 import com.evolveum.midpoint.repo.sql.util.MidPointMySQLDialect;
 import com.evolveum.midpoint.repo.sql.util.MidPointOracleDialect;
 import com.evolveum.midpoint.repo.sql.util.MidPointPostgreSQLDialect;
@@ -262,6 +263,9 @@ public class SqlRepositoryConfiguration {
     private static final int DEFAULT_MIN_POOL_SIZE = 8;
     private static final int DEFAULT_MAX_POOL_SIZE = 20;
     private static final int DEFAULT_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD = 500;
+    private static final int DEFAULT_BULK_OPERATION_BATCH_SIZE = 100;
+    private static final int DEFAULT_QUERY_SHAPE_CACHE_SIZE = 1000;
+    private static final int DEFAULT_EXTERNAL_ITEM_VALUES_THRESHOLD = 0;
 
     public static final String PROPERTY_DATABASE = "database";
     public static final String PROPERTY_BASE_DIR = "baseDir";
@@ -284,8 +288,22 @@ public class SqlRepositoryConfiguration {
     /**
      * Specifies language used for writing fullObject attribute.
      * See LANG constants in {@link com.evolveum.midpoint.prism.PrismContext} for supported values.
+     * Value of {@link BinaryFullObjectCodec#FORMAT_BINARY} selects compact binary encoding (m_object only);
+     * objects that cannot be encoded this way are stored as XML.
      */
     public static final String PROPERTY_FULL_OBJECT_FORMAT = "fullObjectFormat";
+
+    /**
+     * If true, fullObject values that are not in the configured {@link #PROPERTY_FULL_OBJECT_FORMAT}
+     * are re-encoded in the background after the repository starts.
+     */
+    public static final String PROPERTY_FULL_OBJECT_REENCODE = "fullObjectReencode";
+    /**
+     * Heavyweight multivalued items (assignment, operationExecution, trigger) having more values than this
+     * are stored outside of fullObject (in m_object_external_item) and loaded only if not excluded
+     * by retrieve options. Zero or negative value (the default) switches this off.
+     */
+    public static final String PROPERTY_EXTERNAL_ITEM_VALUES_THRESHOLD = "externalItemValuesThreshold";
     public static final String PROPERTY_MIN_POOL_SIZE = "minPoolSize";
     public static final String PROPERTY_MAX_POOL_SIZE = "maxPoolSize";
     public static final String PROPERTY_MAX_LIFETIME = "maxLifetime";
@@ -298,11 +316,15 @@ public class SqlRepositoryConfiguration {
     public static final String PROPERTY_USE_READ_ONLY_TRANSACTIONS = "useReadOnlyTransactions";
     public static final String PROPERTY_PERFORMANCE_STATISTICS_FILE = "performanceStatisticsFile";
     public static final String PROPERTY_PERFORMANCE_STATISTICS_LEVEL = "performanceStatisticsLevel";
+    public static final String PROPERTY_SLOW_QUERY_THRESHOLD = "slowQueryThreshold";
 
     //other
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING = "iterativeSearchByPaging";
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE = "iterativeSearchByPagingBatchSize";
+    public static final String PROPERTY_ITERATIVE_SEARCH_FETCH_SIZE = "iterativeSearchFetchSize";
     public static final String PROPERTY_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD = "maxObjectsForImplicitFetchAllIterationMethod";
+    public static final String PROPERTY_BULK_OPERATION_BATCH_SIZE = "bulkOperationBatchSize";
+    public static final String PROPERTY_QUERY_SHAPE_CACHE_SIZE = "queryShapeCacheSize";
 
     //closure
     public static final String PROPERTY_IGNORE_ORG_CLOSURE = "ignoreOrgClosure";
@@ -326,6 +348,9 @@ public class SqlRepositoryConfiguration {
 
     public static final String PROPERTY_TEXT_INFO_COLUMN_SIZE = "textInfoColumnSize";
 
+    public static final String PROPERTY_AUDIT_PARTITIONING = "auditPartitioning";
+    public static final String PROPERTY_AUDIT_PARTITION_SIZE = "auditPartitionSize";
+
     private static final String DRIVER_H2 = Driver.class.getName();
     private static final String DRIVER_MYSQL = "com.mysql.cj.jdbc.Driver";
     private static final String DRIVER_MARIADB = "org.mariadb.jdbc.Driver";
@@ -368,6 +393,8 @@ public class SqlRepositoryConfiguration {
     private final Long idleTimeout;
     private final boolean useZip;
     private String fullObjectFormat; // non-final for testing
+    private final boolean fullObjectReencode;
+    private int externalItemValuesThreshold; // non-final for testing
 
     private TransactionIsolation defaultTransactionIsolation;
     private boolean defaultLockForUpdateViaHibernate;
@@ -382,12 +409,20 @@ public class SqlRepositoryConfiguration {
     private final String performanceStatisticsFile;
     private final int performanceStatisticsLevel;
 
+    /** Queries running at least this number of milliseconds are recorded as slow ones. Zero means no recording. */
+    private final long slowQueryThreshold;
+
     private boolean defaultIterativeSearchByPaging;
     private int defaultIterativeSearchByPagingBatchSize;
+    private int defaultIterativeSearchFetchSize;
     private final int maxObjectsForImplicitFetchAllIterationMethod;
 
     private final boolean iterativeSearchByPaging;
     private int iterativeSearchByPagingBatchSize;               // not final only because of testing
+    private final int iterativeSearchFetchSize;
+
+    private final int bulkOperationBatchSize;
+    private final int queryShapeCacheSize;
 
     private final boolean ignoreOrgClosure;
     private final OrgClosureManager.StartupAction orgClosureStartupAction;
@@ -410,6 +445,15 @@ public class SqlRepositoryConfiguration {
 
     private int textInfoColumnSize;
 
+    /**
+     * Are audit tables partitioned by audit record ID (see postgresql-4.2-audit-partitioning.sql)?
+     * Supported only for PostgreSQL.
+     */
+    private boolean auditPartitioning;
+
+    /** Number of audit record IDs covered by one partition. */
+    private long auditPartitionSize;
+
     /*
      * Notes:
      * - In testing mode, the configuration is already updated from .properties file.
@@ -486,6 +530,9 @@ public class SqlRepositoryConfiguration {
         fullObjectFormat = configuration.getString(
                 PROPERTY_FULL_OBJECT_FORMAT,
                 System.getProperty(PROPERTY_FULL_OBJECT_FORMAT, PrismContext.LANG_XML));
+        fullObjectReencode = configuration.getBoolean(PROPERTY_FULL_OBJECT_REENCODE, false);
+        externalItemValuesThreshold = configuration.getInt(PROPERTY_EXTERNAL_ITEM_VALUES_THRESHOLD,
+                DEFAULT_EXTERNAL_ITEM_VALUES_THRESHOLD);
 
         // requires asServer, baseDir, fileName, port
         jdbcUrl = configuration.getString(PROPERTY_JDBC_URL, embedded ? getDefaultEmbeddedJdbcUrl() : null);
@@ -501,12 +548,16 @@ public class SqlRepositoryConfiguration {
 
         performanceStatisticsFile = configuration.getString(PROPERTY_PERFORMANCE_STATISTICS_FILE);
         performanceStatisticsLevel = configuration.getInt(PROPERTY_PERFORMANCE_STATISTICS_LEVEL, SqlPerformanceMonitorImpl.LEVEL_LOCAL_STATISTICS);
+        slowQueryThreshold = configuration.getLong(PROPERTY_SLOW_QUERY_THRESHOLD, 0L);
 
         computeDefaultIterativeSearchParameters();
         iterativeSearchByPaging = configuration.getBoolean(PROPERTY_ITERATIVE_SEARCH_BY_PAGING, defaultIterativeSearchByPaging);
         iterativeSearchByPagingBatchSize = configuration.getInt(PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE, defaultIterativeSearchByPagingBatchSize);
+        iterativeSearchFetchSize = configuration.getInt(PROPERTY_ITERATIVE_SEARCH_FETCH_SIZE, defaultIterativeSearchFetchSize);
         maxObjectsForImplicitFetchAllIterationMethod = configuration.getInt(PROPERTY_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD,
                 DEFAULT_MAX_OBJECTS_FOR_IMPLICIT_FETCH_ALL_ITERATION_METHOD);
+        bulkOperationBatchSize = configuration.getInt(PROPERTY_BULK_OPERATION_BATCH_SIZE, DEFAULT_BULK_OPERATION_BATCH_SIZE);
+        queryShapeCacheSize = configuration.getInt(PROPERTY_QUERY_SHAPE_CACHE_SIZE, DEFAULT_QUERY_SHAPE_CACHE_SIZE);
 
         ignoreOrgClosure = configuration.getBoolean(PROPERTY_IGNORE_ORG_CLOSURE, false);
         orgClosureStartupAction = OrgClosureManager.StartupAction.fromValue(
@@ -537,6 +588,9 @@ public class SqlRepositoryConfiguration {
 
         int maxTextSize = (database == MYSQL || database == MARIADB) && UTF8MB4.equalsIgnoreCase(schemaVariant) ? 191 : 255;
         textInfoColumnSize = configuration.getInt(PROPERTY_TEXT_INFO_COLUMN_SIZE, maxTextSize);
+
+        auditPartitioning = configuration.getBoolean(PROPERTY_AUDIT_PARTITIONING, false);
+        auditPartitionSize = configuration.getLong(PROPERTY_AUDIT_PARTITION_SIZE, 1_000_000L);
     }
 
     private boolean isAutoUpdate(String hbm2ddl) {
@@ -700,6 +754,10 @@ public class SqlRepositoryConfiguration {
     private void computeDefaultIterativeSearchParameters() {
         defaultIterativeSearchByPaging = true;
         defaultIterativeSearchByPagingBatchSize = 50;
+        // Oracle driver default is 10, which means too many round-trips; PostgreSQL default (0) means fetching all rows.
+        // MySQL row-by-row streaming (Integer.MIN_VALUE) is not used, as no other statement can be executed on the connection
+        // until the whole result is read; a positive fetch size with useCursorFetch=true is used instead (see DataSourceFactory).
+        defaultIterativeSearchFetchSize = 100;
     }
 
     /**
@@ -738,6 +796,18 @@ public class SqlRepositoryConfiguration {
         if (minPoolSize > maxPoolSize) {
             throw new RepositoryServiceFactoryException("Max. pool size must be greater than min. pool size.");
         }
+
+        if (bulkOperationBatchSize <= 0) {
+            throw new RepositoryServiceFactoryException("Bulk operation batch size must be greater than zero.");
+        }
+        if (iterativeSearchFetchSize <= 0) {
+            // objects read via a cursor need further queries (e.g. for extension items) while the cursor is open
+            throw new RepositoryServiceFactoryException("Iterative search fetch size must be greater than zero.");
+        }
+
+        if (auditPartitioning && auditPartitionSize <= 0) {
+            throw new RepositoryServiceFactoryException("Audit partition size must be greater than zero.");
+        }
     }
 
     @SuppressWarnings("SameParameterValue")
@@ -872,6 +942,10 @@ public class SqlRepositoryConfiguration {
         return performanceStatisticsLevel;
     }
 
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
     public boolean isIterativeSearchByPaging() {
         return iterativeSearchByPaging;
     }
@@ -885,10 +959,34 @@ public class SqlRepositoryConfiguration {
         this.iterativeSearchByPagingBatchSize = iterativeSearchByPagingBatchSize;
     }
 
+    /**
+     * JDBC fetch size used when iterating over search results using a server-side cursor.
+     * On MySQL the cursor is used only with useCursorFetch=true connection property; it is set automatically
+     * for the default datasource, but it has to be set explicitly for a JNDI one. Otherwise the whole result is read.
+     */
+    public int getIterativeSearchFetchSize() {
+        return iterativeSearchFetchSize;
+    }
+
     public int getMaxObjectsForImplicitFetchAllIterationMethod() {
         return maxObjectsForImplicitFetchAllIterationMethod;
     }
 
+    /**
+     * Maximal number of objects added or modified in one transaction by bulk operations (addObjects, modifyObjects).
+     * It is also used as JDBC batch size for these operations.
+     */
+    public int getBulkOperationBatchSize() {
+        return bulkOperationBatchSize;
+    }
+
+    /**
+     * Maximal number of query shapes whose interpretation is cached; 0 turns the cache off.
+     */
+    public int getQueryShapeCacheSize() {
+        return queryShapeCacheSize;
+    }
+
     public String getDataSource() {
         return dataSource;
     }
@@ -928,6 +1026,36 @@ public class SqlRepositoryConfiguration {
         return fullObjectFormat;
     }
 
+    public boolean isFullObjectFormatBinary() {
+        return BinaryFullObjectCodec.FORMAT_BINARY.equals(fullObjectFormat);
+    }
+
+    /**
+     * Returns text serialization language for places where binary format is not supported
+     * (or cannot be used for the particular object).
+     */
+    public String getFullObjectTextFormat() {
+        return isFullObjectFormatBinary() ? PrismContext.LANG_XML : fullObjectFormat;
+    }
+
+    public boolean isFullObjectReencode() {
+        return fullObjectReencode;
+    }
+
+    /**
+     * See {@link #PROPERTY_EXTERNAL_ITEM_VALUES_THRESHOLD}.
+     */
+    public int getExternalItemValuesThreshold() {
+        return externalItemValuesThreshold;
+    }
+
+    /**
+     * This is normally not used outside of tests, but should be safe to change any time.
+     */
+    public void setExternalItemValuesThreshold(int externalItemValuesThreshold) {
+        this.externalItemValuesThreshold = externalItemValuesThreshold;
+    }
+
     public boolean isIgnoreOrgClosure() {
         return ignoreOrgClosure;
     }
@@ -1035,6 +1163,14 @@ public class SqlRepositoryConfiguration {
         return textInfoColumnSize;
     }
 
+    public boolean isAuditPartitioning() {
+        return auditPartitioning;
+    }
+
+    public long getAuditPartitionSize() {
+        return auditPartitionSize;
+    }
+
     // for testing only
     @SuppressWarnings("SameParameterValue")
     public void setEnableNoFetchExtensionValuesInsertion(boolean enableNoFetchExtensionValuesInsertion) {
@@ -17,6 +17,7 @@ import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import javax.xml.namespace.QName;
 
 import org.apache.commons.lang.Validate;
@@ -33,14 +34,19 @@ import com.evolveum.midpoint.common.crypto.CryptoUtil;
 import com.evolveum.midpoint.prism.*;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ItemDeltaCollectionsUtil;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.delta.PropertyDelta;
 import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
+import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.*;
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.api.query.ObjectFilterExpressionEvaluator;
+import com.evolveum.midpoint.repo.sql.data.common.dictionary.ExtItemDictionary;
 import com.evolveum.midpoint.repo.sql.helpers.*;
+import com.evolveum.midpoint.repo.sql.perf.PerformanceInformationImpl;
+import com.evolveum.midpoint.repo.sql.perf.QueryPerformanceInformation;
 import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
@@ -92,16 +98,25 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
     private static final String DETAILS_DATA_SOURCE = "dataSource";
     private static final String DETAILS_HIBERNATE_DIALECT = "hibernateDialect";
     private static final String DETAILS_HIBERNATE_HBM_2_DDL = "hibernateHbm2ddl";
+    private static final String DETAILS_SLOW_QUERY_THRESHOLD = "slowQueryThreshold";
+    private static final String DETAILS_QUERY = "query.";
+    private static final String DETAILS_SLOW_QUERY = "slowQuery.";
+
+    private static final int DIAG_QUERIES = 10;
+
+    private static final String RETURN_PREALLOCATED_SEQUENCE_VALUES = SqlRepositoryServiceImpl.class.getName() + ".returnPreallocatedSequenceValues";
 
     @Autowired private SequenceHelper sequenceHelper;
     @Autowired private ObjectRetriever objectRetriever;
     @Autowired private ObjectUpdater objectUpdater;
+    @Autowired private FullObjectReencoder fullObjectReencoder;
     @Autowired private OrgClosureManager closureManager;
     @Autowired private BaseHelper baseHelper;
     @Autowired private MatchingRuleRegistry matchingRuleRegistry;
     @Autowired private PrismContext prismContext;
     @Autowired private RelationRegistry relationRegistry;
     @Autowired private SystemConfigurationChangeDispatcher systemConfigurationChangeDispatcher;
+    @Autowired private ExtItemDictionary extItemDictionary;
 
     private final ThreadLocal<List<ConflictWatcherImpl>> conflictWatchersThreadLocal = new ThreadLocal<>();
 
@@ -159,6 +174,37 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         return object;
     }
 
+    @NotNull
+    @Override
+    public <T extends ObjectType> SearchResultList<PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) throws SchemaException {
+        Validate.notNull(type, "Object type must not be null.");
+        Validate.notNull(oids, "Oids must not be null.");
+        Validate.notNull(result, "Operation result must not be null.");
+
+        LOGGER.debug("Getting {} objects of type '{}': {}", oids.size(), type.getSimpleName(), result.getOperation());
+        if (oids.isEmpty()) {
+            return new SearchResultList<>(new ArrayList<>(0));
+        }
+        oids.forEach(oid -> InternalMonitor.recordRepositoryRead(type, oid));
+
+        OperationResult subResult = result.subresult(GET_OBJECTS)
+                .addQualifier(type.getSimpleName())
+                .setMinor()
+                .addParam("type", type.getName())
+                .addArbitraryObjectCollectionAsParam("oids", oids)
+                .build();
+
+        try {
+            SearchResultList<PrismObject<T>> objects = executeAttempts(null, OP_GET_OBJECTS, type, "getting",
+                    subResult, () -> objectRetriever.getObjectsAttempt(type, oids, options, subResult));
+            objects.forEach(object -> invokeConflictWatchers((w) -> w.afterGetObject(object)));
+            return objects;
+        } catch (ObjectNotFoundException e) {
+            throw new AssertionError("Should not occur; missing objects are not reported by getObjectsAttempt.", e);
+        }
+    }
+
     private <RV> RV executeAttempts(String oid, String operationName, Class<?> type, String operationVerb, OperationResult subResult,
             ResultSupplier<RV> supplier) throws ObjectNotFoundException, SchemaException {
         SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
@@ -362,15 +408,7 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
                 object.getCompileTimeClass().getSimpleName(), options.isOverwrite(),
                 options.isAllowUnencryptedValues());
 
-        if (InternalsConfig.encryptionChecks && !RepoAddOptions.isAllowUnencryptedValues(options)) {
-            CryptoUtil.checkEncrypted(object);
-        }
-
-        if (InternalsConfig.consistencyChecks) {
-            object.checkConsistence(ConsistencyCheckScope.THOROUGH);
-        } else {
-            object.checkConsistence(ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
-        }
+        checkObjectToAdd(object, options);
 
         if (LOGGER.isTraceEnabled()) {
             // Explicitly log name
@@ -419,6 +457,138 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         }
     }
 
+    private void checkObjectToAdd(PrismObject<?> object, RepoAddOptions options) {
+        if (InternalsConfig.encryptionChecks && !RepoAddOptions.isAllowUnencryptedValues(options)) {
+            CryptoUtil.checkEncrypted(object);
+        }
+
+        if (InternalsConfig.consistencyChecks) {
+            object.checkConsistence(ConsistencyCheckScope.THOROUGH);
+        } else {
+            object.checkConsistence(ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<BulkOperationItemResult> addObjects(@NotNull List<? extends PrismObject<? extends ObjectType>> objects,
+            RepoAddOptions options, OperationResult result) {
+        Validate.notNull(objects, "Objects must not be null.");
+        Validate.notNull(result, "Operation result must not be null.");
+
+        RepoAddOptions addOptions = options != null ? options : new RepoAddOptions();
+        LOGGER.debug("Adding {} objects, overwrite={}, allowUnencryptedValues={}", objects.size(),
+                addOptions.isOverwrite(), addOptions.isAllowUnencryptedValues());
+
+        OperationResult subResult = result.subresult(ADD_OBJECTS)
+                .addParam("count", objects.size())
+                .addParam("options", addOptions.toString())
+                .build();
+
+        BulkOperationItemResult[] itemResults = new BulkOperationItemResult[objects.size()];
+        try {
+            int batchSize = getConfiguration().getBulkOperationBatchSize();
+            for (int from = 0; from < objects.size(); from += batchSize) {
+                addObjectsBatch(objects, from, Math.min(from + batchSize, objects.size()), addOptions, itemResults, subResult);
+            }
+            return Arrays.asList(itemResults);
+        } finally {
+            computeBulkOperationStatus(itemResults, subResult);
+        }
+    }
+
+    /**
+     * Adds objects[from..to) in a single transaction. If that fails, adds them one by one,
+     * so the offending object(s) can be identified while the others are stored.
+     */
+    private void addObjectsBatch(List<? extends PrismObject<? extends ObjectType>> objects, int from, int to,
+            RepoAddOptions options, BulkOperationItemResult[] itemResults, OperationResult result) {
+
+        List<PrismObject<? extends ObjectType>> batch = new ArrayList<>(to - from);
+        List<Integer> batchIndices = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            PrismObject<? extends ObjectType> object = objects.get(i);
+            try {
+                Validate.notNull(object, "Object must not be null.");
+                validateName(object);
+                checkObjectToAdd(object, options);
+                batch.add(object);
+                batchIndices.add(i);
+            } catch (SchemaException | RuntimeException e) {
+                itemResults[i] = BulkOperationItemResult.failed(object != null ? object.getOid() : null, e);
+            }
+        }
+
+        // "overwriting add" needs to fetch and compare each object separately
+        if (batch.size() > 1 && !options.isOverwrite()) {
+            OperationResult batchResult = result.createMinorSubresult(ADD_OBJECTS + ".batch");
+            try {
+                List<String> oids = addObjectsBatchAttempts(batch, batchResult);
+                for (int i = 0; i < batch.size(); i++) {
+                    PrismObject<? extends ObjectType> object = batch.get(i);
+                    String oid = oids.get(i);
+                    invokeConflictWatchers((w) -> w.afterAddObject(oid, object));
+                    itemResults[batchIndices.get(i)] = BulkOperationItemResult.added(oid);
+                }
+                batchResult.recordSuccess();
+                return;
+            } catch (ObjectAlreadyExistsException | SchemaException | RuntimeException e) {
+                LOGGER.debug("Adding a batch of {} objects failed, adding them one by one: {}", batch.size(), e.getMessage(), e);
+                batchResult.recordHandledError(e);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            PrismObject<? extends ObjectType> object = batch.get(i);
+            try {
+                itemResults[batchIndices.get(i)] = BulkOperationItemResult.added(addObject(object, options, result));
+            } catch (ObjectAlreadyExistsException | SchemaException | RuntimeException e) {
+                itemResults[batchIndices.get(i)] = BulkOperationItemResult.failed(object.getOid(), e);
+            }
+        }
+    }
+
+    private List<String> addObjectsBatchAttempts(List<PrismObject<? extends ObjectType>> batch, OperationResult result)
+            throws ObjectAlreadyExistsException, SchemaException {
+        SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(OP_ADD_OBJECTS, ObjectType.class);
+        int attempt = 1;
+        try {
+            while (true) {
+                try {
+                    return objectUpdater.addObjectsAttempt(batch, result);
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, "adding (in bulk)", attempt, ex, result);
+                    pm.registerOperationNewAttempt(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
+    private void computeBulkOperationStatus(BulkOperationItemResult[] itemResults, OperationResult result) {
+        int failed = 0;
+        int total = 0;
+        for (BulkOperationItemResult itemResult : itemResults) {
+            if (itemResult != null) {
+                total++;
+                if (!itemResult.isSuccess()) {
+                    failed++;
+                }
+            }
+        }
+        result.addReturn("processed", total);
+        result.addReturn("failed", failed);
+        if (failed == 0) {
+            result.computeStatusIfUnknown();
+        } else if (failed < total) {
+            result.recordPartialError(failed + " out of " + total + " objects could not be processed");
+        } else {
+            result.recordFatalError("None of " + total + " objects could be processed");
+        }
+    }
+
     public void invokeConflictWatchers(Consumer<ConflictWatcherImpl> consumer) {
         emptyIfNull(conflictWatchersThreadLocal.get()).forEach(consumer);
     }
@@ -588,6 +758,127 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         }
     }
 
+    @NotNull
+    @Override
+    public List<BulkOperationItemResult> modifyObjects(@NotNull List<? extends ObjectDelta<? extends ObjectType>> deltas,
+            RepoModifyOptions options, OperationResult result) {
+        Validate.notNull(deltas, "Deltas must not be null.");
+        Validate.notNull(result, "Operation result must not be null.");
+
+        LOGGER.debug("Modifying {} objects", deltas.size());
+
+        OperationResult subResult = result.subresult(MODIFY_OBJECTS)
+                .addParam("count", deltas.size())
+                .addArbitraryObjectAsParam("options", options)
+                .build();
+
+        BulkOperationItemResult[] itemResults = new BulkOperationItemResult[deltas.size()];
+        try {
+            int batchSize = getConfiguration().getBulkOperationBatchSize();
+            for (int from = 0; from < deltas.size(); from += batchSize) {
+                modifyObjectsBatch(deltas, from, Math.min(from + batchSize, deltas.size()), options, itemResults, subResult);
+            }
+            return Arrays.asList(itemResults);
+        } finally {
+            computeBulkOperationStatus(itemResults, subResult);
+        }
+    }
+
+    /**
+     * Applies deltas[from..to) in a single transaction. If that fails, applies them one by one,
+     * so the offending delta(s) can be identified while the others are applied.
+     */
+    private void modifyObjectsBatch(List<? extends ObjectDelta<? extends ObjectType>> deltas, int from, int to,
+            RepoModifyOptions options, BulkOperationItemResult[] itemResults, OperationResult result) {
+
+        List<ObjectDelta<? extends ObjectType>> batch = new ArrayList<>(to - from);
+        List<Integer> batchIndices = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ObjectDelta<? extends ObjectType> delta = deltas.get(i);
+            try {
+                checkDeltaToModify(delta);
+                if (delta.getModifications().isEmpty() && !RepoModifyOptions.isExecuteIfNoChanges(options)) {
+                    itemResults[i] = BulkOperationItemResult.modified(delta.getOid(),
+                            new ModifyObjectResult<>(delta.getModifications()));
+                } else {
+                    batch.add(delta);
+                    batchIndices.add(i);
+                }
+            } catch (RuntimeException e) {
+                itemResults[i] = BulkOperationItemResult.failed(delta != null ? delta.getOid() : null, e);
+            }
+        }
+
+        if (batch.size() > 1) {
+            OperationResult batchResult = result.createMinorSubresult(MODIFY_OBJECTS + ".batch");
+            try {
+                List<ModifyObjectResult<? extends ObjectType>> modifyResults = modifyObjectsBatchAttempts(batch, options, batchResult);
+                for (int i = 0; i < batch.size(); i++) {
+                    String oid = batch.get(i).getOid();
+                    invokeConflictWatchers((w) -> w.afterModifyObject(oid));
+                    itemResults[batchIndices.get(i)] = BulkOperationItemResult.modified(oid, modifyResults.get(i));
+                }
+                batchResult.recordSuccess();
+                return;
+            } catch (ObjectNotFoundException | SchemaException | ObjectAlreadyExistsException | PreconditionViolationException
+                    | RuntimeException e) {
+                LOGGER.debug("Modifying a batch of {} objects failed, modifying them one by one: {}", batch.size(), e.getMessage(), e);
+                batchResult.recordHandledError(e);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            ObjectDelta<? extends ObjectType> delta = batch.get(i);
+            try {
+                itemResults[batchIndices.get(i)] = BulkOperationItemResult.modified(delta.getOid(),
+                        modifyObject(delta, options, result));
+            } catch (ObjectNotFoundException | SchemaException | ObjectAlreadyExistsException | RuntimeException e) {
+                itemResults[batchIndices.get(i)] = BulkOperationItemResult.failed(delta.getOid(), e);
+            }
+        }
+    }
+
+    private void checkDeltaToModify(ObjectDelta<? extends ObjectType> delta) {
+        Validate.notNull(delta, "Delta must not be null.");
+        Validate.isTrue(delta.isModify(), "Only MODIFY deltas can be applied: " + delta);
+        Validate.notNull(delta.getObjectTypeClass(), "Object class in delta must not be null.");
+        Validate.notEmpty(delta.getOid(), "Oid must not null or empty.");
+
+        if (InternalsConfig.encryptionChecks) {
+            CryptoUtil.checkEncrypted(delta.getModifications());
+        }
+        if (InternalsConfig.consistencyChecks) {
+            ItemDeltaCollectionsUtil.checkConsistence(delta.getModifications(), ConsistencyCheckScope.THOROUGH);
+        } else {
+            ItemDeltaCollectionsUtil.checkConsistence(delta.getModifications(), ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
+        }
+    }
+
+    private <T extends ObjectType> ModifyObjectResult<T> modifyObject(ObjectDelta<T> delta, RepoModifyOptions options,
+            OperationResult result) throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
+        return modifyObject(delta.getObjectTypeClass(), delta.getOid(), delta.getModifications(), options, result);
+    }
+
+    private List<ModifyObjectResult<? extends ObjectType>> modifyObjectsBatchAttempts(List<ObjectDelta<? extends ObjectType>> batch,
+            RepoModifyOptions options, OperationResult result)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException {
+        SqlPerformanceMonitorImpl pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(OP_MODIFY_OBJECTS, ObjectType.class);
+        int attempt = 1;
+        try {
+            while (true) {
+                try {
+                    return objectUpdater.modifyObjectsAttempt(batch, options, result, this);
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, "modifying (in bulk)", attempt, ex, result);
+                    pm.registerOperationNewAttempt(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
     @Override
     public RepositoryDiag getRepositoryDiag() {
         LOGGER.debug("Getting repository diagnostics.");
@@ -620,12 +911,41 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         details.add(new LabeledString(DETAILS_HIBERNATE_HBM_2_DDL, config.getHibernateHbm2ddl()));
 
         readDetailsFromConnection(diag, config);
+        addQueryStatistics(details);
 
         details.sort((o1, o2) -> String.CASE_INSENSITIVE_ORDER.compare(o1.getLabel(), o2.getLabel()));
 
         return diag;
     }
 
+    /**
+     * Adds the most expensive queries (by total time) and recent slow queries, as collected globally.
+     */
+    private void addQueryStatistics(List<LabeledString> details) {
+        SqlPerformanceMonitorImpl monitor = getPerformanceMonitor();
+        if (monitor == null) {
+            return;
+        }
+        details.add(new LabeledString(DETAILS_SLOW_QUERY_THRESHOLD, monitor.getSlowQueryThreshold() + " ms"));
+        PerformanceInformationImpl info = monitor.getGlobalPerformanceInformation();
+        List<Map.Entry<String, QueryPerformanceInformation>> queries = new ArrayList<>(info.getQueryData().entrySet());
+        queries.sort(Comparator.comparingLong(
+                (Map.Entry<String, QueryPerformanceInformation> e) -> e.getValue().getTotalTimeNanos()).reversed());
+        for (int i = 0; i < queries.size() && i < DIAG_QUERIES; i++) {
+            Map.Entry<String, QueryPerformanceInformation> query = queries.get(i);
+            details.add(new LabeledString(String.format("%s%02d", DETAILS_QUERY, i + 1),
+                    query.getValue().shortDump() + ": " + query.getKey()));
+        }
+        List<RepositorySlowQueryType> slowQueries = info.getSlowQueries();
+        // the most recent ones
+        for (int i = 0; i < slowQueries.size() && i < DIAG_QUERIES; i++) {
+            RepositorySlowQueryType slowQuery = slowQueries.get(slowQueries.size() - 1 - i);
+            details.add(new LabeledString(String.format("%s%02d", DETAILS_SLOW_QUERY, i + 1),
+                    slowQuery.getTime() + " ms, rows: " + slowQuery.getRowsReturned() + ", operation: "
+                            + slowQuery.getOperation() + ", at: " + slowQuery.getTimestamp() + ": " + slowQuery.getText()));
+        }
+    }
+
     private void readDetailsFromConnection(RepositoryDiag diag, final SqlRepositoryConfiguration config) {
         final List<LabeledString> details = diag.getAdditionalDetails();
 
@@ -795,7 +1115,14 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
             if (getConfiguration().isIterativeSearchByPaging()) {
                 if (strictlySequential) {
                     if (isCustomPagingOkWithPagedSeqIteration(query)) {
+                        // This is keyset paging by OID (with per-page monitoring), so we do not need KEYSET_PAGING here.
                         iterationMethod = IterationMethodType.STRICTLY_SEQUENTIAL_PAGING;
+                    } else if (isCustomPagingOkWithKeysetIteration(query)
+                            && isOrderingOkWithKeysetIteration(type, query, prismContext)) {
+                        LOGGER.debug("Iterative search by paging was defined in the repository configuration, and strict sequentiality "
+                                + "was requested. However, a custom ordering precludes strictly sequential paging. Therefore switching to "
+                                + "'keyset paging' iteration method. Paging requested: " + query.getPaging());
+                        iterationMethod = IterationMethodType.KEYSET_PAGING;
                     } else if (isCustomPagingOkWithFetchAllIteration(query)) {
                         LOGGER.debug("Iterative search by paging was defined in the repository configuration, and strict sequentiality "
                                 + "was requested. However, a custom paging precludes its application. Therefore switching to "
@@ -842,6 +1169,12 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
             case FETCH_ALL:
                 objectRetriever.searchObjectsIterativeByFetchAll(type, query, handler, options, subResult);
                 break;
+            case KEYSET_PAGING:
+                objectRetriever.searchObjectsIterativeByKeysetPaging(type, query, handler, options, subResult);
+                break;
+            case STREAMING:
+                objectRetriever.searchObjectsIterativeByStreaming(type, query, handler, options, subResult);
+                break;
             default:
                 throw new AssertionError("iterationMethod: " + iterationMethod);
         }
@@ -863,6 +1196,46 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         return !paging.hasOrdering() && !paging.hasGrouping() && paging.getOffset() == null;
     }
 
+    public static boolean isCustomPagingOkWithKeysetIteration(ObjectQuery query) {
+        if (query == null || query.getPaging() == null) {
+            return true;
+        }
+        ObjectPaging paging = query.getPaging();
+        return !paging.hasGrouping() && paging.getOffset() == null && !paging.hasCookie();
+    }
+
+    /**
+     * Keyset paging cannot continue after an object that has no value of an ordering item: NULL is not comparable
+     * to anything, and its position in the ordering differs among databases. So we require ordering items that
+     * are present in all objects, i.e. object name (enforced by the repository) or single-valued mandatory items.
+     */
+    public static boolean isOrderingOkWithKeysetIteration(Class<? extends ObjectType> type, ObjectQuery query,
+            PrismContext prismContext) {
+        if (query == null || query.getPaging() == null || !query.getPaging().hasOrdering()) {
+            return true;
+        }
+        PrismObjectDefinition<? extends ObjectType> objectDefinition =
+                prismContext.getSchemaRegistry().findObjectDefinitionByCompileTimeClass(type);
+        for (ObjectOrdering ordering : query.getPaging().getOrderingInstructions()) {
+            ItemPath path = ordering.getOrderBy();
+            if (path == null || path.isEmpty() || objectDefinition == null) {
+                return false;
+            }
+            if (ObjectType.F_NAME.equivalent(path)) {
+                continue;
+            }
+            for (int i = 0; i < path.size(); i++) {
+                ItemDefinition<?> definition = objectDefinition.findItemDefinition(path.allUpToIncluding(i));
+                if (definition == null || !definition.isMandatory() || !definition.isSingleValue()) {
+                    LOGGER.trace("Ordering item {} is not present in all objects of {}, keyset paging is not applicable",
+                            path, type.getSimpleName());
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     @Nullable
     private <T extends ObjectType> SearchResultMetadata searchObjectsIterativeBySingleTransaction(Class<T> type,
             ObjectQuery query, ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult subResult)
@@ -943,6 +1316,15 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 
         if (LOGGER.isTraceEnabled()) { LOGGER.trace("Advancing sequence {}", oid); }
 
+        // Values reserved by this node are assigned without touching the repository (and are not counted
+        // as repository operations by the performance monitor).
+        Long preallocatedValue = sequenceHelper.takePreallocatedValue(oid);
+        if (preallocatedValue != null) {
+            result.addReturn("preallocated", true);
+            result.recordSuccess();
+            return preallocatedValue;
+        }
+
         // TODO executeAttempts
         int attempt = 1;
 
@@ -962,6 +1344,27 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         }
     }
 
+    /**
+     * Returns values reserved by this node (but not assigned) to their sequences.
+     */
+    @PreDestroy
+    public void returnPreallocatedSequenceValues() {
+        Map<String, List<Long>> preallocatedValues = sequenceHelper.removePreallocatedValues();
+        if (preallocatedValues.isEmpty()) {
+            return;
+        }
+        OperationResult result = new OperationResult(RETURN_PREALLOCATED_SEQUENCE_VALUES);
+        for (Map.Entry<String, List<Long>> entry : preallocatedValues.entrySet()) {
+            LOGGER.debug("Returning {} preallocated value(s) to sequence {}", entry.getValue().size(), entry.getKey());
+            try {
+                returnUnusedValuesToSequence(entry.getKey(), entry.getValue(), result);
+            } catch (ObjectNotFoundException | SchemaException | RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't return preallocated values {} to sequence {}", e,
+                        entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
     @Override
     public void returnUnusedValuesToSequence(String oid, Collection<Long> unusedValues, OperationResult parentResult)
             throws ObjectNotFoundException, SchemaException {
@@ -1159,6 +1562,10 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
     public void postInit(OperationResult result) throws SchemaException {
         LOGGER.debug("Executing repository postInit method");
         systemConfigurationChangeDispatcher.dispatch(true, true, result);
+        extItemDictionary.preload();
+        if (getConfiguration().isFullObjectReencode()) {
+            fullObjectReencoder.startInBackground();
+        }
     }
 
     @Override
@@ -16,6 +16,7 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.SystemConfigurationChangeDispatcher;
 import com.evolveum.midpoint.repo.api.SystemConfigurationChangeListener;
+import com.evolveum.midpoint.repo.sql.query2.QueryShapeCache;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.RelationRegistry;
 import com.evolveum.midpoint.schema.SelectorOptions;
@@ -51,6 +52,7 @@ public class SystemConfigurationChangeDispatcherImpl implements SystemConfigurat
     @Autowired private RelationRegistry relationRegistry;
     @Autowired private MidpointConfiguration midpointConfiguration;
     @Autowired private CacheConfigurationManager cacheConfigurationManager;
+    @Autowired private QueryShapeCache queryShapeCache;
 
     private final Collection<SystemConfigurationChangeListener> listeners = new HashSet<>();
 
@@ -102,6 +104,8 @@ public class SystemConfigurationChangeDispatcherImpl implements SystemConfigurat
         applyOperationResultHandlingConfiguration(configuration);
         applyCachingConfiguration(configuration);
         applyRepositoryConfiguration(configuration);
+        // cached query interpretations were created under the previous configuration
+        queryShapeCache.clear();
 
         if (lastVersionApplied != null) {
             LOGGER.trace("System configuration version {} applied successfully", lastVersionApplied);
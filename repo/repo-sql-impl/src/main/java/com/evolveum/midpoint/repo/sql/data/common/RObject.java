@@ -53,6 +53,10 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
  */
 @NamedQueries({
         @NamedQuery(name = "get.focusPhoto", query = "select p.photo from RFocusPhoto p where p.ownerOid = :oid"),
+        @NamedQuery(name = "get.externalItems", query = "select i.ownerOid, i.itemName, i.fullItem from RObjectExternalItem i where i.ownerOid in (:oids)"),
+        @NamedQuery(name = "get.externalItemsByName", query = "select i.itemName, i.fullItem from RObjectExternalItem i where i.ownerOid = :oid and i.itemName in (:itemNames)"),
+        @NamedQuery(name = "delete.externalItems", query = "delete RObjectExternalItem i where i.ownerOid = :oid and i.itemName in (:itemNames)"),
+        @NamedQuery(name = "delete.allExternalItems", query = "delete RObjectExternalItem i where i.ownerOid = :oid"),
         @NamedQuery(name = "get.taskResult", query = "select t.fullResult from RTask t where t.oid = :oid"),
         @NamedQuery(name = "get.taskStatus", query = "select t.status from RTask t where t.oid = :oid"),
         @NamedQuery(name = "get.object", query = "select o.oid, o.fullObject, 0, 0, 0, 0, 0, 0 from RObject as o where o.oid=:oid"),
@@ -60,6 +64,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
         @NamedQuery(name = "searchShadowOwner.getOwner", query = "select o.oid, o.fullObject, 0, 0, 0, 0, 0, 0 from RFocus as o left join o.linkRef as ref where ref.targetOid = :oid"),
         @NamedQuery(name = "listAccountShadowOwner.getUser", query = "select u.oid, u.fullObject, 0, 0, 0, 0, 0, 0 from RUser as u left join u.linkRef as ref where ref.targetOid = :oid"),
         @NamedQuery(name = "getVersion", query = "select o.version from RObject as o where o.oid = :oid"),
+        @NamedQuery(name = "reencode.getFullObjects", query = "select o.oid, o.version, o.fullObject from RObject as o where o.oid > :oid order by o.oid"),
         @NamedQuery(name = "existOrgClosure", query = "select count(*) from ROrgClosure as o where o.ancestorOid = :ancestorOid and o.descendantOid = :descendantOid"),
         @NamedQuery(name = "sqlDeleteOrgClosure", query = "delete from ROrgClosure as o where o.descendantOid = :oid or o.ancestorOid = :oid"),
         @NamedQuery(name = "listResourceObjectShadows", query = "select s.oid, s.fullObject, 0, 0, 0, 0, 0, 0 from RShadow as s left join s.resourceRef as ref where ref.targetOid = :oid"),
@@ -75,6 +80,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
         @NamedQuery(name = "delete.lookupTableData", query = "delete RLookupTableRow r where r.ownerOid = :oid"),
         @NamedQuery(name = "delete.lookupTableDataRow", query = "delete RLookupTableRow r where r.ownerOid = :oid and r.id = :id"),
         @NamedQuery(name = "delete.lookupTableDataRowByKey", query = "delete RLookupTableRow r where r.ownerOid = :oid and r.key = :key"),
+        @NamedQuery(name = "get.assignmentLastId", query = "select max(a.id) from RAssignment a where a.ownerOid = :oid"),
+        @NamedQuery(name = "get.operationExecutionLastId", query = "select max(e.id) from ROperationExecution e where e.ownerOid = :oid"),
+        @NamedQuery(name = "get.triggerLastId", query = "select max(t.id) from RTrigger t where t.ownerOid = :oid"),
         @NamedQuery(name = "get.campaignCaseLastId", query = "select max(c.id) from RAccessCertificationCase c where c.ownerOid = :oid"),
         @NamedQuery(name = "delete.campaignCases", query = "delete RAccessCertificationCase c where c.ownerOid = :oid"),
         @NamedQuery(name = "delete.campaignCasesWorkItems", query = "delete RAccessCertificationWorkItem r where r.ownerOwnerOid = :oid"),
@@ -108,6 +116,8 @@ public abstract class RObject implements Metadata<RObjectReference<RFocus>>, Ent
     private int version;
     //full XML
     private byte[] fullObject;
+    //items stored outside of fullObject (transient, see ExternalItemHelper)
+    private Map<String, byte[]> externalItems;
     //org. closure table
     private Set<ROrgClosure> descendants;
     private Set<ROrgClosure> ancestors;
@@ -404,6 +414,20 @@ public abstract class RObject implements Metadata<RObjectReference<RFocus>>, Ent
         return trans;
     }
 
+    /**
+     * Serialized values of items stored outside of fullObject, keyed by item name.
+     * Null value means that the item is stored in fullObject (so any row stored before is obsolete).
+     * Set when fullObject is created; null if the object was not written by ObjectUpdater.
+     */
+    @Transient
+    public Map<String, byte[]> getExternalItems() {
+        return externalItems;
+    }
+
+    public void setExternalItems(Map<String, byte[]> externalItems) {
+        this.externalItems = externalItems;
+    }
+
     public String getLifecycleState() {
         return lifecycleState;
     }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.data.common;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.*;
+
+import com.evolveum.midpoint.repo.sql.data.common.id.RObjectExternalItemId;
+import com.evolveum.midpoint.repo.sql.helpers.modify.Ignore;
+import com.evolveum.midpoint.repo.sql.query2.definition.NotQueryable;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+
+/**
+ * Values of a heavyweight multivalued item (e.g. assignment, operationExecution) stored outside
+ * of m_object.fullObject. The fullObject contains only an "incomplete" marker for such item.
+ *
+ * The values are stored as a serialized object of the owner's type that contains only this item,
+ * in the same format as the fullObject itself.
+ *
+ * @see com.evolveum.midpoint.repo.sql.helpers.ExternalItemHelper
+ */
+@Ignore
+@IdClass(RObjectExternalItemId.class)
+@Entity
+@Table(name = "m_object_external_item")
+public class RObjectExternalItem implements Serializable {
+
+    private String ownerOid;
+    private String itemName;
+    private byte[] fullItem;
+
+    public RObjectExternalItem() {
+    }
+
+    public RObjectExternalItem(String ownerOid, String itemName, byte[] fullItem) {
+        this.ownerOid = ownerOid;
+        this.itemName = itemName;
+        this.fullItem = fullItem;
+    }
+
+    @Id
+    @Column(name = "owner_oid", length = RUtil.COLUMN_LENGTH_OID)
+    @NotQueryable
+    public String getOwnerOid() {
+        return ownerOid;
+    }
+
+    @Id
+    @Column(name = "itemName", length = RUtil.COLUMN_LENGTH_QNAME)
+    @NotQueryable
+    public String getItemName() {
+        return itemName;
+    }
+
+    @Lob
+    public byte[] getFullItem() {
+        return fullItem;
+    }
+
+    public void setOwnerOid(String ownerOid) {
+        this.ownerOid = ownerOid;
+    }
+
+    public void setItemName(String itemName) {
+        this.itemName = itemName;
+    }
+
+    public void setFullItem(byte[] fullItem) {
+        this.fullItem = fullItem;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RObjectExternalItem that = (RObjectExternalItem) o;
+        return Objects.equals(ownerOid, that.ownerOid) && Objects.equals(itemName, that.itemName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerOid, itemName);
+    }
+}
@@ -366,7 +366,7 @@ public class RAccessCertificationCase implements Container<RAccessCertificationC
         String serializedForm;
         try {
             serializedForm = context.prismContext
-                    .serializerFor(context.configuration.getFullObjectFormat())
+                    .serializerFor(context.configuration.getFullObjectTextFormat())
                     .serialize(cvalue, SchemaConstantsGenerated.C_VALUE);
         } catch (SchemaException e) {
             throw new IllegalStateException("Couldn't serialize certification case to string", e);
@@ -23,13 +23,21 @@ import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
- * TODO clean this up!
+ * Dictionary of extension items (m_ext_item table).
+ *
+ * Lookups go to an immutable snapshot of the items without any locking. The snapshot is loaded as a whole
+ * when needed for the first time (or preloaded at startup). Items that are not in the snapshot are fetched
+ * (or created) one by one, and a new snapshot containing them replaces the old one. These updates are serialized.
  *
  * @author mederly
  */
@@ -40,29 +48,43 @@ public class ExtItemDictionary {
     @Autowired private SqlRepositoryServiceImpl repositoryService;
     @Autowired private BaseHelper baseHelper;
 
-    private Map<Integer, RExtItem> itemsById;
-    private Map<RExtItem.Key, RExtItem> itemsByKey;
+    /** Current items. Null if not loaded yet. Updated only under the lock of this object. */
+    private volatile Snapshot snapshot;
+
+    /** How many times all items were fetched. */
+    private final AtomicInteger reloads = new AtomicInteger();
+
+    /** How many times an item was not found in the snapshot (and was fetched or created). */
+    private final AtomicInteger misses = new AtomicInteger();
 
     @PostConstruct
     public synchronized void initialize() {
-        itemsByKey = null;
-        itemsById = null;
+        snapshot = null;
     }
 
-    private boolean fetchItemsIfNeeded() {
-        if (itemsByKey != null) {
-            return false;
-        } else {
-            fetchItems();
-            return true;
-        }
+    /**
+     * Loads all items, so they need not be fetched when first used.
+     */
+    public void preload() {
+        getSnapshot();
     }
 
-    private void fetchItems() {
-        executeAttempts(RepositoryService.OP_FETCH_EXT_ITEMS, RExtItem.class, "fetch ext items", () -> fetchItemsAttempt());
+    @NotNull
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = executeAttempts(RepositoryService.OP_FETCH_EXT_ITEMS, "fetch ext items", this::fetchItemsAttempt);
+                reloads.incrementAndGet();
+            }
+            return snapshot;
+        }
     }
 
-    private void fetchItemsAttempt() {
+    private Snapshot fetchItemsAttempt() {
         Session session = null;
         try {
             session = baseHelper.beginReadOnlyTransaction();
@@ -72,65 +94,112 @@ public class ExtItemDictionary {
             List<RExtItem> items = session.createQuery(query).getResultList();
             LOGGER.debug("Fetched {} item definitions", items.size());
 
-            itemsById = new ConcurrentHashMap<>(items.size());
-            itemsByKey = new ConcurrentHashMap<>(items.size());
-
-            for (RExtItem item : items) {
-                itemsById.put(item.getId(), item);
-                itemsByKey.put(item.toKey(), item);
-            }
-
             session.getTransaction().commit();
+            return new Snapshot(items);
         } catch (RuntimeException ex) {
             LOGGER.debug("Exception fetch: {}", ex.getMessage());
             baseHelper.handleGeneralException(ex, session, null);
+            throw ex;       // should not occur, as the exception is re-thrown by the above method
         } finally {
             baseHelper.cleanupSessionAndResult(session, null);
         }
     }
 
     @NotNull
-    public synchronized RExtItem createOrFindItemDefinition(@NotNull ItemDefinition<?> definition, boolean throwExceptionAfterCreate) {
+    public RExtItem createOrFindItemDefinition(@NotNull ItemDefinition<?> definition, boolean throwExceptionAfterCreate) {
         return createOrFindItemByDefinitionInternal(definition, true, throwExceptionAfterCreate);
     }
 
     @NotNull
-    public synchronized RExtItem createOrFindItemDefinition(@NotNull ItemDefinition<?> definition) {
+    public RExtItem createOrFindItemDefinition(@NotNull ItemDefinition<?> definition) {
         return createOrFindItemByDefinitionInternal(definition, true, true);
     }
 
     @Nullable
-    public synchronized RExtItem findItemByDefinition(@NotNull ItemDefinition<?> definition) {
+    public RExtItem findItemByDefinition(@NotNull ItemDefinition<?> definition) {
         return createOrFindItemByDefinitionInternal(definition, false, true);
     }
 
-    @Contract("_, _, true -> !null")
+    @Contract("_, true, _ -> !null")
     private RExtItem createOrFindItemByDefinitionInternal(
             @NotNull ItemDefinition<?> definition, boolean create, boolean throwExceptionAfterCreate) {
 
-        boolean fetchedNow = fetchItemsIfNeeded();
         RExtItem.Key key = RExtItem.createKeyFromDefinition(definition);
+        RExtItem item = getSnapshot().itemsByKey.get(key);
+        if (item != null) {
+            return item;
+        }
 
-        RExtItem item = itemsByKey.get(key);
+        boolean created = false;
+        synchronized (this) {
+            // The item could be added by another thread in the meanwhile.
+            item = getSnapshot().itemsByKey.get(key);
+            if (item == null) {
+                misses.incrementAndGet();
+                LOGGER.debug("Ext item for {} not found, fetching it.", key);
+                item = executeAttempts(RepositoryService.OP_FETCH_EXT_ITEM, "fetch ext item",
+                        () -> fetchItemByKeyAttempt(key));
+                if (item == null && create) {
+                    LOGGER.debug("Ext item for {} not found even in the repository; creating it.", key);
+                    item = RExtItem.createFromDefinition(definition);
+                    addExtItemAttempt(item);
+                    created = true;
+                }
+                if (item != null) {
+                    snapshot = snapshot.with(item);
+                }
+            }
+        }
 
-        if (item == null && !fetchedNow) {
-            LOGGER.debug("Ext item for {} not found, fetching all items.", key);
-            fetchItems();
-            item = itemsByKey.get(key);
+        if (created && throwExceptionAfterCreate) {
+            throw new RestartOperationRequestedException("Restarting parent operation because an extension item was created");
         }
-        if (item == null && create) {
-            LOGGER.debug("Ext item for {} not found even in current items; creating it.", key);
+        return item;
+    }
 
-            item = RExtItem.createFromDefinition(definition);
+    private RExtItem fetchItemByKeyAttempt(RExtItem.Key key) {
+        Session session = null;
+        try {
+            session = baseHelper.beginReadOnlyTransaction();
 
-            addExtItemAttempt(item);
+            CriteriaBuilder cb = session.getCriteriaBuilder();
+            CriteriaQuery<RExtItem> query = cb.createQuery(RExtItem.class);
+            Root<RExtItem> root = query.from(RExtItem.class);
+            query.select(root).where(
+                    equalOrNull(cb, root.get("name"), key.name),
+                    equalOrNull(cb, root.get("type"), key.type),
+                    equalOrNull(cb, root.get("kind"), key.kind));
+            List<RExtItem> items = session.createQuery(query).getResultList();
 
-            if (throwExceptionAfterCreate) {
-                throw new RestartOperationRequestedException("Restarting parent operation because an extension item was created");
-            }
+            session.getTransaction().commit();
+            return items.isEmpty() ? null : items.get(0);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Exception fetch: {}", ex.getMessage());
+            baseHelper.handleGeneralException(ex, session, null);
+            throw ex;       // should not occur, as the exception is re-thrown by the above method
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
         }
+    }
 
-        return item;
+    private RExtItem fetchItemByIdAttempt(Integer id) {
+        Session session = null;
+        try {
+            session = baseHelper.beginReadOnlyTransaction();
+            RExtItem item = session.get(RExtItem.class, id);
+            session.getTransaction().commit();
+            return item;
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Exception fetch: {}", ex.getMessage());
+            baseHelper.handleGeneralException(ex, session, null);
+            throw ex;       // should not occur, as the exception is re-thrown by the above method
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
+        }
+    }
+
+    private Predicate equalOrNull(CriteriaBuilder cb, Path<Object> path, Object value) {
+        return value != null ? cb.equal(path, value) : cb.isNull(path);
     }
 
     private void addExtItemAttempt(RExtItem item) {
@@ -146,15 +215,14 @@ public class ExtItemDictionary {
         }
     }
 
-    private void executeAttempts(String operationName, Class<?> type, String operationVerb, Runnable runnable) {
+    private <T> T executeAttempts(String operationName, String operationVerb, Supplier<T> supplier) {
         SqlPerformanceMonitorImpl pm = repositoryService.getPerformanceMonitor();
-        long opHandle = pm.registerOperationStart(operationName, type);
+        long opHandle = pm.registerOperationStart(operationName, RExtItem.class);
         int attempt = 1;
         try {
             while (true) {
                 try {
-                    runnable.run();
-                    break;
+                    return supplier.get();
                 } catch (RuntimeException ex) {
                     attempt = baseHelper.logOperationAttempt(null, operationVerb, attempt, ex, null);
                     pm.registerOperationNewAttempt(opHandle, attempt);
@@ -165,13 +233,58 @@ public class ExtItemDictionary {
         }
     }
 
-    public synchronized RExtItem getItemById(Integer extItemId) {
-        boolean fresh = fetchItemsIfNeeded();
-        RExtItem extItem = itemsById.get(extItemId);
-        if (extItem != null || fresh) {
+    public RExtItem getItemById(Integer extItemId) {
+        RExtItem extItem = getSnapshot().itemsById.get(extItemId);
+        if (extItem != null) {
+            return extItem;
+        }
+        synchronized (this) {
+            extItem = getSnapshot().itemsById.get(extItemId);
+            if (extItem == null) {
+                misses.incrementAndGet();
+                LOGGER.debug("Ext item with ID {} not found, fetching it.", extItemId);
+                extItem = executeAttempts(RepositoryService.OP_FETCH_EXT_ITEM, "fetch ext item",
+                        () -> fetchItemByIdAttempt(extItemId));
+                if (extItem != null) {
+                    snapshot = snapshot.with(extItem);
+                }
+            }
             return extItem;
         }
-        fetchItems();
-        return itemsById.get(extItemId);
+    }
+
+    public int getReloads() {
+        return reloads.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Immutable set of items.
+     */
+    private static class Snapshot {
+
+        @NotNull private final Map<Integer, RExtItem> itemsById;
+        @NotNull private final Map<RExtItem.Key, RExtItem> itemsByKey;
+
+        private Snapshot(Collection<RExtItem> items) {
+            Map<Integer, RExtItem> byId = new HashMap<>(items.size());
+            Map<RExtItem.Key, RExtItem> byKey = new HashMap<>(items.size());
+            for (RExtItem item : items) {
+                byId.put(item.getId(), item);
+                byKey.put(item.toKey(), item);
+            }
+            itemsById = Collections.unmodifiableMap(byId);
+            itemsByKey = Collections.unmodifiableMap(byKey);
+        }
+
+        private Snapshot with(RExtItem item) {
+            List<RExtItem> items = new ArrayList<>(itemsById.size() + 1);
+            items.addAll(itemsById.values());
+            items.add(item);
+            return new Snapshot(items);
+        }
     }
 }
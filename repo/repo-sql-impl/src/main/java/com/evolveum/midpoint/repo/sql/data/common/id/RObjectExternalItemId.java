@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.data.common.id;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+public class RObjectExternalItemId implements Serializable {
+
+    private String ownerOid;
+    private String itemName;
+
+    public String getOwnerOid() {
+        return ownerOid;
+    }
+
+    public void setOwnerOid(String ownerOid) {
+        this.ownerOid = ownerOid;
+    }
+
+    public String getItemName() {
+        return itemName;
+    }
+
+    public void setItemName(String itemName) {
+        this.itemName = itemName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RObjectExternalItemId that = (RObjectExternalItemId) o;
+        return Objects.equals(ownerOid, that.ownerOid) && Objects.equals(itemName, that.itemName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerOid, itemName);
+    }
+
+    @Override
+    public String toString() {
+        return "RObjectExternalItemId{ownerOid='" + ownerOid + "', itemName='" + itemName + "'}";
+    }
+}
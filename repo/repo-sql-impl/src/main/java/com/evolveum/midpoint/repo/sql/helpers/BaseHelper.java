@@ -8,6 +8,7 @@
 package com.evolveum.midpoint.repo.sql.helpers;
 
 import com.evolveum.midpoint.repo.sql.*;
+import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ExceptionUtil;
@@ -103,6 +104,10 @@ public class BaseHelper {
         return repositoryFactory.getSqlConfiguration();
     }
 
+    public SqlPerformanceMonitorImpl getPerformanceMonitor() {
+        return repositoryFactory.getPerformanceMonitor();
+    }
+
     void rollbackTransaction(Session session, Throwable ex, OperationResult result, boolean fatal) {
         String message = ex != null ? ex.getMessage() : "null";
         rollbackTransaction(session, ex, message, result, fatal);
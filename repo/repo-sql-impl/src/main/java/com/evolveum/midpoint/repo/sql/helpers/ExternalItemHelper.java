@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.collections4.ListUtils;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.prism.Item;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.xnode.*;
+import com.evolveum.midpoint.repo.sql.data.common.RObjectExternalItem;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AssignmentHolderType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Stores heavyweight multivalued items (assignments, operation executions, triggers) outside of fullObject
+ * if they have more values than {@link com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration#getExternalItemValuesThreshold()}.
+ *
+ * Such items are replaced by "incomplete" markers in fullObject, so they are not parsed at all
+ * when the object is read with retrieve=EXCLUDE option for them. Otherwise they are loaded
+ * from m_object_external_item (see {@link RObjectExternalItem}) and put back into the object.
+ *
+ * Unlike focus photos or lookup table rows this is fully transparent to the clients: they get the same objects
+ * as before, only without the excluded items.
+ *
+ * Modifications that touch only externally stored items are applied without parsing and re-serializing
+ * the whole object (only fullObject XNode is patched).
+ */
+@Component
+public class ExternalItemHelper {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ExternalItemHelper.class);
+
+    /**
+     * Set on objects read from the repository that have at least one item stored externally,
+     * so we know whether old rows have to be deleted when the object is written.
+     */
+    private static final String KEY_HAS_EXTERNAL_ITEMS = ExternalItemHelper.class.getName() + ".hasExternalItems";
+
+    private static final QName KEY_VERSION = new QName("version");
+
+    private static final List<ItemName> OBJECT_ITEMS = Arrays.asList(
+            ObjectType.F_OPERATION_EXECUTION, ObjectType.F_TRIGGER);
+
+    private static final List<ItemName> ASSIGNMENT_HOLDER_ITEMS = Arrays.asList(
+            ObjectType.F_OPERATION_EXECUTION, ObjectType.F_TRIGGER, AssignmentHolderType.F_ASSIGNMENT);
+
+    @Autowired private BaseHelper baseHelper;
+    @Autowired private PrismContext prismContext;
+
+    /**
+     * Lazily loaded external items for a page of objects being read, so that each page costs at most one query.
+     * Nothing is loaded if no object in the page has any externally stored item.
+     */
+    public static class Prefetch {
+
+        private final Collection<String> oids;
+        private Map<String, Map<String, byte[]>> loaded;
+
+        public Prefetch(Collection<String> oids) {
+            this.oids = oids;
+        }
+    }
+
+    private List<ItemName> getItems(Class<?> type) {
+        if (type == null) {
+            return Collections.emptyList();
+        } else if (AssignmentHolderType.class.isAssignableFrom(type)) {
+            return ASSIGNMENT_HOLDER_ITEMS;
+        } else {
+            return OBJECT_ITEMS;
+        }
+    }
+
+    static boolean hasExternalItems(PrismObject<?> object) {
+        return object != null && Boolean.TRUE.equals(object.getUserData(KEY_HAS_EXTERNAL_ITEMS));
+    }
+
+    /**
+     * Returns names of externally storable items the modifications are confined to,
+     * or null if any of the modifications touches some other item.
+     */
+    @Nullable
+    Set<ItemName> getModifiedItems(Class<?> type, Collection<? extends ItemDelta<?, ?>> modifications) {
+        List<ItemName> items = getItems(type);
+        Set<ItemName> rv = new HashSet<>();
+        for (ItemDelta<?, ?> modification : modifications) {
+            ItemPath path = modification.getPath();
+            ItemName first = path.isEmpty() ? null : path.firstToNameOrNull();
+            ItemName matching = first != null ?
+                    items.stream().filter(item -> QNameUtil.match(item, first)).findFirst().orElse(null) : null;
+            if (matching == null) {
+                return null;
+            }
+            rv.add(matching);
+        }
+        return rv;
+    }
+
+    /**
+     * Moves items with too many values from the object XNode to separate root XNodes, leaving incomplete markers
+     * in their place. Items that are incomplete in the object itself (i.e. their values are not known) are left untouched.
+     *
+     * @return Item name to XNode to be stored separately; null XNode means that the item is stored in fullObject
+     * (so any previously stored row for it is obsolete).
+     */
+    @NotNull
+    <T extends ObjectType> Map<String, RootXNode> extractExternalItems(PrismObject<T> object, RootXNode xnode) {
+        Map<String, RootXNode> rv = new LinkedHashMap<>();
+        if (!(xnode.getSubnode() instanceof MapXNode)) {
+            return rv;
+        }
+        MapXNode objectMap = (MapXNode) xnode.getSubnode();
+        int threshold = baseHelper.getConfiguration().getExternalItemValuesThreshold();
+        XNodeFactory factory = prismContext.xnodeFactory();
+        XNodeMutator mutator = prismContext.xnodeMutator();
+        for (ItemName itemName : getItems(object.getCompileTimeClass())) {
+            Item<?, ?> item = object.findItem(itemName);
+            if (item != null && item.isIncomplete()) {
+                continue;
+            }
+            XNode itemNode = objectMap.get(itemName);
+            if (threshold > 0 && item != null && item.size() > threshold && itemNode != null) {
+                MapXNode itemMap = factory.map(itemName, itemNode);
+                mutator.setXNodeType(itemMap, objectMap.getTypeQName(), objectMap.isExplicitTypeDeclaration());
+                rv.put(itemName.getLocalPart(), factory.root(xnode.getRootElementName(), itemMap));
+                mutator.putToMapXNode(objectMap, itemName, factory.incompleteMarker());
+                LOGGER.trace("Item {} of {} ({} values) will be stored externally", itemName, object, item.size());
+            } else {
+                rv.put(itemName.getLocalPart(), null);
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Stores items prepared by {@link #extractExternalItems(PrismObject, RootXNode)}.
+     *
+     * @param deleteExisting True if the object can have some rows stored already.
+     */
+    void storeExternalItems(Session session, String ownerOid, Map<String, byte[]> externalItems, boolean deleteExisting) {
+        if (externalItems == null || externalItems.isEmpty()) {
+            return;
+        }
+        if (deleteExisting) {
+            Query<?> query = session.getNamedQuery("delete.externalItems");
+            query.setParameter("oid", ownerOid);
+            query.setParameterList("itemNames", externalItems.keySet());
+            query.executeUpdate();
+        }
+        for (Map.Entry<String, byte[]> entry : externalItems.entrySet()) {
+            if (entry.getValue() != null) {
+                session.save(new RObjectExternalItem(ownerOid, entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Loads given externally stored items of an object, without loading the object itself.
+     *
+     * @return An object containing only the items (and OID), or null if some of them is not stored externally.
+     */
+    @Nullable
+    <T extends ObjectType> PrismObject<T> loadExternalItemsOnly(Session session, String oid, Collection<ItemName> itemNames)
+            throws SchemaException {
+        Query<?> query = session.getNamedQuery("get.externalItemsByName");
+        query.setParameter("oid", oid);
+        query.setParameterList("itemNames", itemNames.stream().map(ItemName::getLocalPart).collect(Collectors.toList()));
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = (List<Object[]>) query.list();
+        Map<String, byte[]> stored = new HashMap<>();
+        for (Object[] row : rows) {
+            stored.put((String) row[0], (byte[]) row[1]);
+        }
+        PrismObject<T> rv = null;
+        for (ItemName itemName : itemNames) {
+            byte[] fullItem = stored.get(itemName.getLocalPart());
+            if (fullItem == null) {
+                return null;
+            }
+            PrismObject<T> holder = RUtil.parseFullObject(fullItem, prismContext,
+                    prismContext.createParsingContextForCompatibilityMode());
+            Item<?, ?> item = holder.findItem(itemName);
+            if (item == null) {
+                return null;
+            } else if (rv == null) {
+                rv = holder;
+            } else {
+                holder.getValue().remove(item);
+                rv.getValue().addReplaceExisting(item);
+            }
+        }
+        if (rv != null) {
+            rv.setOid(oid);
+        }
+        return rv;
+    }
+
+    /**
+     * Checks whether fullObject XNode can be patched by {@link #patchFullObject(RootXNode, PrismObject, RootXNode, Collection)}.
+     */
+    boolean isPatchable(RootXNode fullObjectXNode) {
+        return fullObjectXNode.getSubnode() instanceof MapXNode
+                && ((MapXNode) fullObjectXNode.getSubnode()).get(KEY_VERSION) instanceof PrimitiveXNode;
+    }
+
+    /**
+     * Replaces given items in the XNode form of fullObject by their new content (or incomplete markers,
+     * if they are still to be stored externally) and sets the object version there.
+     * The rest of fullObject is not touched, so it need not be parsed.
+     *
+     * @param modifiedItems Object containing only the modified items, with the new version set.
+     * @return The same as {@link #extractExternalItems(PrismObject, RootXNode)}, only for the modified items.
+     */
+    @NotNull
+    <T extends ObjectType> Map<String, RootXNode> patchFullObject(RootXNode fullObjectXNode, PrismObject<T> modifiedItems,
+            RootXNode modifiedItemsXNode, Collection<ItemName> itemNames) {
+        Map<String, RootXNode> extracted = extractExternalItems(modifiedItems, modifiedItemsXNode);
+        MapXNode objectMap = (MapXNode) fullObjectXNode.getSubnode();
+        MapXNode modifiedMap = (MapXNode) modifiedItemsXNode.getSubnode();
+        XNodeMutator mutator = prismContext.xnodeMutator();
+        Map<String, RootXNode> rv = new LinkedHashMap<>();
+        for (ItemName itemName : itemNames) {
+            XNode itemNode = modifiedMap != null ? modifiedMap.get(itemName) : null;
+            if (itemNode != null) {
+                mutator.putToMapXNode(objectMap, itemName, itemNode);
+            } else {
+                mutator.removeFromMapXNode(objectMap, itemName);
+            }
+            rv.put(itemName.getLocalPart(), extracted.get(itemName.getLocalPart()));
+        }
+        //noinspection unchecked
+        mutator.setPrimitiveXNodeValue((PrimitiveXNode<String>) objectMap.get(KEY_VERSION), modifiedItems.getVersion(),
+                DOMUtil.XSD_STRING);
+        return rv;
+    }
+
+    void deleteExternalItems(Session session, String ownerOid) {
+        Query<?> query = session.getNamedQuery("delete.allExternalItems");
+        query.setParameter("oid", ownerOid);
+        query.executeUpdate();
+    }
+
+    /**
+     * Puts externally stored items back into the object (unless they are excluded by the options).
+     * Excluded items stay empty and incomplete. Has to be called for any object parsed from fullObject.
+     */
+    public <T extends ObjectType> void loadExternalItems(PrismObject<T> object, Collection<SelectorOptions<GetOperationOptions>> options,
+            @Nullable Prefetch prefetch, Session session) throws SchemaException {
+        List<ItemName> toLoad = new ArrayList<>();
+        boolean hasExternalItems = false;
+        for (ItemName itemName : getItems(object.getCompileTimeClass())) {
+            Item<?, ?> item = object.findItem(itemName);
+            if (item != null && item.isIncomplete() && item.isEmpty()) {
+                hasExternalItems = true;
+                if (SelectorOptions.hasToLoadPath(itemName, options)) {
+                    toLoad.add(itemName);
+                }
+            }
+        }
+        if (!hasExternalItems) {
+            return;
+        }
+        object.setUserData(KEY_HAS_EXTERNAL_ITEMS, true);
+        if (toLoad.isEmpty()) {
+            LOGGER.trace("Not loading externally stored items of {} as they are excluded by options", object);
+            return;
+        }
+
+        Map<String, byte[]> stored = getStoredItems(object.getOid(), prefetch, session);
+        for (ItemName itemName : toLoad) {
+            byte[] fullItem = stored.get(itemName.getLocalPart());
+            if (fullItem == null) {
+                LOGGER.warn("Values of externally stored item {} of {} were not found, leaving it incomplete", itemName, object);
+                continue;
+            }
+            PrismObject<T> holder = RUtil.parseFullObject(fullItem, prismContext,
+                    prismContext.createParsingContextForCompatibilityMode());
+            Item<?, ?> item = holder.findItem(itemName);
+            if (item == null) {
+                LOGGER.warn("No values of externally stored item {} of {} were parsed, leaving it incomplete", itemName, object);
+                continue;
+            }
+            holder.getValue().remove(item);
+            object.getValue().addReplaceExisting(item);
+        }
+    }
+
+    private Map<String, byte[]> getStoredItems(String oid, Prefetch prefetch, Session session) {
+        if (prefetch != null && prefetch.oids.contains(oid)) {
+            if (prefetch.loaded == null) {
+                prefetch.loaded = loadStoredItems(prefetch.oids, session);
+            }
+            return prefetch.loaded.getOrDefault(oid, Collections.emptyMap());
+        } else {
+            return loadStoredItems(Collections.singletonList(oid), session)
+                    .getOrDefault(oid, Collections.emptyMap());
+        }
+    }
+
+    private Map<String, Map<String, byte[]>> loadStoredItems(Collection<String> oids, Session session) {
+        Map<String, Map<String, byte[]>> rv = new HashMap<>();
+        for (List<String> chunk : ListUtils.partition(new ArrayList<>(oids), ObjectRetriever.MAX_OIDS_IN_QUERY)) {
+            Query<?> query = session.getNamedQuery("get.externalItems");
+            query.setParameterList("oids", chunk);
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = (List<Object[]>) query.list();
+            for (Object[] row : rows) {
+                rv.computeIfAbsent((String) row[0], k -> new HashMap<>())
+                        .put((String) row[1], (byte[]) row[2]);
+            }
+        }
+        LOGGER.trace("Loaded externally stored items for {} of {} object(s)", rv.size(), oids.size());
+        return rv;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import java.util.List;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.sql.util.BinaryFullObjectCodec;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Converts fullObject values that are not in the configured format (binary vs. text) to that format.
+ * Objects are processed in batches ordered by OID; each batch is updated in its own transaction.
+ *
+ * The update is conditioned by object version, so objects modified concurrently are simply skipped:
+ * they have been written in the configured format by the modification itself.
+ */
+@Component
+public class FullObjectReencoder {
+
+    private static final Trace LOGGER = TraceManager.getTrace(FullObjectReencoder.class);
+
+    private static final int BATCH_SIZE = 100;
+    private static final long SHUTDOWN_WAIT = 10000L;
+
+    @Autowired private BaseHelper baseHelper;
+    @Autowired private ObjectUpdater objectUpdater;
+    @Autowired private PrismContext prismContext;
+
+    private Thread thread;
+    private volatile boolean stopRequested;
+
+    public synchronized void startInBackground() {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        stopRequested = false;
+        thread = new Thread(() -> {
+            try {
+                reencodeAll();
+            } catch (Throwable t) {
+                LOGGER.error("Unexpected exception while re-encoding full objects: {}", t.getMessage(), t);
+            }
+        }, "midpoint-full-object-reencoder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        stopRequested = true;
+        if (thread != null) {
+            try {
+                thread.join(SHUTDOWN_WAIT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Re-encodes all objects that are not stored in the configured format.
+     *
+     * @return number of objects re-encoded
+     */
+    public int reencodeAll() {
+        boolean toBinary = baseHelper.getConfiguration().isFullObjectFormatBinary();
+        LOGGER.info("Starting re-encoding of full objects to {} format", toBinary ? "binary" : "text");
+        long start = System.currentTimeMillis();
+        String lastOid = "";
+        int examined = 0;
+        int reencoded = 0;
+        while (!stopRequested) {
+            Session session = baseHelper.beginTransaction();
+            try {
+                Query<?> query = session.getNamedQuery("reencode.getFullObjects");
+                query.setParameter("oid", lastOid);
+                query.setMaxResults(BATCH_SIZE);
+                @SuppressWarnings("unchecked")
+                List<Object[]> rows = (List<Object[]>) query.list();
+                if (rows.isEmpty()) {
+                    break;
+                }
+                for (Object[] row : rows) {
+                    String oid = (String) row[0];
+                    lastOid = oid;
+                    examined++;
+                    byte[] fullObject = (byte[]) row[2];
+                    if (fullObject != null && BinaryFullObjectCodec.isBinary(fullObject) != toBinary
+                            && reencode(session, oid, (Integer) row[1], fullObject, toBinary)) {
+                        reencoded++;
+                    }
+                }
+                session.getTransaction().commit();
+                LOGGER.debug("Re-encoded {} out of {} full object(s) examined so far", reencoded, examined);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Couldn't re-encode full objects after OID {}, stopping: {}", lastOid, ex.getMessage(), ex);
+                baseHelper.rollbackTransaction(session, ex, null, true);
+                break;
+            } finally {
+                baseHelper.cleanupSessionAndResult(session, null);
+            }
+        }
+        LOGGER.info("Re-encoding of full objects {}: {} object(s) re-encoded out of {} examined in {} ms",
+                stopRequested ? "stopped" : "finished", reencoded, examined, System.currentTimeMillis() - start);
+        return reencoded;
+    }
+
+    private boolean reencode(Session session, String oid, int version, byte[] fullObject, boolean toBinary) {
+        byte[] newFullObject;
+        try {
+            PrismObject<ObjectType> object = RUtil.parseFullObject(fullObject, prismContext,
+                    prismContext.createParsingContextForCompatibilityMode());
+            newFullObject = objectUpdater.createFullObject(object);
+        } catch (SchemaException | RuntimeException e) {
+            LOGGER.warn("Couldn't re-encode full object of {}, skipping it: {}", oid, e.getMessage(), e);
+            return false;
+        }
+        if (BinaryFullObjectCodec.isBinary(newFullObject) != toBinary) {
+            LOGGER.trace("Object {} cannot be stored in the configured format, skipping it", oid);
+            return false;
+        }
+        NativeQuery<?> update = session.createNativeQuery(
+                "update m_object set fullObject = :fullObject where oid = :oid and version = :version");
+        update.setParameter("fullObject", newFullObject);
+        update.setParameter("oid", oid);
+        update.setParameter("version", version);
+        return update.executeUpdate() > 0;
+    }
+}
@@ -98,6 +98,17 @@ public class ObjectDeltaUpdater {
             Collection<? extends ItemDelta<?, ?>> modifications,
             PrismObject<T> prismObject, RepoModifyOptions modifyOptions, Session session,
             ObjectUpdater.AttemptContext attemptContext) throws SchemaException {
+        return modifyObject(type, oid, modifications, prismObject, null, modifyOptions, session, attemptContext);
+    }
+
+    /**
+     * @param lastUsedContainerId Container ID used by the object but (maybe) not present in prismObject.
+     * Needed if prismObject contains only some of the items, see {@link ExternalItemHelper}.
+     */
+    <T extends ObjectType> RObject modifyObject(Class<T> type, String oid,
+            Collection<? extends ItemDelta<?, ?>> modifications,
+            PrismObject<T> prismObject, Long lastUsedContainerId, RepoModifyOptions modifyOptions, Session session,
+            ObjectUpdater.AttemptContext attemptContext) throws SchemaException {
 
         LOGGER.trace("Starting to build entity changes for {}, {}, \n{}", type, oid, DebugUtil.debugDumpLazily(modifications));
 
@@ -118,6 +129,9 @@ public class ObjectDeltaUpdater {
 
         PrismIdentifierGenerator<T> idGenerator = new PrismIdentifierGenerator<>(PrismIdentifierGenerator.Operation.MODIFY);
         idGenerator.collectUsedIds(prismObject);
+        if (lastUsedContainerId != null) {
+            idGenerator.collectUsedId(lastUsedContainerId);
+        }
 
         Context ctx = new Context(modifyOptions, idGenerator, session, attemptContext);
 
@@ -28,6 +28,7 @@ import com.evolveum.midpoint.common.crypto.CryptoUtil;
 import com.evolveum.midpoint.prism.*;
 import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.ObjectOrdering;
 import com.evolveum.midpoint.prism.query.ObjectPaging;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.RepositoryObjectDiagnosticData;
@@ -40,8 +41,11 @@ import com.evolveum.midpoint.repo.sql.data.common.any.*;
 import com.evolveum.midpoint.repo.sql.data.common.dictionary.ExtItemDictionary;
 import com.evolveum.midpoint.repo.sql.data.common.type.RObjectExtensionType;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
+import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sql.query.RQuery;
+import com.evolveum.midpoint.repo.sql.query2.KeysetPosition;
 import com.evolveum.midpoint.repo.sql.query2.QueryEngine2;
+import com.evolveum.midpoint.repo.sql.query2.QueryShapeCache;
 import com.evolveum.midpoint.repo.sql.query2.RQueryImpl;
 import com.evolveum.midpoint.repo.sql.query2.hqm.QueryParameterValue;
 import com.evolveum.midpoint.repo.sql.util.*;
@@ -73,18 +77,37 @@ public class ObjectRetriever {
 
     public static final String NULL_OID_MARKER = "###null-oid###";     // brutal hack (TODO)
 
+    /**
+     * How many objects are read through a cursor before the session is cleared. Objects read are not needed
+     * after being passed to the handler, so there is no point in keeping them in the session.
+     */
+    private static final int SESSION_CLEAR_INTERVAL = 100;
+
+    /**
+     * Maximal number of OIDs in a single "oid in (...)" clause. Oracle has a limit of 1000 expressions in a list;
+     * lower values keep the statements reasonably small for all the databases.
+     */
+    static final int MAX_OIDS_IN_QUERY = 100;
+
     @Autowired private LookupTableHelper lookupTableHelper;
     @Autowired private CertificationCaseHelper caseHelper;
     @Autowired private CaseManagementHelper caseManagementHelper;
+    @Autowired private ExternalItemHelper externalItemHelper;
     @Autowired private BaseHelper baseHelper;
     @Autowired private NameResolutionHelper nameResolutionHelper;
     @Autowired private PrismContext prismContext;
     @Autowired private RelationRegistry relationRegistry;
     @Autowired private ExtItemDictionary extItemDictionary;
+    @Autowired private QueryShapeCache queryShapeCache;
     @Autowired
     @Qualifier("repositoryService")
     private RepositoryService repositoryService;
 
+    private QueryEngine2 createQueryEngine() {
+        return new QueryEngine2(getConfiguration(), extItemDictionary, prismContext, relationRegistry,
+                baseHelper.getPerformanceMonitor(), queryShapeCache);
+    }
+
     public <T extends ObjectType> PrismObject<T> getObjectAttempt(Class<T> type, String oid,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
             throws ObjectNotFoundException, SchemaException {
@@ -119,52 +142,70 @@ public class ObjectRetriever {
         return objectType;
     }
 
-    public <T extends ObjectType> PrismObject<T> getObjectInternal(Session session, Class<T> type, String oid,
-            Collection<SelectorOptions<GetOperationOptions>> options,
-            boolean lockForUpdate, OperationResult operationResult)
-            throws ObjectNotFoundException, SchemaException, DtoTranslationException {
+    @NotNull
+    public <T extends ObjectType> SearchResultList<PrismObject<T>> getObjectsAttempt(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) throws SchemaException {
+        LOGGER_PERFORMANCE.debug("> get objects {}, {} oids", type.getSimpleName(), oids.size());
+        List<String> distinctOids = new ArrayList<>(new LinkedHashSet<>(oids));
+        Map<String, PrismObject<T>> objectsByOid = new HashMap<>();
 
-        boolean lockedForUpdateViaHibernate = false;
-        boolean lockedForUpdateViaSql = false;
+        Session session = null;
+        try {
+            session = baseHelper.beginReadOnlyTransaction();
 
-        LockOptions lockOptions = new LockOptions();
-        //todo fix lock for update!!!!!
-        if (lockForUpdate) {
-            if (getConfiguration().isLockForUpdateViaHibernate()) {
-                lockOptions.setLockMode(LockMode.PESSIMISTIC_WRITE);
-                lockedForUpdateViaHibernate = true;
-            } else if (getConfiguration().isLockForUpdateViaSql()) {
-                LOGGER.trace("Trying to lock object {} for update (via SQL)", oid);
-                long time = System.currentTimeMillis();
-                NativeQuery q = session.createNativeQuery("select oid from m_object where oid = ? for update");
-                q.setParameter(1, oid);
-                Object result = q.uniqueResult();
-                if (result == null) {
-                    return throwObjectNotFoundException(type, oid);
-                }
-                if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace("Locked via SQL (in {} ms)", System.currentTimeMillis() - time);
+            // objects of other types are filtered out here, so a stray OID does not fail the whole call
+            String hql = "select o.oid, o.fullObject, 0, 0, 0, 0, 0, 0 from " + ClassMapper.getHQLType(type)
+                    + " as o where o.oid in (:oids)";
+            for (int from = 0; from < distinctOids.size(); from += MAX_OIDS_IN_QUERY) {
+                List<String> chunk = distinctOids.subList(from, Math.min(from + MAX_OIDS_IN_QUERY, distinctOids.size()));
+                Query query = session.createQuery(hql);
+                query.setParameterList("oids", chunk);
+                query.setResultTransformer(GetObjectResult.RESULT_STYLE.getResultTransformer());
+
+                @SuppressWarnings({ "unchecked", "raw" })
+                List<GetObjectResult> queryResult = query.list();
+                LOGGER.trace("Found {} objects for {} oids, translating to JAXB.", queryResult.size(), chunk.size());
+                ExternalItemHelper.Prefetch prefetch = new ExternalItemHelper.Prefetch(new HashSet<>(chunk));
+                for (GetObjectResult fullObject : queryResult) {
+                    PrismObject<T> prismObject = updateLoadedObject(fullObject, type, fullObject.getOid(), options,
+                            null, prefetch, session, result);
+                    objectsByOid.put(prismObject.getOid(), prismObject);
                 }
-                lockedForUpdateViaSql = true;
             }
+
+            session.getTransaction().commit();
+        } catch (SchemaException ex) {
+            baseHelper.rollbackTransaction(session, ex, "Schema error while getting objects: " + ex.getMessage(),
+                    result, true);
+            throw ex;
+        } catch (RuntimeException ex) {
+            baseHelper.handleGeneralException(ex, session, result);
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, result);
         }
 
-        if (LOGGER.isTraceEnabled()) {
-            if (lockedForUpdateViaHibernate) {
-                LOGGER.trace("Getting object {} with locking for update (via hibernate)", oid);
-            } else if (lockedForUpdateViaSql) {
-                LOGGER.trace("Getting object {}, already locked for update (via SQL)", oid);
+        List<PrismObject<T>> list = new ArrayList<>(objectsByOid.size());
+        for (String oid : distinctOids) {
+            PrismObject<T> object = objectsByOid.get(oid);
+            if (object != null) {
+                list.add(object);
             } else {
-                LOGGER.trace("Getting object {} without locking for update", oid);
+                LOGGER.debug("Object {} was not found or it is not of type {}", oid, type.getSimpleName());
             }
         }
+        return new SearchResultList<>(list);
+    }
+
+    public <T extends ObjectType> PrismObject<T> getObjectInternal(Session session, Class<T> type, String oid,
+            Collection<SelectorOptions<GetOperationOptions>> options,
+            boolean lockForUpdate, OperationResult operationResult)
+            throws ObjectNotFoundException, SchemaException, DtoTranslationException {
 
         GetObjectResult fullObject = null;
         if (!lockForUpdate) {
             Query query = session.getNamedQuery("get.object");
             query.setParameter("oid", oid);
             query.setResultTransformer(GetObjectResult.RESULT_STYLE.getResultTransformer());
-            query.setLockOptions(lockOptions);
 
             fullObject = (GetObjectResult) query.uniqueResult();
         } else {
@@ -173,16 +214,7 @@ public class ObjectRetriever {
             // this just loads object to hibernate session, probably will be removed later. Merge after this get
             // will be faster. Read and use object only from fullObject column.
             // todo remove this later [lazyman]
-            Class clazz = ClassMapper.getHQLTypeClass(type);
-
-            CriteriaBuilder cb = session.getCriteriaBuilder();
-            CriteriaQuery cq = cb.createQuery(clazz);
-            cq.where(cb.equal(cq.from(clazz).get("oid"), oid));
-
-            Query query = session.createQuery(cq);
-            query.setLockOptions(lockOptions);
-
-            RObject obj = (RObject) query.uniqueResult();
+            RObject obj = getObjectEntityForUpdate(session, type, oid);
 
             if (obj != null) {
                 fullObject = new GetObjectResult(obj.getOid(), obj.getFullObject());
@@ -195,7 +227,7 @@ public class ObjectRetriever {
         }
 
         LOGGER.trace("Transforming data to JAXB type.");
-        PrismObject<T> prismObject = updateLoadedObject(fullObject, type, oid, options, null, session, operationResult);
+        PrismObject<T> prismObject = updateLoadedObject(fullObject, type, oid, options, null, null, session, operationResult);
         validateObjectType(prismObject, type);
 
         // this was implemented to allow report parsing errors as warnings to upper layers;
@@ -211,6 +243,47 @@ public class ObjectRetriever {
         return prismObject;
     }
 
+    /**
+     * Loads object entity, locking it for update (if configured so). The entity is loaded in order to make
+     * subsequent update faster; only its fullObject column should be used to get the object content.
+     *
+     * @return null if there's no such object of given type
+     */
+    <T extends ObjectType> RObject getObjectEntityForUpdate(Session session, Class<T> type, String oid)
+            throws ObjectNotFoundException {
+        LockOptions lockOptions = new LockOptions();
+        //todo fix lock for update!!!!!
+        if (getConfiguration().isLockForUpdateViaHibernate()) {
+            LOGGER.trace("Getting object {} with locking for update (via hibernate)", oid);
+            lockOptions.setLockMode(LockMode.PESSIMISTIC_WRITE);
+        } else if (getConfiguration().isLockForUpdateViaSql()) {
+            LOGGER.trace("Trying to lock object {} for update (via SQL)", oid);
+            long time = System.currentTimeMillis();
+            NativeQuery q = session.createNativeQuery("select oid from m_object where oid = ? for update");
+            q.setParameter(1, oid);
+            Object result = q.uniqueResult();
+            if (result == null) {
+                throwObjectNotFoundException(type, oid);
+            }
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Locked via SQL (in {} ms)", System.currentTimeMillis() - time);
+            }
+        } else {
+            LOGGER.trace("Getting object {} without locking for update", oid);
+        }
+
+        Class clazz = ClassMapper.getHQLTypeClass(type);
+
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery cq = cb.createQuery(clazz);
+        cq.where(cb.equal(cq.from(clazz).get("oid"), oid));
+
+        Query query = session.createQuery(cq);
+        query.setLockOptions(lockOptions);
+
+        return (RObject) query.uniqueResult();
+    }
+
     protected SqlRepositoryConfiguration getConfiguration() {
         return baseHelper.getConfiguration();
     }
@@ -244,7 +317,7 @@ public class ObjectRetriever {
             }
 
             GetObjectResult focus = focuses.get(0);
-            owner = updateLoadedObject(focus, (Class<F>) FocusType.class, null, options, null, session, result);
+            owner = updateLoadedObject(focus, (Class<F>) FocusType.class, null, options, null, null, session, result);
 
             session.getTransaction().commit();
 
@@ -281,7 +354,7 @@ public class ObjectRetriever {
             }
 
             GetObjectResult user = users.get(0);
-            userType = updateLoadedObject(user, UserType.class, null, null, null, session, result);
+            userType = updateLoadedObject(user, UserType.class, null, null, null, null, session, result);
 
             session.getTransaction().commit();
         } catch (SchemaException | RuntimeException ex) {
@@ -314,7 +387,7 @@ public class ObjectRetriever {
                 longCount = (Number) sqlQuery.uniqueResult();
             } else {
                 RQuery rQuery;
-                QueryEngine2 engine = new QueryEngine2(getConfiguration(), extItemDictionary, prismContext, relationRegistry);
+                QueryEngine2 engine = createQueryEngine();
                 rQuery = engine.interpret(query, type, options, true, session);
 
                 longCount = (Number) rQuery.uniqueResult();
@@ -363,7 +436,7 @@ public class ObjectRetriever {
         try {
             session = baseHelper.beginReadOnlyTransaction();
 
-            QueryEngine2 engine = new QueryEngine2(getConfiguration(), extItemDictionary, prismContext, relationRegistry);
+            QueryEngine2 engine = createQueryEngine();
             RQuery rQuery = engine.interpret(query, type, options, true, session);
             Number longCount = (Number) rQuery.uniqueResult();
             LOGGER.trace("Found {} objects.", longCount);
@@ -381,14 +454,20 @@ public class ObjectRetriever {
     @NotNull
     public <T extends ObjectType> SearchResultList<PrismObject<T>> searchObjectsAttempt(Class<T> type, ObjectQuery query,
             Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) throws SchemaException {
+        return searchObjectsAttempt(type, query, options, null, result);
+    }
+
+    private <T extends ObjectType> SearchResultList<PrismObject<T>> searchObjectsAttempt(Class<T> type, ObjectQuery query,
+            Collection<SelectorOptions<GetOperationOptions>> options, KeysetPosition keysetPosition, OperationResult result)
+            throws SchemaException {
         LOGGER_PERFORMANCE.debug("> search objects {}", type.getSimpleName());
         Session session = null;
         try {
             session = baseHelper.beginReadOnlyTransaction();
             RQuery rQuery;
 
-            QueryEngine2 engine = new QueryEngine2(getConfiguration(), extItemDictionary, prismContext, relationRegistry);
-            rQuery = engine.interpret(query, type, options, false, session);
+            QueryEngine2 engine = createQueryEngine();
+            rQuery = engine.interpret(query, type, options, false, keysetPosition, session);
 
             @SuppressWarnings({ "unchecked", "raw" })
             List<GetObjectResult> queryResult = rQuery.list();
@@ -412,12 +491,17 @@ public class ObjectRetriever {
             Session session, OperationResult result) throws SchemaException {
         List<PrismObject<T>> rv = new ArrayList<>();
         if (objects != null) {
+            Set<String> oids = new HashSet<>();
+            for (GetObjectResult object : objects) {
+                oids.add(object.getOid());
+            }
+            ExternalItemHelper.Prefetch prefetch = new ExternalItemHelper.Prefetch(oids);
             for (GetObjectResult object : objects) {
                 String oid = object.getOid();
                 Holder<PrismObject<T>> partialValueHolder = new Holder<>();
                 PrismObject<T> prismObject;
                 try {
-                    prismObject = updateLoadedObject(object, type, oid, options, partialValueHolder, session, result);
+                    prismObject = updateLoadedObject(object, type, oid, options, partialValueHolder, prefetch, session, result);
                 } catch (Throwable t) {
                     if (!partialValueHolder.isEmpty()) {
                         prismObject = partialValueHolder.getValue();
@@ -451,7 +535,7 @@ public class ObjectRetriever {
         try {
             session = baseHelper.beginReadOnlyTransaction();
 
-            QueryEngine2 engine = new QueryEngine2(getConfiguration(), extItemDictionary, prismContext, relationRegistry);
+            QueryEngine2 engine = createQueryEngine();
             RQuery rQuery = engine.interpret(query, type, options, false, session);
 
             if (cases) {
@@ -509,23 +593,23 @@ public class ObjectRetriever {
 
     /**
      * This method provides object parsing from String and validation.
+     *
+     * @param prefetch Allows loading externally stored items for the whole page of objects at once (optional).
      */
     private <T extends ObjectType> PrismObject<T> updateLoadedObject(GetObjectResult result, Class<T> type,
             String oid, Collection<SelectorOptions<GetOperationOptions>> options,
-            Holder<PrismObject<T>> partialValueHolder,
+            Holder<PrismObject<T>> partialValueHolder, ExternalItemHelper.Prefetch prefetch,
             Session session, OperationResult operationResult) throws SchemaException {
 
         GetOperationOptions rootOptions = SelectorOptions.findRootOptions(options);
         boolean raw = GetOperationOptions.isRaw(rootOptions);
 
         byte[] fullObject = result.getFullObject();
-        String serializedForm = RUtil.getSerializedFormFromBytes(fullObject);
         PrismObject<T> prismObject;
         try {
             // "Postel mode": be tolerant what you read. We need this to tolerate (custom) schema changes
             ParsingContext parsingContext = prismContext.createParsingContextForCompatibilityMode();
-            prismObject = prismContext.parserFor(serializedForm)
-                    .context(parsingContext).parse();
+            prismObject = RUtil.parseFullObject(fullObject, prismContext, parsingContext);
             if (parsingContext.hasWarnings()) {
                 LOGGER.warn("Object {} parsed with {} warnings", ObjectTypeUtil.toShortString(prismObject), parsingContext.getWarnings().size());
             }
@@ -533,10 +617,11 @@ public class ObjectRetriever {
             // This is a serious thing. We have corrupted XML in the repo. This may happen even
             // during system init. We want really loud and detailed error here.
             LOGGER.error("Couldn't parse object {} {}: {}: {}\n{}",
-                    type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(), serializedForm, e);
+                    type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(), getFullObjectForDiagnostics(fullObject), e);
             throw e;
         }
         attachDiagDataIfRequested(prismObject, fullObject, options);
+        externalItemHelper.loadExternalItems(prismObject, options, prefetch, session);
         if (prismObject.getCompileTimeClass() != null && FocusType.class.isAssignableFrom(prismObject.getCompileTimeClass())) {
             if (SelectorOptions.hasToLoadPath(FocusType.F_JPEG_PHOTO, options)) {
                 Query query = session.getNamedQuery("get.focusPhoto");
@@ -845,20 +930,25 @@ public class ObjectRetriever {
         try {
             session = baseHelper.beginReadOnlyTransaction();
             RQuery rQuery;
-            QueryEngine2 engine = new QueryEngine2(getConfiguration(), extItemDictionary, prismContext, relationRegistry);
+            QueryEngine2 engine = createQueryEngine();
             rQuery = engine.interpret(query, type, options, false, session);
+            rQuery.setFetchSize(getConfiguration().getIterativeSearchFetchSize());
 
             try (ScrollableResults results = rQuery.scroll(ScrollMode.FORWARD_ONLY)) {
                 Iterator<GetObjectResult> iterator = new ScrollableResultsIterator<>(results);
+                int rows = 0;
                 while (iterator.hasNext()) {
                     GetObjectResult object = iterator.next();
+                    if (++rows % SESSION_CLEAR_INTERVAL == 0) {
+                        session.clear();
+                    }
 
                     if (retrievedOids.contains(object.getOid())) {
                         continue;
                     }
 
                     // TODO treat exceptions encountered within the next call
-                    PrismObject<T> prismObject = updateLoadedObject(object, type, null, options, null, session, result);
+                    PrismObject<T> prismObject = updateLoadedObject(object, type, null, options, null, null, session, result);
 
                     /*
                      *  We DO NOT store OIDs directly into retrievedOids, because this would mean that any duplicated results
@@ -886,6 +976,103 @@ public class ObjectRetriever {
         }
     }
 
+    /**
+     * Streaming version of iterative search: objects are read using a single query through a server-side cursor
+     * (with JDBC fetch size tuned for the database), parsed and passed to the handler one by one, and the session
+     * is cleared regularly. So the memory consumption does not depend on the number of objects returned.
+     * <p>
+     * Objects are ordered by OID. If an attempt fails, the next one continues after the last object passed
+     * to the handler; so, unlike {@link #searchObjectsIterativeAttempt}, OIDs of the objects returned need not be kept.
+     * Custom ordering, grouping and offset are therefore not supported.
+     */
+    public <T extends ObjectType> void searchObjectsIterativeByStreaming(Class<T> type, ObjectQuery query,
+            ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) {
+        if (!SqlRepositoryServiceImpl.isCustomPagingOkWithPagedSeqIteration(query)) {
+            throw new IllegalArgumentException("Externally specified paging is not supported on streaming "
+                    + "iterative search. Query = " + query);
+        }
+        StreamingPosition position = new StreamingPosition(
+                query != null && query.getPaging() != null ? query.getPaging().getMaxSize() : null);
+
+        SqlPerformanceMonitorImpl pm = baseHelper.getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE, type);
+        int attempt = 1;
+        try {
+            while (true) {
+                try {
+                    searchObjectsIterativeByStreamingAttempt(type, query, handler, options, position, result);
+                    return;
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, "searching iterative (streaming)", attempt, ex, result);
+                    pm.registerOperationNewAttempt(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
+    private <T extends ObjectType> void searchObjectsIterativeByStreamingAttempt(Class<T> type, ObjectQuery query,
+            ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, StreamingPosition position,
+            OperationResult result) {
+        if (position.remaining != null && position.remaining <= 0) {
+            return;
+        }
+        ObjectQuery streamedQuery = query != null ? query.clone() : prismContext.queryFactory().createQuery();
+        ObjectPaging paging = prismContext.queryFactory().createPaging();
+        paging.setCookie(position.lastOid != null ? position.lastOid : NULL_OID_MARKER);
+        paging.setMaxSize(position.remaining);
+        streamedQuery.setPaging(paging);
+
+        Session session = null;
+        try {
+            session = baseHelper.beginReadOnlyTransaction();
+            QueryEngine2 engine = createQueryEngine();
+            RQuery rQuery = engine.interpret(streamedQuery, type, options, false, session);
+            rQuery.setFetchSize(getConfiguration().getIterativeSearchFetchSize());
+
+            try (ScrollableResults results = rQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+                Iterator<GetObjectResult> iterator = new ScrollableResultsIterator<>(results);
+                int rows = 0;
+                while (iterator.hasNext()) {
+                    GetObjectResult object = iterator.next();
+                    PrismObject<T> prismObject = updateLoadedObject(object, type, null, options, null, null, session, result);
+
+                    // Recorded before calling the handler, so the object is not processed again after a failure.
+                    position.lastOid = object.getOid();
+                    if (position.remaining != null) {
+                        position.remaining--;
+                    }
+                    if (!handler.handle(prismObject, result)) {
+                        position.remaining = 0;
+                        break;
+                    }
+                    if (++rows % SESSION_CLEAR_INTERVAL == 0) {
+                        session.clear();
+                    }
+                }
+            }
+
+            session.getTransaction().commit();
+        } catch (SchemaException | QueryException | RuntimeException ex) {
+            baseHelper.handleGeneralException(ex, session, result);
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, result);
+        }
+    }
+
+    /**
+     * Progress of streaming iterative search; it is kept across attempts.
+     */
+    private static class StreamingPosition {
+        private String lastOid;
+        private Integer remaining;
+
+        private StreamingPosition(Integer maxSize) {
+            this.remaining = maxSize;
+        }
+    }
+
     public <T extends ObjectType> void searchObjectsIterativeByPaging(Class<T> type, ObjectQuery query,
             ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
             throws SchemaException {
@@ -956,6 +1143,11 @@ public class ObjectRetriever {
      * Implementation is very simple - we fetch objects ordered by OID, and remember last OID fetched.
      * Obviously no object will be present in output more than once.
      * Objects that are not deleted will be there exactly once, provided their oid is not changed.
+     * <p>
+     * So this is in fact keyset paging by OID (the cookie is the last OID); therefore it is used instead of
+     * {@link #searchObjectsIterativeByKeysetPaging(Class, ObjectQuery, ResultHandler, Collection, OperationResult)}
+     * when there is no custom ordering. Like there, the duration of each page is recorded in the performance monitor
+     * under {@link RepositoryService#OP_SEARCH_OBJECTS_ITERATIVE_PAGE}.
      */
     public <T extends ObjectType> void searchObjectsIterativeByPagingStrictlySequential(
             Class<T> type, ObjectQuery query, ResultHandler<T> handler,
@@ -987,7 +1179,7 @@ public class ObjectRetriever {
                 paging.setCookie(lastOid != null ? lastOid : NULL_OID_MARKER);
                 paging.setMaxSize(Math.min(batchSize, defaultIfNull(maxSize, Integer.MAX_VALUE)));
 
-                List<PrismObject<T>> objects = repositoryService.searchObjects(type, pagedQuery, options, result);
+                List<PrismObject<T>> objects = searchObjectsSequentialPage(type, pagedQuery, options, result);
 
                 for (PrismObject<T> object : objects) {
                     lastOid = object.getOid();
@@ -1012,6 +1204,123 @@ public class ObjectRetriever {
         }
     }
 
+    private <T extends ObjectType> List<PrismObject<T>> searchObjectsSequentialPage(Class<T> type, ObjectQuery query,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) throws SchemaException {
+        SqlPerformanceMonitorImpl pm = baseHelper.getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE, type);
+        try {
+            return repositoryService.searchObjects(type, query, options, result);    // retried there if needed
+        } finally {
+            pm.registerOperationFinish(opHandle, 1);
+        }
+    }
+
+    /**
+     * Keyset ("seek") version of paged search.
+     * <p>
+     * Objects are ordered by the client-specified ordering (if any) and then by OID. Each page starts right after
+     * the last object of the previous page, so - unlike simple paging - fetching a page does not require the database
+     * to skip all the preceding rows. Guarantees are the same as for strictly sequential paging, provided that
+     * the values of ordering items are not changed during the processing.
+     * <p>
+     * Constraints:
+     * - Neither offset nor grouping is allowed.
+     * - Items used for ordering must be single-valued and present in all the objects (see
+     * {@link SqlRepositoryServiceImpl#isOrderingOkWithKeysetIteration(Class, ObjectQuery, PrismContext)}).
+     * Otherwise objects with no value could be skipped.
+     * <p>
+     * Each page is executed (and retried, if needed) separately, and its duration is recorded in the performance monitor
+     * under {@link RepositoryService#OP_SEARCH_OBJECTS_ITERATIVE_PAGE}.
+     */
+    public <T extends ObjectType> void searchObjectsIterativeByKeysetPaging(Class<T> type, ObjectQuery query,
+            ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
+            throws SchemaException {
+
+        try {
+            if (!SqlRepositoryServiceImpl.isCustomPagingOkWithKeysetIteration(query)) {
+                throw new IllegalArgumentException("Neither offset nor grouping is supported on keyset paging "
+                        + "iterative search. Query = " + query);
+            }
+            if (!SqlRepositoryServiceImpl.isOrderingOkWithKeysetIteration(type, query, prismContext)) {
+                throw new IllegalArgumentException("Keyset paging iterative search requires ordering items that are "
+                        + "present in all objects (name or mandatory single-valued items). Query = " + query);
+            }
+            ObjectQuery pagedQuery = query != null ? query.clone() : prismContext.queryFactory().createQuery();
+            ObjectPaging paging = pagedQuery.getPaging();
+            if (paging == null) {
+                paging = prismContext.queryFactory().createPaging();
+                pagedQuery.setPaging(paging);
+            }
+            Integer maxSize = paging.getMaxSize();
+            List<ItemPath> orderBy = paging.getOrderingInstructions().stream()
+                    .map(ObjectOrdering::getOrderBy)
+                    .collect(Collectors.toList());
+            final int batchSize = getConfiguration().getIterativeSearchByPagingBatchSize();
+
+            KeysetPosition position = KeysetPosition.start();
+            main:
+            for (; ; ) {
+                paging.setMaxSize(Math.min(batchSize, defaultIfNull(maxSize, Integer.MAX_VALUE)));
+
+                List<PrismObject<T>> objects = searchObjectsPage(type, pagedQuery, options, position, result);
+                if (!objects.isEmpty()) {
+                    // determined before the handler gets a chance to modify the object
+                    position = getKeysetPosition(objects.get(objects.size() - 1), orderBy);
+                }
+
+                for (PrismObject<T> object : objects) {
+                    if (!handler.handle(object, result)) {
+                        break main;
+                    }
+                }
+                if (objects.size() < paging.getMaxSize()) {
+                    break;
+                }
+                if (maxSize != null) {
+                    maxSize -= objects.size();
+                    if (maxSize <= 0) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            if (result.isUnknown()) {
+                result.computeStatus();
+            }
+            result.setSummarizeSuccesses(true);
+            result.summarize();
+        }
+    }
+
+    private <T extends ObjectType> List<PrismObject<T>> searchObjectsPage(Class<T> type, ObjectQuery query,
+            Collection<SelectorOptions<GetOperationOptions>> options, KeysetPosition position, OperationResult result)
+            throws SchemaException {
+        SqlPerformanceMonitorImpl pm = baseHelper.getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(RepositoryService.OP_SEARCH_OBJECTS_ITERATIVE_PAGE, type);
+        int attempt = 1;
+        try {
+            while (true) {
+                try {
+                    return searchObjectsAttempt(type, query, options, position, result);
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, "searching iterative page", attempt, ex, result);
+                    pm.registerOperationNewAttempt(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
+    private KeysetPosition getKeysetPosition(PrismObject<?> object, List<ItemPath> orderBy) {
+        List<Object> values = new ArrayList<>(orderBy.size());
+        for (ItemPath path : orderBy) {
+            PrismProperty<?> property = object.findProperty(path);
+            values.add(property != null ? property.getRealValue() : null);
+        }
+        return new KeysetPosition(values, object.getOid());
+    }
+
     public <T extends ObjectType> void searchObjectsIterativeByFetchAll(Class<T> type, ObjectQuery query,
             ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
             throws SchemaException {
@@ -1105,6 +1414,14 @@ public class ObjectRetriever {
         }
     }
 
+    private String getFullObjectForDiagnostics(byte[] fullObject) {
+        try {
+            return RUtil.getFullObjectText(fullObject, prismContext);
+        } catch (RuntimeException e) {
+            return "(" + getLength(fullObject) + " bytes of unreadable data: " + e.getMessage() + ")";
+        }
+    }
+
     void attachDiagDataIfRequested(PrismValue value, byte[] fullObject, Collection<SelectorOptions<GetOperationOptions>> options) {
         if (GetOperationOptions.isAttachDiagData(SelectorOptions.findRootOptions(options))) {
             value.setUserData(RepositoryService.KEY_DIAG_DATA, new RepositoryObjectDiagnosticData(getLength(fullObject)));
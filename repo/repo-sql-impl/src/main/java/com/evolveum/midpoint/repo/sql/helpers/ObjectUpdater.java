@@ -11,7 +11,10 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.PersistenceException;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -23,6 +26,7 @@ import com.evolveum.midpoint.prism.path.ItemName;
 import com.evolveum.midpoint.repo.sql.RestartOperationRequestedException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Session;
 import org.hibernate.exception.ConstraintViolationException;
@@ -32,6 +36,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import com.evolveum.midpoint.prism.delta.ContainerDelta;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ItemDeltaCollectionsUtil;
 import com.evolveum.midpoint.prism.delta.ObjectDelta;
@@ -39,12 +44,14 @@ import com.evolveum.midpoint.prism.delta.ReferenceDelta;
 import com.evolveum.midpoint.prism.equivalence.EquivalenceStrategy;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.util.CloneUtil;
+import com.evolveum.midpoint.prism.xnode.RootXNode;
 import com.evolveum.midpoint.repo.sql.SerializationRelatedException;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryServiceImpl;
 import com.evolveum.midpoint.repo.sql.data.RepositoryContext;
 import com.evolveum.midpoint.repo.sql.data.common.RObject;
 import com.evolveum.midpoint.repo.sql.data.common.dictionary.ExtItemDictionary;
+import com.evolveum.midpoint.repo.sql.util.BinaryFullObjectCodec;
 import com.evolveum.midpoint.repo.sql.util.ClassMapper;
 import com.evolveum.midpoint.repo.sql.util.DtoTranslationException;
 import com.evolveum.midpoint.repo.sql.util.IdGeneratorResult;
@@ -55,8 +62,10 @@ import com.evolveum.midpoint.schema.RelationRegistry;
 import com.evolveum.midpoint.schema.SchemaHelper;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ExceptionUtil;
+import com.evolveum.midpoint.schema.util.FullTextSearchConfigurationUtil;
 import com.evolveum.midpoint.schema.util.ObjectTypeUtil;
 import com.evolveum.midpoint.util.DebugUtil;
+import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
@@ -81,6 +90,7 @@ public class ObjectUpdater {
     @Autowired private ObjectRetriever objectRetriever;
     @Autowired private LookupTableHelper lookupTableHelper;
     @Autowired private CertificationCaseHelper caseHelper;
+    @Autowired private ExternalItemHelper externalItemHelper;
     @Autowired private OrgClosureManager closureManager;
     @Autowired private ObjectDeltaUpdater objectDeltaUpdater;
     @Autowired private PrismContext prismContext;
@@ -164,6 +174,119 @@ public class ObjectUpdater {
         return oid;
     }
 
+    /**
+     * Adds a batch of objects (non-overwrite mode) in a single transaction. As there is no flush between
+     * the objects, Hibernate sends the inserts in JDBC batches spanning multiple objects. Org closure
+     * is computed for all the orgs at once, after they are added.
+     *
+     * Any failure aborts the whole batch. The caller is responsible for finding out which object(s) are to blame,
+     * e.g. by adding them one by one.
+     *
+     * @return OIDs of the objects added, in the order of the input list
+     */
+    public List<String> addObjectsAttempt(List<? extends PrismObject<? extends ObjectType>> objects, OperationResult result)
+            throws ObjectAlreadyExistsException, SchemaException {
+
+        LOGGER_PERFORMANCE.debug("> add {} objects", objects.size());
+
+        List<String> originalOids = new ArrayList<>(objects.size());
+        for (PrismObject<? extends ObjectType> object : objects) {
+            originalOids.add(object.getOid());
+        }
+
+        List<String> oids = new ArrayList<>(objects.size());
+        Session session = null;
+        OrgClosureManager.Context closureContext = null;
+        try {
+            session = baseHelper.beginTransaction();
+            // larger than the default JDBC batch size, as rows for all the objects in the batch are flushed at once
+            session.setJdbcBatchSize(getConfiguration().getBulkOperationBatchSize());
+
+            checkOidsUniqueness(originalOids, session);
+
+            for (PrismObject<? extends ObjectType> object : objects) {
+                LOGGER.trace("Object\n{}", object.debugDumpLazily());
+                ObjectTypeUtil.normalizeAllRelations(object, relationRegistry);
+                if (closureContext == null) {
+                    // one context (and closure table lock) for the whole batch
+                    closureContext = closureManager.onBeginTransactionAdd(session, object, false);
+                    closureManager.deferUpdates(closureContext);
+                }
+                oids.add(persistNewObject(object, closureContext, session));
+            }
+            closureManager.applyDeferredUpdates(closureContext, session);
+            session.getTransaction().commit();
+
+            LOGGER.trace("Saved {} objects", oids.size());
+            for (int i = 0; i < objects.size(); i++) {
+                objects.get(i).setOid(oids.get(i));
+            }
+            return oids;
+        } catch (PersistenceException ex) {
+            restoreOids(objects, originalOids);
+            ConstraintViolationException constEx = findConstraintViolationException(ex);
+            if (constEx == null) {
+                baseHelper.handleGeneralException(ex, session, result);
+                throw new AssertionError("shouldn't be here");
+            }
+            handleConstraintViolationExceptionSpecialCases(constEx, session, new AttemptContext(), result);
+            baseHelper.rollbackTransaction(session, constEx, result, true);
+            LOGGER.debug("Constraint violation occurred in a batch of {} objects (will be rethrown as ObjectAlreadyExistsException).",
+                    objects.size(), constEx);
+            throw new ObjectAlreadyExistsException("Conflicting object already exists", constEx);
+        } catch (ObjectAlreadyExistsException | SchemaException ex) {
+            restoreOids(objects, originalOids);
+            baseHelper.rollbackTransaction(session, ex, result, true);
+            throw ex;
+        } catch (RuntimeException ex) {
+            restoreOids(objects, originalOids);
+            baseHelper.handleGeneralException(ex, session, result);
+            throw new AssertionError("shouldn't be here");
+        } finally {
+            cleanupClosureAndSessionAndResult(closureContext, session, result);
+        }
+    }
+
+    private <T extends ObjectType> String persistNewObject(PrismObject<T> object, OrgClosureManager.Context closureContext,
+            Session session) throws SchemaException {
+        PrismIdentifierGenerator<T> idGenerator = new PrismIdentifierGenerator<>(PrismIdentifierGenerator.Operation.ADD);
+        RObject rObject = createDataObjectFromJAXB(object, idGenerator);
+        return persistNewObject(object, rObject, session, closureContext);
+    }
+
+    /**
+     * Checks that none of the explicitly provided OIDs is already used, using a single query.
+     */
+    private void checkOidsUniqueness(List<String> oids, Session session) throws ObjectAlreadyExistsException {
+        List<String> providedOids = new ArrayList<>();
+        for (String oid : oids) {
+            if (StringUtils.isNotEmpty(oid)) {
+                providedOids.add(oid);
+            }
+        }
+        if (providedOids.isEmpty()) {
+            return;
+        }
+        LOGGER.trace("Checking oid uniqueness for {} objects.", providedOids.size());
+        for (List<String> chunk : ListUtils.partition(providedOids, ObjectRetriever.MAX_OIDS_IN_QUERY)) {
+            List<String> existing = session.createQuery("select o.oid from RObject o where o.oid in (:oids)", String.class)
+                    .setParameterList("oids", chunk)
+                    .getResultList();
+            if (!existing.isEmpty()) {
+                throw new ObjectAlreadyExistsException("Object(s) with oid(s) " + existing + " already exist.");
+            }
+        }
+    }
+
+    private void restoreOids(List<? extends PrismObject<? extends ObjectType>> objects, List<String> originalOids) {
+        // see the comment on originalOid in addObjectAttempt
+        for (int i = 0; i < objects.size(); i++) {
+            if (StringUtils.isEmpty(originalOids.get(i))) {
+                objects.get(i).setOid(null);
+            }
+        }
+    }
+
     private ConstraintViolationException findConstraintViolationException(PersistenceException ex) {
         return ExceptionUtil.findException(ex, ConstraintViolationException.class);
     }
@@ -199,6 +322,8 @@ public class ObjectUpdater {
         updateFullObject(rObject, object);
 
         RObject merged = objectDeltaUpdater.update(object, rObject, noFetchExtensionValueInsertionForbidden, session);
+        externalItemHelper.storeExternalItems(session, merged.getOid(), rObject.getExternalItems(),
+                ExternalItemHelper.hasExternalItems(oldObject));
         lookupTableHelper.addLookupTableRows(session, rObject, oldObject != null);
         caseHelper.addCertificationCampaignCases(session, rObject, oldObject != null);
 
@@ -233,6 +358,38 @@ public class ObjectUpdater {
         LOGGER.trace("Updating full object xml column start.");
         savedObject.setVersion(Integer.toString(object.getVersion()));
 
+        Map<String, byte[]> externalItems = new LinkedHashMap<>();
+        object.setFullObject(createFullObject(savedObject, externalItems));
+        object.setExternalItems(externalItems);
+    }
+
+    /**
+     * Serializes the object to the form stored in fullObject column, using configured format.
+     * All items are stored in fullObject.
+     */
+    <T extends ObjectType> byte[] createFullObject(PrismObject<T> savedObject) throws SchemaException {
+        return createFullObject(savedObject, null);
+    }
+
+    /**
+     * Serializes the object to the form stored in fullObject column, using configured format.
+     *
+     * @param externalItems If not null, heavyweight items are stored outside of fullObject (see {@link ExternalItemHelper});
+     * their serialized form is put into this map.
+     */
+    private <T extends ObjectType> byte[] createFullObject(PrismObject<T> savedObject, Map<String, byte[]> externalItems)
+            throws SchemaException {
+        RootXNode xnode = createFullObjectXNode(savedObject);
+        if (externalItems != null) {
+            for (Map.Entry<String, RootXNode> entry : externalItemHelper.extractExternalItems(savedObject, xnode).entrySet()) {
+                RootXNode itemXNode = entry.getValue();
+                externalItems.put(entry.getKey(), itemXNode != null ? serialize(itemXNode, savedObject) : null);
+            }
+        }
+        return serialize(xnode, savedObject);
+    }
+
+    private <T extends ObjectType> RootXNode createFullObjectXNode(PrismObject<T> savedObject) throws SchemaException {
         List<ItemName> itemsToSkip = new ArrayList<>();
         Class<T> compileTimeClass = savedObject.getCompileTimeClass();
         assert compileTimeClass != null;
@@ -246,19 +403,35 @@ public class ObjectUpdater {
             itemsToSkip.add(TaskType.F_RESULT);
         }
 
-        String xml = prismContext.serializerFor(getConfiguration().getFullObjectFormat())
+        SerializationOptions options = SerializationOptions
+                .createSerializeReferenceNamesForNullOids()
+                .skipIndexOnly(true);
+        return prismContext.xnodeSerializer()
                 .itemsToSkip(itemsToSkip)
-                .options(SerializationOptions
-                        .createSerializeReferenceNamesForNullOids()
-                        .skipIndexOnly(true))
+                .options(options)
                 .serialize(savedObject);
-        byte[] fullObject = RUtil.getBytesFromSerializedForm(xml, getConfiguration().isUseZip());
+    }
+
+    private byte[] serialize(RootXNode xnode, Object context) throws SchemaException {
+        if (getConfiguration().isFullObjectFormatBinary()) {
+            try {
+                byte[] fullObject = BinaryFullObjectCodec.encode(xnode, getConfiguration().isUseZip());
+                LOGGER.trace("Updating full object column finished, binary form has {} bytes.", fullObject.length);
+                return fullObject;
+            } catch (BinaryFullObjectCodec.UnsupportedContentException e) {
+                LOGGER.debug("Object {} cannot be stored in binary form, using {} instead: {}", context,
+                        getConfiguration().getFullObjectTextFormat(), e.getMessage());
+            }
+        }
 
-        object.setFullObject(fullObject);
+        String xml = prismContext.serializerFor(getConfiguration().getFullObjectTextFormat())
+                .serialize(xnode);
+        byte[] fullObject = RUtil.getBytesFromSerializedForm(xml, getConfiguration().isUseZip());
 
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Updating full object xml column finished. Xml:\n{}", xml);
         }
+        return fullObject;
     }
 
     protected SqlRepositoryConfiguration getConfiguration() {
@@ -285,10 +458,16 @@ public class ObjectUpdater {
             }
         }
 
+        return persistNewObject(object, rObject, session, closureContext);
+    }
+
+    private <T extends ObjectType> String persistNewObject(PrismObject<T> object, RObject rObject, Session session,
+            OrgClosureManager.Context closureContext) throws SchemaException {
         updateFullObject(rObject, object);
 
         LOGGER.trace("Saving object (non overwrite).");
         session.persist(rObject);
+        externalItemHelper.storeExternalItems(session, rObject.getOid(), rObject.getExternalItems(), false);
         lookupTableHelper.addLookupTableRows(session, rObject, false);
         caseHelper.addCertificationCampaignCases(session, rObject, false);
 
@@ -332,6 +511,7 @@ public class ObjectUpdater {
             closureManager.updateOrgClosure(null, null, session, oid, actualType, OrgClosureManager.Operation.DELETE, closureContext);
 
             session.delete(object);
+            externalItemHelper.deleteExternalItems(session, oid);
             if (LookupTableType.class.equals(actualType)) {
                 lookupTableHelper.deleteLookupTableRows(session, oid);
             }
@@ -341,7 +521,7 @@ public class ObjectUpdater {
 
             session.getTransaction().commit();
             return new DeleteObjectResult(
-                    RUtil.getSerializedFormFromBytes(object.getFullObject()));
+                    RUtil.getFullObjectText(object.getFullObject(), prismContext));
         } catch (ObjectNotFoundException ex) {
             baseHelper.rollbackTransaction(session, ex, result, true);
             throw ex;
@@ -382,121 +562,8 @@ public class ObjectUpdater {
 
             closureContext = closureManager.onBeginTransactionModify(session, type, oid, modifications);
 
-            Collection<? extends ItemDelta> lookupTableModifications = lookupTableHelper.filterLookupTableModifications(type, modifications);
-            Collection<? extends ItemDelta> campaignCaseModifications = caseHelper.filterCampaignCaseModifications(type, modifications);
-
-            ModifyObjectResult<T> rv;
-
-            boolean reindex = RepoModifyOptions.isExecuteIfNoChanges(modifyOptions);
-            if (!modifications.isEmpty() || reindex) {
-
-                // JpegPhoto (RFocusPhoto) is a special kind of entity. First of all, it is lazily loaded, because photos are really big.
-                // Each RFocusPhoto naturally belongs to one RFocus, so it would be appropriate to set orphanRemoval=true for focus-photo
-                // association. However, this leads to a strange problem when merging in-memory RFocus object with the database state:
-                // If in-memory RFocus object has no photo associated (because of lazy loading), then the associated RFocusPhoto is deleted.
-                //
-                // To prevent this behavior, we've set orphanRemoval to false. Fortunately, the remove operation on RFocus
-                // seems to be still cascaded to RFocusPhoto. What we have to implement ourselves, however, is removal of RFocusPhoto
-                // _without_ removing of RFocus. In order to know whether the photo has to be removed, we have to retrieve
-                // its value, apply the delta (e.g. if the delta is a DELETE VALUE X, we have to know whether X matches current
-                // value of the photo), and if the resulting value is empty, we have to manually delete the RFocusPhoto instance.
-                //
-                // So the first step is to retrieve the current value of photo - we obviously do this only if the modifications
-                // deal with the jpegPhoto property.
-                //
-                // TODO handling of "externally stored" items (focus.jpegPhoto, task.result, lookupTable.row, ...)
-                //  is a kind of ugly magic. It needs to be reviewed and fixed.
-                GetOperationOptionsBuilder optionsBuilder = schemaHelper.getOperationOptionsBuilder();
-                boolean containsFocusPhotoModification = FocusType.class.isAssignableFrom(type) && containsPhotoModification(modifications);
-                if (containsFocusPhotoModification) {
-                    LOGGER.trace("Setting 'retrieve' option on jpegPhoto for object fetching because containsFocusPhotoModification=true");
-                    optionsBuilder = optionsBuilder.item(FocusType.F_JPEG_PHOTO).retrieve();
-                }
-                if (reindex) {
-                    LOGGER.trace("Setting 'raw' option for object fetching because reindex is being applied");
-                    optionsBuilder = optionsBuilder.root().raw();
-                    if (TaskType.class.isAssignableFrom(type) || ShadowType.class.isAssignableFrom(type)) {
-                        // Certification campaigns and lookup tables treat their externally stored items (cases, rows)
-                        // in a different way that collides with the use of "retrieve" option. TODO resolve this!
-                        LOGGER.trace("Setting 'retrieve' option for object fetching because reindex is being applied");
-                        optionsBuilder = optionsBuilder.root().retrieve();
-                    } else {
-                        LOGGER.trace("Setting 'retrieve' option for c:extension for object fetching because reindex is being applied");
-                        optionsBuilder = optionsBuilder.item(ObjectType.F_EXTENSION).retrieve();        // index-only items can be also here
-                    }
-                }
-
-                // get object
-                PrismObject<T> prismObject = objectRetriever.getObjectInternal(session, type, oid, optionsBuilder.build(), true, result);
-                if (precondition != null && !precondition.holds(prismObject)) {
-                    throw new PreconditionViolationException("Modification precondition does not hold for " + prismObject);
-                }
-                sqlRepositoryService.invokeConflictWatchers(w -> w.beforeModifyObject(prismObject));
-                // apply diff
-                LOGGER.trace("OBJECT before:\n{}", prismObject.debugDumpLazily());
-                PrismObject<T> originalObject = prismObject.clone();
-
-                boolean shouldPhotoBeRemoved;
-                if (reindex) {
-                    // old implementation start
-                    ItemDeltaCollectionsUtil.applyTo(modifications, prismObject);
-                    LOGGER.trace("OBJECT after:\n{}", prismObject.debugDumpLazily());
-                    // Continuing the photo treatment: should we remove the (now obsolete) focus photo?
-                    // We have to test prismObject at this place, because updateFullObject (below) removes photo property from the prismObject.
-                    shouldPhotoBeRemoved = containsFocusPhotoModification && ((FocusType) prismObject.asObjectable()).getJpegPhoto() == null;
-
-                    // merge and update object
-                    LOGGER.trace("Translating JAXB to data type.");
-                    ObjectTypeUtil.normalizeAllRelations(prismObject, relationRegistry);
-                    PrismIdentifierGenerator<T> idGenerator = new PrismIdentifierGenerator<>(PrismIdentifierGenerator.Operation.MODIFY);
-                    RObject rObject = createDataObjectFromJAXB(prismObject, idGenerator);
-                    rObject.setVersion(rObject.getVersion() + 1);
-
-                    updateFullObject(rObject, prismObject);
-                    LOGGER.trace("Starting merge.");
-                    session.merge(rObject);
-                    // old implementation end
-                } else {
-                    // new implementation start
-                    RObject rObject = objectDeltaUpdater.modifyObject(type, oid, modifications, prismObject, modifyOptions, session, attemptContext);
-
-                    LOGGER.trace("OBJECT after:\n{}", prismObject.debugDumpLazily());
-                    // Continuing the photo treatment: should we remove the (now obsolete) focus photo?
-                    // We have to test prismObject at this place, because updateFullObject (below) removes photo property from the prismObject.
-                    shouldPhotoBeRemoved =
-                            containsFocusPhotoModification && ((FocusType) prismObject.asObjectable()).getJpegPhoto() == null;
-
-                    updateFullObject(rObject, prismObject);
-
-                    LOGGER.trace("Starting save.");
-                    session.save(rObject);
-                    LOGGER.trace("Save finished.");
-                    // new implementation end
-                }
-
-                if (closureManager.isEnabled()) {
-                    closureManager.updateOrgClosure(originalObject, modifications, session, oid, type, OrgClosureManager.Operation.MODIFY, closureContext);
-                }
-
-                // JpegPhoto cleanup: As said before, if a focus has to have no photo (after modifications are applied),
-                // we have to remove the photo manually.
-                if (shouldPhotoBeRemoved) {
-                    Query query = session.createQuery("delete RFocusPhoto where ownerOid = :oid");
-                    query.setParameter("oid", prismObject.getOid());
-                    query.executeUpdate();
-                    LOGGER.trace("Focus photo for {} was deleted", prismObject.getOid());
-                }
-                rv = new ModifyObjectResult<>(originalObject, prismObject, originalModifications);
-            } else {
-                rv = new ModifyObjectResult<>(originalModifications);
-            }
-
-            if (LookupTableType.class.isAssignableFrom(type)) {
-                lookupTableHelper.updateLookupTableData(session, oid, lookupTableModifications);
-            }
-            if (AccessCertificationCampaignType.class.isAssignableFrom(type)) {
-                caseHelper.updateCampaignCases(session, oid, campaignCaseModifications, modifyOptions);
-            }
+            ModifyObjectResult<T> rv = modifyObjectInSession(type, oid, modifications, originalModifications, precondition,
+                    modifyOptions, session, closureContext, attemptContext, result, sqlRepositoryService);
 
             LOGGER.trace("Before commit...");
             session.getTransaction().commit();
@@ -529,6 +596,364 @@ public class ObjectUpdater {
         }
     }
 
+    /**
+     * Applies a batch of MODIFY deltas in a single transaction. Any failure aborts the whole batch;
+     * the caller is responsible for finding out which delta(s) are to blame, e.g. by applying them one by one.
+     *
+     * No-fetch insertion of extension values is not used here, so there is no need for restarting the operation.
+     * Org closure is recomputed for all the orgs with changed parentOrgRef at once, after all the deltas are applied.
+     *
+     * @return modification results, in the order of the input list
+     */
+    public List<ModifyObjectResult<? extends ObjectType>> modifyObjectsAttempt(
+            List<? extends ObjectDelta<? extends ObjectType>> deltas, RepoModifyOptions originalModifyOptions,
+            OperationResult result, SqlRepositoryServiceImpl sqlRepositoryService)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException {
+
+        RepoModifyOptions modifyOptions = adjustExtensionValuesHandling(originalModifyOptions, true);
+        AttemptContext attemptContext = new AttemptContext();
+
+        LOGGER_PERFORMANCE.debug("> modify {} objects", deltas.size());
+
+        List<ModifyObjectResult<? extends ObjectType>> rv = new ArrayList<>(deltas.size());
+        Session session = null;
+        BulkClosureContext bulkClosureContext = new BulkClosureContext();
+        try {
+            session = baseHelper.beginTransaction();
+            session.setJdbcBatchSize(getConfiguration().getBulkOperationBatchSize());
+
+            for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                rv.add(modifyObjectInBulk(delta, modifyOptions, session, bulkClosureContext, attemptContext, result,
+                        sqlRepositoryService));
+            }
+            closureManager.applyDeferredUpdates(bulkClosureContext.closureContext, session);
+
+            session.getTransaction().commit();
+            LOGGER.trace("Committed modifications of {} objects", deltas.size());
+            return rv;
+        } catch (ObjectNotFoundException | SchemaException | ObjectAlreadyExistsException | PreconditionViolationException ex) {
+            baseHelper.rollbackTransaction(session, ex, result, true);
+            throw ex;
+        } catch (PersistenceException ex) {
+            ConstraintViolationException constEx = findConstraintViolationException(ex);
+            if (constEx != null) {
+                handleConstraintViolationExceptionSpecialCases(constEx, session, attemptContext, result);
+                baseHelper.rollbackTransaction(session, constEx, result, true);
+                LOGGER.debug("Constraint violation occurred in a batch of {} modifications (will be rethrown as "
+                        + "ObjectAlreadyExistsException).", deltas.size(), constEx);
+                throw new ObjectAlreadyExistsException(constEx);
+            } else {
+                baseHelper.handleGeneralException(ex, session, result);
+                throw new AssertionError("Shouldn't get here");
+            }
+        } catch (DtoTranslationException | RuntimeException ex) {
+            baseHelper.handleGeneralException(ex, session, result);
+            throw new AssertionError("Shouldn't get here");
+        } finally {
+            cleanupClosureAndSessionAndResult(bulkClosureContext.closureContext, session, result);
+        }
+    }
+
+    private <T extends ObjectType> ModifyObjectResult<T> modifyObjectInBulk(ObjectDelta<T> delta,
+            RepoModifyOptions modifyOptions, Session session, BulkClosureContext bulkClosureContext,
+            AttemptContext attemptContext, OperationResult result, SqlRepositoryServiceImpl sqlRepositoryService)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException,
+            DtoTranslationException {
+        Class<T> type = delta.getObjectTypeClass();
+        String oid = delta.getOid();
+        Collection<? extends ItemDelta<?, ?>> originalModifications = delta.getModifications();
+        //noinspection unchecked
+        Collection<? extends ItemDelta<?, ?>> modifications = (Collection<? extends ItemDelta<?, ?>>)
+                CloneUtil.cloneCollectionMembers(originalModifications);
+        LOGGER.trace("Modifying object '{}' with oid '{}' (in bulk):\n{}", type.getSimpleName(), oid,
+                DebugUtil.debugDumpLazily(modifications));
+
+        if (bulkClosureContext.closureContext == null) {
+            bulkClosureContext.closureContext = closureManager.onBeginTransactionModify(session, type, oid, modifications);
+            closureManager.deferUpdates(bulkClosureContext.closureContext);
+        }
+        return modifyObjectInSession(type, oid, modifications, originalModifications, null, modifyOptions, session,
+                bulkClosureContext.closureContext, attemptContext, result, sqlRepositoryService);
+    }
+
+    /**
+     * Org closure context shared by all the objects in a bulk operation. It is created lazily,
+     * when the first object needing it is encountered.
+     */
+    private static class BulkClosureContext {
+        private OrgClosureManager.Context closureContext;
+    }
+
+    private <T extends ObjectType> ModifyObjectResult<T> modifyObjectInSession(Class<T> type, String oid,
+            Collection<? extends ItemDelta<?, ?>> modifications, Collection<? extends ItemDelta> originalModifications,
+            ModificationPrecondition<T> precondition, RepoModifyOptions modifyOptions, Session session,
+            OrgClosureManager.Context closureContext, AttemptContext attemptContext, OperationResult result,
+            SqlRepositoryServiceImpl sqlRepositoryService)
+            throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException, PreconditionViolationException,
+            DtoTranslationException {
+
+        Collection<? extends ItemDelta> lookupTableModifications = lookupTableHelper.filterLookupTableModifications(type, modifications);
+        Collection<? extends ItemDelta> campaignCaseModifications = caseHelper.filterCampaignCaseModifications(type, modifications);
+
+        ModifyObjectResult<T> rv = null;
+
+        boolean reindex = RepoModifyOptions.isExecuteIfNoChanges(modifyOptions);
+        if (!modifications.isEmpty() && !reindex && precondition == null) {
+            rv = tryModifyExternalItemsOnly(type, oid, modifications, originalModifications, modifyOptions, session,
+                    attemptContext, sqlRepositoryService);
+        }
+        if (rv != null) {
+            // modifications were applied without fetching the whole object
+        } else if (!modifications.isEmpty() || reindex) {
+
+            // JpegPhoto (RFocusPhoto) is a special kind of entity. First of all, it is lazily loaded, because photos are really big.
+            // Each RFocusPhoto naturally belongs to one RFocus, so it would be appropriate to set orphanRemoval=true for focus-photo
+            // association. However, this leads to a strange problem when merging in-memory RFocus object with the database state:
+            // If in-memory RFocus object has no photo associated (because of lazy loading), then the associated RFocusPhoto is deleted.
+            //
+            // To prevent this behavior, we've set orphanRemoval to false. Fortunately, the remove operation on RFocus
+            // seems to be still cascaded to RFocusPhoto. What we have to implement ourselves, however, is removal of RFocusPhoto
+            // _without_ removing of RFocus. In order to know whether the photo has to be removed, we have to retrieve
+            // its value, apply the delta (e.g. if the delta is a DELETE VALUE X, we have to know whether X matches current
+            // value of the photo), and if the resulting value is empty, we have to manually delete the RFocusPhoto instance.
+            //
+            // So the first step is to retrieve the current value of photo - we obviously do this only if the modifications
+            // deal with the jpegPhoto property.
+            //
+            // TODO handling of "externally stored" items (focus.jpegPhoto, task.result, lookupTable.row, ...)
+            //  is a kind of ugly magic. It needs to be reviewed and fixed.
+            GetOperationOptionsBuilder optionsBuilder = schemaHelper.getOperationOptionsBuilder();
+            boolean containsFocusPhotoModification = FocusType.class.isAssignableFrom(type) && containsPhotoModification(modifications);
+            if (containsFocusPhotoModification) {
+                LOGGER.trace("Setting 'retrieve' option on jpegPhoto for object fetching because containsFocusPhotoModification=true");
+                optionsBuilder = optionsBuilder.item(FocusType.F_JPEG_PHOTO).retrieve();
+            }
+            if (reindex) {
+                LOGGER.trace("Setting 'raw' option for object fetching because reindex is being applied");
+                optionsBuilder = optionsBuilder.root().raw();
+                if (TaskType.class.isAssignableFrom(type) || ShadowType.class.isAssignableFrom(type)) {
+                    // Certification campaigns and lookup tables treat their externally stored items (cases, rows)
+                    // in a different way that collides with the use of "retrieve" option. TODO resolve this!
+                    LOGGER.trace("Setting 'retrieve' option for object fetching because reindex is being applied");
+                    optionsBuilder = optionsBuilder.root().retrieve();
+                } else {
+                    LOGGER.trace("Setting 'retrieve' option for c:extension for object fetching because reindex is being applied");
+                    optionsBuilder = optionsBuilder.item(ObjectType.F_EXTENSION).retrieve();        // index-only items can be also here
+                }
+            }
+
+            // get object
+            PrismObject<T> prismObject = objectRetriever.getObjectInternal(session, type, oid, optionsBuilder.build(), true, result);
+            if (precondition != null && !precondition.holds(prismObject)) {
+                throw new PreconditionViolationException("Modification precondition does not hold for " + prismObject);
+            }
+            sqlRepositoryService.invokeConflictWatchers(w -> w.beforeModifyObject(prismObject));
+            // apply diff
+            LOGGER.trace("OBJECT before:\n{}", prismObject.debugDumpLazily());
+            PrismObject<T> originalObject = prismObject.clone();
+
+            boolean shouldPhotoBeRemoved;
+            if (reindex) {
+                // old implementation start
+                ItemDeltaCollectionsUtil.applyTo(modifications, prismObject);
+                LOGGER.trace("OBJECT after:\n{}", prismObject.debugDumpLazily());
+                // Continuing the photo treatment: should we remove the (now obsolete) focus photo?
+                // We have to test prismObject at this place, because updateFullObject (below) removes photo property from the prismObject.
+                shouldPhotoBeRemoved = containsFocusPhotoModification && ((FocusType) prismObject.asObjectable()).getJpegPhoto() == null;
+
+                // merge and update object
+                LOGGER.trace("Translating JAXB to data type.");
+                ObjectTypeUtil.normalizeAllRelations(prismObject, relationRegistry);
+                PrismIdentifierGenerator<T> idGenerator = new PrismIdentifierGenerator<>(PrismIdentifierGenerator.Operation.MODIFY);
+                RObject rObject = createDataObjectFromJAXB(prismObject, idGenerator);
+                rObject.setVersion(rObject.getVersion() + 1);
+
+                updateFullObject(rObject, prismObject);
+                LOGGER.trace("Starting merge.");
+                session.merge(rObject);
+                externalItemHelper.storeExternalItems(session, oid, rObject.getExternalItems(),
+                        ExternalItemHelper.hasExternalItems(prismObject));
+                // old implementation end
+            } else {
+                // new implementation start
+                RObject rObject = objectDeltaUpdater.modifyObject(type, oid, modifications, prismObject, modifyOptions, session, attemptContext);
+
+                LOGGER.trace("OBJECT after:\n{}", prismObject.debugDumpLazily());
+                // Continuing the photo treatment: should we remove the (now obsolete) focus photo?
+                // We have to test prismObject at this place, because updateFullObject (below) removes photo property from the prismObject.
+                shouldPhotoBeRemoved =
+                        containsFocusPhotoModification && ((FocusType) prismObject.asObjectable()).getJpegPhoto() == null;
+
+                updateFullObject(rObject, prismObject);
+
+                LOGGER.trace("Starting save.");
+                session.save(rObject);
+                externalItemHelper.storeExternalItems(session, oid, rObject.getExternalItems(),
+                        ExternalItemHelper.hasExternalItems(prismObject));
+                LOGGER.trace("Save finished.");
+                // new implementation end
+            }
+
+            if (closureManager.isEnabled()) {
+                closureManager.updateOrgClosure(originalObject, modifications, session, oid, type, OrgClosureManager.Operation.MODIFY, closureContext);
+            }
+
+            // JpegPhoto cleanup: As said before, if a focus has to have no photo (after modifications are applied),
+            // we have to remove the photo manually.
+            if (shouldPhotoBeRemoved) {
+                Query query = session.createQuery("delete RFocusPhoto where ownerOid = :oid");
+                query.setParameter("oid", prismObject.getOid());
+                query.executeUpdate();
+                LOGGER.trace("Focus photo for {} was deleted", prismObject.getOid());
+            }
+            rv = new ModifyObjectResult<>(originalObject, prismObject, originalModifications);
+        } else {
+            // Nothing in m_object was changed (lookup table rows or campaign cases are treated below)
+            rv = new ModifyObjectResult<>(null, null, originalModifications, true);
+        }
+
+        if (LookupTableType.class.isAssignableFrom(type)) {
+            lookupTableHelper.updateLookupTableData(session, oid, lookupTableModifications);
+        }
+        if (AccessCertificationCampaignType.class.isAssignableFrom(type)) {
+            caseHelper.updateCampaignCases(session, oid, campaignCaseModifications, modifyOptions);
+        }
+        return rv;
+    }
+
+    /**
+     * Applies modifications that touch only items stored outside of fullObject (see {@link ExternalItemHelper})
+     * without parsing and re-serializing the whole object. Only the modified items are loaded, updated and stored;
+     * fullObject is patched at the XNode level (version, item content or incomplete marker).
+     *
+     * @return null if the modifications cannot be applied in this way (nothing is changed then)
+     */
+    private <T extends ObjectType> ModifyObjectResult<T> tryModifyExternalItemsOnly(Class<T> type, String oid,
+            Collection<? extends ItemDelta<?, ?>> modifications, Collection<? extends ItemDelta> originalModifications,
+            RepoModifyOptions modifyOptions, Session session, AttemptContext attemptContext,
+            SqlRepositoryServiceImpl sqlRepositoryService) throws ObjectNotFoundException, SchemaException {
+
+        Set<ItemName> itemNames = externalItemHelper.getModifiedItems(type, modifications);
+        if (itemNames == null || itemNames.isEmpty()
+                || FullTextSearchConfigurationUtil.isEnabled(repositoryService.getFullTextSearchConfiguration())) {
+            return null;
+        }
+        if (needsContainerIdGeneration(modifications)) {
+            // Container IDs are unique in the whole object, but we see only the modified items here.
+            LOGGER.trace("Modifications of {} need container IDs to be generated, the whole object will be updated", oid);
+            return null;
+        }
+        PrismObject<T> prismObject = externalItemHelper.loadExternalItemsOnly(session, oid, itemNames);
+        if (prismObject == null) {
+            LOGGER.trace("Not all of {} of {} are stored externally, the whole object will be updated", itemNames, oid);
+            return null;
+        }
+        RObject entity = objectRetriever.getObjectEntityForUpdate(session, type, oid);
+        if (entity == null || entity.getFullObject() == null) {
+            return null;
+        }
+        RootXNode fullObjectXNode = RUtil.parseFullObjectToXNode(entity.getFullObject(), prismContext);
+        if (!externalItemHelper.isPatchable(fullObjectXNode)) {
+            return null;
+        }
+
+        LOGGER.debug("Modifying only externally stored items {} of {}", itemNames, oid);
+        prismObject.setVersion(Integer.toString(entity.getVersion()));
+        sqlRepositoryService.invokeConflictWatchers(w -> w.beforeModifyObject(prismObject));
+        PrismObject<T> objectBefore = prismObject.clone();
+
+        // No IDs should be generated (see above), but if any were, they must not collide with IDs of values
+        // stored in the same tables but not present in prismObject (e.g. assignments vs. inducements).
+        Long lastUsedContainerId = getLastUsedContainerId(session, oid, itemNames);
+
+        RObject rObject = objectDeltaUpdater.modifyObject(type, oid, modifications, prismObject, lastUsedContainerId,
+                modifyOptions, session, attemptContext);
+        prismObject.setVersion(Integer.toString(rObject.getVersion()));
+        LOGGER.trace("Modified items:\n{}", prismObject.debugDumpLazily());
+
+        Map<String, byte[]> externalItems = new LinkedHashMap<>();
+        RootXNode modifiedItemsXNode = createFullObjectXNode(prismObject);
+        for (Map.Entry<String, RootXNode> entry :
+                externalItemHelper.patchFullObject(fullObjectXNode, prismObject, modifiedItemsXNode, itemNames).entrySet()) {
+            RootXNode itemXNode = entry.getValue();
+            externalItems.put(entry.getKey(), itemXNode != null ? serialize(itemXNode, prismObject) : null);
+        }
+        rObject.setFullObject(serialize(fullObjectXNode, prismObject));
+
+        session.save(rObject);
+        externalItemHelper.storeExternalItems(session, oid, externalItems, true);
+
+        // Objects before and after contain only the modified items. This is enough for the cache invalidator
+        // to keep cached queries that do not refer to these items.
+        return new ModifyObjectResult<>(objectBefore, prismObject, originalModifications, true);
+    }
+
+    /**
+     * Returns true if some value of a multivalued container (at any level) is to be added without an ID.
+     */
+    private boolean needsContainerIdGeneration(Collection<? extends ItemDelta<?, ?>> modifications) {
+        for (ItemDelta<?, ?> modification : modifications) {
+            if (!(modification instanceof ContainerDelta)) {
+                continue;
+            }
+            ItemDefinition<?> definition = modification.getDefinition();
+            List<PrismValue> newValues = new ArrayList<>();
+            if (modification.getValuesToAdd() != null) {
+                newValues.addAll(modification.getValuesToAdd());
+            }
+            if (modification.getValuesToReplace() != null) {
+                newValues.addAll(modification.getValuesToReplace());
+            }
+            for (PrismValue value : newValues) {
+                PrismContainerValue<?> containerValue = (PrismContainerValue<?>) value;
+                if (containerValue.getId() == null && (definition == null || definition.isMultiValue())) {
+                    return true;
+                }
+                List<PrismContainerValue<?>> valuesWithoutId = new ArrayList<>();
+                containerValue.accept(visitable -> {
+                    if (visitable instanceof PrismContainer && !(visitable instanceof PrismObject)) {
+                        PrismContainer<?> container = (PrismContainer<?>) visitable;
+                        if (container.getDefinition() == null || container.getDefinition().isMultiValue()) {
+                            container.getValues().stream()
+                                    .filter(v -> v.getId() == null)
+                                    .forEach(valuesWithoutId::add);
+                        }
+                    }
+                });
+                if (!valuesWithoutId.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the highest container ID stored in tables of given (externally stored) items.
+     */
+    private Long getLastUsedContainerId(Session session, String oid, Collection<ItemName> itemNames) {
+        Long rv = null;
+        for (ItemName itemName : itemNames) {
+            String queryName;
+            if (QNameUtil.match(itemName, AssignmentHolderType.F_ASSIGNMENT)) {
+                queryName = "get.assignmentLastId";     // includes inducements
+            } else if (QNameUtil.match(itemName, ObjectType.F_OPERATION_EXECUTION)) {
+                queryName = "get.operationExecutionLastId";
+            } else if (QNameUtil.match(itemName, ObjectType.F_TRIGGER)) {
+                queryName = "get.triggerLastId";
+            } else {
+                continue;
+            }
+            Query<?> query = session.getNamedQuery(queryName);
+            query.setParameter("oid", oid);
+            Number lastId = (Number) query.uniqueResult();
+            if (lastId != null && (rv == null || lastId.longValue() > rv)) {
+                rv = lastId.longValue();
+            }
+        }
+        return rv;
+    }
+
     private RepoModifyOptions adjustExtensionValuesHandling(RepoModifyOptions options,
             boolean noFetchExtensionValueInsertionForbidden) {
         RepoModifyOptions rv = options != null ? options.clone() : new RepoModifyOptions();
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import java.util.*;
+
+/**
+ * Compact in-memory index of parent-child edges in (a part of) the org structure. It is used to compute
+ * org closure for many orgs at once, instead of applying the edges one by one in the database.
+ *
+ * Orgs are represented by int indices. Closure of an org is the org itself plus the sum of closures of its parents,
+ * so it is computed only once per org. Orgs whose closure is not to be computed (because it does not change)
+ * can be used as parents, but their closure has to be provided by the caller.
+ */
+class OrgClosureIndex {
+
+    private static final int[] NO_PARENTS = new int[0];
+
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<String> oids = new ArrayList<>();
+    private final List<int[]> parents = new ArrayList<>();
+
+    /** Orgs whose closure is to be computed. */
+    private final BitSet computed = new BitSet();
+    private final BitSet inProgress = new BitSet();
+
+    /** Closure (ancestor index -> number of paths) of the orgs; either already computed or provided by the caller. */
+    private final Map<Integer, Map<Integer, Integer>> closures = new HashMap<>();
+
+    void addOrg(String oid) {
+        computed.set(index(oid));
+    }
+
+    boolean containsOrg(String oid) {
+        Integer index = indices.get(oid);
+        return index != null && computed.get(index);
+    }
+
+    /**
+     * Adds a closure row of an org whose closure is not computed here.
+     */
+    void addKnownClosureRow(String descendantOid, String ancestorOid, int val) {
+        int descendant = index(descendantOid);
+        if (computed.get(descendant)) {
+            throw new IllegalStateException("Closure of " + descendantOid + " is to be computed, it cannot be provided");
+        }
+        closures.computeIfAbsent(descendant, k -> new HashMap<>())
+                .put(index(ancestorOid), val);
+    }
+
+    /**
+     * Adds an edge from an org whose closure is to be computed. Parents that are neither computed nor have
+     * a known closure (i.e. non-existing objects or non-orgs) are ignored, just like in the regular closure maintenance.
+     */
+    void addEdge(String childOid, String parentOid) {
+        Integer child = indices.get(childOid);
+        Integer parent = indices.get(parentOid);
+        if (child == null || !computed.get(child) || parent == null
+                || !computed.get(parent) && !closures.containsKey(parent)) {
+            return;
+        }
+        int[] existing = parents.get(child);
+        int[] updated = Arrays.copyOf(existing, existing.length + 1);
+        updated[existing.length] = parent;
+        parents.set(child, updated);
+    }
+
+    /**
+     * Computes closure of all the orgs to be computed and passes the rows to the consumer.
+     *
+     * @return number of rows
+     * @throws IllegalArgumentException if there is a cycle in the org structure
+     */
+    int computeClosure(RowConsumer consumer) {
+        int rows = 0;
+        for (int org = computed.nextSetBit(0); org >= 0; org = computed.nextSetBit(org + 1)) {
+            for (Map.Entry<Integer, Integer> entry : getClosure(org).entrySet()) {
+                consumer.accept(oids.get(org), oids.get(entry.getKey()), entry.getValue());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private Map<Integer, Integer> getClosure(int org) {
+        Map<Integer, Integer> closure = closures.get(org);
+        if (closure != null) {
+            return closure;
+        } else if (!computed.get(org)) {
+            return Collections.emptyMap();
+        } else if (inProgress.get(org)) {
+            throw new IllegalArgumentException("Modification couldn't be executed, because a cycle in org structure graph "
+                    + "would be created. Org in the cycle: " + oids.get(org));
+        }
+        inProgress.set(org);
+        closure = new HashMap<>();
+        closure.put(org, 1);
+        for (int parent : parents.get(org)) {
+            for (Map.Entry<Integer, Integer> entry : getClosure(parent).entrySet()) {
+                closure.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        inProgress.clear(org);
+        closures.put(org, closure);
+        return closure;
+    }
+
+    private int index(String oid) {
+        Integer index = indices.get(oid);
+        if (index == null) {
+            index = oids.size();
+            indices.put(oid, index);
+            oids.add(oid);
+            parents.add(NO_PARENTS);
+        }
+        return index;
+    }
+
+    @FunctionalInterface
+    interface RowConsumer {
+        void accept(String descendantOid, String ancestorOid, int val);
+    }
+}
@@ -10,12 +10,10 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismReferenceValue;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ReferenceDelta;
-import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.data.common.ROrgClosure;
 import com.evolveum.midpoint.repo.sql.data.common.other.RObjectType;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
-import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.util.QNameUtil;
@@ -27,19 +25,19 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang.Validate;
-import org.apache.commons.lang.mutable.MutableInt;
 import org.hibernate.query.Query;
 import org.hibernate.Session;
 import org.hibernate.query.NativeQuery;
 import org.hibernate.type.IntegerType;
 import org.hibernate.type.StringType;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
 import java.util.*;
 
 import static java.util.Collections.singletonList;
@@ -68,10 +66,6 @@ public class OrgClosureManager {
 
     private static final Trace LOGGER = TraceManager.getTrace(OrgClosureManager.class);
 
-    @Autowired
-    @Qualifier("repositoryService")
-    private RepositoryService repositoryService;
-
     @Autowired
     private BaseHelper baseHelper;
 
@@ -79,6 +73,7 @@ public class OrgClosureManager {
     private static final boolean COUNT_CLOSURE_RECORDS = false;
     private static final String CLOSURE_TABLE_NAME = "m_org_closure";
     private static final String TEMP_DELTA_TABLE_NAME_FOR_ORACLE = "m_org_closure_temp_delta";
+    private static final int INSERT_BATCH_SIZE = 500;
 
     // only for single-thread performance testing
     private long lastOperationDuration;
@@ -101,6 +96,13 @@ public class OrgClosureManager {
         if (!isEnabled() || !OrgType.class.isAssignableFrom(type)) {
             return;
         }
+        if (closureContext != null && closureContext.deferredOids != null && operation != Operation.DELETE) {
+            if (operation == Operation.ADD || !filterParentRefDeltas(modifications).isEmpty()) {
+                LOGGER.trace("Deferring {} of org. closure for {}", operation, oid);
+                closureContext.deferredOids.add(oid);
+            }
+            return;
+        }
         session.flush();
         session.clear();
 
@@ -328,6 +330,117 @@ public class OrgClosureManager {
 
     //endregion
 
+    //region Bulk (deferred) updates
+
+    /**
+     * Switches the context to bulk mode: the closure is not updated for each added or modified org separately.
+     * Instead, the orgs are recorded, and the closure of them and their descendants is recomputed at once
+     * by {@link #applyDeferredUpdates(Context, Session)}.
+     */
+    void deferUpdates(Context context) {
+        if (context != null && context.deferredOids == null) {
+            context.deferredOids = new HashSet<>();
+        }
+    }
+
+    /**
+     * Recomputes the closure for orgs recorded in bulk mode. Should be called after all the changes
+     * in the transaction are done (and before commit).
+     */
+    void applyDeferredUpdates(Context context, Session session) {
+        if (context == null || context.deferredOids == null || context.deferredOids.isEmpty()) {
+            return;
+        }
+        session.flush();
+        session.clear();
+
+        long time = System.currentTimeMillis();
+        Set<String> changed = context.deferredOids;
+        context.deferredOids = new HashSet<>();
+        LOGGER.debug("################# Starting bulk update of org. closure for {} org(s).", changed.size());
+
+        // Closure can change only for the changed orgs and their descendants. Newly added orgs have no descendants
+        // in the closure yet, so their (already existing) children have to be taken into account explicitly.
+        Set<String> affected = new HashSet<>(changed);
+        affected.addAll(getChildren(changed, session));
+        affected.addAll(getDescendants(affected, session));
+
+        int rows = recomputeClosure(affected, false, session);
+
+        long duration = System.currentTimeMillis() - time;
+        LOGGER.debug("################# Bulk update of org. closure finished in {} ms: {} org(s) affected, {} row(s) inserted.",
+                duration, affected.size(), rows);
+        lastOperationDuration = duration;
+    }
+
+    /**
+     * Computes the closure of given orgs in memory and replaces their rows in the closure table.
+     * Closure of other orgs (i.e. of parents outside this set) is taken from the table; it must not depend on the orgs
+     * being recomputed, i.e. the set must be closed under "descendant of" relation.
+     *
+     * @param allOrgs True if the set contains all orgs and the closure table is empty.
+     * @return number of rows inserted
+     */
+    private int recomputeClosure(Set<String> orgs, boolean allOrgs, Session session) {
+        OrgClosureIndex index = new OrgClosureIndex();
+        orgs.forEach(index::addOrg);
+
+        List<Object[]> edges = allOrgs ? getAllParentEdges(session) : getParentEdges(orgs, session);
+        Set<String> externalParents = new HashSet<>();
+        for (Object[] edge : edges) {
+            if (!index.containsOrg((String) edge[1])) {
+                externalParents.add((String) edge[1]);
+            }
+        }
+        for (List<String> chunk : partition(externalParents)) {
+            Query query = session.createQuery("select c.descendantOid, c.ancestorOid, c.val from ROrgClosure c "
+                    + "where c.descendantOid in (:oids)");
+            query.setParameterList("oids", chunk);
+            for (Object[] row : (List<Object[]>) query.list()) {
+                index.addKnownClosureRow((String) row[0], (String) row[1], (Integer) row[2]);
+            }
+        }
+        for (Object[] edge : edges) {
+            index.addEdge((String) edge[0], (String) edge[1]);
+        }
+
+        // the closure is computed before anything is deleted, so a cycle leaves the table untouched
+        List<Object[]> rows = new ArrayList<>();
+        index.computeClosure((descendant, ancestor, val) -> rows.add(new Object[] { descendant, ancestor, val }));
+        LOGGER.trace("Computed {} closure rows for {} org(s) using {} edges and {} external parent(s)",
+                rows.size(), orgs.size(), edges.size(), externalParents.size());
+
+        if (!allOrgs) {
+            for (List<String> chunk : partition(orgs)) {
+                NativeQuery deleteQuery = session.createNativeQuery(
+                        "delete from " + CLOSURE_TABLE_NAME + " where descendant_oid in (:oids)");
+                deleteQuery.setParameterList("oids", chunk);
+                deleteQuery.executeUpdate();
+            }
+        }
+        session.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement("insert into " + CLOSURE_TABLE_NAME
+                    + " (descendant_oid, ancestor_oid, val) values (?, ?, ?)")) {
+                int batched = 0;
+                for (Object[] row : rows) {
+                    insert.setString(1, (String) row[0]);
+                    insert.setString(2, (String) row[1]);
+                    insert.setInt(3, (Integer) row[2]);
+                    insert.addBatch();
+                    if (++batched % INSERT_BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                if (batched % INSERT_BATCH_SIZE != 0) {
+                    insert.executeBatch();
+                }
+            }
+        });
+        return rows.size();
+    }
+
+    //endregion
+
     //region Rebuilding or checking org closure
 
     // we are already in the context of a transaction (and the org struct table is locked if possible)
@@ -351,23 +464,10 @@ public class OrgClosureManager {
         deleteQuery.executeUpdate();
         LOGGER.trace("Closure table content deleted");
 
-        final int orgsTotal = repositoryService.countObjects(OrgType.class, null, null, result);
-        final MutableInt orgsProcessed = new MutableInt(0);
-
-        ResultHandler<OrgType> handler = new ResultHandler<OrgType>() {
-            @Override
-            public boolean handle(PrismObject<OrgType> object, OperationResult parentResult) {
-                LOGGER.trace("Processing {}", object);
-                handleAdd(object.getOid(), getParentOidsFromObject(object), context, session);
-                orgsProcessed.add(1);
-                int currentState = orgsProcessed.intValue();
-                if (currentState % 100 == 0) {
-                    LOGGER.info("{} organizations processed (out of {})", currentState, orgsTotal);
-                }
-                return true;
-            }
-        };
-        repositoryService.searchObjectsIterative(OrgType.class, null, handler, null, true, result);
+        Set<String> orgs = new HashSet<>(session.createQuery("select o.oid from ROrg o", String.class).list());
+        int orgsTotal = orgs.size();
+        int rows = recomputeClosure(orgs, true, session);
+        LOGGER.info("{} closure rows computed", rows);
 
         LOGGER.info("Org closure table was successfully recomputed (not committed yet); all {} organizations processed", orgsTotal);
 
@@ -1198,6 +1298,53 @@ public class OrgClosureManager {
         return childrenQuery.list();
     }
 
+    private Set<String> getChildren(Collection<String> oids, Session session) {
+        Set<String> children = new HashSet<>();
+        for (List<String> chunk : partition(oids)) {
+            Query childrenQuery = session.createQuery("select distinct parentRef.ownerOid from RObjectReference as parentRef" +
+                    " join parentRef.owner as owner where parentRef.targetOid in (:oids) and parentRef.referenceType=0" +
+                    " and owner.objectTypeClass = :orgType");
+            childrenQuery.setParameter("orgType", RObjectType.ORG);
+            childrenQuery.setParameterList("oids", chunk);
+            children.addAll(childrenQuery.list());
+        }
+        return children;
+    }
+
+    private Set<String> getDescendants(Collection<String> oids, Session session) {
+        Set<String> descendants = new HashSet<>();
+        for (List<String> chunk : partition(oids)) {
+            Query query = session.createQuery("select distinct c.descendantOid from ROrgClosure c where c.ancestorOid in (:oids)");
+            query.setParameterList("oids", chunk);
+            descendants.addAll(query.list());
+        }
+        return descendants;
+    }
+
+    // returns [child, parent] pairs
+    private List<Object[]> getParentEdges(Collection<String> oids, Session session) {
+        List<Object[]> edges = new ArrayList<>();
+        for (List<String> chunk : partition(oids)) {
+            Query query = session.createQuery("select distinct r.ownerOid, r.targetOid from RObjectReference r " +
+                    "where r.ownerOid in (:oids) and r.referenceType=0");
+            query.setParameterList("oids", chunk);
+            edges.addAll(query.list());
+        }
+        return edges;
+    }
+
+    // returns [child, parent] pairs for all orgs
+    private List<Object[]> getAllParentEdges(Session session) {
+        Query query = session.createQuery("select distinct r.ownerOid, r.targetOid from RObjectReference r " +
+                "join r.owner as owner where r.referenceType=0 and owner.objectTypeClass = :orgType");
+        query.setParameter("orgType", RObjectType.ORG);
+        return query.list();
+    }
+
+    private List<List<String>> partition(Collection<String> oids) {
+        return ListUtils.partition(new ArrayList<>(oids), ObjectRetriever.MAX_OIDS_IN_QUERY);
+    }
+
     private List<String> retainExistingOids(Collection<String> oids, Session session) {
         if (!oids.isEmpty()) {
             Query query = session.createQuery("select o.oid from RObject o where o.oid in (:oids)");
@@ -1305,6 +1452,12 @@ public class OrgClosureManager {
 
     public static class Context {
         String temporaryTableName;
+
+        /**
+         * Orgs whose closure is to be recomputed at the end of a bulk operation. Null if the closure
+         * is updated immediately (the default).
+         */
+        Set<String> deferredOids;
     }
     //endregion
 
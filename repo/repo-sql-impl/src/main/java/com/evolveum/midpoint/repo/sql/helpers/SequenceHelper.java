@@ -24,8 +24,8 @@ import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author mederly
@@ -42,9 +42,18 @@ public class SequenceHelper {
     @Autowired
     private BaseHelper baseHelper;
 
+    @Autowired
+    private ExternalItemHelper externalItemHelper;
+
     private static final Trace LOGGER = TraceManager.getTrace(SqlRepositoryServiceImpl.class);
     private static final Trace LOGGER_PERFORMANCE = TraceManager.getTrace(SqlRepositoryServiceImpl.PERFORMANCE_LOG_NAME);
 
+    /**
+     * Values reserved by this node (see SequenceType.preallocationBlockSize) but not assigned yet,
+     * indexed by sequence OID. Each deque is guarded by itself.
+     */
+    private final Map<String, Deque<Long>> preallocatedValues = new ConcurrentHashMap<>();
+
     public long advanceSequenceAttempt(String oid, OperationResult result) throws ObjectNotFoundException,
             SchemaException, SerializationRelatedException {
 
@@ -63,33 +72,23 @@ public class SequenceHelper {
             }
             SequenceType sequence = prismObject.asObjectable();
 
-            if (!sequence.getUnusedValues().isEmpty()) {
-                returnValue = sequence.getUnusedValues().remove(0);
-            } else {
-                long counter = sequence.getCounter() != null ? sequence.getCounter() : 0L;
-                long maxCounter = sequence.getMaxCounter() != null ? sequence.getMaxCounter() : Long.MAX_VALUE;
-                boolean allowRewind = Boolean.TRUE.equals(sequence.isAllowRewind());
-
-                if (counter < maxCounter) {
-                    returnValue = counter;
-                    sequence.setCounter(counter + 1);
-                } else if (counter == maxCounter) {
-                    returnValue = counter;
-                    if (allowRewind) {
-                        sequence.setCounter(0L);
-                    } else {
-                        sequence.setCounter(counter + 1);       // will produce exception during next run
-                    }
-                } else {        // i.e. counter > maxCounter
-                    if (allowRewind) {          // shouldn't occur but...
-                        LOGGER.warn("Sequence {} overflown with allowRewind set to true. Rewinding.", oid);
-                        returnValue = 0;
-                        sequence.setCounter(1L);
-                    } else {
-                        // TODO some better exception...
-                        throw new SystemException("No (next) value available from sequence " + oid + ". Current counter = " + sequence.getCounter() + ", max value = " + sequence.getMaxCounter());
-                    }
+            Long firstValue = allocateValue(sequence, oid);
+            if (firstValue == null) {
+                // TODO some better exception...
+                throw new SystemException("No (next) value available from sequence " + oid + ". Current counter = " + sequence.getCounter() + ", max value = " + sequence.getMaxCounter());
+            }
+            returnValue = firstValue;
+
+            // Values reserved for subsequent requests on this node. We do not cross the end of the counter range
+            // within a block, so a rewinding sequence cannot produce the same value twice here.
+            int blockSize = sequence.getPreallocationBlockSize() != null ? sequence.getPreallocationBlockSize() : 1;
+            List<Long> reservedValues = new ArrayList<>();
+            while (reservedValues.size() < blockSize - 1 && (!sequence.getUnusedValues().isEmpty() || !isAtEndOfRange(sequence))) {
+                Long value = allocateValue(sequence, oid);
+                if (value == null) {
+                    break;
                 }
+                reservedValues.add(value);
             }
 
             if (LOGGER.isTraceEnabled()) {
@@ -104,11 +103,20 @@ public class SequenceHelper {
 
             objectUpdater.updateFullObject(rObject, prismObject);
             session.merge(rObject);
+            externalItemHelper.storeExternalItems(session, oid, rObject.getExternalItems(),
+                    ExternalItemHelper.hasExternalItems(prismObject));
 
             LOGGER.trace("Before commit...");
             session.getTransaction().commit();
             LOGGER.trace("Committed!");
 
+            if (!reservedValues.isEmpty()) {
+                LOGGER.debug("Reserved {} value(s) of sequence '{}' for this node: {}", reservedValues.size(), oid, reservedValues);
+                Deque<Long> preallocated = preallocatedValues.computeIfAbsent(oid, k -> new ArrayDeque<>());
+                synchronized (preallocated) {
+                    preallocated.addAll(reservedValues);
+                }
+            }
             return returnValue;
         } catch (ObjectNotFoundException ex) {
             baseHelper.rollbackTransaction(session, ex, result, true);
@@ -125,6 +133,76 @@ public class SequenceHelper {
         }
     }
 
+    /**
+     * Returns the next value of the sequence (from unused values or from the counter) and updates the sequence
+     * accordingly. Returns null if there is no value available.
+     */
+    private Long allocateValue(SequenceType sequence, String oid) {
+        if (!sequence.getUnusedValues().isEmpty()) {
+            return sequence.getUnusedValues().remove(0);
+        }
+        long counter = sequence.getCounter() != null ? sequence.getCounter() : 0L;
+        long maxCounter = sequence.getMaxCounter() != null ? sequence.getMaxCounter() : Long.MAX_VALUE;
+        boolean allowRewind = Boolean.TRUE.equals(sequence.isAllowRewind());
+
+        if (counter < maxCounter) {
+            sequence.setCounter(counter + 1);
+            return counter;
+        } else if (counter == maxCounter) {
+            if (allowRewind) {
+                sequence.setCounter(0L);
+            } else {
+                sequence.setCounter(counter + 1);       // will produce exception during next run
+            }
+            return counter;
+        } else {        // i.e. counter > maxCounter
+            if (allowRewind) {          // shouldn't occur but...
+                LOGGER.warn("Sequence {} overflown with allowRewind set to true. Rewinding.", oid);
+                sequence.setCounter(1L);
+                return 0L;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private boolean isAtEndOfRange(SequenceType sequence) {
+        long counter = sequence.getCounter() != null ? sequence.getCounter() : 0L;
+        long maxCounter = sequence.getMaxCounter() != null ? sequence.getMaxCounter() : Long.MAX_VALUE;
+        return counter >= maxCounter;
+    }
+
+    /**
+     * Returns a value of the sequence reserved by this node, or null if there is none.
+     */
+    public Long takePreallocatedValue(String oid) {
+        Deque<Long> preallocated = preallocatedValues.get(oid);
+        if (preallocated != null) {
+            synchronized (preallocated) {
+                return preallocated.pollFirst();
+            }
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Removes all values reserved by this node and returns them (indexed by sequence OID).
+     */
+    public Map<String, List<Long>> removePreallocatedValues() {
+        Map<String, List<Long>> rv = new HashMap<>();
+        for (Map.Entry<String, Deque<Long>> entry : preallocatedValues.entrySet()) {
+            Deque<Long> preallocated = entry.getValue();
+            synchronized (preallocated) {
+                if (!preallocated.isEmpty()) {
+                    rv.put(entry.getKey(), new ArrayList<>(preallocated));
+                    preallocated.clear();
+                }
+            }
+        }
+        return rv;
+    }
+
     public void returnUnusedValuesToSequenceAttempt(String oid, Collection<Long> unusedValues, OperationResult result) throws ObjectNotFoundException,
             SchemaException, SerializationRelatedException {
 
@@ -166,6 +244,8 @@ public class SequenceHelper {
 
             objectUpdater.updateFullObject(rObject, prismObject);
             session.merge(rObject);
+            externalItemHelper.storeExternalItems(session, oid, rObject.getExternalItems(),
+                    ExternalItemHelper.hasExternalItems(prismObject));
 
             LOGGER.trace("Before commit...");
             session.getTransaction().commit();
@@ -12,9 +12,9 @@ import com.evolveum.midpoint.repo.api.perf.OperationRecord;
 import com.evolveum.midpoint.repo.api.perf.PerformanceInformation;
 import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryPerformanceInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositorySlowQueryType;
 
-import java.util.ArrayList;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -22,11 +22,28 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class PerformanceInformationImpl implements PerformanceInformation {
 
+    /** Maximal number of distinct query statements tracked; other ones are aggregated under {@link #OTHER_QUERIES}. */
+    static final int MAX_QUERIES = 1000;
+    static final String OTHER_QUERIES = "(other queries)";
+
+    /** Maximal number of slow queries kept. */
+    static final int MAX_SLOW_QUERIES = 100;
+
     // operation kind -> performance information
     private final Map<String, OperationPerformanceInformation> operationMap = new ConcurrentHashMap<>();
 
+    // normalized query text -> performance information
+    private final Map<String, QueryPerformanceInformation> queryMap = new ConcurrentHashMap<>();
+
+    // most recent slow queries (the oldest first); guarded by itself
+    private final Deque<RepositorySlowQueryType> slowQueries = new ArrayDeque<>();
+
     public void clear() {
         operationMap.clear();
+        queryMap.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
     }
 
     @Override
@@ -38,6 +55,8 @@ public class PerformanceInformationImpl implements PerformanceInformation {
     public RepositoryPerformanceInformationType toRepositoryPerformanceInformationType() {
         RepositoryPerformanceInformationType rv = new RepositoryPerformanceInformationType();
         operationMap.forEach((kind, info) -> rv.getOperation().add(info.toRepositoryOperationPerformanceInformationType(kind)));
+        queryMap.forEach((text, info) -> rv.getQuery().add(info.toRepositoryQueryPerformanceInformationType(text)));
+        rv.getSlowQuery().addAll(getSlowQueries());
         return rv;
     }
 
@@ -52,6 +71,31 @@ public class PerformanceInformationImpl implements PerformanceInformation {
         operationMap.get(key).register(operation);
     }
 
+    public void registerQuery(String text, long timeNanos, int rows) {
+        String key = queryMap.size() < MAX_QUERIES || queryMap.containsKey(text) ? text : OTHER_QUERIES;
+        queryMap.computeIfAbsent(key, k -> new QueryPerformanceInformation())
+                .register(timeNanos, rows);
+    }
+
+    public void registerSlowQuery(RepositorySlowQueryType slowQuery) {
+        synchronized (slowQueries) {
+            if (slowQueries.size() >= MAX_SLOW_QUERIES) {
+                slowQueries.removeFirst();
+            }
+            slowQueries.addLast(slowQuery);
+        }
+    }
+
+    public Map<String, QueryPerformanceInformation> getQueryData() {
+        return queryMap;
+    }
+
+    public List<RepositorySlowQueryType> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
     @Override
     public String debugDump(int indent) {
         StringBuilder sb = new StringBuilder();
@@ -64,6 +108,24 @@ public class PerformanceInformationImpl implements PerformanceInformation {
                 DebugUtil.debugDumpWithLabelLn(sb, operation, info.shortDump(), indent+1);
             }
         }
+        if (!queryMap.isEmpty()) {
+            DebugUtil.debugDumpLabelLn(sb, "Queries (by total time)", indent);
+            List<Map.Entry<String, QueryPerformanceInformation>> queries = new ArrayList<>(queryMap.entrySet());
+            queries.sort(Comparator.comparingLong((Map.Entry<String, QueryPerformanceInformation> e) ->
+                    e.getValue().getTotalTimeNanos()).reversed());
+            for (Map.Entry<String, QueryPerformanceInformation> entry : queries) {
+                DebugUtil.debugDumpWithLabelLn(sb, entry.getKey(), entry.getValue().shortDump(), indent+1);
+            }
+        }
+        List<RepositorySlowQueryType> slowQueriesCopy = getSlowQueries();
+        if (!slowQueriesCopy.isEmpty()) {
+            DebugUtil.debugDumpLabelLn(sb, "Slow queries", indent);
+            for (RepositorySlowQueryType slowQuery : slowQueriesCopy) {
+                DebugUtil.debugDumpWithLabelLn(sb, slowQuery.getText(), slowQuery.getTime() + " ms, rows: "
+                        + slowQuery.getRowsReturned() + ", operation: " + slowQuery.getOperation()
+                        + ", thread: " + slowQuery.getThread(), indent+1);
+            }
+        }
         return sb.toString();
     }
 
@@ -91,6 +153,10 @@ public class PerformanceInformationImpl implements PerformanceInformation {
     public PerformanceInformation clone() {
         PerformanceInformationImpl clone = new PerformanceInformationImpl();
         operationMap.forEach((op, opPerfInfo) -> clone.operationMap.put(op, opPerfInfo.clone()));
+        queryMap.forEach((text, queryPerfInfo) -> clone.queryMap.put(text, queryPerfInfo.clone()));
+        synchronized (slowQueries) {
+            slowQueries.forEach(slowQuery -> clone.slowQueries.add(slowQuery.clone()));
+        }
         return clone;
     }
 }
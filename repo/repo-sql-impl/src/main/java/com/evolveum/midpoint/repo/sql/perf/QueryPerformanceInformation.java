@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import com.evolveum.midpoint.util.ShortDumpable;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryQueryPerformanceInformationType;
+
+/**
+ * Aggregated performance information for a single query statement.
+ */
+public class QueryPerformanceInformation implements ShortDumpable, Cloneable {
+
+    private int invocationCount;
+    private long totalTimeNanos;
+    private long maxTimeNanos;
+    private long rowsReturned;
+
+    public synchronized void register(long timeNanos, int rows) {
+        invocationCount++;
+        totalTimeNanos += timeNanos;
+        maxTimeNanos = Math.max(maxTimeNanos, timeNanos);
+        if (rows > 0) {
+            rowsReturned += rows;
+        }
+    }
+
+    public synchronized int getInvocationCount() {
+        return invocationCount;
+    }
+
+    public synchronized long getTotalTimeNanos() {
+        return totalTimeNanos;
+    }
+
+    public synchronized RepositoryQueryPerformanceInformationType toRepositoryQueryPerformanceInformationType(String text) {
+        RepositoryQueryPerformanceInformationType rv = new RepositoryQueryPerformanceInformationType();
+        rv.setText(text);
+        rv.setInvocationCount(invocationCount);
+        rv.setTotalTime(TimeUnit.NANOSECONDS.toMillis(totalTimeNanos));
+        rv.setMaxTime(TimeUnit.NANOSECONDS.toMillis(maxTimeNanos));
+        rv.setRowsReturned(rowsReturned);
+        return rv;
+    }
+
+    @Override
+    public synchronized void shortDump(StringBuilder sb) {
+        sb.append("count: ").append(invocationCount)
+                .append(", total time: ").append(TimeUnit.NANOSECONDS.toMillis(totalTimeNanos)).append(" ms")
+                .append(", max: ").append(TimeUnit.NANOSECONDS.toMillis(maxTimeNanos)).append(" ms")
+                .append(", rows: ").append(rowsReturned);
+    }
+
+    @Override
+    public synchronized QueryPerformanceInformation clone() {
+        QueryPerformanceInformation clone = new QueryPerformanceInformation();
+        clone.invocationCount = invocationCount;
+        clone.totalTimeNanos = totalTimeNanos;
+        clone.maxTimeNanos = maxTimeNanos;
+        clone.rowsReturned = rowsReturned;
+        return clone;
+    }
+}
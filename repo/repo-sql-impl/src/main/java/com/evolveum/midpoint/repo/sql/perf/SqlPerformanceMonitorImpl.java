@@ -7,6 +7,7 @@
 
 package com.evolveum.midpoint.repo.sql.perf;
 
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.repo.api.perf.OperationRecord;
 import com.evolveum.midpoint.repo.api.perf.PerformanceMonitor;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryFactory;
@@ -15,10 +16,12 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryStatisticsClassificationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryStatisticsCollectionStyleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositorySlowQueryType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RepositoryStatisticsReportingConfigurationType;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -38,6 +41,9 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
 
     private boolean perObjectType = false;
 
+    /** Queries running at least this number of milliseconds are recorded as slow ones. Zero means no recording. */
+    private volatile long slowQueryThreshold;
+
     private AtomicLong currentHandle = new AtomicLong();
 
     /**
@@ -52,6 +58,12 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
      */
     private final List<OperationRecord> finishedOperations = Collections.synchronizedList(new ArrayList<>());
 
+    /**
+     * Operation currently executed by the thread. Used to describe slow queries.
+     * It is used at levels > NONE (0).
+     */
+    private final ThreadLocal<OperationRecord> currentOperation = new ThreadLocal<>();
+
     /**
      * Aggregated operations performance information local to the thread.
      * It is used at levels >= STATISTICS (1).
@@ -64,6 +76,13 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
      */
     private final PerformanceInformationImpl globalPerformanceInformation = new PerformanceInformationImpl();
 
+    /**
+     * Number of queries whose interpretation was (or was not) found in the query shape cache.
+     * Only queries with shape supported by the cache are counted.
+     */
+    private final AtomicLong queryShapeCacheHits = new AtomicLong();
+    private final AtomicLong queryShapeCacheMisses = new AtomicLong();
+
     private SqlRepositoryFactory sqlRepositoryFactory;
 
     @Override
@@ -95,9 +114,12 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
         outstandingOperations.clear();
         finishedOperations.clear();
         globalPerformanceInformation.clear();
+        queryShapeCacheHits.set(0);
+        queryShapeCacheMisses.set(0);
         threadLocalPerformanceInformation.remove();         // at least for this thread; other threads have to do their own homework
         this.sqlRepositoryFactory = sqlRepositoryFactory;
         this.level = this.initialLevel = sqlRepositoryFactory.getSqlConfiguration().getPerformanceStatisticsLevel();
+        this.slowQueryThreshold = sqlRepositoryFactory.getSqlConfiguration().getSlowQueryThreshold();
 
         OperationsPerformanceMonitorImpl.INSTANCE.initialize();        // fixme put to better place
         LOGGER.info("SQL Performance Monitor initialized (level = {})", level);
@@ -116,6 +138,7 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
         }
         if (level >= LEVEL_GLOBAL_STATISTICS) {
             LOGGER.info("Global performance information:\n{}", globalPerformanceInformation.debugDump());
+            LOGGER.info("Query shape cache: {} hit(s), {} miss(es)", queryShapeCacheHits.get(), queryShapeCacheMisses.get());
         }
         OperationsPerformanceMonitorImpl.INSTANCE.shutdown();
     }
@@ -128,7 +151,9 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
                 LOGGER.error("Unfinished operation -- should never occur: {}", unfinishedOperation);
                 throw new IllegalStateException("Unfinished operation -- should never occur: " + unfinishedOperation);
             }
-            outstandingOperations.put(handle, new OperationRecord(kind, objectType, handle));
+            OperationRecord operation = new OperationRecord(kind, objectType, handle);
+            outstandingOperations.put(handle, operation);
+            currentOperation.set(operation);
             return handle;
         } else {
             return -1L;
@@ -161,6 +186,9 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
         operation.setTotalTime(System.currentTimeMillis() - operation.getStartTime());
         operation.setAttempts(attempt);
         outstandingOperations.remove(operation.getHandle());
+        if (currentOperation.get() == operation) {
+            currentOperation.remove();
+        }
         if (level >= LEVEL_DETAILS) {
             finishedOperations.add(operation);
         }
@@ -185,6 +213,81 @@ public class SqlPerformanceMonitorImpl implements PerformanceMonitor {
         }
     }
 
+    /**
+     * Whether {@link #registerQuery(String, long, int)} does anything, i.e. query statistics are collected
+     * or slow queries are captured.
+     */
+    public boolean isQueryRecordingEnabled() {
+        return level >= LEVEL_GLOBAL_STATISTICS || slowQueryThreshold > 0;
+    }
+
+    /**
+     * Registers execution of a query statement.
+     *
+     * @param text Normalized text of the statement (e.g. HQL with parameter placeholders).
+     * @param rows Number of rows returned, or negative value if not known.
+     */
+    public void registerQuery(String text, long timeNanos, int rows) {
+        if (level >= LEVEL_GLOBAL_STATISTICS) {
+            globalPerformanceInformation.registerQuery(text, timeNanos, rows);
+        }
+        PerformanceInformationImpl localInformation = level >= LEVEL_LOCAL_STATISTICS ?
+                threadLocalPerformanceInformation.get() : null;
+        if (localInformation != null) {
+            localInformation.registerQuery(text, timeNanos, rows);
+        }
+        long threshold = slowQueryThreshold;
+        if (threshold > 0 && timeNanos >= TimeUnit.MILLISECONDS.toNanos(threshold)) {
+            RepositorySlowQueryType slowQuery = createSlowQuery(text, timeNanos, rows);
+            LOGGER.debug("Slow query ({} ms, operation {}): {}", slowQuery.getTime(), slowQuery.getOperation(), text);
+            globalPerformanceInformation.registerSlowQuery(slowQuery);
+            if (localInformation != null) {
+                localInformation.registerSlowQuery(slowQuery.clone());
+            }
+        }
+    }
+
+    private RepositorySlowQueryType createSlowQuery(String text, long timeNanos, int rows) {
+        OperationRecord operation = currentOperation.get();
+        RepositorySlowQueryType slowQuery = new RepositorySlowQueryType();
+        slowQuery.setText(text);
+        slowQuery.setTime(TimeUnit.NANOSECONDS.toMillis(timeNanos));
+        if (rows >= 0) {
+            slowQuery.setRowsReturned((long) rows);
+        }
+        if (operation != null) {
+            slowQuery.setOperation(operation.getKind() + "." + operation.getObjectTypeName());
+        }
+        slowQuery.setThread(Thread.currentThread().getName());
+        slowQuery.setTimestamp(XmlTypeConverter.createXMLGregorianCalendar());
+        return slowQuery;
+    }
+
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    // to be used in tests
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    public void registerQueryShapeCacheHit() {
+        queryShapeCacheHits.incrementAndGet();
+    }
+
+    public void registerQueryShapeCacheMiss() {
+        queryShapeCacheMisses.incrementAndGet();
+    }
+
+    public long getQueryShapeCacheHits() {
+        return queryShapeCacheHits.get();
+    }
+
+    public long getQueryShapeCacheMisses() {
+        return queryShapeCacheMisses.get();
+    }
+
     // to be used in tests
     @SuppressWarnings("unused")     // maybe in future
     public List<OperationRecord> getFinishedOperations(String kind) {
@@ -23,4 +23,9 @@ public interface RQuery {
     Object uniqueResult() throws HibernateException;
 
     ScrollableResults scroll(ScrollMode mode) throws HibernateException;
+
+    /**
+     * Sets JDBC fetch size, i.e. the number of rows to be fetched from the database at once when scrolling through the result.
+     */
+    void setFetchSize(int fetchSize);
 }
@@ -41,6 +41,11 @@ public class RQueryImpl implements RQuery {
         return query.scroll(mode);
     }
 
+    @Override
+    public void setFetchSize(int fetchSize) {
+        query.setFetchSize(fetchSize);
+    }
+
     public org.hibernate.query.Query getQuery() {
         return query;
     }
@@ -48,6 +48,12 @@ public class InterpretationContext {
      */
     private JpaEntityDefinition rootEntityDefinition;
 
+    /**
+     * Shape of the query being interpreted, if the result is to be cached. Restrictions use it to record
+     * where their parameters come from.
+     */
+    private QueryShape queryShape;
+
     public InterpretationContext(QueryInterpreter2 interpreter, Class<? extends Containerable> type,
             PrismContext prismContext, RelationRegistry relationRegistry,
             ExtItemDictionary extItemDictionary, Session session) throws QueryException {
@@ -120,4 +126,12 @@ public class InterpretationContext {
     public ExtItemDictionary getExtItemDictionary() {
         return extItemDictionary;
     }
+
+    public QueryShape getQueryShape() {
+        return queryShape;
+    }
+
+    public void setQueryShape(QueryShape queryShape) {
+        this.queryShape = queryShape;
+    }
 }
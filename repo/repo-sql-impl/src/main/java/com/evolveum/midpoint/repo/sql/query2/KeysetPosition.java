@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Position in keyset ("seek") paging: values of the ordering items and OID of the last object returned so far.
+ * The next page consists of objects that follow this one in the (ordering items, OID) order.
+ *
+ * The start position (before the first page) has no last object.
+ */
+public class KeysetPosition {
+
+    private static final KeysetPosition START = new KeysetPosition(Collections.emptyList(), null);
+
+    /** Real values of the ordering items of the last object, in the order of ordering instructions. */
+    @NotNull private final List<?> lastValues;
+    private final String lastOid;
+
+    public KeysetPosition(@NotNull List<?> lastValues, String lastOid) {
+        this.lastValues = lastValues;
+        this.lastOid = lastOid;
+    }
+
+    public static KeysetPosition start() {
+        return START;
+    }
+
+    public boolean isStart() {
+        return lastOid == null;
+    }
+
+    @NotNull
+    public List<?> getLastValues() {
+        return lastValues;
+    }
+
+    public String getLastOid() {
+        return lastOid;
+    }
+
+    @Override
+    public String toString() {
+        return isStart() ? "start" : lastValues + ":" + lastOid;
+    }
+}
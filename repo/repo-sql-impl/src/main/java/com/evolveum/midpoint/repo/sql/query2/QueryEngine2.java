@@ -12,6 +12,7 @@ import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.data.common.dictionary.ExtItemDictionary;
+import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
 import com.evolveum.midpoint.repo.sql.query.RQuery;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
@@ -38,23 +39,60 @@ public class QueryEngine2 {
     private ExtItemDictionary extItemDictionary;
     private PrismContext prismContext;
     private final RelationRegistry relationRegistry;
+    private final SqlPerformanceMonitorImpl performanceMonitor;
+    private final QueryShapeCache shapeCache;
 
     public QueryEngine2(SqlRepositoryConfiguration config, ExtItemDictionary extItemDictionary, PrismContext prismContext,
             RelationRegistry relationRegistry) {
+        this(config, extItemDictionary, prismContext, relationRegistry, null, null);
+    }
+
+    /**
+     * @param performanceMonitor If not null, executions of the queries are recorded there.
+     * @param shapeCache If not null, interpretation of queries is looked up in (and stored to) this cache.
+     */
+    public QueryEngine2(SqlRepositoryConfiguration config, ExtItemDictionary extItemDictionary, PrismContext prismContext,
+            RelationRegistry relationRegistry, SqlPerformanceMonitorImpl performanceMonitor, QueryShapeCache shapeCache) {
         this.repoConfiguration = config;
         this.extItemDictionary = extItemDictionary;
         this.prismContext = prismContext;
         this.relationRegistry = relationRegistry;
+        this.performanceMonitor = performanceMonitor;
+        this.shapeCache = shapeCache;
     }
 
     public RQuery interpret(ObjectQuery query, Class<? extends Containerable> type,
             Collection<SelectorOptions<GetOperationOptions>> options,
             boolean countingObjects, Session session) throws QueryException {
+        return interpret(query, type, options, countingObjects, null, session);
+    }
+
+    /**
+     * @param keysetPosition If not null, the query is interpreted as a page of keyset paging, starting after this position.
+     */
+    public RQuery interpret(ObjectQuery query, Class<? extends Containerable> type,
+            Collection<SelectorOptions<GetOperationOptions>> options,
+            boolean countingObjects, KeysetPosition keysetPosition, Session session) throws QueryException {
 
         query = refineAssignmentHolderQuery(type, query);
 
+        QueryShape shape;
+        if (shapeCache != null && shapeCache.isEnabled() && keysetPosition == null) {
+            boolean distinct = GetOperationOptions.isDistinct(SelectorOptions.findRootOptions(options));
+            shape = QueryShape.create(query, type, countingObjects, distinct);
+        } else {
+            shape = null;
+        }
+        if (shape != null) {
+            Query cachedQuery = shapeCache.getQuery(shape, session);
+            if (cachedQuery != null) {
+                return new RQueryImpl(cachedQuery, null, performanceMonitor);
+            }
+        }
+
         QueryInterpreter2 interpreter = new QueryInterpreter2(repoConfiguration, extItemDictionary);
-        RootHibernateQuery hibernateQuery = interpreter.interpret(query, type, options, prismContext, relationRegistry, countingObjects, session);
+        RootHibernateQuery hibernateQuery = interpreter.interpret(query, type, options, prismContext, relationRegistry,
+                countingObjects, keysetPosition, shape, session);
         Query hqlQuery = hibernateQuery.getAsHqlQuery(session);
 
         if (LOGGER.isTraceEnabled()) {
@@ -62,7 +100,10 @@ public class QueryEngine2 {
                     DebugUtil.debugDump(query), options, hqlQuery.getQueryString());
 
         }
-        return new RQueryImpl(hqlQuery, hibernateQuery);
+        if (shape != null) {
+            shapeCache.learn(shape, hqlQuery.getQueryString(), hibernateQuery);
+        }
+        return new RQueryImpl(hqlQuery, hibernateQuery, performanceMonitor);
     }
 
     /** MID-5579
@@ -13,6 +13,8 @@ import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.*;
+import com.evolveum.midpoint.prism.query.builder.S_ConditionEntry;
+import com.evolveum.midpoint.prism.query.builder.S_MatchingRuleEntry;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.data.common.dictionary.ExtItemDictionary;
 import com.evolveum.midpoint.repo.sql.data.common.embedded.RPolyString;
@@ -20,8 +22,10 @@ import com.evolveum.midpoint.repo.sql.helpers.ObjectRetriever;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
 import com.evolveum.midpoint.repo.sql.query2.definition.*;
 import com.evolveum.midpoint.repo.sql.query2.hqm.CountProjectionElement;
+import com.evolveum.midpoint.repo.sql.query2.hqm.ParameterBinding;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
 import com.evolveum.midpoint.repo.sql.query2.hqm.condition.Condition;
+import com.evolveum.midpoint.repo.sql.query2.hqm.condition.SimpleComparisonCondition;
 import com.evolveum.midpoint.repo.sql.query2.matcher.DefaultMatcher;
 import com.evolveum.midpoint.repo.sql.query2.matcher.Matcher;
 import com.evolveum.midpoint.repo.sql.query2.matcher.PolyStringMatcher;
@@ -103,16 +107,35 @@ public class QueryInterpreter2 {
     public RootHibernateQuery interpret(ObjectQuery query, @NotNull Class<? extends Containerable> type,
             Collection<SelectorOptions<GetOperationOptions>> options, @NotNull PrismContext prismContext,
             @NotNull RelationRegistry relationRegistry, boolean countingObjects, @NotNull Session session) throws QueryException {
+        return interpret(query, type, options, prismContext, relationRegistry, countingObjects, null, session);
+    }
+
+    public RootHibernateQuery interpret(ObjectQuery query, @NotNull Class<? extends Containerable> type,
+            Collection<SelectorOptions<GetOperationOptions>> options, @NotNull PrismContext prismContext,
+            @NotNull RelationRegistry relationRegistry, boolean countingObjects, KeysetPosition keysetPosition,
+            @NotNull Session session) throws QueryException {
+        return interpret(query, type, options, prismContext, relationRegistry, countingObjects, keysetPosition, null, session);
+    }
+
+    /**
+     * @param queryShape Shape of the query, if parameters should record where their values come from
+     * (see {@link QueryShapeCache}).
+     */
+    public RootHibernateQuery interpret(ObjectQuery query, @NotNull Class<? extends Containerable> type,
+            Collection<SelectorOptions<GetOperationOptions>> options, @NotNull PrismContext prismContext,
+            @NotNull RelationRegistry relationRegistry, boolean countingObjects, KeysetPosition keysetPosition,
+            QueryShape queryShape, @NotNull Session session) throws QueryException {
         boolean distinctRequested = GetOperationOptions.isDistinct(SelectorOptions.findRootOptions(options));
         LOGGER.trace("Interpreting query for type '{}' (counting={}, distinctRequested={}), query:\n{}", type, countingObjects, distinctRequested, query);
 
         InterpretationContext context = new InterpretationContext(this, type, prismContext, relationRegistry, extItemDictionary, session);
+        context.setQueryShape(queryShape);
         interpretQueryFilter(context, query);
         String rootAlias = context.getHibernateQuery().getPrimaryEntityAlias();
         ResultStyle resultStyle = getResultStyle(context);
 
         if (countingObjects) {
-            interpretPagingAndSorting(context, query, true);
+            interpretPagingAndSorting(context, query, true, null);
             RootHibernateQuery hibernateQuery = context.getHibernateQuery();
             boolean distinct = distinctRequested && !hibernateQuery.isDistinctNotNecessary();
             hibernateQuery.addProjectionElement(new CountProjectionElement(resultStyle.getCountString(rootAlias), distinct));
@@ -137,7 +160,8 @@ public class QueryInterpreter2 {
             String subqueryText = "\n" + hibernateQuery.getAsHqlText(2, true);
             InterpretationContext wrapperContext = new InterpretationContext(this, type, prismContext, relationRegistry,
                     extItemDictionary, session);
-            interpretPagingAndSorting(wrapperContext, query, false);
+            wrapperContext.setQueryShape(queryShape);
+            interpretPagingAndSorting(wrapperContext, query, false, keysetPosition);
             RootHibernateQuery wrapperQuery = wrapperContext.getHibernateQuery();
             if (repoConfiguration.isUsingSQLServer() && resultStyle.getIdentifiers("").size() > 1) {
                 // using 'where exists' clause
@@ -167,7 +191,7 @@ public class QueryInterpreter2 {
             wrapperQuery.addParametersFrom(hibernateQuery.getParameters());
             return wrapperQuery;
         } else {
-            interpretPagingAndSorting(context, query, false);
+            interpretPagingAndSorting(context, query, false, keysetPosition);
             hibernateQuery.setResultTransformer(resultStyle.getResultTransformer());
             hibernateQuery.addProjectionElementsFor(resultStyle.getContentAttributes(rootAlias));
             if (distinct) {
@@ -292,14 +316,25 @@ public class QueryInterpreter2 {
         }
     }
 
-    private void interpretPagingAndSorting(InterpretationContext context, ObjectQuery query, boolean countingObjects) throws QueryException {
+    private void interpretPagingAndSorting(InterpretationContext context, ObjectQuery query, boolean countingObjects,
+            KeysetPosition keysetPosition) throws QueryException {
         RootHibernateQuery hibernateQuery = context.getHibernateQuery();
         String rootAlias = hibernateQuery.getPrimaryEntityAlias();
 
+        if (keysetPosition != null && !countingObjects) {
+            interpretKeysetPaging(context, query != null ? query.getPaging() : null, keysetPosition);
+            return;
+        }
+
         //noinspection StringEquality
         if (query != null && query.getPaging() != null && query.getPaging().hasCookie() && query.getPaging().getCookie() != ObjectRetriever.NULL_OID_MARKER) {
             ObjectPaging paging = query.getPaging();
-            Condition c = hibernateQuery.createSimpleComparisonCondition(rootAlias + ".oid", paging.getCookie(), ">");
+            SimpleComparisonCondition c = new SimpleComparisonCondition(hibernateQuery, rootAlias + ".oid",
+                    paging.getCookie(), ">", false);
+            Integer cookieSlot = context.getQueryShape() != null ? context.getQueryShape().getFirstSlot(paging) : null;
+            if (cookieSlot != null) {
+                c.setBinding(new ParameterBinding(cookieSlot, Collections::singletonList, 0));
+            }
             hibernateQuery.addCondition(c);
         }
 
@@ -313,18 +348,84 @@ public class QueryInterpreter2 {
     }
 
     private void updatePagingAndSortingByOid(RootHibernateQuery hibernateQuery, ObjectPaging paging) {
-        String rootAlias = hibernateQuery.getPrimaryEntityAlias();
         if (paging.getOrderBy() != null || paging.getDirection() != null || paging.getOffset() != null) {
             throw new IllegalArgumentException("orderBy, direction nor offset is allowed on ObjectPaging with cookie");
         }
+        addOidOrdering(hibernateQuery);
+        if (paging.getMaxSize() != null) {
+            hibernateQuery.setMaxResults(paging.getMaxSize());
+        }
+    }
+
+    private void addOidOrdering(RootHibernateQuery hibernateQuery) {
+        String rootAlias = hibernateQuery.getPrimaryEntityAlias();
         if (repoConfiguration.isUsingOracle()) {
             hibernateQuery.addOrdering("NLSSORT(" + rootAlias + ".oid, 'NLS_SORT=BINARY_AI')", OrderDirection.ASCENDING);
         } else {
             hibernateQuery.addOrdering(rootAlias + ".oid", OrderDirection.ASCENDING);
         }
-        if (paging.getMaxSize() != null) {
+    }
+
+    /**
+     * Keyset ("seek") paging: orders by the client-specified ordering and then by OID, and selects only objects that follow
+     * the last object of the previous page. For orderings k1..kn with last values v1..vn the condition is
+     *
+     *   k1 > v1 or (k1 = v1 and (k2 > v2 or (k2 = v2 and ... (kn = vn and oid > lastOid))))
+     *
+     * (with "<" for descending orderings). Row value comparison would be simpler but it is not supported by all
+     * the databases, nor by HQL. Comparisons are created as prism filters to reuse the conversion of values
+     * to their repository form.
+     */
+    private void interpretKeysetPaging(InterpretationContext context, ObjectPaging paging, KeysetPosition position)
+            throws QueryException {
+        if (paging != null && (paging.getOffset() != null || paging.hasGrouping() || paging.hasCookie())) {
+            throw new IllegalArgumentException("Neither offset, grouping nor cookie is allowed with keyset paging: " + paging);
+        }
+        List<? extends ObjectOrdering> orderings = paging != null && paging.hasOrdering()
+                ? paging.getOrderingInstructions() : Collections.emptyList();
+
+        RootHibernateQuery hibernateQuery = context.getHibernateQuery();
+        for (ObjectOrdering ordering : orderings) {
+            addOrdering(context, ordering);
+        }
+        addOidOrdering(hibernateQuery);
+        if (paging != null && paging.getMaxSize() != null) {
             hibernateQuery.setMaxResults(paging.getMaxSize());
         }
+
+        if (position.isStart()) {
+            return;
+        }
+        if (position.getLastValues().size() != orderings.size()) {
+            throw new IllegalArgumentException("Keyset position " + position + " does not match orderings " + orderings);
+        }
+        Condition condition = hibernateQuery.createSimpleComparisonCondition(
+                hibernateQuery.getPrimaryEntityAlias() + ".oid", position.getLastOid(), ">");
+        for (int i = orderings.size() - 1; i >= 0; i--) {
+            ObjectOrdering ordering = orderings.get(i);
+            Object value = position.getLastValues().get(i);
+            if (value == null) {
+                throw new QueryException("Keyset paging requires a value of ordering item " + ordering.getOrderBy()
+                        + ", but object " + position.getLastOid() + " has none");
+            }
+            boolean descending = ordering.getDirection() == OrderDirection.DESCENDING;
+            S_ConditionEntry following = orderingItem(context, ordering);
+            S_ConditionEntry equal = orderingItem(context, ordering);
+            Condition followingCondition = interpretFilter(context,
+                    orderingFilter(descending ? following.lt(value) : following.gt(value), value), null);
+            Condition equalCondition = interpretFilter(context, orderingFilter(equal.eq(value), value), null);
+            condition = hibernateQuery.createOr(followingCondition, hibernateQuery.createAnd(equalCondition, condition));
+        }
+        hibernateQuery.addCondition(condition);
+    }
+
+    private S_ConditionEntry orderingItem(InterpretationContext context, ObjectOrdering ordering) {
+        return context.getPrismContext().queryFor(context.getType()).item(ordering.getOrderBy());
+    }
+
+    private ObjectFilter orderingFilter(S_MatchingRuleEntry entry, Object value) {
+        // ordering by polystring uses the "orig" part, see addOrdering
+        return value instanceof PolyString ? entry.matchingOrig().buildFilter() : entry.buildFilter();
     }
 
     private void updatePagingAndSorting(InterpretationContext context, ObjectPaging paging) throws QueryException {
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2;
+
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.*;
+import com.evolveum.midpoint.repo.sql.helpers.ObjectRetriever;
+
+/**
+ * "Shape" of a query: the query with all the values stripped off. Queries of the same shape are interpreted
+ * to the same HQL text; they differ only in parameter values.
+ *
+ * The key describes everything that influences the interpretation except for the values: filter structure,
+ * item paths and definitions, matching rules, paging, and also classes of the values (e.g. a String vs a PolyString
+ * compared with a PolyString property, or null vs non-null value, are interpreted differently).
+ * Values themselves are collected in depth-first order, one "slot" for each. The interpreter finds the slots
+ * of a filter (or paging cookie) by {@link #getFirstSlot(Object)} and records them in the parameters it derives
+ * from them, see {@link com.evolveum.midpoint.repo.sql.query2.hqm.ParameterBinding}.
+ */
+public class QueryShape {
+
+    @NotNull private final String key;
+    @NotNull private final List<Object> values;
+    @NotNull private final Map<Object, Integer> firstSlots;
+
+    private QueryShape(@NotNull String key, @NotNull List<Object> values, @NotNull Map<Object, Integer> firstSlots) {
+        this.key = key;
+        this.values = values;
+        this.firstSlots = firstSlots;
+    }
+
+    /**
+     * @return null if the query contains a construct that is not supported by the shape cache (e.g. full text filter
+     * or an expression)
+     */
+    static QueryShape create(ObjectQuery query, @NotNull Class<?> type, boolean countingObjects, boolean distinct) {
+        Builder builder = new Builder();
+        builder.sb.append(type.getName())
+                .append(countingObjects ? "|count" : "|select")
+                .append(distinct ? "|distinct" : "");
+        if (query != null) {
+            if (!builder.appendFilter(query.getFilter()) || !builder.appendPaging(query.getPaging())) {
+                return null;
+            }
+        }
+        return new QueryShape(builder.sb.toString(), Collections.unmodifiableList(builder.values), builder.firstSlots);
+    }
+
+    @NotNull
+    String getKey() {
+        return key;
+    }
+
+    @NotNull
+    List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * @param source Value filter or paging (for the cookie) of the query this shape was created from.
+     * @return Index of the first slot holding values of the source, or null if the source has no values in this shape.
+     */
+    public Integer getFirstSlot(Object source) {
+        return firstSlots.get(source);
+    }
+
+    @Override
+    public String toString() {
+        return key + " with " + values;
+    }
+
+    private static class Builder {
+
+        private final StringBuilder sb = new StringBuilder();
+        private final List<Object> values = new ArrayList<>();
+        private final Map<Object, Integer> firstSlots = new IdentityHashMap<>();
+
+        private boolean appendFilter(ObjectFilter filter) {
+            if (filter == null) {
+                sb.append("-");
+                return true;
+            }
+            sb.append(filter.getClass().getSimpleName()).append('(');
+            if (filter instanceof NaryLogicalFilter) {
+                for (ObjectFilter condition : ((NaryLogicalFilter) filter).getConditions()) {
+                    if (!appendFilter(condition)) {
+                        return false;
+                    }
+                    sb.append(',');
+                }
+            } else if (filter instanceof NotFilter) {
+                if (!appendFilter(((NotFilter) filter).getFilter())) {
+                    return false;
+                }
+            } else if (filter instanceof ValueFilter) {
+                if (!appendValueFilter((ValueFilter<?, ?>) filter)) {
+                    return false;
+                }
+            } else if (filter instanceof InOidFilter) {
+                InOidFilter inOidFilter = (InOidFilter) filter;
+                if (inOidFilter.getExpression() != null) {
+                    return false;
+                }
+                sb.append(inOidFilter.isConsiderOwner()).append(';');
+                if (inOidFilter.getOids() != null) {
+                    inOidFilter.getOids().forEach(this::appendValue);
+                }
+            } else if (filter instanceof OrgFilter) {
+                OrgFilter orgFilter = (OrgFilter) filter;
+                sb.append(orgFilter.getScope()).append(';').append(orgFilter.isRoot()).append(';');
+                PrismReferenceValue orgRef = orgFilter.getOrgRef();
+                if (orgRef != null) {
+                    appendValue(orgRef.getOid());
+                    appendValue(orgRef.getRelation());
+                }
+            } else if (filter instanceof TypeFilter) {
+                TypeFilter typeFilter = (TypeFilter) filter;
+                sb.append(typeFilter.getType()).append(';');
+                if (!appendFilter(typeFilter.getFilter())) {
+                    return false;
+                }
+            } else if (filter instanceof ExistsFilter) {
+                ExistsFilter existsFilter = (ExistsFilter) filter;
+                appendPath(existsFilter.getFullPath());
+                appendDefinition(existsFilter.getDefinition());
+                if (!appendFilter(existsFilter.getFilter())) {
+                    return false;
+                }
+            } else if (!(filter instanceof AllFilter) && !(filter instanceof NoneFilter) && !(filter instanceof UndefinedFilter)) {
+                return false;
+            }
+            sb.append(')');
+            return true;
+        }
+
+        private boolean appendValueFilter(ValueFilter<?, ?> filter) {
+            if (filter.getExpression() != null) {
+                return false;
+            }
+            appendPath(filter.getFullPath());
+            appendDefinition(filter.getDefinition());
+            sb.append(filter.getMatchingRule()).append(';');
+            appendPath(filter.getRightHandSidePath());
+            appendDefinition(filter.getRightHandSideDefinition());
+            if (filter instanceof ComparativeFilter) {
+                sb.append(((ComparativeFilter<?>) filter).isEquals()).append(';');
+            } else if (filter instanceof SubstringFilter) {
+                SubstringFilter<?> substringFilter = (SubstringFilter<?>) filter;
+                sb.append(substringFilter.isAnchorStart()).append(';').append(substringFilter.isAnchorEnd()).append(';');
+            } else if (filter instanceof RefFilter) {
+                RefFilter refFilter = (RefFilter) filter;
+                sb.append(refFilter.isOidNullAsAny()).append(';')
+                        .append(refFilter.isTargetTypeNullAsAny()).append(';')
+                        .append(refFilter.isRelationNullAsAny()).append(';');
+            }
+            List<? extends PrismValue> filterValues = filter.getValues();
+            if (filterValues == null) {
+                sb.append("novalues");
+                return true;
+            }
+            firstSlots.put(filter, values.size());
+            for (PrismValue value : filterValues) {
+                if (value instanceof PrismPropertyValue) {
+                    appendValue(((PrismPropertyValue<?>) value).getValue());
+                } else if (value instanceof PrismReferenceValue) {
+                    PrismReferenceValue referenceValue = (PrismReferenceValue) value;
+                    appendValue(referenceValue.getOid());
+                    appendValue(referenceValue.getRelation());
+                    appendValue(referenceValue.getTargetType());
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean appendPaging(ObjectPaging paging) {
+            if (paging == null) {
+                return true;
+            }
+            sb.append("|paging(").append(paging.getOffset()).append(';').append(paging.getMaxSize()).append(';');
+            for (ObjectOrdering ordering : paging.getOrderingInstructions()) {
+                appendPath(ordering.getOrderBy());
+                sb.append(ordering.getDirection()).append(';');
+            }
+            if (paging.getGroupingInstructions() != null) {
+                for (ObjectGrouping grouping : paging.getGroupingInstructions()) {
+                    appendPath(grouping.getGroupBy());
+                }
+            }
+            //noinspection StringEquality
+            if (paging.getCookie() == ObjectRetriever.NULL_OID_MARKER) {
+                sb.append("cookie=start");          // interpreted differently from a real cookie
+            } else if (paging.hasCookie()) {
+                sb.append("cookie=");
+                firstSlots.put(paging, values.size());
+                appendValue(paging.getCookie());
+            }
+            sb.append(')');
+            return true;
+        }
+
+        private void appendPath(ItemPath path) {
+            // segments are printed with namespaces
+            sb.append(path != null ? path.getSegments() : "-").append(';');
+        }
+
+        private void appendDefinition(ItemDefinition<?> definition) {
+            if (definition != null) {
+                sb.append(definition.getItemName()).append(':').append(definition.getTypeName())
+                        .append(':').append(definition.isDynamic())
+                        .append(':').append(definition.getMaxOccurs());
+                if (definition instanceof PrismPropertyDefinition) {
+                    sb.append(':').append(((PrismPropertyDefinition<?>) definition).isIndexed());
+                }
+            }
+            sb.append(';');
+        }
+
+        private void appendValue(Object value) {
+            sb.append('?').append(value != null ? value.getClass().getName() : "null").append(';');
+            values.add(value);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2;
+
+import java.util.*;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.hibernate.transform.ResultTransformer;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.evolveum.midpoint.repo.sql.helpers.BaseHelper;
+import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
+import com.evolveum.midpoint.repo.sql.query2.hqm.ParameterBinding;
+import com.evolveum.midpoint.repo.sql.query2.hqm.QueryParameterValue;
+import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Cache of interpreted queries, keyed by {@link QueryShape}. Queries of the same shape (typically correlation
+ * or assignment target searches executed for each object processed) are interpreted only once; later ones get
+ * the HQL text from the cache, with parameter values derived from the values in the query.
+ * Hibernate then finds the query plan in its own plan cache, because the HQL text is the same.
+ *
+ * The interpreter records how each parameter is derived from the values of the query ({@link ParameterBinding}).
+ * Currently this is done for comparisons of non-extension properties with constants and for the paging cookie.
+ * An interpretation is cached only if each (non-null) value of the query is bound to parameters this way;
+ * so e.g. queries with reference, org or extension item filters are always interpreted.
+ */
+@Component
+public class QueryShapeCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(QueryShapeCache.class);
+
+    @Autowired private BaseHelper baseHelper;
+
+    private final Map<String, CachedInterpretation> interpretations = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedInterpretation>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedInterpretation> eldest) {
+                    return size() > baseHelper.getConfiguration().getQueryShapeCacheSize();
+                }
+            });
+
+    boolean isEnabled() {
+        return baseHelper.getConfiguration().getQueryShapeCacheSize() > 0;
+    }
+
+    /**
+     * @return HQL query for given shape or null if it cannot be created from the cache
+     */
+    Query getQuery(QueryShape shape, Session session) {
+        CachedInterpretation interpretation = interpretations.get(shape.getKey());
+        Map<String, QueryParameterValue> parameters = interpretation != null ? interpretation.bind(shape.getValues()) : null;
+        SqlPerformanceMonitorImpl pm = baseHelper.getPerformanceMonitor();
+        if (parameters == null) {
+            pm.registerQueryShapeCacheMiss();
+            return null;
+        }
+        pm.registerQueryShapeCacheHit();
+        LOGGER.trace("Using cached interpretation of {}", shape);
+        return RootHibernateQuery.createHqlQuery(session, interpretation.hqlText, parameters, interpretation.maxResults,
+                interpretation.firstResult, interpretation.resultTransformer);
+    }
+
+    /**
+     * Remembers the result of interpretation of a query of given shape, if all its values are bound to parameters.
+     */
+    void learn(QueryShape shape, String hqlText, RootHibernateQuery hibernateQuery) {
+        Map<String, QueryParameterValue> parameters = hibernateQuery.getParameters();
+        BitSet boundSlots = new BitSet();
+        for (QueryParameterValue parameter : parameters.values()) {
+            if (parameter.getBinding() != null) {
+                boundSlots.set(parameter.getBinding().getSlot());
+            }
+        }
+        List<Object> values = shape.getValues();
+        for (int slot = 0; slot < values.size(); slot++) {
+            if (values.get(slot) != null && !boundSlots.get(slot)) {
+                LOGGER.trace("Interpretation of {} is not cached: value in slot {} is not bound to a parameter", shape, slot);
+                return;
+            }
+        }
+        interpretations.put(shape.getKey(), new CachedInterpretation(hqlText, hibernateQuery, parameters));
+    }
+
+    public void clear() {
+        interpretations.clear();
+    }
+
+    private static class CachedInterpretation {
+
+        @NotNull private final String hqlText;
+        private final Integer maxResults;
+        private final Integer firstResult;
+        private final ResultTransformer resultTransformer;
+        @NotNull private final Map<String, QueryParameterValue> parameters;
+
+        private CachedInterpretation(@NotNull String hqlText, RootHibernateQuery hibernateQuery,
+                @NotNull Map<String, QueryParameterValue> parameters) {
+            this.hqlText = hqlText;
+            this.maxResults = hibernateQuery.getMaxResults();
+            this.firstResult = hibernateQuery.getFirstResult();
+            this.resultTransformer = hibernateQuery.getResultTransformer();
+            this.parameters = new HashMap<>(parameters);
+        }
+
+        /**
+         * @return parameters for given values, or null if they cannot be derived
+         */
+        private Map<String, QueryParameterValue> bind(List<Object> values) {
+            Map<ParameterBinding.Conversion, List<Object>> converted = new IdentityHashMap<>();
+            Map<String, QueryParameterValue> rv = new HashMap<>();
+            for (Map.Entry<String, QueryParameterValue> entry : parameters.entrySet()) {
+                QueryParameterValue parameter = entry.getValue();
+                ParameterBinding binding = parameter.getBinding();
+                if (binding == null) {
+                    rv.put(entry.getKey(), parameter);
+                    continue;
+                }
+                List<Object> parameterValues = converted.get(binding.getConversion());
+                if (parameterValues == null) {
+                    parameterValues = binding.getConversion().convert(values.get(binding.getSlot()));
+                    if (parameterValues == null) {
+                        return null;
+                    }
+                    converted.put(binding.getConversion(), parameterValues);
+                }
+                rv.put(entry.getKey(), new QueryParameterValue(parameterValues.get(binding.getIndex()),
+                        parameter.getType(), binding));
+            }
+            return rv;
+        }
+    }
+}
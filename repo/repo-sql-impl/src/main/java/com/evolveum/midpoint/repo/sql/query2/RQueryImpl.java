@@ -7,6 +7,7 @@
 
 package com.evolveum.midpoint.repo.sql.query2;
 
+import com.evolveum.midpoint.repo.sql.perf.SqlPerformanceMonitorImpl;
 import com.evolveum.midpoint.repo.sql.query.RQuery;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
 import org.apache.commons.lang.Validate;
@@ -16,34 +17,77 @@ import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * @author lazyman
  */
 public class RQueryImpl implements RQuery {
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     private RootHibernateQuery querySource;        // only for diagnostic purposes
     private org.hibernate.query.Query query;
+    private SqlPerformanceMonitorImpl performanceMonitor;       // if null, executions are not recorded
+    private String normalizedText;                              // computed when the first execution is recorded
 
     public RQueryImpl(Query query, RootHibernateQuery querySource) {
+        this(query, querySource, null);
+    }
+
+    public RQueryImpl(Query query, RootHibernateQuery querySource, SqlPerformanceMonitorImpl performanceMonitor) {
         Validate.notNull(query, "Query must not be null.");
         this.query = query;
         this.querySource = querySource;
+        this.performanceMonitor = performanceMonitor;
     }
 
     @Override
     public List list() throws HibernateException {
-        return query.list();
+        long start = System.nanoTime();
+        List list = query.list();
+        registerExecution(start, list.size());
+        return list;
     }
 
     @Override
     public Object uniqueResult() throws HibernateException {
-        return query.uniqueResult();
+        long start = System.nanoTime();
+        Object result = query.uniqueResult();
+        registerExecution(start, result != null ? 1 : 0);
+        return result;
     }
 
+    /**
+     * Only the time needed to open the cursor is recorded here; rows are fetched later.
+     */
     @Override
     public ScrollableResults scroll(ScrollMode mode) throws HibernateException {
-        return query.scroll(mode);
+        long start = System.nanoTime();
+        ScrollableResults results = query.scroll(mode);
+        registerExecution(start, -1);
+        return results;
+    }
+
+    private void registerExecution(long start, int rows) {
+        if (performanceMonitor != null && performanceMonitor.isQueryRecordingEnabled()) {
+            if (normalizedText == null) {
+                normalizedText = normalize(query.getQueryString());
+            }
+            performanceMonitor.registerQuery(normalizedText, System.nanoTime() - start, rows);
+        }
+    }
+
+    /**
+     * HQL texts differ only in parameter values' placeholders, so it is sufficient to collapse the whitespace.
+     */
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(text).replaceAll(" ").trim();
+    }
+
+    @Override
+    public void setFetchSize(int fetchSize) {
+        query.setFetchSize(fetchSize);
     }
 
     public org.hibernate.query.Query getQuery() {
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2.hqm;
+
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records where the value of a query parameter comes from: the value in given "slot" of the original midPoint query
+ * (see {@link com.evolveum.midpoint.repo.sql.query2.QueryShape}), converted by the same code that the interpreter used.
+ * It is set by the restrictions that know how they derive their parameters; parameters without the binding are
+ * constants for the given query shape.
+ *
+ * This allows re-binding cached HQL text to values of other queries of the same shape.
+ */
+public class ParameterBinding {
+
+    /**
+     * Conversion of a value of a slot to values of all the parameters derived from it.
+     */
+    @FunctionalInterface
+    public interface Conversion {
+
+        /**
+         * @return Values of the parameters in the order given by {@link ParameterBinding#getIndex()},
+         * or null if they cannot be derived for this value (the query has to be interpreted then).
+         */
+        List<Object> convert(Object slotValue);
+    }
+
+    private final int slot;
+    @NotNull private final Conversion conversion;
+    private final int index;
+
+    public ParameterBinding(int slot, @NotNull Conversion conversion, int index) {
+        this.slot = slot;
+        this.conversion = conversion;
+        this.index = index;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @NotNull
+    public Conversion getConversion() {
+        return conversion;
+    }
+
+    /**
+     * Index of this parameter among the values returned by the conversion.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "slot " + slot + "[" + index + "]";
+    }
+}
@@ -16,12 +16,19 @@ public class QueryParameterValue {
 
     private Object value;
     private Type type;
+    private ParameterBinding binding;           // null if the value is constant for the query shape
 
     public QueryParameterValue(Object value, Type type) {
         this.value = value;
         this.type = type;
     }
 
+    public QueryParameterValue(Object value, Type type, ParameterBinding binding) {
+        this.value = value;
+        this.type = type;
+        this.binding = binding;
+    }
+
     public QueryParameterValue(Object value) {
         this.value = value;
     }
@@ -34,6 +41,10 @@ public class QueryParameterValue {
         return value;
     }
 
+    public ParameterBinding getBinding() {
+        return binding;
+    }
+
     public String debugDump() {
         StringBuilder sb = new StringBuilder();
         sb.append(value);
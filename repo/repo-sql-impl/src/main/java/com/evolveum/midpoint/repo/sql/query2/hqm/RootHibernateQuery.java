@@ -48,8 +48,15 @@ public class RootHibernateQuery extends HibernateQuery {
     }
 
     public String addParameter(String prefix, Object value, Type type) {
+        return addParameter(prefix, value, type, null);
+    }
+
+    /**
+     * @param binding Where the value comes from, if it is derived from a value in the midPoint query.
+     */
+    public String addParameter(String prefix, Object value, Type type, ParameterBinding binding) {
         String name = findFreeName(prefix);
-        parameters.put(name, new QueryParameterValue(value, type));
+        parameters.put(name, new QueryParameterValue(value, type, binding));
         return name;
     }
 
@@ -84,6 +91,15 @@ public class RootHibernateQuery extends HibernateQuery {
     public Query getAsHqlQuery(Session session) {
         String text = getAsHqlText(0, distinct);
         LOGGER.trace("HQL text generated:\n{}", text);
+        return createHqlQuery(session, text, parameters, maxResults, firstResult, resultTransformer);
+    }
+
+    /**
+     * Creates HQL query from already generated text. Used also for queries whose text and parameters were obtained
+     * without interpretation, see {@link com.evolveum.midpoint.repo.sql.query2.QueryShapeCache}.
+     */
+    public static Query createHqlQuery(Session session, String text, Map<String, QueryParameterValue> parameters,
+            Integer maxResults, Integer firstResult, ResultTransformer resultTransformer) {
         Query query = session.createQuery(text);
         for (Map.Entry<String,QueryParameterValue> parameter : parameters.entrySet()) {
             String name = parameter.getKey();
@@ -121,14 +137,26 @@ public class RootHibernateQuery extends HibernateQuery {
         return this;
     }
 
+    public Integer getMaxResults() {
+        return maxResults;
+    }
+
     public void setMaxResults(Integer size) {
         this.maxResults = size;
     }
 
+    public Integer getFirstResult() {
+        return firstResult;
+    }
+
     public void setFirstResult(Integer offset) {
         this.firstResult = offset;
     }
 
+    public ResultTransformer getResultTransformer() {
+        return resultTransformer;
+    }
+
     public void setResultTransformer(ResultTransformer resultTransformer) {
         this.resultTransformer = resultTransformer;
     }
@@ -36,6 +36,10 @@ public abstract class JunctionCondition extends Condition {
         components.add(condition);
     }
 
+    public List<Condition> getComponents() {
+        return components;
+    }
+
     public void dumpToHql(StringBuilder sb, int indent, String logicalOperation) {
         if (components.isEmpty()) {
             // probably some programming bug
@@ -24,6 +24,10 @@ public class NotCondition extends Condition {
         this.child = child;
     }
 
+    public Condition getChild() {
+        return child;
+    }
+
     @Override
     public void dumpToHql(StringBuilder sb, int indent) {
         HibernateQuery.indent(sb, indent);
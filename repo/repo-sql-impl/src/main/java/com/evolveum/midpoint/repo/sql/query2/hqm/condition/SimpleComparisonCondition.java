@@ -10,6 +10,7 @@ package com.evolveum.midpoint.repo.sql.query2.hqm.condition;
 import java.util.Objects;
 
 import com.evolveum.midpoint.repo.sql.query2.hqm.HibernateQuery;
+import com.evolveum.midpoint.repo.sql.query2.hqm.ParameterBinding;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
 
 import org.apache.commons.lang.Validate;
@@ -22,6 +23,7 @@ public class SimpleComparisonCondition extends PropertyCondition {
     private Object value;
     private String operator;
     private boolean ignoreCase;
+    private ParameterBinding binding;
 
     public SimpleComparisonCondition(RootHibernateQuery rootHibernateQuery, String propertyPath, Object value, String operator, boolean ignoreCase) {
         super(rootHibernateQuery, propertyPath);
@@ -36,23 +38,27 @@ public class SimpleComparisonCondition extends PropertyCondition {
     public void dumpToHql(StringBuilder sb, int indent) {
         HibernateQuery.indent(sb, indent);
 
-        String finalPropertyPath;
-        Object finalPropertyValue;
-        if (ignoreCase) {
-            finalPropertyPath = "lower(" + propertyPath + ")";
-            if (value instanceof String) {
-                finalPropertyValue = ((String) value).toLowerCase();
-            } else {
-                throw new IllegalStateException("Non-string values cannot be compared with ignoreCase option: " + value);
-            }
+        String finalPropertyPath = ignoreCase ? "lower(" + propertyPath + ")" : propertyPath;
+        String parameterNamePrefix = createParameterName(propertyPath);
+        String parameterName = rootHibernateQuery.addParameter(parameterNamePrefix, getParameterValue(), null, binding);
+        sb.append(finalPropertyPath).append(" ").append(operator).append(" :").append(parameterName);
+    }
+
+    /**
+     * Value of the query parameter: the value being compared, lower-cased if needed.
+     */
+    public Object getParameterValue() {
+        if (!ignoreCase) {
+            return value;
+        } else if (value instanceof String) {
+            return ((String) value).toLowerCase();
         } else {
-            finalPropertyPath = propertyPath;
-            finalPropertyValue = value;
+            throw new IllegalStateException("Non-string values cannot be compared with ignoreCase option: " + value);
         }
+    }
 
-        String parameterNamePrefix = createParameterName(propertyPath);
-        String parameterName = rootHibernateQuery.addParameter(parameterNamePrefix, finalPropertyValue);
-        sb.append(finalPropertyPath).append(" ").append(operator).append(" :").append(parameterName);
+    public void setBinding(ParameterBinding binding) {
+        this.binding = binding;
     }
 
     @Override
@@ -7,6 +7,7 @@
 
 package com.evolveum.midpoint.repo.sql.query2.restriction;
 
+import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.ComparativeFilter;
 import com.evolveum.midpoint.prism.query.EqualFilter;
@@ -14,14 +15,16 @@ import com.evolveum.midpoint.prism.query.PropertyValueFilter;
 import com.evolveum.midpoint.prism.query.ValueFilter;
 import com.evolveum.midpoint.repo.sql.data.common.enums.SchemaEnum;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
-import com.evolveum.midpoint.repo.sql.query2.hqm.condition.ConstantCondition;
+import com.evolveum.midpoint.repo.sql.query2.QueryShape;
+import com.evolveum.midpoint.repo.sql.query2.hqm.ParameterBinding;
+import com.evolveum.midpoint.repo.sql.query2.hqm.condition.*;
+import com.evolveum.midpoint.repo.sql.query2.matcher.Matcher;
 import com.evolveum.midpoint.repo.sql.query2.resolution.HqlDataInstance;
 import com.evolveum.midpoint.repo.sql.query2.InterpretationContext;
 import com.evolveum.midpoint.repo.sql.query2.definition.JpaEntityDefinition;
 import com.evolveum.midpoint.repo.sql.query2.definition.JpaPropertyDefinition;
 import com.evolveum.midpoint.repo.sql.query2.definition.JpaLinkDefinition;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
-import com.evolveum.midpoint.repo.sql.query2.hqm.condition.Condition;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
@@ -32,6 +35,8 @@ import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.Validate;
 
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author lazyman
@@ -68,6 +73,7 @@ public class PropertyRestriction extends ItemValueRestriction<PropertyValueFilte
                 return new ConstantCondition(context.getHibernateQuery(), false);
             } else {
                 Condition condition = createPropertyVsConstantCondition(propertyValuePath, value, filter);
+                bindParameters(condition, propertyValuePath, value);
                 return addIsNotNullIfNecessary(condition, propertyValuePath);
             }
         }
@@ -104,18 +110,98 @@ public class PropertyRestriction extends ItemValueRestriction<PropertyValueFilte
         }
     }
 
-    private Object getValueFromFilter(ValueFilter filter) throws QueryException {
+    /**
+     * Records that parameters of the condition are derived from the filter value, so that the interpretation
+     * can be cached and re-bound to values of other queries of the same shape (see QueryShapeCache).
+     * The parameter values for another filter value are computed by repeating the conversion and the matching
+     * on a scratch query.
+     */
+    private void bindParameters(Condition condition, String hqlPropertyPath, Object repoValue) throws QueryException {
+        QueryShape shape = context.getQueryShape();
+        Integer slot = shape != null ? shape.getFirstSlot(filter) : null;
+        List<SimpleComparisonCondition> comparisons = new ArrayList<>();
+        if (slot == null || repoValue == null || !collectComparisons(condition, comparisons)) {
+            return;
+        }
+        ParameterBinding.Conversion conversion = createConversion(linkDefinition.getTargetDefinition(),
+                context.getPrismContext(), context.getRootEntityDefinition(), findOperationForFilter(filter),
+                hqlPropertyPath, context.getInterpreter().findMatcher(repoValue),
+                filter.getMatchingRule() != null ? filter.getMatchingRule().getLocalPart() : null,
+                repoValue.getClass(), comparisons.size());
+        for (int i = 0; i < comparisons.size(); i++) {
+            comparisons.get(i).setBinding(new ParameterBinding(slot, conversion, i));
+        }
+    }
+
+    // Must not reference the restriction nor the interpretation context, as it is kept in the cache.
+    private static ParameterBinding.Conversion createConversion(JpaPropertyDefinition propertyDefinition,
+            PrismContext prismContext, JpaEntityDefinition entityDefinition, ItemRestrictionOperation operation,
+            String hqlPropertyPath, Matcher<?> matcher, String matchingRule, Class<?> repoValueClass, int parameterCount) {
+        return slotValue -> {
+            try {
+                Object repoValue = toRepoValue(slotValue, propertyDefinition, prismContext, null);
+                if (repoValue == null || repoValue.getClass() != repoValueClass) {
+                    return null;
+                }
+                //noinspection unchecked
+                Condition condition = ((Matcher<Object>) matcher).match(new RootHibernateQuery(entityDefinition),
+                        operation, hqlPropertyPath, repoValue, matchingRule);
+                List<SimpleComparisonCondition> comparisons = new ArrayList<>();
+                if (!collectComparisons(condition, comparisons) || comparisons.size() != parameterCount) {
+                    return null;
+                }
+                List<Object> parameterValues = new ArrayList<>(parameterCount);
+                for (SimpleComparisonCondition comparison : comparisons) {
+                    parameterValues.add(comparison.getParameterValue());
+                }
+                return parameterValues;
+            } catch (QueryException e) {
+                LOGGER.trace("Couldn't convert {} for {}: {}", slotValue, hqlPropertyPath, e.getMessage(), e);
+                return null;
+            }
+        };
+    }
 
-        JpaPropertyDefinition def = linkDefinition.getTargetDefinition();
+    /**
+     * Collects comparisons (i.e. conditions with parameters) in the order they are dumped to HQL.
+     *
+     * @return false if there is a condition of unexpected type (so the parameters cannot be bound)
+     */
+    private static boolean collectComparisons(Condition condition, List<SimpleComparisonCondition> comparisons) {
+        if (condition instanceof SimpleComparisonCondition) {
+            comparisons.add((SimpleComparisonCondition) condition);
+            return true;
+        } else if (condition instanceof JunctionCondition) {
+            for (Condition component : ((JunctionCondition) condition).getComponents()) {
+                if (!collectComparisons(component, comparisons)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (condition instanceof NotCondition) {
+            return collectComparisons(((NotCondition) condition).getChild(), comparisons);
+        } else {
+            return condition instanceof IsNullCondition || condition instanceof IsNotNullCondition
+                    || condition instanceof ConstantCondition;
+        }
+    }
 
+    private Object getValueFromFilter(ValueFilter filter) throws QueryException {
         Object value;
         if (filter instanceof PropertyValueFilter) {
             value = getValue((PropertyValueFilter) filter);
         } else {
             throw new QueryException("Unknown filter '" + filter + "', can't get value from it.");
         }
+        return toRepoValue(value, linkDefinition.getTargetDefinition(), context.getPrismContext(), filter);
+    }
 
-        Object adaptedValue = adaptValueType(value, filter);
+    /**
+     * @param filter Used only for diagnostics; null if not known.
+     */
+    private static Object toRepoValue(Object value, JpaPropertyDefinition def, PrismContext prismContext,
+            ValueFilter filter) throws QueryException {
+        Object adaptedValue = adaptValueType(value, def, prismContext, filter);
 
         if (def.isEnumerated()) {
             return getRepoEnumValue((Enum) adaptedValue, def.getJpaClass());
@@ -124,9 +210,10 @@ public class PropertyRestriction extends ItemValueRestriction<PropertyValueFilte
         }
     }
 
-    private Object adaptValueType(Object value, ValueFilter filter) throws QueryException {
+    private static Object adaptValueType(Object value, JpaPropertyDefinition def, PrismContext prismContext,
+            ValueFilter filter) throws QueryException {
 
-        Class<?> expectedType = linkDefinition.getTargetDefinition().getJaxbClass();
+        Class<?> expectedType = def.getJaxbClass();
         if (expectedType == null || value == null) {
             return value;   // nothing to check here
         }
@@ -144,7 +231,7 @@ public class PropertyRestriction extends ItemValueRestriction<PropertyValueFilte
         if (PolyString.class.equals(expectedWrappedType) && value instanceof String) {
             LOGGER.debug("Trying to query PolyString value but filter contains String '{}'.", filter);
             String orig = (String) value;
-            adaptedValue = new PolyString(orig, context.getPrismContext().getDefaultPolyStringNormalizer().normalize(orig));
+            adaptedValue = new PolyString(orig, prismContext.getDefaultPolyStringNormalizer().normalize(orig));
         } else if (PolyString.class.equals(expectedWrappedType) && value instanceof PolyStringType) {
             //attempt to fix value type for polystring (if it was polystring type in filter we create polystring from it)
             LOGGER.debug("Trying to query PolyString value but filter contains PolyStringType '{}'.", filter);
@@ -171,7 +258,7 @@ public class PropertyRestriction extends ItemValueRestriction<PropertyValueFilte
         }
     }
 
-    private Enum getRepoEnumValue(Enum<?> schemaValue, Class<?> repoType) throws QueryException {
+    private static Enum getRepoEnumValue(Enum<?> schemaValue, Class<?> repoType) throws QueryException {
         if (schemaValue == null) {
             return null;
         }
@@ -0,0 +1,708 @@
+/*
+ * Copyright (c) 2010-2020 Evolveum and contributors
+ *
+ * This work is dual-licensed under the Apache License 2.0
+ * and European Union Public License. See LICENSE file for details.
+ */
+
+package com.evolveum.midpoint.repo.sql.util;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.xml.datatype.Duration;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.marshaller.XNodeProcessorEvaluationMode;
+import com.evolveum.midpoint.prism.path.*;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.prism.xml.XsdTypeMapper;
+import com.evolveum.midpoint.prism.xnode.*;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+
+/**
+ * Compact binary encoding of the XNode tree of an object, used for m_object.fullObject
+ * when fullObjectFormat is set to {@link #FORMAT_BINARY}.
+ *
+ * The encoding avoids XML/JSON lexing on reads: the XNode tree is rebuilt directly and handed over
+ * to the prism parser. Namespaces, local names and short string values are stored in a dictionary
+ * that is built on the fly (the first occurrence is written as a literal, subsequent ones as an index);
+ * the dictionary is pre-seeded with the most common midPoint namespaces. All counts and lengths are varints.
+ *
+ * Binary data start with {@link #MAGIC}, so they can be distinguished from text (XML, JSON, YAML)
+ * and gzipped text stored in the same column.
+ *
+ * Not every XNode tree can be encoded (e.g. embedded XSD schemas); {@link UnsupportedContentException}
+ * is thrown in such cases and the caller is expected to store the object in a text format.
+ */
+public final class BinaryFullObjectCodec {
+
+    public static final String FORMAT_BINARY = "binary";
+
+    /**
+     * 0xCE followed by 'M' is not a valid UTF-8 sequence, so this can never be a start of a text form.
+     * The last byte is the format version.
+     */
+    private static final byte[] MAGIC = { (byte) 0xCE, 'M', 'P', 1 };
+
+    private static final int FLAG_DEFLATED = 0x01;
+
+    private static final int NODE_NULL = 0;
+    private static final int NODE_MAP = 1;
+    private static final int NODE_LIST = 2;
+    private static final int NODE_PRIMITIVE = 3;
+    private static final int NODE_ROOT = 4;
+    private static final int NODE_INCOMPLETE = 5;
+
+    private static final int HEADER_TYPE = 0x01;
+    private static final int HEADER_EXPLICIT_TYPE = 0x02;
+    private static final int HEADER_ELEMENT_NAME = 0x04;
+    private static final int HEADER_MAX_OCCURS = 0x08;
+    private static final int HEADER_ATTRIBUTE = 0x10;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_TRUE = 2;
+    private static final int VALUE_FALSE = 3;
+    private static final int VALUE_INT = 4;
+    private static final int VALUE_LONG = 5;
+    private static final int VALUE_SHORT = 6;
+    private static final int VALUE_BYTE = 7;
+    private static final int VALUE_DOUBLE = 8;
+    private static final int VALUE_FLOAT = 9;
+    private static final int VALUE_BIG_INTEGER = 10;
+    private static final int VALUE_BIG_DECIMAL = 11;
+    private static final int VALUE_QNAME = 12;
+    private static final int VALUE_DATE_TIME = 13;
+    private static final int VALUE_DURATION = 14;
+    private static final int VALUE_BYTES = 15;
+    private static final int VALUE_POLY_STRING = 16;
+    private static final int VALUE_ITEM_PATH = 17;
+    private static final int VALUE_UNPARSED = 18;
+
+    private static final int SEGMENT_NAME = 0;
+    private static final int SEGMENT_ID = 1;
+    private static final int SEGMENT_NULL_ID = 2;
+    private static final int SEGMENT_PARENT = 3;
+    private static final int SEGMENT_OBJECT_REFERENCE = 4;
+    private static final int SEGMENT_IDENTIFIER = 5;
+    private static final int SEGMENT_VARIABLE = 6;
+
+    private static final int REF_NULL = 0;
+    private static final int REF_LITERAL = 1;           // literal that is added to the dictionary
+    private static final int REF_INLINE = 2;            // literal that is not added to the dictionary
+    private static final int REF_INDEX_OFFSET = 3;
+
+    /**
+     * String values up to this length go to the dictionary; longer ones are always written inline.
+     */
+    private static final int MAX_DICTIONARY_VALUE_LENGTH = 32;
+
+    /**
+     * Initial content of the dictionary. This is a part of the format: entries can be appended
+     * only together with incrementing the format version.
+     */
+    private static final List<String> WELL_KNOWN_STRINGS = Collections.unmodifiableList(Arrays.asList(
+            "",
+            "http://midpoint.evolveum.com/xml/ns/public/common/common-3",
+            "http://prism.evolveum.com/xml/ns/public/types-3",
+            "http://prism.evolveum.com/xml/ns/public/query-3",
+            "http://prism.evolveum.com/xml/ns/public/annotation-3",
+            "http://www.w3.org/2001/XMLSchema",
+            "http://midpoint.evolveum.com/xml/ns/public/common/org-3",
+            "http://midpoint.evolveum.com/xml/ns/public/resource/instance-3",
+            "http://midpoint.evolveum.com/xml/ns/public/connector/icf-1/resource-schema-3",
+            "http://midpoint.evolveum.com/xml/ns/public/common/extension-3"));
+
+    private BinaryFullObjectCodec() {
+    }
+
+    /**
+     * Thrown when the XNode tree contains something that this codec cannot represent.
+     */
+    public static class UnsupportedContentException extends Exception {
+        UnsupportedContentException(String message) {
+            super(message);
+        }
+    }
+
+    public static boolean isBinary(byte[] data) {
+        if (data == null || data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] encode(@NotNull RootXNode root, boolean compress) throws UnsupportedContentException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(MAGIC);
+            bytes.write(compress ? FLAG_DEFLATED : 0);
+            OutputStream body = compress ? new DeflaterOutputStream(bytes) : bytes;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(body))) {
+                new Writer(out).writeNode(root);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected I/O exception while writing to memory: " + e.getMessage(), e);
+        }
+    }
+
+    @NotNull
+    public static RootXNode decode(@NotNull byte[] data, @NotNull PrismContext prismContext) throws SchemaException {
+        if (!isBinary(data) || data.length <= MAGIC.length) {
+            throw new SchemaException("Not a binary full object");
+        }
+        int flags = data[MAGIC.length];
+        InputStream body = new ByteArrayInputStream(data, MAGIC.length + 1, data.length - MAGIC.length - 1);
+        if ((flags & FLAG_DEFLATED) != 0) {
+            body = new InflaterInputStream(body);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(body))) {
+            XNode node = new Reader(in, prismContext).readNode();
+            if (!(node instanceof RootXNode)) {
+                throw new SchemaException("Binary full object does not start with a root node");
+            }
+            return (RootXNode) node;
+        } catch (IOException | RuntimeException e) {
+            throw new SchemaException("Couldn't decode binary full object: " + e.getMessage(), e);
+        }
+    }
+
+    private static class Writer {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+            for (String s : WELL_KNOWN_STRINGS) {
+                dictionary.put(s, dictionary.size());
+            }
+        }
+
+        private void writeNode(XNode node) throws IOException, UnsupportedContentException {
+            if (node == null) {
+                out.writeByte(NODE_NULL);
+            } else if (node instanceof RootXNode) {
+                RootXNode root = (RootXNode) node;
+                out.writeByte(NODE_ROOT);
+                writeHeader(node, false);
+                writeQName(root.getRootElementName());
+                writeNode(root.getSubnode());
+            } else if (node instanceof MapXNode) {
+                Map<QName, ? extends XNode> map = ((MapXNode) node).toMap();
+                out.writeByte(NODE_MAP);
+                writeHeader(node, false);
+                writeVarInt(map.size());
+                for (Map.Entry<QName, ? extends XNode> entry : map.entrySet()) {
+                    writeQName(entry.getKey());
+                    writeNode(entry.getValue());
+                }
+            } else if (node instanceof ListXNode) {
+                List<? extends XNode> list = ((ListXNode) node).asList();
+                out.writeByte(NODE_LIST);
+                writeHeader(node, false);
+                writeVarInt(list.size());
+                for (XNode item : list) {
+                    writeNode(item);
+                }
+            } else if (node instanceof PrimitiveXNode) {
+                PrimitiveXNode<?> primitive = (PrimitiveXNode<?>) node;
+                out.writeByte(NODE_PRIMITIVE);
+                writeHeader(node, primitive.isAttribute());
+                if (primitive.isParsed()) {
+                    writeValue(primitive.getValue());
+                } else if (primitive.isAttribute()) {
+                    throw new UnsupportedContentException("Unparsed attribute value");
+                } else {
+                    ValueParser<?> parser = primitive.getValueParser();
+                    out.writeByte(VALUE_UNPARSED);
+                    writeString(parser.getStringValue());
+                    Map<String, String> namespaces = parser.getPotentiallyRelevantNamespaces();
+                    if (namespaces == null) {
+                        namespaces = Collections.emptyMap();
+                    }
+                    writeVarInt(namespaces.size());
+                    for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+                        writeRef(entry.getKey());
+                        writeRef(entry.getValue());
+                    }
+                }
+            } else if (node instanceof IncompleteMarkerXNode) {
+                out.writeByte(NODE_INCOMPLETE);
+                writeHeader(node, false);
+            } else {
+                throw new UnsupportedContentException("Unsupported XNode: " + node.getClass().getSimpleName());
+            }
+        }
+
+        private void writeHeader(XNode node, boolean attribute) throws IOException {
+            QName typeName = node.getTypeQName();
+            QName elementName = node.getElementName();
+            Integer maxOccurs = node.getMaxOccurs();
+            int header = (typeName != null ? HEADER_TYPE : 0)
+                    | (node.isExplicitTypeDeclaration() ? HEADER_EXPLICIT_TYPE : 0)
+                    | (elementName != null ? HEADER_ELEMENT_NAME : 0)
+                    | (maxOccurs != null ? HEADER_MAX_OCCURS : 0)
+                    | (attribute ? HEADER_ATTRIBUTE : 0);
+            out.writeByte(header);
+            if (typeName != null) {
+                writeQName(typeName);
+            }
+            if (elementName != null) {
+                writeQName(elementName);
+            }
+            if (maxOccurs != null) {
+                writeVarLong(zigZag(maxOccurs));
+            }
+        }
+
+        private void writeValue(Object value) throws IOException, UnsupportedContentException {
+            if (value == null) {
+                out.writeByte(VALUE_NULL);
+            } else if (value instanceof String) {
+                out.writeByte(VALUE_STRING);
+                writeStringValue((String) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof Integer) {
+                out.writeByte(VALUE_INT);
+                writeVarLong(zigZag((Integer) value));
+            } else if (value instanceof Long) {
+                out.writeByte(VALUE_LONG);
+                writeVarLong(zigZag((Long) value));
+            } else if (value instanceof Short) {
+                out.writeByte(VALUE_SHORT);
+                writeVarLong(zigZag((Short) value));
+            } else if (value instanceof Byte) {
+                out.writeByte(VALUE_BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Double) {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                out.writeByte(VALUE_FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof BigInteger) {
+                out.writeByte(VALUE_BIG_INTEGER);
+                writeString(value.toString());
+            } else if (value instanceof BigDecimal) {
+                out.writeByte(VALUE_BIG_DECIMAL);
+                writeString(value.toString());
+            } else if (value instanceof QName) {
+                out.writeByte(VALUE_QNAME);
+                writeQName((QName) value);
+            } else if (value instanceof XMLGregorianCalendar) {
+                out.writeByte(VALUE_DATE_TIME);
+                writeString(((XMLGregorianCalendar) value).toXMLFormat());
+            } else if (value instanceof Duration) {
+                out.writeByte(VALUE_DURATION);
+                writeString(value.toString());
+            } else if (value instanceof byte[]) {
+                out.writeByte(VALUE_BYTES);
+                writeVarInt(((byte[]) value).length);
+                out.write((byte[]) value);
+            } else if (value instanceof PolyString) {
+                PolyString polyString = (PolyString) value;
+                if (polyString.getTranslation() != null || polyString.getLang() != null) {
+                    throw new UnsupportedContentException("Primitive PolyString with translation or lang");
+                }
+                out.writeByte(VALUE_POLY_STRING);
+                writeStringValue(polyString.getOrig());
+                writeStringValue(polyString.getNorm());
+            } else if (value instanceof ItemPathType) {
+                out.writeByte(VALUE_ITEM_PATH);
+                writeItemPath(((ItemPathType) value).getItemPath());
+            } else {
+                throw new UnsupportedContentException("Unsupported primitive value: " + value.getClass().getName());
+            }
+        }
+
+        private void writeItemPath(ItemPath path) throws IOException, UnsupportedContentException {
+            List<?> segments = path != null ? path.getSegments() : Collections.emptyList();
+            writeVarInt(segments.size());
+            for (Object segment : segments) {
+                if (ItemPath.isName(segment)) {
+                    out.writeByte(SEGMENT_NAME);
+                    writeQName(ItemPath.toName(segment));
+                } else if (ItemPath.isNullId(segment)) {
+                    out.writeByte(SEGMENT_NULL_ID);
+                } else if (ItemPath.isId(segment)) {
+                    out.writeByte(SEGMENT_ID);
+                    writeVarLong(zigZag(ItemPath.toId(segment)));
+                } else if (ItemPath.isParent(segment)) {
+                    out.writeByte(SEGMENT_PARENT);
+                } else if (ItemPath.isObjectReference(segment)) {
+                    out.writeByte(SEGMENT_OBJECT_REFERENCE);
+                } else if (ItemPath.isIdentifier(segment)) {
+                    out.writeByte(SEGMENT_IDENTIFIER);
+                } else if (ItemPath.isVariable(segment)) {
+                    out.writeByte(SEGMENT_VARIABLE);
+                    writeQName(ItemPath.toVariableName(segment));
+                } else {
+                    throw new UnsupportedContentException("Unsupported item path segment: " + segment);
+                }
+            }
+        }
+
+        private void writeQName(QName name) throws IOException {
+            if (name == null) {
+                writeVarInt(REF_NULL);
+            } else {
+                writeRef(name.getNamespaceURI());
+                writeRef(name.getLocalPart());
+            }
+        }
+
+        private void writeStringValue(String value) throws IOException {
+            if (value == null || value.length() <= MAX_DICTIONARY_VALUE_LENGTH) {
+                writeRef(value);
+            } else {
+                writeVarInt(REF_INLINE);
+                writeString(value);
+            }
+        }
+
+        private void writeRef(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(REF_NULL);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                writeVarInt(index + REF_INDEX_OFFSET);
+            } else {
+                writeVarInt(REF_LITERAL);
+                writeString(value);
+                dictionary.put(value, dictionary.size());
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            writeVarLong(value);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static class Reader {
+
+        private final DataInputStream in;
+        private final PrismContext prismContext;
+        private final XNodeFactory factory;
+        private final XNodeMutator mutator;
+        private final List<String> dictionary = new ArrayList<>(WELL_KNOWN_STRINGS);
+
+        private Reader(DataInputStream in, PrismContext prismContext) {
+            this.in = in;
+            this.prismContext = prismContext;
+            this.factory = prismContext.xnodeFactory();
+            this.mutator = prismContext.xnodeMutator();
+        }
+
+        private XNode readNode() throws IOException, SchemaException {
+            int kind = in.readUnsignedByte();
+            if (kind == NODE_NULL) {
+                return null;
+            }
+            int header = in.readUnsignedByte();
+            QName typeName = (header & HEADER_TYPE) != 0 ? readQName() : null;
+            QName elementName = (header & HEADER_ELEMENT_NAME) != 0 ? readQName() : null;
+            Integer maxOccurs = (header & HEADER_MAX_OCCURS) != 0 ? (int) unZigZag(readVarLong()) : null;
+
+            XNode node;
+            switch (kind) {
+                case NODE_ROOT:
+                    QName rootElementName = readQName();
+                    node = factory.root(rootElementName, readNode());
+                    break;
+                case NODE_MAP:
+                    MapXNode map = factory.map();
+                    int mapSize = readVarInt();
+                    for (int i = 0; i < mapSize; i++) {
+                        QName key = readQName();
+                        mutator.putToMapXNode(map, key, readNode());
+                    }
+                    node = map;
+                    break;
+                case NODE_LIST:
+                    ListXNode list = factory.list();
+                    int listSize = readVarInt();
+                    for (int i = 0; i < listSize; i++) {
+                        mutator.addToListXNode(list, readNode());
+                    }
+                    node = list;
+                    break;
+                case NODE_PRIMITIVE:
+                    node = readPrimitive(typeName, (header & HEADER_ATTRIBUTE) != 0);
+                    break;
+                case NODE_INCOMPLETE:
+                    node = factory.incompleteMarker();
+                    break;
+                default:
+                    throw new SchemaException("Unknown node kind " + kind);
+            }
+            mutator.setXNodeType(node, typeName, (header & HEADER_EXPLICIT_TYPE) != 0);
+            if (elementName != null) {
+                mutator.setXNodeElementName(node, elementName);
+            }
+            if (maxOccurs != null) {
+                mutator.setXNodeMaxOccurs(node, maxOccurs);
+            }
+            return node;
+        }
+
+        private PrimitiveXNode<?> readPrimitive(QName typeName, boolean attribute) throws IOException, SchemaException {
+            int valueKind = in.readUnsignedByte();
+            if (valueKind == VALUE_UNPARSED) {
+                String text = readString();
+                int namespaceCount = readVarInt();
+                Map<String, String> namespaces = new HashMap<>();
+                for (int i = 0; i < namespaceCount; i++) {
+                    namespaces.put(readRef(), readRef());
+                }
+                return factory.primitive(new StoredValueParser<>(text, namespaces, prismContext));
+            }
+            Object value = readValue(valueKind);
+            PrimitiveXNode<Object> primitive = attribute ? factory.primitiveAttribute(null) : factory.primitive();
+            if (value != null) {
+                mutator.setPrimitiveXNodeValue(primitive, value, typeName);
+            }
+            return primitive;
+        }
+
+        private Object readValue(int valueKind) throws IOException, SchemaException {
+            switch (valueKind) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_STRING:
+                    return readRef();
+                case VALUE_TRUE:
+                    return Boolean.TRUE;
+                case VALUE_FALSE:
+                    return Boolean.FALSE;
+                case VALUE_INT:
+                    return (int) unZigZag(readVarLong());
+                case VALUE_LONG:
+                    return unZigZag(readVarLong());
+                case VALUE_SHORT:
+                    return (short) unZigZag(readVarLong());
+                case VALUE_BYTE:
+                    return in.readByte();
+                case VALUE_DOUBLE:
+                    return in.readDouble();
+                case VALUE_FLOAT:
+                    return in.readFloat();
+                case VALUE_BIG_INTEGER:
+                    return new BigInteger(readString());
+                case VALUE_BIG_DECIMAL:
+                    return new BigDecimal(readString());
+                case VALUE_QNAME:
+                    return readQName();
+                case VALUE_DATE_TIME:
+                    return XmlTypeConverter.createXMLGregorianCalendar(readString());
+                case VALUE_DURATION:
+                    return XmlTypeConverter.createDuration(readString());
+                case VALUE_BYTES:
+                    byte[] bytes = new byte[readVarInt()];
+                    in.readFully(bytes);
+                    return bytes;
+                case VALUE_POLY_STRING:
+                    String orig = readRef();
+                    String norm = readRef();
+                    return new PolyString(orig, norm);
+                case VALUE_ITEM_PATH:
+                    return new ItemPathType(readItemPath());
+                default:
+                    throw new SchemaException("Unknown value kind " + valueKind);
+            }
+        }
+
+        private ItemPath readItemPath() throws IOException, SchemaException {
+            int size = readVarInt();
+            List<Object> segments = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int segmentKind = in.readUnsignedByte();
+                switch (segmentKind) {
+                    case SEGMENT_NAME:
+                        segments.add(ItemName.fromQName(readQName()));
+                        break;
+                    case SEGMENT_ID:
+                        segments.add(unZigZag(readVarLong()));
+                        break;
+                    case SEGMENT_NULL_ID:
+                        segments.add(IdItemPathSegment.NULL);
+                        break;
+                    case SEGMENT_PARENT:
+                        segments.add(new ParentPathSegment());
+                        break;
+                    case SEGMENT_OBJECT_REFERENCE:
+                        segments.add(new ObjectReferencePathSegment());
+                        break;
+                    case SEGMENT_IDENTIFIER:
+                        segments.add(new IdentifierPathSegment());
+                        break;
+                    case SEGMENT_VARIABLE:
+                        segments.add(new VariableItemPathSegment(readQName()));
+                        break;
+                    default:
+                        throw new SchemaException("Unknown item path segment kind " + segmentKind);
+                }
+            }
+            return ItemPath.create(segments);
+        }
+
+        private QName readQName() throws IOException {
+            String namespace = readRef();
+            if (namespace == null) {
+                return null;
+            }
+            return new QName(namespace, readRef());
+        }
+
+        private String readRef() throws IOException {
+            int ref = readVarInt();
+            if (ref == REF_NULL) {
+                return null;
+            } else if (ref == REF_LITERAL) {
+                String value = readString();
+                dictionary.add(value);
+                return value;
+            } else if (ref == REF_INLINE) {
+                return readString();
+            } else {
+                return dictionary.get(ref - REF_INDEX_OFFSET);
+            }
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+                if (shift > 63) {
+                    throw new IOException("Malformed varint");
+                }
+            }
+        }
+
+        private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Value that was not parsed when the object was stored (e.g. a raw value of an item without definition).
+     * Keeps the text form and namespace declarations, and parses them later in the same way as the XML parser would.
+     */
+    private static class StoredValueParser<T> implements ValueParser<T>, Serializable {
+
+        private final String value;
+        private final Map<String, String> namespaces;
+        private final transient PrismContext prismContext;
+
+        private StoredValueParser(String value, Map<String, String> namespaces, PrismContext prismContext) {
+            this.value = value;
+            this.namespaces = namespaces;
+            this.prismContext = prismContext;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T parse(QName typeName, XNodeProcessorEvaluationMode mode) throws SchemaException {
+            if (ItemPathType.COMPLEX_TYPE.equals(typeName)) {
+                StringBuilder sb = new StringBuilder();
+                namespaces.forEach((prefix, ns) -> sb.append("declare namespace ").append(prefix)
+                        .append("='").append(ns).append("'; "));
+                return (T) prismContext.itemPathParser().asItemPathType(sb.append(value).toString());
+            }
+            Class<T> javaType = XsdTypeMapper.toJavaTypeIfKnown(typeName);
+            if (javaType == null) {
+                throw new SchemaException("Cannot parse value of unknown type " + typeName + ": " + value);
+            }
+            try {
+                return XmlTypeConverter.toJavaValue(value, namespaces, javaType);
+            } catch (RuntimeException e) {
+                throw new SchemaException("Cannot parse value '" + value + "' as " + typeName + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean canParseAs(QName typeName) {
+            return ItemPathType.COMPLEX_TYPE.equals(typeName) || XsdTypeMapper.toJavaTypeIfKnown(typeName) != null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return StringUtils.isBlank(value);
+        }
+
+        @Override
+        public String getStringValue() {
+            return value;
+        }
+
+        @Override
+        public Map<String, String> getPotentiallyRelevantNamespaces() {
+            return namespaces;
+        }
+
+        @Override
+        public ValueParser<T> freeze() {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "StoredValueParser(" + value + ")";
+        }
+    }
+}
@@ -98,6 +98,13 @@ public class PrismIdentifierGenerator<O extends ObjectType> implements DebugDump
         collectUsedIds(listAllPrismContainers(object));
     }
 
+    /**
+     * Marks an ID as used even if it is not present in the object processed, e.g. because the object is not complete.
+     */
+    public void collectUsedId(long id) {
+        usedIds.add(id);
+    }
+
     private void collectUsedIds(List<PrismContainer<?>> containers) {
         for (PrismContainer<?> c : containers) {
             for (PrismContainerValue<?> val : c.getValues()) {
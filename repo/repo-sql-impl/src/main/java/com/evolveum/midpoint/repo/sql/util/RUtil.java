@@ -37,8 +37,11 @@ import org.hibernate.tuple.entity.EntityMetamodel;
 import org.jetbrains.annotations.NotNull;
 
 import com.evolveum.midpoint.prism.Objectable;
+import com.evolveum.midpoint.prism.ParsingContext;
 import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.path.ItemName;
+import com.evolveum.midpoint.prism.xnode.RootXNode;
 import com.evolveum.midpoint.repo.sql.data.audit.RObjectDeltaOperation;
 import com.evolveum.midpoint.repo.sql.data.common.*;
 import com.evolveum.midpoint.repo.sql.data.common.any.*;
@@ -382,6 +385,49 @@ public final class RUtil {
         return getSerializedFormFromBytes(array, false);
     }
 
+    /**
+     * Parses fullObject column value, regardless of whether it is stored in binary or in a text form.
+     */
+    public static <T extends Objectable> PrismObject<T> parseFullObject(byte[] fullObject, PrismContext prismContext,
+            ParsingContext parsingContext) throws SchemaException {
+        if (BinaryFullObjectCodec.isBinary(fullObject)) {
+            return prismContext.parserFor(BinaryFullObjectCodec.decode(fullObject, prismContext))
+                    .context(parsingContext)
+                    .parse();
+        } else {
+            return prismContext.parserFor(getSerializedFormFromBytes(fullObject))
+                    .context(parsingContext)
+                    .parse();
+        }
+    }
+
+    /**
+     * Parses fullObject column value to XNode (i.e. without interpreting it using prism definitions),
+     * regardless of whether it is stored in binary or in a text form.
+     */
+    public static RootXNode parseFullObjectToXNode(byte[] fullObject, PrismContext prismContext) throws SchemaException {
+        if (BinaryFullObjectCodec.isBinary(fullObject)) {
+            return BinaryFullObjectCodec.decode(fullObject, prismContext);
+        } else {
+            return prismContext.parserFor(getSerializedFormFromBytes(fullObject))
+                    .parseToXNode();
+        }
+    }
+
+    /**
+     * Returns text form of fullObject column value; binary values are converted to XML.
+     */
+    public static String getFullObjectText(byte[] fullObject, PrismContext prismContext) {
+        if (!BinaryFullObjectCodec.isBinary(fullObject)) {
+            return getSerializedFormFromBytes(fullObject);
+        }
+        try {
+            return prismContext.xmlSerializer().serialize(BinaryFullObjectCodec.decode(fullObject, prismContext));
+        } catch (SchemaException ex) {
+            throw new SystemException("Couldn't convert binary full object to text, reason: " + ex.getMessage(), ex);
+        }
+    }
+
     public static String getSerializedFormFromBytes(byte[] array, boolean useUtf16) {
         if (array == null) {
             return null;
@@ -9,6 +9,7 @@ package com.evolveum.midpoint.init;
 
 import com.evolveum.midpoint.audit.api.AuditEventRecord;
 import com.evolveum.midpoint.audit.api.AuditResultHandler;
+import com.evolveum.midpoint.audit.api.AuditRetrievalOptions;
 import com.evolveum.midpoint.audit.api.AuditService;
 import com.evolveum.midpoint.audit.spi.AuditServiceRegistry;
 import com.evolveum.midpoint.prism.PrismContext;
@@ -225,6 +226,16 @@ public class AuditServiceProxy implements AuditService, AuditServiceRegistry {
         }
     }
 
+    @Override
+    public void listRecordsIterative(String query, Map<String, Object> params, AuditRetrievalOptions options,
+            AuditResultHandler handler, OperationResult result) {
+        for (AuditService service : services) {
+            if (service.supportsRetrieval()) {
+                service.listRecordsIterative(query, params, options, handler, result);
+            }
+        }
+    }
+
     @Override
     public void reindexEntry(AuditEventRecord record) {
         for (AuditService service : services) {
@@ -20,6 +20,7 @@ import com.evolveum.midpoint.schema.GetOperationOptionsBuilder;
 import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.constants.ObjectTypes;
 import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.IterationMethodType;
 
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -54,6 +55,8 @@ public class SearchProducerWorker extends BaseWorker<ExportOptions, PrismObject>
             }
 
             optionsBuilder = NinjaUtils.addIncludeOptionsForExport(optionsBuilder, type.getClassDefinition());
+            // objects are only passed to the consumers, so there is no need to keep them in memory on the repository side
+            optionsBuilder = optionsBuilder.iterationMethod(IterationMethodType.STREAMING);
 
             ResultHandler handler = (object, parentResult) -> {
                 try {